@@ -0,0 +1,54 @@
+package com.microsoft.azure.elasticdb.core.commons.helpers;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Defines the kind of threads on which per-shard work is run.
+ */
+public enum ExecutionMode {
+    /**
+     * Per-shard work runs on platform (operating system) threads.
+     */
+    PlatformThreads(0),
+
+    /**
+     * Per-shard work runs on virtual threads, one per task. Blocking JDBC calls park the virtual thread instead of holding an operating system
+     * thread, so thousands of shard interactions can be in flight at once. Falls back to PlatformThreads when the runtime does not support virtual
+     * threads.
+     */
+    VirtualThreads(1);
+
+    public static final int SIZE = java.lang.Integer.SIZE;
+    private static java.util.HashMap<Integer, ExecutionMode> mappings;
+    private int intValue;
+
+    ExecutionMode(int value) {
+        intValue = value;
+        getMappings().put(value, this);
+    }
+
+    private static java.util.HashMap<Integer, ExecutionMode> getMappings() {
+        if (mappings == null) {
+            synchronized (ExecutionMode.class) {
+                if (mappings == null) {
+                    mappings = new java.util.HashMap<>();
+                }
+            }
+        }
+        return mappings;
+    }
+
+    public static ExecutionMode forValue(int value) {
+        return getMappings().get(value);
+    }
+
+    public int getValue() {
+        return intValue;
+    }
+}
@@ -0,0 +1,183 @@
+package com.microsoft.azure.elasticdb.core.commons.helpers;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Creates executors for per-shard work according to an <see cref="ExecutionMode"/>. Virtual threads are looked up reflectively so that the library
+ * keeps running on runtimes which do not have them.
+ */
+public final class ExecutorHelper {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * System property which sets the default execution mode, e.g. -Delasticdb.executionMode=VirtualThreads.
+     */
+    public static final String EXECUTION_MODE_PROPERTY = "elasticdb.executionMode";
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor, or null if the runtime does not support virtual threads.
+     */
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private static volatile ExecutionMode defaultExecutionMode = parseExecutionMode(System.getProperty(EXECUTION_MODE_PROPERTY));
+
+    /**
+     * Executor on platform threads shared by callers which do not manage their own, created on first use.
+     */
+    private static volatile ExecutorService sharedExecutor;
+
+    /**
+     * Executor on virtual threads shared by callers which do not manage their own, created on first use.
+     */
+    private static volatile ExecutorService sharedVirtualThreadExecutor;
+
+    private ExecutorHelper() {
+    }
+
+    private static ExecutionMode parseExecutionMode(String value) {
+        if (value != null) {
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+            log.warn("Ignoring unknown execution mode '{}' in system property {}.", value, EXECUTION_MODE_PROPERTY);
+        }
+        return ExecutionMode.PlatformThreads;
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the runtime supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Execution mode used by components which are not given one explicitly.
+     */
+    public static ExecutionMode getDefaultExecutionMode() {
+        return defaultExecutionMode;
+    }
+
+    /**
+     * Sets the execution mode used by components which are not given one explicitly.
+     */
+    public static void setDefaultExecutionMode(ExecutionMode value) {
+        if (value == ExecutionMode.VirtualThreads && !isVirtualThreadSupported()) {
+            log.warn("Virtual threads are not supported by this runtime; platform threads will be used.");
+        }
+        defaultExecutionMode = value;
+    }
+
+    /**
+     * Creates an executor for the given execution mode. The caller owns the executor and must shut it down.
+     *
+     * @param mode
+     *            Execution mode.
+     * @param platformThreads
+     *            Number of threads to use when running on platform threads.
+     * @return A new executor.
+     */
+    public static ExecutorService newExecutor(ExecutionMode mode,
+            int platformThreads) {
+        if (mode == ExecutionMode.VirtualThreads) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads));
+    }
+
+    /**
+     * Gets an executor shared across callers, running on virtual threads when the default execution mode asks for them and the runtime supports
+     * them, and otherwise on a cached pool of daemon platform threads. The shared executor is never shut down.
+     *
+     * @return The shared executor.
+     */
+    public static ExecutorService getSharedExecutor() {
+        return getSharedExecutor(defaultExecutionMode);
+    }
+
+    /**
+     * Gets an executor shared across callers for the given execution mode. Virtual threads fall back to the cached pool of daemon platform threads
+     * when the runtime does not support them. The shared executors are never shut down.
+     *
+     * @param mode
+     *            Execution mode.
+     * @return The shared executor.
+     */
+    public static ExecutorService getSharedExecutor(ExecutionMode mode) {
+        if (mode == ExecutionMode.VirtualThreads && isVirtualThreadSupported()) {
+            ExecutorService executor = sharedVirtualThreadExecutor;
+            if (executor == null) {
+                synchronized (ExecutorHelper.class) {
+                    executor = sharedVirtualThreadExecutor;
+                    if (executor == null) {
+                        executor = newVirtualThreadExecutor();
+                        if (executor == null) {
+                            return getSharedPlatformThreadExecutor();
+                        }
+                        sharedVirtualThreadExecutor = executor;
+                    }
+                }
+            }
+            return executor;
+        }
+        return getSharedPlatformThreadExecutor();
+    }
+
+    private static ExecutorService getSharedPlatformThreadExecutor() {
+        ExecutorService executor = sharedExecutor;
+        if (executor == null) {
+            synchronized (ExecutorHelper.class) {
+                executor = sharedExecutor;
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("elasticdb-shared-%d").build());
+                    sharedExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            log.warn("Failed to create a virtual thread executor; falling back to platform threads: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.microsoft.azure.elasticdb.query.exception;
+
+import java.io.Serializable;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+
+/**
+ * Custom exception standing in for the results of a shard which was cancelled and left out of partial results, since it was still running past
+ * its adaptive deadline after the other shards had finished.
+ */
+public class MultiShardStragglerException extends MultiShardException implements Serializable {
+
+    private final long deadlineMillis;
+
+    /**
+     * Initializes a new instance of the MultiShardStragglerException class.
+     *
+     * @param shardLocation
+     *            specifies the location of the shard which was left out.
+     * @param elapsedMillis
+     *            specifies how long the command had run on the shard.
+     * @param deadlineMillis
+     *            specifies the deadline of the command on the shard.
+     */
+    public MultiShardStragglerException(ShardLocation shardLocation,
+            long elapsedMillis,
+            long deadlineMillis) {
+        super(shardLocation, String.format("Shard %1$s was left out of the results since it was still running after %2$s ms, past its deadline"
+                + " of %3$s ms.", shardLocation, elapsedMillis, deadlineMillis));
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Gets the deadline the shard exceeded, in milliseconds from the start of its command.
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+}
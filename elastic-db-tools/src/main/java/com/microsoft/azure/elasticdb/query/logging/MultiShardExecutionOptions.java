@@ -20,7 +20,13 @@ public enum MultiShardExecutionOptions {
     /**
      * Whether the $ShardName pseudo column should be included in the result-sets.
      */
-    IncludeShardNameColumn(1);
+    IncludeShardNameColumn(1),
+
+    /**
+     * Whether rows should be returned as soon as any shard has produced them, rather than after all shards have returned their results. The reader
+     * is then forward-only.
+     */
+    StreamResults(2);
 
     public static final int SIZE = java.lang.Integer.SIZE;
     private static java.util.HashMap<Integer, MultiShardExecutionOptions> mappings;
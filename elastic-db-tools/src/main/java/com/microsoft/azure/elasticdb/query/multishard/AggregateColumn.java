@@ -0,0 +1,148 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.text.Collator;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Column of a multi-shard query whose per-shard partial aggregates are combined into one value per group. For example, for
+ * <code>SELECT Region, COUNT_BIG(*) AS Orders, SUM(Total) AS Revenue FROM Orders GROUP BY Region</code> the columns Orders and Revenue are
+ * combined with <see cref="AggregateFunction.Count"/> and <see cref="AggregateFunction.Sum"/>. An average is computed from a sum and a count
+ * column the command text returns in its place.
+ */
+public final class AggregateColumn {
+
+    private final String columnLabel;
+
+    private final AggregateFunction function;
+
+    /**
+     * Label of the column with the sum of an average, null for other functions.
+     */
+    private final String sumColumnLabel;
+
+    /**
+     * Label of the column with the count of an average, null for other functions.
+     */
+    private final String countColumnLabel;
+
+    /**
+     * Collator comparing string values for MIN and MAX, or null to compare them by UTF-16 code units.
+     */
+    private final Collator collator;
+
+    /**
+     * Constructs a column combined with COUNT, SUM, MIN or MAX.
+     *
+     * @param columnLabel
+     *            Label of the column in the results of the shards.
+     * @param function
+     *            Function combining the values of the shards.
+     */
+    public AggregateColumn(String columnLabel,
+            AggregateFunction function) {
+        this(columnLabel, function, null);
+    }
+
+    /**
+     * Constructs a column combined with COUNT, SUM, MIN or MAX. String values are compared with the given collator, which should agree with the
+     * collation of the column.
+     *
+     * @param columnLabel
+     *            Label of the column in the results of the shards.
+     * @param function
+     *            Function combining the values of the shards.
+     * @param collator
+     *            Collator comparing string values for MIN and MAX, or null to compare them by UTF-16 code units.
+     */
+    public AggregateColumn(String columnLabel,
+            AggregateFunction function,
+            Collator collator) {
+        if (StringUtilsLocal.isNullOrEmpty(columnLabel)) {
+            throw new IllegalArgumentException("columnLabel");
+        }
+        if (function == null || function == AggregateFunction.Avg) {
+            throw new IllegalArgumentException("function must be Count, Sum, Min or Max; an average needs its sum and count columns");
+        }
+        this.columnLabel = columnLabel;
+        this.function = function;
+        this.sumColumnLabel = null;
+        this.countColumnLabel = null;
+        this.collator = collator;
+    }
+
+    /**
+     * Constructs an average computed from the sum and count the shards return for each group.
+     *
+     * @param columnLabel
+     *            Label of the average in the combined results.
+     * @param sumColumnLabel
+     *            Label of the column with the SUM of the averaged expression in the results of the shards.
+     * @param countColumnLabel
+     *            Label of the column with the COUNT of the averaged expression in the results of the shards.
+     */
+    public AggregateColumn(String columnLabel,
+            String sumColumnLabel,
+            String countColumnLabel) {
+        if (StringUtilsLocal.isNullOrEmpty(columnLabel)) {
+            throw new IllegalArgumentException("columnLabel");
+        }
+        if (StringUtilsLocal.isNullOrEmpty(sumColumnLabel)) {
+            throw new IllegalArgumentException("sumColumnLabel");
+        }
+        if (StringUtilsLocal.isNullOrEmpty(countColumnLabel)) {
+            throw new IllegalArgumentException("countColumnLabel");
+        }
+        this.columnLabel = columnLabel;
+        this.function = AggregateFunction.Avg;
+        this.sumColumnLabel = sumColumnLabel;
+        this.countColumnLabel = countColumnLabel;
+        this.collator = null;
+    }
+
+    /**
+     * Gets the label of the column in the combined results.
+     */
+    public String getColumnLabel() {
+        return columnLabel;
+    }
+
+    public AggregateFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * Gets the label of the column with the sum of an average, null for other functions.
+     */
+    public String getSumColumnLabel() {
+        return sumColumnLabel;
+    }
+
+    /**
+     * Gets the label of the column with the count of an average, null for other functions.
+     */
+    public String getCountColumnLabel() {
+        return countColumnLabel;
+    }
+
+    /**
+     * Gets the collator comparing string values for MIN and MAX, or null if they are compared by UTF-16 code units.
+     */
+    public Collator getCollator() {
+        return collator;
+    }
+
+    @Override
+    public String toString() {
+        return function == AggregateFunction.Avg ? columnLabel + " = " + sumColumnLabel + " / " + countColumnLabel
+                : function + "(" + columnLabel + ")";
+    }
+}
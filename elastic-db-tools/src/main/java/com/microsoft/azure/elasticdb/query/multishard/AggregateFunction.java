@@ -0,0 +1,67 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Function by which an <see cref="AggregateColumn"/> combines the partial aggregates returned by the shards for a group.
+ */
+public enum AggregateFunction {
+    /**
+     * Number of rows, the sum of the COUNT or COUNT_BIG partials of the shards.
+     */
+    Count(0),
+
+    /**
+     * Sum of the SUM partials of the shards.
+     */
+    Sum(1),
+
+    /**
+     * Smallest of the MIN partials of the shards.
+     */
+    Min(2),
+
+    /**
+     * Largest of the MAX partials of the shards.
+     */
+    Max(3),
+
+    /**
+     * Average, the sum of the SUM partials divided by the sum of the COUNT partials of the shards. Averages of the shards cannot be combined.
+     */
+    Avg(4);
+
+    public static final int SIZE = java.lang.Integer.SIZE;
+    private static java.util.HashMap<Integer, AggregateFunction> mappings;
+    private int intValue;
+
+    AggregateFunction(int value) {
+        intValue = value;
+        getMappings().put(value, this);
+    }
+
+    private static java.util.HashMap<Integer, AggregateFunction> getMappings() {
+        if (mappings == null) {
+            synchronized (AggregateFunction.class) {
+                if (mappings == null) {
+                    mappings = new java.util.HashMap<>();
+                }
+            }
+        }
+        return mappings;
+    }
+
+    public static AggregateFunction forValue(int value) {
+        return getMappings().get(value);
+    }
+
+    public int getValue() {
+        return intValue;
+    }
+}
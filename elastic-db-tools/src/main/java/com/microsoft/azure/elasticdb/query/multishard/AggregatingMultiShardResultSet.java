@@ -0,0 +1,483 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardResultSetClosedException;
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Forward-only <see cref="MultiShardResultSet"/> which combines the partial aggregates the shards return per group into one row per group. The
+ * rows of the shards are folded into a hash table keyed by the group-by values as they are read, so the memory used is bounded by the number of
+ * groups rather than the number of rows. String group-by values are grouped without trailing spaces and, if the group-by column has a collator,
+ * by its collation key, so that values one database would group together are not split across groups. The combined rows have the group-by
+ * columns followed by the aggregate columns, in the order they were declared; a group has the group-by values of the first row seen for it.
+ * Groups are returned in the order they were first seen, or sorted by the sort keys of the statement.
+ */
+public final class AggregatingMultiShardResultSet extends ForwardOnlyMultiShardResultSet {
+
+    /**
+     * Scale of at least which the average of decimals is computed, as in SQL Server.
+     */
+    private static final int MIN_AVG_DECIMAL_SCALE = 6;
+
+    private final List<String> groupByColumns;
+
+    /**
+     * Collators by which the string values of group-by columns are grouped, keyed by column label.
+     */
+    private final Map<String, Collator> groupByCollators;
+
+    private final List<AggregateColumn> aggregateColumns;
+
+    private final List<SortKey> sortKeys;
+
+    /**
+     * Maximum number of combined rows returned, 0 for no limit.
+     */
+    private final int maxRows;
+
+    private RowSetMetaDataImpl metaData;
+
+    /**
+     * Combined rows, null until the shards have been read.
+     */
+    private CachedRowSet rows;
+
+    private boolean onRow;
+
+    private boolean closed;
+
+    /**
+     * Creates a result set combining the results of the shards.
+     *
+     * @param results
+     *            Results of the shards.
+     * @param groupByColumns
+     *            Labels of the columns the rows are grouped by.
+     * @param groupByCollators
+     *            Collators by which the string values of group-by columns are grouped, keyed by column label in any case.
+     * @param aggregateColumns
+     *            Columns combined per group.
+     * @param sortKeys
+     *            Keys by which the combined rows are sorted, may be empty.
+     * @param maxRows
+     *            Maximum number of combined rows returned, 0 for no limit.
+     */
+    AggregatingMultiShardResultSet(List<LabeledResultSet> results,
+            List<String> groupByColumns,
+            Map<String, Collator> groupByCollators,
+            List<AggregateColumn> aggregateColumns,
+            List<SortKey> sortKeys,
+            int maxRows) {
+        super(results);
+        this.maxRows = maxRows;
+        this.groupByColumns = Collections.unmodifiableList(new ArrayList<>(groupByColumns));
+        this.groupByCollators = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.groupByCollators.putAll(groupByCollators);
+        this.aggregateColumns = Collections.unmodifiableList(new ArrayList<>(aggregateColumns));
+        this.sortKeys = Collections.unmodifiableList(new ArrayList<>(sortKeys));
+    }
+
+    /**
+     * Gets the labels of the columns the rows are grouped by.
+     */
+    public List<String> getGroupByColumns() {
+        return groupByColumns;
+    }
+
+    /**
+     * Gets the columns combined per group.
+     */
+    public List<AggregateColumn> getAggregateColumns() {
+        return aggregateColumns;
+    }
+
+    @Override
+    protected boolean moveNext() throws SQLException {
+        if (rows == null) {
+            rows = this.aggregate();
+        }
+        onRow = rows.next();
+        return onRow;
+    }
+
+    @Override
+    protected ResultSet getCurrentRow() {
+        return onRow ? rows : null;
+    }
+
+    /**
+     * Gets null, combined rows do not come from a single shard.
+     */
+    @Override
+    protected LabeledResultSet getCurrentRowSource() {
+        return null;
+    }
+
+    /**
+     * Gets the metadata of the combined rows.
+     */
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        if (metaData == null) {
+            ResultSet first = this.getResults().stream().map(LabeledResultSet::getResultSet).filter(r -> r != null).findFirst().orElse(null);
+            if (first == null) {
+                return null;
+            }
+            metaData = this.buildMetaData(first.getMetaData());
+        }
+        return metaData;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        onRow = false;
+        if (rows != null) {
+            rows.close();
+        }
+        super.close();
+    }
+
+    /**
+     * Reads the rows of all shards and combines them per group.
+     */
+    private CachedRowSet aggregate() throws SQLException {
+        ResultSetMetaData outputMetaData = this.getMetaData();
+        if (outputMetaData == null) {
+            throw new MultiShardResultSetClosedException("Statement did not return ResultSet");
+        }
+        Map<List<Object>, Group> groups = new LinkedHashMap<>();
+        for (LabeledResultSet result : this.getResults()) {
+            ResultSet resultSet = result.getResultSet();
+            if (resultSet == null) {
+                continue;
+            }
+
+            int[] groupByIndexes = new int[groupByColumns.size()];
+            Collator[] groupByCollatorsByIndex = new Collator[groupByColumns.size()];
+            for (int i = 0; i < groupByIndexes.length; i++) {
+                groupByIndexes[i] = resultSet.findColumn(groupByColumns.get(i));
+                groupByCollatorsByIndex[i] = groupByCollators.get(groupByColumns.get(i));
+            }
+            int[] valueIndexes = new int[aggregateColumns.size()];
+            int[] countIndexes = new int[aggregateColumns.size()];
+            for (int i = 0; i < valueIndexes.length; i++) {
+                AggregateColumn column = aggregateColumns.get(i);
+                if (column.getFunction() == AggregateFunction.Avg) {
+                    valueIndexes[i] = resultSet.findColumn(column.getSumColumnLabel());
+                    countIndexes[i] = resultSet.findColumn(column.getCountColumnLabel());
+                }
+                else {
+                    valueIndexes[i] = resultSet.findColumn(column.getColumnLabel());
+                }
+            }
+
+            while (resultSet.next()) {
+                Object[] groupValues = new Object[groupByIndexes.length];
+                Object[] key = new Object[groupByIndexes.length];
+                for (int i = 0; i < groupByIndexes.length; i++) {
+                    groupValues[i] = resultSet.getObject(groupByIndexes[i]);
+                    key[i] = ColumnValues.toGroupKey(groupValues[i], groupByCollatorsByIndex[i]);
+                }
+                Group group = groups.computeIfAbsent(Arrays.asList(key), k -> new Group(groupValues));
+                for (int i = 0; i < valueIndexes.length; i++) {
+                    group.accumulate(i, resultSet.getObject(valueIndexes[i]),
+                            countIndexes[i] == 0 ? null : resultSet.getObject(countIndexes[i]));
+                }
+            }
+        }
+
+        List<Object[]> combined = new ArrayList<>(groups.size());
+        for (Group group : groups.values()) {
+            combined.add(group.toRow());
+        }
+        groups.clear();
+        if (!sortKeys.isEmpty()) {
+            this.sort(combined, outputMetaData);
+        }
+        if (maxRows > 0 && combined.size() > maxRows) {
+            combined.subList(maxRows, combined.size()).clear();
+        }
+
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        for (Object[] row : combined) {
+            rowSet.moveToInsertRow();
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] == null) {
+                    rowSet.updateNull(i + 1);
+                }
+                else {
+                    rowSet.updateObject(i + 1, row[i]);
+                }
+            }
+            rowSet.insertRow();
+        }
+        rowSet.moveToCurrentRow();
+        rowSet.beforeFirst();
+        return rowSet;
+    }
+
+    private void sort(List<Object[]> combined,
+            ResultSetMetaData outputMetaData) throws SQLException {
+        int[] indexes = new int[sortKeys.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            SortKey key = sortKeys.get(i);
+            indexes[i] = key.getColumnLabel() == null ? key.getColumnIndex() : findOutputColumn(outputMetaData, key.getColumnLabel());
+        }
+        combined.sort((x, y) -> {
+            for (int i = 0; i < indexes.length; i++) {
+                int result = sortKeys.get(i).compare(x[indexes[i] - 1], y[indexes[i] - 1]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        });
+    }
+
+    private static int findOutputColumn(ResultSetMetaData outputMetaData,
+            String columnLabel) throws SQLException {
+        for (int i = 1; i <= outputMetaData.getColumnCount(); i++) {
+            if (columnLabel.equalsIgnoreCase(outputMetaData.getColumnLabel(i))) {
+                return i;
+            }
+        }
+        throw new SQLException(StringUtilsLocal.formatInvariant("Sort column %1$s is neither a group-by nor an aggregate column.", columnLabel));
+    }
+
+    /**
+     * Builds the metadata of the combined rows from that of the shard results.
+     */
+    private RowSetMetaDataImpl buildMetaData(ResultSetMetaData source) throws SQLException {
+        RowSetMetaDataImpl output = new RowSetMetaDataImpl();
+        output.setColumnCount(groupByColumns.size() + aggregateColumns.size());
+        int column = 1;
+        for (String label : groupByColumns) {
+            copyColumn(source, findSourceColumn(source, label), output, column++, label);
+        }
+        for (AggregateColumn aggregate : aggregateColumns) {
+            String label = aggregate.getColumnLabel();
+            switch (aggregate.getFunction()) {
+                case Count:
+                    copyColumn(source, findSourceColumn(source, label), output, column, label);
+                    setColumnType(output, column, Types.BIGINT, "bigint", 19, 0);
+                    break;
+                case Avg:
+                    copyColumn(source, findSourceColumn(source, aggregate.getSumColumnLabel()), output, column, label);
+                    if (isIntegral(output.getColumnType(column))) {
+                        setColumnType(output, column, Types.BIGINT, "bigint", 19, 0);
+                    }
+                    else if (isDecimal(output.getColumnType(column))) {
+                        output.setScale(column, Math.max(output.getScale(column), MIN_AVG_DECIMAL_SCALE));
+                        output.setPrecision(column, 38);
+                    }
+                    break;
+                case Sum:
+                    copyColumn(source, findSourceColumn(source, label), output, column, label);
+                    if (isIntegral(output.getColumnType(column))) {
+                        setColumnType(output, column, Types.BIGINT, "bigint", 19, 0);
+                    }
+                    else if (isDecimal(output.getColumnType(column))) {
+                        output.setPrecision(column, 38);
+                    }
+                    break;
+                default:
+                    copyColumn(source, findSourceColumn(source, label), output, column, label);
+                    break;
+            }
+            column++;
+        }
+        return output;
+    }
+
+    private static int findSourceColumn(ResultSetMetaData source,
+            String columnLabel) throws SQLException {
+        for (int i = 1; i <= source.getColumnCount(); i++) {
+            if (columnLabel.equalsIgnoreCase(source.getColumnLabel(i))) {
+                return i;
+            }
+        }
+        throw new SQLException(StringUtilsLocal.formatInvariant("The shards did not return column %1$s.", columnLabel));
+    }
+
+    private static void copyColumn(ResultSetMetaData source,
+            int sourceColumn,
+            RowSetMetaDataImpl output,
+            int column,
+            String label) throws SQLException {
+        output.setColumnLabel(column, label);
+        output.setColumnName(column, label);
+        output.setColumnType(column, source.getColumnType(sourceColumn));
+        output.setColumnTypeName(column, source.getColumnTypeName(sourceColumn));
+        output.setPrecision(column, Math.max(0, source.getPrecision(sourceColumn)));
+        output.setScale(column, Math.max(0, source.getScale(sourceColumn)));
+        output.setSigned(column, source.isSigned(sourceColumn));
+        output.setNullable(column, ResultSetMetaData.columnNullable);
+    }
+
+    private static void setColumnType(RowSetMetaDataImpl output,
+            int column,
+            int type,
+            String typeName,
+            int precision,
+            int scale) throws SQLException {
+        output.setColumnType(column, type);
+        output.setColumnTypeName(column, typeName);
+        output.setPrecision(column, precision);
+        output.setScale(column, scale);
+    }
+
+    private static boolean isIntegral(int type) {
+        return type == Types.TINYINT || type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT;
+    }
+
+    private static boolean isDecimal(int type) {
+        return type == Types.DECIMAL || type == Types.NUMERIC;
+    }
+
+    /**
+     * Group-by values of a group together with its aggregates combined so far.
+     */
+    private final class Group {
+
+        private final Object[] groupValues;
+
+        /**
+         * Combined value of each aggregate column, the sum for an average.
+         */
+        private final Object[] values;
+
+        /**
+         * Combined count of each average column.
+         */
+        private final long[] counts;
+
+        Group(Object[] groupValues) {
+            this.groupValues = groupValues;
+            this.values = new Object[aggregateColumns.size()];
+            this.counts = new long[aggregateColumns.size()];
+        }
+
+        /**
+         * Combines the partial aggregate of a shard into the group.
+         *
+         * @param column
+         *            Index of the aggregate column.
+         * @param value
+         *            Partial aggregate of the shard, the sum for an average.
+         * @param count
+         *            Partial count of the shard for an average, null otherwise.
+         */
+        void accumulate(int column,
+                Object value,
+                Object count) throws SQLException {
+            AggregateColumn aggregate = aggregateColumns.get(column);
+            if (aggregate.getFunction() == AggregateFunction.Avg && count != null) {
+                counts[column] += ((Number) count).longValue();
+            }
+            if (value == null) {
+                // Aggregates other than COUNT ignore NULLs.
+                return;
+            }
+            Object current = values[column];
+            switch (aggregate.getFunction()) {
+                case Count:
+                    values[column] = (current == null ? 0L : (Long) current) + ((Number) value).longValue();
+                    break;
+                case Sum:
+                case Avg:
+                    values[column] = current == null ? value : ColumnValues.add((Number) current, (Number) value);
+                    break;
+                case Min:
+                    if (current == null || ColumnValues.compare(value, current, aggregate.getCollator()) < 0) {
+                        values[column] = value;
+                    }
+                    break;
+                case Max:
+                    if (current == null || ColumnValues.compare(value, current, aggregate.getCollator()) > 0) {
+                        values[column] = value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Gets the combined row of the group.
+         */
+        Object[] toRow() {
+            Object[] row = new Object[groupValues.length + values.length];
+            System.arraycopy(groupValues, 0, row, 0, groupValues.length);
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                switch (aggregateColumns.get(i).getFunction()) {
+                    case Count:
+                        value = value == null ? 0L : value;
+                        break;
+                    case Sum:
+                        // Integer sums widen to bigint, as the combined column is declared.
+                        value = value instanceof Integer || value instanceof Short || value instanceof Byte ? ((Number) value).longValue() : value;
+                        break;
+                    case Avg:
+                        value = average((Number) value, counts[i]);
+                        break;
+                    default:
+                        break;
+                }
+                row[groupValues.length + i] = value;
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Divides a sum by a count with the result type of AVG in SQL Server: integer division for integers, a scale of at least 6 for decimals.
+     */
+    private static Number average(Number sum,
+            long count) {
+        if (sum == null || count == 0) {
+            return null;
+        }
+        if (sum instanceof Double || sum instanceof Float) {
+            return sum.doubleValue() / count;
+        }
+        if (sum instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) sum;
+            return decimal.divide(BigDecimal.valueOf(count), Math.max(decimal.scale(), MIN_AVG_DECIMAL_SCALE), RoundingMode.HALF_UP);
+        }
+        return sum.longValue() / count;
+    }
+}
@@ -0,0 +1,155 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.text.Collator;
+
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Comparison and arithmetic of column values returned by different shards, which follow SQL Server where Java differs.
+ */
+final class ColumnValues {
+
+    private ColumnValues() {
+    }
+
+    /**
+     * Compares two non-null values of a column in ascending order.
+     *
+     * @param x
+     *            First value.
+     * @param y
+     *            Second value.
+     * @param collator
+     *            Collator comparing string values, or null to compare them by UTF-16 code units.
+     * @return A negative number, zero or a positive number as the first value is less than, equal to or greater than the second.
+     */
+    static int compare(Object x,
+            Object y,
+            Collator collator) {
+        if (x instanceof String && y instanceof String && collator != null) {
+            return collator.compare(x, y);
+        }
+        if (x instanceof Number && y instanceof Number && x.getClass() != y.getClass()) {
+            return compareNumbers((Number) x, (Number) y);
+        }
+        if (x instanceof byte[] && y instanceof byte[]) {
+            return compareBytes((byte[]) x, (byte[]) y);
+        }
+        if (x instanceof Comparable && x.getClass().isInstance(y)) {
+            @SuppressWarnings("unchecked")
+            Comparable<Object> comparable = (Comparable<Object>) x;
+            return comparable.compareTo(y);
+        }
+        throw new IllegalArgumentException(StringUtilsLocal.formatInvariant("Values of types %1$s and %2$s cannot be compared.",
+                x.getClass().getName(), y.getClass().getName()));
+    }
+
+    /**
+     * Compares numbers of different types, which shards may return for the same column when their schemas differ slightly.
+     */
+    private static int compareNumbers(Number x,
+            Number y) {
+        if (x instanceof Double || x instanceof Float || y instanceof Double || y instanceof Float) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        return toBigDecimal(x).compareTo(toBigDecimal(y));
+    }
+
+    /**
+     * Converts a number which is not a Double or Float to a BigDecimal.
+     */
+    static BigDecimal toBigDecimal(Number value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        return BigDecimal.valueOf(value.longValue());
+    }
+
+    /**
+     * Compares binary values byte by byte as unsigned numbers, as SQL Server does.
+     */
+    private static int compareBytes(byte[] x,
+            byte[] y) {
+        int length = Math.min(x.length, y.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(x[i] & 0xFF, y[i] & 0xFF);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(x.length, y.length);
+    }
+
+    /**
+     * Adds two numbers in the widest of their types: floating point if either is floating point, else decimal if either is decimal, else bigint.
+     *
+     * @param x
+     *            First number.
+     * @param y
+     *            Second number.
+     * @return The sum.
+     * @throws SQLException
+     *             If the sum of two integers does not fit in a bigint.
+     */
+    static Number add(Number x,
+            Number y) throws SQLException {
+        if (x instanceof Double || x instanceof Float || y instanceof Double || y instanceof Float) {
+            return x.doubleValue() + y.doubleValue();
+        }
+        if (x instanceof BigDecimal || x instanceof BigInteger || y instanceof BigDecimal || y instanceof BigInteger) {
+            return toBigDecimal(x).add(toBigDecimal(y));
+        }
+        try {
+            return Math.addExact(x.longValue(), y.longValue());
+        }
+        catch (ArithmeticException e) {
+            throw new SQLException("Arithmetic overflow error converting expression to data type bigint.", e);
+        }
+    }
+
+    /**
+     * Gets the value by which a group-by value is compared with the values of other shards. Integers of any width and decimals of any scale
+     * compare by value, binary values by content. Strings compare without trailing spaces, as SQL Server compares them, and by the collation key
+     * of the collator if there is one.
+     *
+     * @param value
+     *            Value of a group-by column, may be null.
+     * @param collator
+     *            Collator by which string values are grouped, or null to group them by UTF-16 code units.
+     * @return Value with value equality.
+     */
+    static Object toGroupKey(Object value,
+            Collator collator) {
+        if (value instanceof String) {
+            String trimmed = StringUtils.stripEnd((String) value, " ");
+            return collator == null ? trimmed : ByteBuffer.wrap(collator.getCollationKey(trimmed).toByteArray());
+        }
+        if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        }
+        if (value instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) value);
+        }
+        return value;
+    }
+}
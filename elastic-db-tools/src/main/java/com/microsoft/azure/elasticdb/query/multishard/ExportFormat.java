@@ -0,0 +1,52 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * File format written by a <see cref="MultiShardResultExporter"/>.
+ */
+public enum ExportFormat {
+    /**
+     * Comma-separated values with a header line of column labels, UTF-8 encoded.
+     */
+    Csv(0),
+
+    /**
+     * Compact binary file in which the rows are stored in groups, column by column, as described for <see cref="MultiShardResultExporter"/>.
+     */
+    Columnar(1);
+
+    public static final int SIZE = java.lang.Integer.SIZE;
+    private static java.util.HashMap<Integer, ExportFormat> mappings;
+    private int intValue;
+
+    ExportFormat(int value) {
+        intValue = value;
+        getMappings().put(value, this);
+    }
+
+    private static java.util.HashMap<Integer, ExportFormat> getMappings() {
+        if (mappings == null) {
+            synchronized (ExportFormat.class) {
+                if (mappings == null) {
+                    mappings = new java.util.HashMap<>();
+                }
+            }
+        }
+        return mappings;
+    }
+
+    public static ExportFormat forValue(int value) {
+        return getMappings().get(value);
+    }
+
+    public int getValue() {
+        return intValue;
+    }
+}
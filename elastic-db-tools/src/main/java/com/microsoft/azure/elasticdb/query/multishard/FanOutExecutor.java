@@ -0,0 +1,264 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutionMode;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutorHelper;
+
+/**
+ * Runs the per-shard commands of multi-shard queries on a shared executor, bounding how many of them run at once across all queries. Each query may
+ * further limit its own degree of parallelism. Commands beyond the limits wait on the calling thread until running commands complete, so a query
+ * against hundreds of shards neither creates a thread per shard nor starves other queries.
+ */
+public final class FanOutExecutor {
+
+    /**
+     * System property which sets the global limit of the default fan-out executor, e.g. -Delasticdb.fanOut.maxConcurrency=128.
+     */
+    public static final String MAX_CONCURRENCY_PROPERTY = "elasticdb.fanOut.maxConcurrency";
+
+    /**
+     * Default number of shard commands which may run at once across all queries.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 256;
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Fan-out executor shared by default between multi-shard connections and statements.
+     */
+    private static final FanOutExecutor DEFAULT = new FanOutExecutor(null, parseMaxConcurrency(System.getProperty(MAX_CONCURRENCY_PROPERTY)));
+
+    /**
+     * Executor running the shard commands, or null to use the shared executor of the execution mode of each query.
+     */
+    private final ExecutorService executor;
+
+    private final int maxConcurrency;
+
+    /**
+     * Permits for shard commands running across all queries.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Constructs a fan-out executor which runs shard commands on the shared executor of the execution mode of each query.
+     *
+     * @param maxConcurrency
+     *            Number of shard commands which may run at once across all queries.
+     */
+    public FanOutExecutor(int maxConcurrency) {
+        this(null, maxConcurrency);
+    }
+
+    /**
+     * Constructs a fan-out executor. The executor is not shut down by this class.
+     *
+     * @param executor
+     *            Executor running the shard commands, or null to use the shared executor of the execution mode of each query.
+     * @param maxConcurrency
+     *            Number of shard commands which may run at once across all queries.
+     */
+    public FanOutExecutor(ExecutorService executor,
+            int maxConcurrency) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    private static int parseMaxConcurrency(String value) {
+        if (value != null) {
+            try {
+                int parsed = Integer.parseInt(value.trim());
+                if (parsed > 0) {
+                    return parsed;
+                }
+            }
+            catch (NumberFormatException e) {
+                // Fall through to the warning below.
+            }
+            log.warn("Ignoring invalid fan-out concurrency '{}' in system property {}.", value, MAX_CONCURRENCY_PROPERTY);
+        }
+        return DEFAULT_MAX_CONCURRENCY;
+    }
+
+    /**
+     * Gets the fan-out executor shared by default.
+     */
+    public static FanOutExecutor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the number of shard commands which may run at once across all queries.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Gets the number of shard commands which may currently start without waiting.
+     */
+    public int getAvailableConcurrency() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Gets the executor on which work of a query with the given execution mode runs.
+     *
+     * @param mode
+     *            Execution mode of the query.
+     * @return The executor.
+     */
+    ExecutorService getExecutor(ExecutionMode mode) {
+        return executor != null ? executor : ExecutorHelper.getSharedExecutor(mode);
+    }
+
+    /**
+     * Submits the shard commands of a query, waiting on the calling thread while the global or per-query limit is reached. Submission stops early
+     * once the stop condition holds, e.g. after a command failed and the query cannot complete anyway.
+     *
+     * @param tasks
+     *            Shard commands of the query.
+     * @param mode
+     *            Execution mode of the query, used unless this fan-out executor was given its own executor.
+     * @param maxDegreeOfParallelism
+     *            Number of shard commands of this query which may run at once, 0 for no limit beyond the global one.
+     * @param completed
+     *            Queue to which the future of each command is added once the command completes or is cancelled.
+     * @param stop
+     *            Condition checked before each submission.
+     * @return Futures of the submitted commands.
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting.
+     */
+    <T> List<Future<T>> submitAll(List<Callable<T>> tasks,
+            ExecutionMode mode,
+            int maxDegreeOfParallelism,
+            BlockingQueue<Future<T>> completed,
+            BooleanSupplier stop) throws InterruptedException {
+        return this.submitAll(tasks, mode, maxDegreeOfParallelism, completed, stop, null);
+    }
+
+    /**
+     * Submits the shard commands of a query like {@link #submitAll(List, ExecutionMode, int, BlockingQueue, BooleanSupplier)}, handing the result
+     * of a command which completes after its future was cancelled to the given action, since no caller can obtain it anymore. This lets a result
+     * holding a resource, such as a connection still being opened when the query was interrupted, be closed rather than leaked.
+     *
+     * @param tasks
+     *            Shard commands of the query.
+     * @param mode
+     *            Execution mode of the query, used unless this fan-out executor was given its own executor.
+     * @param maxDegreeOfParallelism
+     *            Number of shard commands of this query which may run at once, 0 for no limit beyond the global one.
+     * @param completed
+     *            Queue to which the future of each command is added once the command completes or is cancelled.
+     * @param stop
+     *            Condition checked before each submission.
+     * @param discard
+     *            Action receiving the results of cancelled commands, or null to drop them.
+     * @return Futures of the submitted commands.
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting.
+     */
+    <T> List<Future<T>> submitAll(List<Callable<T>> tasks,
+            ExecutionMode mode,
+            int maxDegreeOfParallelism,
+            BlockingQueue<Future<T>> completed,
+            BooleanSupplier stop,
+            Consumer<? super T> discard) throws InterruptedException {
+        ExecutorService target = this.getExecutor(mode);
+        Semaphore queryPermits = new Semaphore(maxDegreeOfParallelism > 0 ? maxDegreeOfParallelism : Math.max(1, tasks.size()));
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            queryPermits.acquire();
+            try {
+                permits.acquire();
+            }
+            catch (InterruptedException e) {
+                queryPermits.release();
+                throw e;
+            }
+
+            if (stop.getAsBoolean()) {
+                permits.release();
+                queryPermits.release();
+                break;
+            }
+
+            // Permits are held for as long as the command runs, even if its future was cancelled meanwhile, and returned by whichever of the command
+            // and a cancellation before it started claims them first.
+            AtomicBoolean claimed = new AtomicBoolean();
+            FutureTask<T> future = new FutureTask<T>(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    throw new CancellationException();
+                }
+                try {
+                    return task.call();
+                }
+                finally {
+                    permits.release();
+                    queryPermits.release();
+                }
+            }) {
+                @Override
+                protected void set(T result) {
+                    super.set(result);
+                    // The result is only dropped if the cancellation won the race with set, in which case no caller can get it.
+                    if (discard != null && result != null && this.isCancelled()) {
+                        try {
+                            discard.accept(result);
+                        }
+                        catch (RuntimeException e) {
+                            log.warn("Failed to discard the result of a cancelled shard command: {}", e.getMessage());
+                        }
+                    }
+                }
+
+                @Override
+                protected void done() {
+                    if (claimed.compareAndSet(false, true)) {
+                        permits.release();
+                        queryPermits.release();
+                    }
+                    completed.add(this);
+                }
+            };
+            try {
+                target.execute(future);
+            }
+            catch (RuntimeException e) {
+                permits.release();
+                queryPermits.release();
+                throw e;
+            }
+            futures.add(future);
+        }
+        return futures;
+    }
+}
@@ -0,0 +1,224 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardResultSetClosedException;
+
+import microsoft.sql.DateTimeOffset;
+
+/**
+ * Base of the <see cref="MultiShardResultSet"/>s which serve rows in an order other than shard by shard. Such a result set can only be read
+ * forward, and the current row is tracked by the subclass rather than by position in the list of shard results.
+ */
+abstract class ForwardOnlyMultiShardResultSet extends MultiShardResultSet {
+
+    /**
+     * Number of rows returned so far.
+     */
+    private int rowNumber;
+
+    /**
+     * Whether next() returned false.
+     */
+    private boolean afterLast;
+
+    ForwardOnlyMultiShardResultSet(List<LabeledResultSet> results) {
+        super(results);
+    }
+
+    /**
+     * Moves to the next row, called once next() has checked that the result set is open and not past the last row.
+     *
+     * @return Whether there is a next row.
+     * @throws SQLException
+     *             If a shard result set could not be read.
+     */
+    protected abstract boolean moveNext() throws SQLException;
+
+    /**
+     * Gets the result set positioned on the current row, or null if there is no current row.
+     */
+    protected abstract ResultSet getCurrentRow();
+
+    /**
+     * Gets the shard results the current row comes from, or null if there is no current row or it does not come from a single shard.
+     */
+    protected abstract LabeledResultSet getCurrentRowSource();
+
+    @Override
+    public boolean next() throws SQLException {
+        if (this.isClosed()) {
+            throw new MultiShardResultSetClosedException("Result is closed.");
+        }
+        if (afterLast) {
+            return false;
+        }
+        if (this.moveNext()) {
+            rowNumber++;
+            return true;
+        }
+        afterLast = true;
+        return false;
+    }
+
+    /**
+     * Gets the rows as a stream, which is read instead of calling next(). The rows are merged across the shards, so they are read in order by one
+     * thread; a parallel stream spreads the processing of batches of rows.
+     */
+    @Override
+    public Stream<MultiShardRow> stream() throws SQLException {
+        ResultSetMetaData metaData = this.getMetaData();
+        Map<String, Integer> columnIndexes = MultiShardRow.indexColumns(metaData);
+        int columnCount = metaData == null ? 0 : metaData.getColumnCount();
+        return this.stream(new Spliterators.AbstractSpliterator<MultiShardRow>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super MultiShardRow> action) {
+                try {
+                    if (!next()) {
+                        return false;
+                    }
+                    action.accept(MultiShardRow.read(ForwardOnlyMultiShardResultSet.this, getLocation(), columnIndexes, columnCount));
+                    return true;
+                }
+                catch (SQLException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected ResultSet getCurrentResultSet() throws SQLException {
+        if (this.isClosed()) {
+            throw new MultiShardResultSetClosedException("Result is closed.");
+        }
+        ResultSet row = this.getCurrentRow();
+        if (row == null) {
+            throw new IllegalStateException(rowNumber == 0 ? "Before start of result set" : "After last of result set");
+        }
+        return row;
+    }
+
+    @Override
+    public String getLocation() {
+        LabeledResultSet source = this.getCurrentRowSource();
+        return source == null ? null : source.getShardLabel();
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return this.getCurrentRow() == null ? 0 : rowNumber;
+    }
+
+    /**
+     * Not supported, the number of rows is not known until all shards have been read.
+     */
+    @Override
+    public int getRowCount() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The row count of a forward-only multi-shard result set is not known in advance.");
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return rowNumber == 0 && !afterLast;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return rowNumber > 0 && afterLast;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return !afterLast && rowNumber == 1;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Whether the current row is the last one is not known in a forward-only multi-shard result set.");
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        if (direction != ResultSet.FETCH_FORWARD) {
+            throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+        }
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The multi-shard result set is forward-only.");
+    }
+
+    @Override
+    public DateTimeOffset getDateTimeOffset(int ordinal) throws SQLException {
+        return (DateTimeOffset) this.getCurrentResultSet().getObject(ordinal);
+    }
+
+    @Override
+    public DateTimeOffset getDateTimeOffset(String columnName) throws SQLException {
+        return (DateTimeOffset) this.getCurrentResultSet().getObject(columnName);
+    }
+
+    @Override
+    public String getUniqueIdentifier(int ordinal) throws SQLException {
+        return this.getCurrentResultSet().getString(ordinal);
+    }
+
+    @Override
+    public String getUniqueIdentifier(String columnName) throws SQLException {
+        return this.getCurrentResultSet().getString(columnName);
+    }
+}
@@ -51,10 +51,15 @@ public class LabeledResultSet implements AutoCloseable {
     private ResultSet resultSet;
 
     /**
-     * The statement object that produces this reader.
+     * The statement object that produces this reader, null if the shard failed before a statement was prepared for it.
      */
     private Statement statement;
 
+    /**
+     * Action returning the statement to its statement cache once the reader is closed, null if there is none.
+     */
+    private Runnable releaseStatement;
+
     /**
      * Simple constructor to set up an immutable LabeledResultSet object.
      *
@@ -97,6 +102,30 @@ public class LabeledResultSet implements AutoCloseable {
         this.exception = exception;
     }
 
+    /**
+     * Sets up a LabeledResultSet for a shard which failed before a statement was prepared for it.
+     *
+     * @param exception
+     *            The exception encountered on the shard.
+     * @param shardLocation
+     *            The Shard this reader belongs to
+     * @throws IllegalArgumentException
+     *             If either of the arguments is null.
+     */
+    public LabeledResultSet(MultiShardException exception,
+            ShardLocation shardLocation) {
+        if (null == exception) {
+            throw new IllegalArgumentException("exception");
+        }
+
+        if (null == shardLocation) {
+            throw new IllegalArgumentException("shardLocation");
+        }
+
+        this.exception = exception;
+        this.shardLocation = shardLocation;
+    }
+
     /**
      * Simple constructor to set up an immutable LabeledResultSet object.
      *
@@ -142,23 +171,39 @@ public class LabeledResultSet implements AutoCloseable {
     }
 
     /**
-     * The Connection associated with this reader.
+     * The Connection associated with this reader, null if the shard failed before a statement was prepared for it.
      */
     public final Connection getConnection() throws SQLException {
-        return this.statement.getConnection();
+        return this.statement == null ? null : this.statement.getConnection();
     }
 
     public final Statement getStatement() {
         return statement;
     }
 
+    /**
+     * Sets the action returning the statement to its statement cache once the reader is closed.
+     */
+    final void setReleaseStatement(Runnable value) {
+        this.releaseStatement = value;
+    }
+
     /**
      * AutoClosable Implementation.
      */
-    public final void close() throws SQLException {
-        if (!this.disposed && this.resultSet != null) {
-            this.resultSet.close();
+    public final synchronized void close() throws SQLException {
+        if (!this.disposed) {
             this.disposed = true;
+            try {
+                if (this.resultSet != null) {
+                    this.resultSet.close();
+                }
+            }
+            finally {
+                if (this.releaseStatement != null) {
+                    this.releaseStatement.run();
+                }
+            }
         }
     }
 }
\ No newline at end of file
@@ -3,11 +3,23 @@ package com.microsoft.azure.elasticdb.query.multishard;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -23,9 +35,17 @@ import org.slf4j.LoggerFactory;
  * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
  */
 
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutorHelper;
+import com.microsoft.azure.elasticdb.query.exception.MultiShardAggregateException;
+import com.microsoft.azure.elasticdb.query.exception.MultiShardException;
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.shard.base.ReadScaleRouter;
 import com.microsoft.azure.elasticdb.shard.base.Shard;
 import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
+import com.microsoft.azure.elasticdb.shard.sqlstore.ApplicationIntent;
 import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
 import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
 
 /**
@@ -55,6 +75,26 @@ public final class MultiShardConnection implements AutoCloseable {
 
     private String connectionString;
 
+    /**
+     * Fan-out executor running commands of this connection against the shards.
+     */
+    private FanOutExecutor fanOutExecutor = FanOutExecutor.getDefault();
+
+    /**
+     * Options the shards were connected with.
+     */
+    private MultiShardConnectionOptions options = new MultiShardConnectionOptions();
+
+    /**
+     * Shards which could not be connected to.
+     */
+    private final List<MultiShardException> connectionFailures = new ArrayList<>();
+
+    /**
+     * Prepared statements kept for reuse, per shard connection.
+     */
+    private final Map<ShardLocation, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
     /**
      * Initializes a new instance of the <see cref="MultiShardConnection"/> class.
      *
@@ -69,28 +109,58 @@ public final class MultiShardConnection implements AutoCloseable {
      */
     public MultiShardConnection(String connectionString,
             Shard... shards) {
-        if (StringUtilsLocal.isNullOrEmpty(connectionString)) {
-            throw new IllegalArgumentException("connectionString");
-        }
+        this(connectionString, new MultiShardConnectionOptions(), shards);
+    }
 
-        // Enhance the ApplicationName with this library's name as a suffix
-        // Devnote: If connection string specifies Active Directory authentication and runtime is not
-        // .NET 4.6 or higher, then below call will throw.
-        SqlConnectionStringBuilder connectionStringBuilder = (new SqlConnectionStringBuilder(connectionString))
-                .withApplicationNameSuffix(ApplicationNameSuffix);
-        List<Shard> shardList = Arrays.asList(shards);
+    /**
+     * Initializes a new instance of the <see cref="MultiShardConnection"/> class with the given workload type. With read intent the connections
+     * declare ApplicationIntent=ReadOnly and, for shards with replica endpoints configured in the router, connect to one of those replicas.
+     *
+     * @param connectionString
+     *            These credentials will be used to connect to the <see cref="Shard"/>s. The same credentials are used on all shards. Therefore, all
+     *            shards need to provide the appropriate permissions for these credentials to execute the command.
+     * @param applicationIntent
+     *            Workload type of the connections to the shards.
+     * @param readScaleRouter
+     *            Router of read-intent connections to shard replicas, may be null.
+     * @param shards
+     *            The collection of <see cref="Shard"/>s used for this connection instances.
+     */
+    public MultiShardConnection(String connectionString,
+            ApplicationIntent applicationIntent,
+            ReadScaleRouter readScaleRouter,
+            Shard... shards) {
+        this(connectionString, optionsFor(applicationIntent, readScaleRouter), shards);
+    }
+
+    /**
+     * Initializes a new instance of the <see cref="MultiShardConnection"/> class, connecting to the shards concurrently as the options specify.
+     *
+     * @param connectionString
+     *            These credentials will be used to connect to the <see cref="Shard"/>s. The same credentials are used on all shards. Therefore, all
+     *            shards need to provide the appropriate permissions for these credentials to execute the command.
+     * @param options
+     *            Options controlling how the shards are connected to.
+     * @param shards
+     *            The collection of <see cref="Shard"/>s used for this connection instances.
+     */
+    public MultiShardConnection(String connectionString,
+            MultiShardConnectionOptions options,
+            Shard... shards) {
+        SqlConnectionStringBuilder connectionStringBuilder = prepareConnectionString(connectionString, options);
+        List<Shard> shardList = shards == null ? null : Arrays.asList(shards);
         validateConnectionArguments(shardList, "shards", connectionStringBuilder);
 
         this.connectionString = connectionString;
-        this.shards = shardList;
-        this.shardConnections = shardList.stream().map(s -> {
-            try {
-                return (createDbConnectionForLocation(s.getLocation(), connectionStringBuilder));
-            }
-            catch (SQLException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        }).collect(Collectors.toList());
+        this.options = options;
+        this.fanOutExecutor = options.getFanOutExecutor();
+        this.shardConnections = this.openConnections(shardList.stream().map(Shard::getLocation).collect(Collectors.toList()),
+                connectionStringBuilder);
+
+        // Leave out shards which could not be connected to.
+        this.shards = connectionFailures.isEmpty() ? shardList
+                : shardList.stream().filter(s -> shardConnections.stream().anyMatch(c -> c.getLeft().equals(s.getLocation())))
+                        .collect(Collectors.toList());
     }
 
     /**
@@ -107,29 +177,52 @@ public final class MultiShardConnection implements AutoCloseable {
      */
     public MultiShardConnection(String connectionString,
             ShardLocation... shardLocations) {
-        if (StringUtilsLocal.isNullOrEmpty(connectionString)) {
-            throw new IllegalArgumentException("connectionString");
-        }
+        this(connectionString, new MultiShardConnectionOptions(), shardLocations);
+    }
 
-        // Enhance the ApplicationName with this library's name as a suffix
-        // Devnote: If connection string specifies Active Directory authentication and runtime is not
-        // .NET 4.6 or higher, then below call will throw.
-        SqlConnectionStringBuilder connectionStringBuilder = (new SqlConnectionStringBuilder(connectionString))
-                .withApplicationNameSuffix(ApplicationNameSuffix);
-        List<ShardLocation> shardLocationList = Arrays.asList(shardLocations);
-        validateConnectionArguments(shardLocationList, "shardLocations", connectionStringBuilder);
+    /**
+     * Initializes a new instance of the <see cref="MultiShardConnection"/> class with the given workload type. With read intent the connections
+     * declare ApplicationIntent=ReadOnly and, for shards with replica endpoints configured in the router, connect to one of those replicas.
+     *
+     * @param connectionString
+     *            These credentials will be used to connect to the <see cref="Shard"/>s. The same credentials are used on all shards. Therefore, all
+     *            shards need to provide the appropriate permissions for these credentials to execute the command.
+     * @param applicationIntent
+     *            Workload type of the connections to the shards.
+     * @param readScaleRouter
+     *            Router of read-intent connections to shard replicas, may be null.
+     * @param shardLocations
+     *            The collection of <see cref="ShardLocation"/>s used for this connection instances.
+     */
+    public MultiShardConnection(String connectionString,
+            ApplicationIntent applicationIntent,
+            ReadScaleRouter readScaleRouter,
+            ShardLocation... shardLocations) {
+        this(connectionString, optionsFor(applicationIntent, readScaleRouter), shardLocations);
+    }
 
-        List<Pair<ShardLocation, Connection>> connForLocation = shardLocationList.stream().map(s -> {
-            try {
-                return (createDbConnectionForLocation(s, connectionStringBuilder));
-            }
-            catch (SQLException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        }).collect(Collectors.toList());
+    /**
+     * Initializes a new instance of the <see cref="MultiShardConnection"/> class, connecting to the shards concurrently as the options specify.
+     *
+     * @param connectionString
+     *            These credentials will be used to connect to the <see cref="Shard"/>s. The same credentials are used on all shards. Therefore, all
+     *            shards need to provide the appropriate permissions for these credentials to execute the command.
+     * @param options
+     *            Options controlling how the shards are connected to.
+     * @param shardLocations
+     *            The collection of <see cref="ShardLocation"/>s used for this connection instances.
+     */
+    public MultiShardConnection(String connectionString,
+            MultiShardConnectionOptions options,
+            ShardLocation... shardLocations) {
+        SqlConnectionStringBuilder connectionStringBuilder = prepareConnectionString(connectionString, options);
+        List<ShardLocation> shardLocationList = shardLocations == null ? null : Arrays.asList(shardLocations);
+        validateConnectionArguments(shardLocationList, "shardLocations", connectionStringBuilder);
 
         this.connectionString = connectionString;
-        this.shardConnections = connForLocation;
+        this.options = options;
+        this.fanOutExecutor = options.getFanOutExecutor();
+        this.shardConnections = this.openConnections(shardLocationList, connectionStringBuilder);
         this.shards = null;
     }
 
@@ -175,11 +268,156 @@ public final class MultiShardConnection implements AutoCloseable {
         }
     }
 
-    private static Pair<ShardLocation, Connection> createDbConnectionForLocation(ShardLocation shardLocation,
-            SqlConnectionStringBuilder connStr) throws SQLException {
-        connStr.setDatabaseName(shardLocation.getDatabase());
-        connStr.setDataSource(shardLocation.getDataSource());
-        return new ImmutablePair<>(shardLocation, DriverManager.getConnection(connStr.getConnectionString()));
+    private static MultiShardConnectionOptions optionsFor(ApplicationIntent applicationIntent,
+            ReadScaleRouter readScaleRouter) {
+        MultiShardConnectionOptions options = new MultiShardConnectionOptions();
+        options.setApplicationIntent(applicationIntent);
+        options.setReadScaleRouter(readScaleRouter);
+        return options;
+    }
+
+    private static SqlConnectionStringBuilder prepareConnectionString(String connectionString,
+            MultiShardConnectionOptions options) {
+        if (StringUtilsLocal.isNullOrEmpty(connectionString)) {
+            throw new IllegalArgumentException("connectionString");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options");
+        }
+
+        // Enhance the ApplicationName with this library's name as a suffix
+        // Devnote: If connection string specifies Active Directory authentication and runtime is not
+        // .NET 4.6 or higher, then below call will throw.
+        SqlConnectionStringBuilder connectionStringBuilder = (new SqlConnectionStringBuilder(connectionString))
+                .withApplicationNameSuffix(ApplicationNameSuffix);
+        if (options.getApplicationIntent() == ApplicationIntent.ReadOnly) {
+            connectionStringBuilder.setApplicationIntent(ApplicationIntent.ReadOnly);
+        }
+        if (options.getConnectTimeoutSeconds() > 0) {
+            connectionStringBuilder.setConnectTimeout(options.getConnectTimeoutSeconds());
+        }
+        return connectionStringBuilder;
+    }
+
+    /**
+     * Connects to the shards concurrently. Depending on the execution policy of the options, a shard which cannot be connected to fails the
+     * connection or is left out of it.
+     *
+     * @param shardLocations
+     *            Locations of the shards.
+     * @param connStr
+     *            Connection string without server and database.
+     * @return Connections to the shards, in the order of the shard locations.
+     */
+    private List<Pair<ShardLocation, Connection>> openConnections(List<ShardLocation> shardLocations,
+            SqlConnectionStringBuilder connStr) {
+        IUserConnectionProvider provider = options.getConnectionProvider();
+        boolean completeResults = options.getExecutionPolicy() == MultiShardExecutionPolicy.CompleteResults;
+
+        // The connection strings are built up front since the builder is not thread safe.
+        List<Callable<Connection>> tasks = new ArrayList<>(shardLocations.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        for (ShardLocation shardLocation : shardLocations) {
+            String shardConnectionString = this.getShardConnectionString(connStr, shardLocation);
+            tasks.add(() -> {
+                try {
+                    return provider.getConnection(shardConnectionString);
+                }
+                catch (SQLException | RuntimeException e) {
+                    // With complete results, shards still waiting for a slot are not connected to once another shard failed.
+                    if (completeResults) {
+                        failed.set(true);
+                    }
+                    throw e;
+                }
+            });
+        }
+
+        BlockingQueue<Future<Connection>> completed = new LinkedBlockingQueue<>();
+        List<Future<Connection>> futures = Collections.emptyList();
+        try {
+            // A connection which completes opening after the caller was interrupted is closed by the executor.
+            futures = fanOutExecutor.submitAll(tasks, ExecutorHelper.getDefaultExecutionMode(), options.getMaxDegreeOfParallelism(), completed,
+                    failed::get, MultiShardConnection::closeQuietly);
+            for (int i = 0; i < futures.size(); i++) {
+                completed.take();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            closeConnections(futures);
+            throw new RuntimeException("Interrupted while connecting to the shards.", e);
+        }
+
+        List<Pair<ShardLocation, Connection>> connections = new ArrayList<>(futures.size());
+        for (int i = 0; i < shardLocations.size(); i++) {
+            ShardLocation shardLocation = shardLocations.get(i);
+            if (i >= futures.size()) {
+                connectionFailures.add(new MultiShardException(shardLocation, "Not connected to since another shard could not be connected to."));
+                continue;
+            }
+            try {
+                connections.add(new ImmutablePair<>(shardLocation, futures.get(i).get()));
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                connectionFailures.add(cause instanceof Exception ? new MultiShardException(shardLocation, (Exception) cause)
+                        : new MultiShardException(shardLocation, String.valueOf(cause)));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                connectionFailures.add(new MultiShardException(shardLocation, e));
+            }
+        }
+
+        if (!connectionFailures.isEmpty()) {
+            log.warn("MultiShardConnection; Could not connect to {} of {} shards.", connectionFailures.size(), shardLocations.size());
+            if (completeResults || connections.isEmpty()) {
+                closeConnections(futures);
+                MultiShardException first = connectionFailures.get(0);
+                throw new RuntimeException(StringUtilsLocal.formatInvariant("Could not connect to shard %1$s. %2$s", first.getShardLocation(),
+                        first.getCause() == null ? first.getMessage() : first.getCause().getMessage()),
+                        new MultiShardAggregateException(new ArrayList<>(connectionFailures)));
+            }
+        }
+        return connections;
+    }
+
+    /**
+     * Gets the connection string of a shard, routed to a replica of the shard for read-intent connections which have one.
+     */
+    private String getShardConnectionString(SqlConnectionStringBuilder connStr,
+            ShardLocation shardLocation) {
+        // Results stay labeled with the shard location even when a replica serves them.
+        ShardLocation targetLocation = options.getApplicationIntent() == ApplicationIntent.ReadOnly && options.getReadScaleRouter() != null
+                ? options.getReadScaleRouter().route(shardLocation, ShardHealthTracker.getDefault())
+                : shardLocation;
+        connStr.setDatabaseName(targetLocation.getDatabase());
+        connStr.setDataSource(targetLocation.getDataSource());
+        return connStr.getConnectionString();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        }
+        catch (SQLException e) {
+            // The connection is unusable already.
+        }
+    }
+
+    private static void closeConnections(List<Future<Connection>> futures) {
+        for (Future<Connection> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get().close();
+                }
+                catch (ExecutionException | InterruptedException | SQLException e) {
+                    // Nothing to close, or the connection is unusable already.
+                }
+            }
+        }
     }
 
     /**
@@ -210,6 +448,143 @@ public final class MultiShardConnection implements AutoCloseable {
         return this.connectionString;
     }
 
+    /**
+     * Gets the options the shards were connected with.
+     */
+    public MultiShardConnectionOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Gets the failures of shards which could not be connected to and were left out of this connection under
+     * <see cref="MultiShardExecutionPolicy.PartialResults"/>.
+     */
+    public List<MultiShardException> getConnectionFailures() {
+        return Collections.unmodifiableList(connectionFailures);
+    }
+
+    /**
+     * Gets the fan-out executor running commands of this connection against the shards. Defaults to the one shared across the process.
+     */
+    public FanOutExecutor getFanOutExecutor() {
+        return fanOutExecutor;
+    }
+
+    /**
+     * Sets the fan-out executor running commands of this connection against the shards. Connections sharing an executor share its limit on the
+     * number of shard commands running at once.
+     */
+    public void setFanOutExecutor(FanOutExecutor value) {
+        if (value == null) {
+            throw new IllegalArgumentException("fanOutExecutor");
+        }
+        fanOutExecutor = value;
+    }
+
+    /**
+     * Gets the connection to a shard, connecting again through the connection provider if it was closed, e.g. by
+     * <see cref="closeOpenConnections"/>. The new connection takes the place of the closed one, so it is closed with this connection, and the
+     * statements cached for the closed one are dropped.
+     *
+     * @param shardLocation
+     *            Location of the shard.
+     * @return An open connection to the shard.
+     * @throws SQLException
+     *             If this connection is closed, or the shard could not be connected to.
+     */
+    synchronized Connection getOpenConnection(ShardLocation shardLocation) throws SQLException {
+        if (isDisposed) {
+            throw new SQLException("The multi-shard connection is closed.", "08003");
+        }
+        for (int i = 0; i < shardConnections.size(); i++) {
+            Pair<ShardLocation, Connection> shardConnection = shardConnections.get(i);
+            if (!shardConnection.getLeft().equals(shardLocation)) {
+                continue;
+            }
+            if (!shardConnection.getRight().isClosed()) {
+                return shardConnection.getRight();
+            }
+
+            Connection connection = options.getConnectionProvider()
+                    .getConnection(this.getShardConnectionString(prepareConnectionString(connectionString, options), shardLocation));
+            shardConnections.set(i, new ImmutablePair<>(shardLocation, connection));
+            StatementCache cache = statementCaches.remove(shardLocation);
+            if (cache != null) {
+                cache.close();
+            }
+            log.info("MultiShardConnection; Connected again to shard {}.", shardLocation);
+            return connection;
+        }
+        throw new IllegalArgumentException(StringUtilsLocal.formatInvariant("Shard %1$s is not part of the connection.", shardLocation));
+    }
+
+    /**
+     * Takes a prepared statement for a command text from the statement cache of a shard connection, or prepares one.
+     *
+     * @param shardLocation
+     *            Location of the shard.
+     * @param connection
+     *            Connection to the shard, which bypasses the cache if it is not the one this connection opened.
+     * @param commandText
+     *            Command text of the statement.
+     * @return Statement for the exclusive use of the caller until it is released.
+     */
+    PreparedStatement prepareStatement(ShardLocation shardLocation,
+            Connection connection,
+            String commandText) throws SQLException {
+        StatementCache cache = statementCaches.computeIfAbsent(shardLocation, l -> new StatementCache(connection, options.getStatementCacheSize()));
+        return cache.getConnection() == connection ? cache.acquire(commandText)
+                : connection.prepareStatement(commandText, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /**
+     * Returns a statement taken by <see cref="prepareStatement"/> to the statement cache of its shard connection, or closes it.
+     *
+     * @param shardLocation
+     *            Location of the shard.
+     * @param commandText
+     *            Command text of the statement.
+     * @param statement
+     *            Statement whose results are no longer read.
+     */
+    void releaseStatement(ShardLocation shardLocation,
+            String commandText,
+            PreparedStatement statement) {
+        StatementCache cache = statementCaches.get(shardLocation);
+        if (cache != null && !isDisposed) {
+            cache.release(commandText, statement);
+        }
+        else {
+            try {
+                statement.close();
+            }
+            catch (SQLException e) {
+                log.warn("MultiShardConnection; Could not close a statement on shard {}: {}", shardLocation, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the schema of the results of a statement on a shard, cached with the statement by the statement cache of the shard connection.
+     *
+     * @param shardLocation
+     *            Location of the shard.
+     * @param statement
+     *            Statement which returned the results.
+     * @param metaData
+     *            Metadata of the results.
+     * @param reread
+     *            Whether to read the schema from the metadata even if the cached one still matches.
+     * @return The schema of the results.
+     */
+    ResultSchema getResultSchema(ShardLocation shardLocation,
+            Statement statement,
+            ResultSetMetaData metaData,
+            boolean reread) throws SQLException {
+        StatementCache cache = statementCaches.get(shardLocation);
+        return cache != null ? cache.getResultSchema(statement, metaData, reread) : ResultSchema.of(metaData);
+    }
+
     /**
      * Creates and returns a <see cref="MultiShardStatement"/> object. The <see cref="MultiShardStatement"/> object can then be used to execute a
      * command against all shards specified in the connection.
@@ -225,6 +600,9 @@ public final class MultiShardConnection implements AutoCloseable {
      */
     public void close() throws IOException {
         if (!isDisposed) {
+            // Close the cached statements, which pooled connections would otherwise keep open
+            statementCaches.values().forEach(StatementCache::close);
+
             // Dispose off the shard connections
             this.getShardConnections().forEach((c) -> {
                 if (c.getRight() != null) {
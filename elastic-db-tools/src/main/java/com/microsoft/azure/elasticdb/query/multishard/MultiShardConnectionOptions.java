@@ -0,0 +1,186 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.shard.base.ReadScaleRouter;
+import com.microsoft.azure.elasticdb.shard.sqlstore.ApplicationIntent;
+import com.microsoft.azure.elasticdb.shard.sqlstore.DriverManagerConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+
+/**
+ * Options controlling how a <see cref="MultiShardConnection"/> connects to its shards. Connections are opened concurrently, and by default every
+ * multi-shard connection opens new physical connections to its shards. Setting a
+ * <see cref="com.microsoft.azure.elasticdb.shard.sqlstore.PooledUserConnectionProvider"/> as the connection provider reuses the connections
+ * closed by one multi-shard connection for the next one against the same shards.
+ */
+public final class MultiShardConnectionOptions {
+
+    /**
+     * Default number of shard connections opened at once.
+     */
+    public static final int DEFAULT_MAX_DEGREE_OF_PARALLELISM = 32;
+
+    /**
+     * Default number of prepared statements kept per shard connection.
+     */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
+
+    /**
+     * Connection provider used when none is set.
+     */
+    private static final IUserConnectionProvider DEFAULT_CONNECTION_PROVIDER = new DriverManagerConnectionProvider();
+
+    private ApplicationIntent applicationIntent = ApplicationIntent.ReadWrite;
+
+    private ReadScaleRouter readScaleRouter;
+
+    private IUserConnectionProvider connectionProvider;
+
+    private FanOutExecutor fanOutExecutor = FanOutExecutor.getDefault();
+
+    private int maxDegreeOfParallelism = DEFAULT_MAX_DEGREE_OF_PARALLELISM;
+
+    private int connectTimeoutSeconds;
+
+    private MultiShardExecutionPolicy executionPolicy = MultiShardExecutionPolicy.CompleteResults;
+
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+
+    /**
+     * Gets the workload type of the connections to the shards.
+     */
+    public ApplicationIntent getApplicationIntent() {
+        return applicationIntent;
+    }
+
+    /**
+     * Sets the workload type of the connections to the shards. With read intent the connections declare ApplicationIntent=ReadOnly and, for shards
+     * with replica endpoints configured in the read scale router, connect to one of those replicas.
+     */
+    public void setApplicationIntent(ApplicationIntent value) {
+        applicationIntent = value == null ? ApplicationIntent.ReadWrite : value;
+    }
+
+    /**
+     * Gets the router of read-intent connections to shard replicas, null if none.
+     */
+    public ReadScaleRouter getReadScaleRouter() {
+        return readScaleRouter;
+    }
+
+    /**
+     * Sets the router of read-intent connections to shard replicas, may be null.
+     */
+    public void setReadScaleRouter(ReadScaleRouter value) {
+        readScaleRouter = value;
+    }
+
+    /**
+     * Gets the provider of the connections to the shards. Defaults to a provider which opens a new physical connection every time.
+     */
+    public IUserConnectionProvider getConnectionProvider() {
+        return connectionProvider != null ? connectionProvider : DEFAULT_CONNECTION_PROVIDER;
+    }
+
+    /**
+     * Sets the provider of the connections to the shards, or null to open a new physical connection every time. A
+     * <see cref="com.microsoft.azure.elasticdb.shard.sqlstore.PooledUserConnectionProvider"/> shared between multi-shard connections pools the
+     * connections; see its documentation for the session state which carries over from one borrower to the next.
+     */
+    public void setConnectionProvider(IUserConnectionProvider value) {
+        connectionProvider = value;
+    }
+
+    /**
+     * Gets the fan-out executor on which the connections are opened and which the connection hands to its commands.
+     */
+    public FanOutExecutor getFanOutExecutor() {
+        return fanOutExecutor;
+    }
+
+    /**
+     * Sets the fan-out executor on which the connections are opened and which the connection hands to its commands.
+     */
+    public void setFanOutExecutor(FanOutExecutor value) {
+        if (value == null) {
+            throw new IllegalArgumentException("fanOutExecutor");
+        }
+        fanOutExecutor = value;
+    }
+
+    /**
+     * Gets the number of shard connections opened at once.
+     */
+    public int getMaxDegreeOfParallelism() {
+        return maxDegreeOfParallelism;
+    }
+
+    /**
+     * Sets the number of shard connections opened at once. 0 leaves the limit to the fan-out executor.
+     */
+    public void setMaxDegreeOfParallelism(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("maxDegreeOfParallelism must not be negative");
+        }
+        maxDegreeOfParallelism = value;
+    }
+
+    /**
+     * Gets the time in seconds to wait for the connection to a single shard, 0 to use the one of the connection string.
+     */
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    /**
+     * Sets the time in seconds to wait for the connection to a single shard, 0 to use the one of the connection string.
+     */
+    public void setConnectTimeoutSeconds(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("connectTimeoutSeconds must not be negative");
+        }
+        connectTimeoutSeconds = value;
+    }
+
+    /**
+     * Gets whether all shards must be connected to. The default, CompleteResults, fails the multi-shard connection if any shard cannot be connected
+     * to.
+     */
+    public MultiShardExecutionPolicy getExecutionPolicy() {
+        return executionPolicy;
+    }
+
+    /**
+     * Sets whether all shards must be connected to. With PartialResults, shards which cannot be connected to are left out of the multi-shard
+     * connection and reported by <see cref="MultiShardConnection.getConnectionFailures"/>; only if no shard can be connected to does the
+     * connection fail.
+     */
+    public void setExecutionPolicy(MultiShardExecutionPolicy value) {
+        executionPolicy = value == null ? MultiShardExecutionPolicy.CompleteResults : value;
+    }
+
+    /**
+     * Gets the number of prepared statements kept per shard connection for reuse by later executions of the same command text.
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Sets the number of prepared statements kept per shard connection for reuse by later executions of the same command text. The least recently
+     * used statements are closed when more command texts are run. 0 prepares a new statement for every execution.
+     */
+    public void setStatementCacheSize(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        }
+        statementCacheSize = value;
+    }
+}
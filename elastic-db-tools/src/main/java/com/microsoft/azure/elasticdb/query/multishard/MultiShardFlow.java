@@ -0,0 +1,98 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Interfaces of a demand-driven stream of items, with the same methods and rules as <code>java.util.concurrent.Flow</code> of Java 9 and the
+ * Reactive Streams specification, for use while the library targets Java 8. A publisher emits no more items than its subscriber requested, so a
+ * slow subscriber is never flooded and no thread waits on its behalf. Adapting to <code>java.util.concurrent.Flow</code> or to a Reactive Streams
+ * library only requires forwarding each method.
+ */
+public final class MultiShardFlow {
+
+    private MultiShardFlow() {
+    }
+
+    /**
+     * Producer of items received by a subscriber.
+     *
+     * @param <T>
+     *            Type of the items.
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        /**
+         * Adds a subscriber, which is passed its subscription through <see cref="Subscriber.onSubscribe"/>, or an error through
+         * <see cref="Subscriber.onError"/> if it cannot be subscribed.
+         *
+         * @param subscriber
+         *            Subscriber to receive the items.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receiver of the items of a publisher. The methods of a subscriber are called one at a time, never concurrently.
+     *
+     * @param <T>
+     *            Type of the items.
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Called before any other method with the subscription through which items are requested.
+         *
+         * @param subscription
+         *            Subscription of the subscriber.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next item, once for each item requested.
+         *
+         * @param item
+         *            The item.
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the publisher failed; no other method is called afterwards.
+         *
+         * @param throwable
+         *            The failure.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when there are no more items; no other method is called afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a publisher and a subscriber, through which the subscriber requests items or stops receiving them.
+     */
+    public interface Subscription {
+
+        /**
+         * Requests more items. Demand adds up and <code>Long.MAX_VALUE</code> stands for no limit; a demand which is not positive fails the
+         * subscription with an <code>IllegalArgumentException</code>.
+         *
+         * @param n
+         *            Number of items requested.
+         */
+        void request(long n);
+
+        /**
+         * Stops the items, releasing the resources of the publisher. Items already on their way may still arrive.
+         */
+        void cancel();
+    }
+}
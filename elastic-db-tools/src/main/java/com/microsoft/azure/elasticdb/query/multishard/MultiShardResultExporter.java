@@ -0,0 +1,693 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Stopwatch;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutionMode;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutorHelper;
+
+/**
+ * Writes the rows of a <see cref="MultiShardResultSet"/> to a file or channel as they are read, with memory use bounded by the export settings
+ * rather than by the size of the result. Readers put groups of rows into a bounded queue, from which a single writer encodes them into a large
+ * buffer which is written to the channel whenever it fills up; readers wait while the queue is full. The results of a result set which
+ * concatenates the shards are read by one reader per shard in parallel, so the rows of different shards are interleaved by row group; sorted,
+ * aggregated and streamed result sets are read in their order by a single reader. The result set must not have been read before.
+ *
+ * <p>
+ * The <see cref="ExportFormat.Columnar"/> format stores unsigned LEB128 varints, and signed ones zigzag encoded. A file starts with the bytes
+ * <code>EDBC</code>, a version byte of 1, the varint column count and, for each column, its label as a string, its varint JDBC type and a byte
+ * encoding its values: 1 boolean, 2 integer, 3 floating point, 4 timestamp, 5 binary, 6 string. Each row group is the varint row count followed,
+ * for each column, by a bitmap with a set bit for each NULL row (least significant bit first) and the values of the other rows: a byte for a
+ * boolean, a signed varint for an integer, an 8-byte big-endian IEEE double, a signed varint of epoch milliseconds followed by a varint of the
+ * remaining nanoseconds for a timestamp, and a varint length followed by the bytes for binary values and UTF-8 strings. A row count of 0 ends the
+ * file.
+ */
+public final class MultiShardResultExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Default number of rows read into a row group before it is queued for the writer.
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 4096;
+
+    /**
+     * Default number of row groups queued for the writer.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    /**
+     * Default number of shards read at once.
+     */
+    public static final int DEFAULT_MAX_PARALLEL_READERS = 8;
+
+    /**
+     * Default size of the buffer the writer encodes into.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Row group queued by a reader which has no more rows.
+     */
+    private static final List<Object[]> END_OF_ROWS = Collections.emptyList();
+
+    private static final byte[] COLUMNAR_MAGIC = {'E', 'D', 'B', 'C'};
+
+    private static final int COLUMNAR_VERSION = 1;
+
+    private static final int ENCODING_BOOLEAN = 1;
+
+    private static final int ENCODING_INTEGER = 2;
+
+    private static final int ENCODING_FLOATING_POINT = 3;
+
+    private static final int ENCODING_TIMESTAMP = 4;
+
+    private static final int ENCODING_BINARY = 5;
+
+    private static final int ENCODING_STRING = 6;
+
+    private ExportFormat format = ExportFormat.Csv;
+
+    private char separator = ',';
+
+    private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private int maxParallelReaders = DEFAULT_MAX_PARALLEL_READERS;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private ExecutionMode executionMode = ExecutorHelper.getDefaultExecutionMode();
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(ExportFormat value) {
+        format = value == null ? ExportFormat.Csv : value;
+    }
+
+    /**
+     * Gets the character separating the values of a CSV line.
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Sets the character separating the values of a CSV line. Values containing it, a double quote or a line break are quoted.
+     */
+    public void setSeparator(char value) {
+        if (value == '"' || value == '\r' || value == '\n') {
+            throw new IllegalArgumentException("separator");
+        }
+        separator = value;
+    }
+
+    /**
+     * Gets the number of rows read into a row group before it is queued for the writer.
+     */
+    public int getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    /**
+     * Sets the number of rows read into a row group before it is queued for the writer. Larger groups compress better in the columnar format and
+     * hand off less often, at the cost of memory.
+     */
+    public void setRowGroupSize(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("rowGroupSize must be positive");
+        }
+        rowGroupSize = value;
+    }
+
+    /**
+     * Gets the number of row groups queued for the writer before readers wait.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the number of row groups queued for the writer before readers wait. Together with the row group size and the number of parallel
+     * readers this bounds the rows held in memory.
+     */
+    public void setQueueCapacity(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        queueCapacity = value;
+    }
+
+    /**
+     * Gets the number of shards read at once.
+     */
+    public int getMaxParallelReaders() {
+        return maxParallelReaders;
+    }
+
+    /**
+     * Sets the number of shards read at once when the results of the shards are concatenated.
+     */
+    public void setMaxParallelReaders(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("maxParallelReaders must be positive");
+        }
+        maxParallelReaders = value;
+    }
+
+    /**
+     * Gets the size of the buffer the writer encodes into.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the buffer the writer encodes into, which is the size of the writes to the channel.
+     */
+    public void setBufferSize(int value) {
+        if (value < 16) {
+            throw new IllegalArgumentException("bufferSize must be at least 16 bytes");
+        }
+        bufferSize = value;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets the kind of threads the readers run on.
+     */
+    public void setExecutionMode(ExecutionMode value) {
+        executionMode = value == null ? ExecutorHelper.getDefaultExecutionMode() : value;
+    }
+
+    /**
+     * Writes the rows of a result set to a file, replacing its contents.
+     *
+     * @param resultSet
+     *            Result set not read before.
+     * @param file
+     *            File to write.
+     * @return Number of rows written.
+     * @throws SQLException
+     *             If the rows could not be read.
+     * @throws IOException
+     *             If the file could not be written.
+     */
+    public long export(MultiShardResultSet resultSet,
+            Path file) throws SQLException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            return export(resultSet, channel);
+        }
+    }
+
+    /**
+     * Writes the rows of a result set to a channel.
+     *
+     * @param resultSet
+     *            Result set not read before.
+     * @param channel
+     *            Channel to write to, which is left open.
+     * @return Number of rows written.
+     * @throws SQLException
+     *             If the rows could not be read.
+     * @throws IOException
+     *             If the channel could not be written.
+     */
+    public long export(MultiShardResultSet resultSet,
+            WritableByteChannel channel) throws SQLException, IOException {
+        if (resultSet == null) {
+            throw new IllegalArgumentException("resultSet");
+        }
+        if (channel == null) {
+            throw new IllegalArgumentException("channel");
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData == null ? 0 : metaData.getColumnCount();
+
+        // Only a plain concatenation can be read shard by shard, the other result sets define the order of the rows themselves.
+        List<ResultSet> sources = new ArrayList<>();
+        if (resultSet.getClass() == MultiShardResultSet.class) {
+            resultSet.getResults().stream().map(LabeledResultSet::getResultSet).filter(r -> r != null).forEach(sources::add);
+        }
+        else {
+            sources.add(resultSet);
+        }
+
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Exception> readError = new AtomicReference<>();
+        Semaphore readerPermits = new Semaphore(maxParallelReaders);
+        ExecutorService executor = ExecutorHelper.getSharedExecutor(executionMode);
+        List<Future<?>> readers = new ArrayList<>(sources.size());
+        for (ResultSet source : sources) {
+            readers.add(executor.submit(() -> {
+                try {
+                    readerPermits.acquire();
+                    try {
+                        this.read(source, columnCount, queue, stop);
+                    }
+                    finally {
+                        readerPermits.release();
+                    }
+                }
+                catch (SQLException | RuntimeException e) {
+                    readError.compareAndSet(null, e);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    readError.compareAndSet(null, e);
+                }
+                finally {
+                    enqueue(END_OF_ROWS, queue, stop);
+                }
+            }));
+        }
+
+        long rowCount = 0;
+        boolean completed = false;
+        try {
+            ChannelOutput output = new ChannelOutput(channel, bufferSize);
+            RowWriter writer = format == ExportFormat.Columnar ? new ColumnarRowWriter(output, metaData, columnCount)
+                    : new CsvRowWriter(output, metaData, columnCount, separator);
+            writer.writeHeader();
+
+            int finishedReaders = 0;
+            while (finishedReaders < readers.size()) {
+                List<Object[]> rows = queue.take();
+                if (readError.get() != null) {
+                    break;
+                }
+                if (rows == END_OF_ROWS) {
+                    finishedReaders++;
+                }
+                else {
+                    writer.writeRows(rows);
+                    rowCount += rows.size();
+                }
+            }
+
+            Exception error = readError.get();
+            if (error != null) {
+                if (error instanceof SQLException) {
+                    throw (SQLException) error;
+                }
+                throw new SQLException("Could not read the rows to export. " + error.getMessage(), error);
+            }
+
+            writer.writeEnd();
+            output.drain();
+            completed = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while exporting the rows.", e);
+        }
+        finally {
+            stop.set(true);
+            if (!completed) {
+                readers.forEach(r -> r.cancel(true));
+            }
+        }
+
+        log.info("MultiShardResultExporter; Complete; Format: {}; Rows: {}; Readers: {}; Duration: {}", format, rowCount, sources.size(),
+                stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        return rowCount;
+    }
+
+    /**
+     * Reads the rows of a result set into row groups and queues them for the writer.
+     */
+    private void read(ResultSet source,
+            int columnCount,
+            BlockingQueue<List<Object[]>> queue,
+            AtomicBoolean stop) throws SQLException, InterruptedException {
+        List<Object[]> rows = new ArrayList<>(rowGroupSize);
+        while (!stop.get() && source.next()) {
+            Object[] row = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                row[i] = source.getObject(i + 1);
+            }
+            rows.add(row);
+            if (rows.size() == rowGroupSize) {
+                if (!enqueue(rows, queue, stop)) {
+                    return;
+                }
+                rows = new ArrayList<>(rowGroupSize);
+            }
+        }
+        if (!rows.isEmpty()) {
+            enqueue(rows, queue, stop);
+        }
+    }
+
+    /**
+     * Waits for room in the queue until the export stops.
+     *
+     * @return Whether the rows were queued.
+     */
+    private static boolean enqueue(List<Object[]> rows,
+            BlockingQueue<List<Object[]>> queue,
+            AtomicBoolean stop) {
+        try {
+            while (!stop.get()) {
+                if (queue.offer(rows, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static int encodingOf(int sqlType) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return ENCODING_BOOLEAN;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return ENCODING_INTEGER;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return ENCODING_FLOATING_POINT;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return ENCODING_TIMESTAMP;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return ENCODING_BINARY;
+            default:
+                return ENCODING_STRING;
+        }
+    }
+
+    private static String toText(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof byte[]) {
+            StringBuilder hex = new StringBuilder(2 * ((byte[]) value).length);
+            for (byte b : (byte[]) value) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Encodes row groups in the format of the export.
+     */
+    private interface RowWriter {
+
+        void writeHeader() throws SQLException, IOException;
+
+        void writeRows(List<Object[]> rows) throws IOException;
+
+        void writeEnd() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final ChannelOutput output;
+
+        private final ResultSetMetaData metaData;
+
+        private final int columnCount;
+
+        private final char separator;
+
+        CsvRowWriter(ChannelOutput output,
+                ResultSetMetaData metaData,
+                int columnCount,
+                char separator) {
+            this.output = output;
+            this.metaData = metaData;
+            this.columnCount = columnCount;
+            this.separator = separator;
+        }
+
+        @Override
+        public void writeHeader() throws SQLException, IOException {
+            StringBuilder line = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    line.append(separator);
+                }
+                appendValue(line, metaData.getColumnLabel(i));
+            }
+            output.putBytes(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void writeRows(List<Object[]> rows) throws IOException {
+            StringBuilder lines = new StringBuilder(rows.size() * columnCount * 8);
+            for (Object[] row : rows) {
+                for (int i = 0; i < columnCount; i++) {
+                    if (i > 0) {
+                        lines.append(separator);
+                    }
+                    if (row[i] != null) {
+                        appendValue(lines, toText(row[i]));
+                    }
+                }
+                lines.append('\n');
+            }
+            output.putBytes(lines.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void writeEnd() {
+        }
+
+        private void appendValue(StringBuilder line,
+                String value) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == separator || c == '"' || c == '\r' || c == '\n';
+            }
+            if (quote) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            }
+            else {
+                line.append(value);
+            }
+        }
+    }
+
+    private static final class ColumnarRowWriter implements RowWriter {
+
+        private final ChannelOutput output;
+
+        private final ResultSetMetaData metaData;
+
+        private final int[] encodings;
+
+        ColumnarRowWriter(ChannelOutput output,
+                ResultSetMetaData metaData,
+                int columnCount) {
+            this.output = output;
+            this.metaData = metaData;
+            this.encodings = new int[columnCount];
+        }
+
+        @Override
+        public void writeHeader() throws SQLException, IOException {
+            output.putBytes(COLUMNAR_MAGIC);
+            output.putByte(COLUMNAR_VERSION);
+            output.putVarLong(encodings.length);
+            for (int i = 0; i < encodings.length; i++) {
+                int sqlType = metaData.getColumnType(i + 1);
+                encodings[i] = encodingOf(sqlType);
+                putString(metaData.getColumnLabel(i + 1));
+                output.putVarLong(sqlType);
+                output.putByte(encodings[i]);
+            }
+        }
+
+        @Override
+        public void writeRows(List<Object[]> rows) throws IOException {
+            output.putVarLong(rows.size());
+            byte[] nulls = new byte[(rows.size() + 7) / 8];
+            for (int column = 0; column < encodings.length; column++) {
+                Arrays.fill(nulls, (byte) 0);
+                for (int i = 0; i < rows.size(); i++) {
+                    if (rows.get(i)[column] == null) {
+                        nulls[i / 8] |= 1 << (i % 8);
+                    }
+                }
+                output.putBytes(nulls);
+                for (Object[] row : rows) {
+                    if (row[column] != null) {
+                        putValue(encodings[column], row[column]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void writeEnd() throws IOException {
+            output.putVarLong(0);
+        }
+
+        private void putValue(int encoding,
+                Object value) throws IOException {
+            switch (encoding) {
+                case ENCODING_BOOLEAN:
+                    output.putByte(value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : (((Number) value).intValue() != 0 ? 1 : 0));
+                    break;
+                case ENCODING_INTEGER:
+                    output.putVarLong(zigzag(value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString())));
+                    break;
+                case ENCODING_FLOATING_POINT:
+                    output.putDouble(value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString()));
+                    break;
+                case ENCODING_TIMESTAMP:
+                    Date date = value instanceof Date ? (Date) value : Timestamp.valueOf(value.toString());
+                    output.putVarLong(zigzag(date.getTime()));
+                    output.putVarLong(date instanceof Timestamp ? ((Timestamp) date).getNanos() % 1000000 : 0);
+                    break;
+                case ENCODING_BINARY:
+                    byte[] bytes = (byte[]) value;
+                    output.putVarLong(bytes.length);
+                    output.putBytes(bytes);
+                    break;
+                default:
+                    putString(toText(value));
+                    break;
+            }
+        }
+
+        private void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.putVarLong(bytes.length);
+            output.putBytes(bytes);
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * Buffer written to a channel whenever it fills up.
+     */
+    private static final class ChannelOutput {
+
+        private final WritableByteChannel channel;
+
+        private final ByteBuffer buffer;
+
+        ChannelOutput(WritableByteChannel channel,
+                int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        /**
+         * Puts an unsigned LEB128 varint.
+         */
+        void putVarLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Writes the buffered bytes to the channel.
+         */
+        void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                drain();
+            }
+        }
+    }
+}
@@ -24,6 +24,10 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
  * Elastic database tools for Azure SQL Database.
@@ -35,6 +39,8 @@ import java.util.Map;
 
 import com.microsoft.azure.elasticdb.query.exception.MultiShardException;
 import com.microsoft.azure.elasticdb.query.exception.MultiShardResultSetClosedException;
+import com.microsoft.azure.elasticdb.query.exception.MultiShardStragglerException;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
 import com.microsoft.sqlserver.jdbc.SQLServerResultSet;
 
 import microsoft.sql.DateTimeOffset;
@@ -117,7 +123,53 @@ public class MultiShardResultSet implements AutoCloseable, ResultSet {
         return this.results;
     }
 
-    private ResultSet getCurrentResultSet() throws SQLException {
+    /**
+     * Gets the rows as a stream, which is read instead of calling next(). The stream splits at shard boundaries, so that a parallel stream reads
+     * the results of each shard on a single worker without locking; the rows of a shard keep their order. Closing the stream closes the result
+     * set.
+     *
+     * @return Stream of the rows, read from the shards as it is consumed.
+     * @throws SQLException
+     *             If the metadata of the results could not be read.
+     */
+    public Stream<MultiShardRow> stream() throws SQLException {
+        ResultSetMetaData metaData = this.getMetaData();
+        List<LabeledResultSet> shards = new ArrayList<>();
+        for (LabeledResultSet result : this.results) {
+            if (result.getResultSet() != null) {
+                shards.add(result);
+            }
+        }
+        return this.stream(new ShardSpliterator(shards, 0, shards.size(), MultiShardRow.indexColumns(metaData),
+                metaData == null ? 0 : metaData.getColumnCount()));
+    }
+
+    /**
+     * Makes a stream of rows which closes the result set when it is closed.
+     *
+     * @param rows
+     *            Spliterator reading the rows.
+     * @return Sequential stream of the rows.
+     */
+    protected Stream<MultiShardRow> stream(Spliterator<MultiShardRow> rows) {
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                this.close();
+            }
+            catch (SQLException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Gets the result set positioned on the current row, to which the column getters delegate.
+     *
+     * @return Result set positioned on the current row.
+     * @throws SQLException
+     *             If the result set is closed.
+     */
+    protected ResultSet getCurrentResultSet() throws SQLException {
         if (this.currentResultSet == null) {
             throw new IllegalStateException("Before start of result set");
         }
@@ -1356,6 +1408,22 @@ public class MultiShardResultSet implements AutoCloseable, ResultSet {
         return exceptions;
     }
 
+    /**
+     * Gets the shards left out of partial results as stragglers, which were still running past their deadline after the other shards had
+     * finished.
+     *
+     * @return Locations of the shards left out, empty if every shard was waited for.
+     */
+    public List<ShardLocation> getOmittedShards() {
+        List<ShardLocation> shards = new ArrayList<>();
+        for (MultiShardException ex : this.getMultiShardExceptions()) {
+            if (ex instanceof MultiShardStragglerException) {
+                shards.add(ex.getShardLocation());
+            }
+        }
+        return shards;
+    }
+
     public DateTimeOffset getDateTimeOffset(int ordinal) throws SQLException {
         return ((SQLServerResultSet) getCurrentResultSet()).getDateTimeOffset(ordinal);
     }
@@ -1371,4 +1439,75 @@ public class MultiShardResultSet implements AutoCloseable, ResultSet {
     public String getUniqueIdentifier(String columnName) throws SQLException {
         return ((SQLServerResultSet) getCurrentResultSet()).getUniqueIdentifier(columnName);
     }
+
+    /**
+     * Reads the rows of a range of shards one shard after the other, and splits off the first half of the shards it has not finished.
+     */
+    private static final class ShardSpliterator implements Spliterator<MultiShardRow> {
+
+        private final List<LabeledResultSet> shards;
+
+        private final Map<String, Integer> columnIndexes;
+
+        private final int columnCount;
+
+        private int index;
+
+        private final int end;
+
+        ShardSpliterator(List<LabeledResultSet> shards,
+                int index,
+                int end,
+                Map<String, Integer> columnIndexes,
+                int columnCount) {
+            this.shards = shards;
+            this.index = index;
+            this.end = end;
+            this.columnIndexes = columnIndexes;
+            this.columnCount = columnCount;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super MultiShardRow> action) {
+            while (index < end) {
+                LabeledResultSet shard = shards.get(index);
+                try {
+                    if (shard.getResultSet().next()) {
+                        action.accept(MultiShardRow.read(shard.getResultSet(), shard.getShardLabel(), columnIndexes, columnCount));
+                        return true;
+                    }
+                }
+                catch (SQLException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+                index++;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<MultiShardRow> trySplit() {
+            int remaining = end - index;
+            if (remaining < 2) {
+                return null;
+            }
+            int middle = index + remaining / 2;
+            ShardSpliterator prefix = new ShardSpliterator(shards, index, middle, columnIndexes, columnCount);
+            index = middle;
+            return prefix;
+        }
+
+        /**
+         * The number of rows is not known, which also lets parallel streams split down to single shards.
+         */
+        @Override
+        public long estimateSize() {
+            return index < end ? Long.MAX_VALUE : 0;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+    }
 }
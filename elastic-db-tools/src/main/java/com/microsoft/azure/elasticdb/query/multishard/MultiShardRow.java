@@ -0,0 +1,132 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * A row of the results of a multi-shard query, detached from its result set so that it can be handed to another thread.
+ */
+public final class MultiShardRow {
+
+    private final String location;
+
+    private final Map<String, Integer> columnIndexes;
+
+    private final Object[] values;
+
+    /**
+     * Creates a row.
+     *
+     * @param location
+     *            Label of the shard the row came from, or null.
+     * @param columnIndexes
+     *            One-based column indexes by label, shared by the rows of a result.
+     * @param values
+     *            Column values in column order.
+     */
+    MultiShardRow(String location,
+            Map<String, Integer> columnIndexes,
+            Object[] values) {
+        this.location = location;
+        this.columnIndexes = columnIndexes;
+        this.values = values;
+    }
+
+    /**
+     * Indexes the columns of a result by label, the first of duplicate labels winning as in <code>ResultSet.findColumn</code>.
+     *
+     * @param metaData
+     *            Metadata of the result, or null if it has no columns.
+     * @return One-based column indexes by label, not case sensitive.
+     */
+    static Map<String, Integer> indexColumns(ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> columnIndexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int columnCount = metaData == null ? 0 : metaData.getColumnCount();
+        for (int i = columnCount; i >= 1; i--) {
+            columnIndexes.put(metaData.getColumnLabel(i), i);
+        }
+        return Collections.unmodifiableMap(columnIndexes);
+    }
+
+    /**
+     * Copies the current row of a result set.
+     *
+     * @param resultSet
+     *            Result set positioned on a row.
+     * @param location
+     *            Label of the shard the row came from, or null.
+     * @param columnIndexes
+     *            Column indexes of the result, from <see cref="indexColumns"/>.
+     * @param columnCount
+     *            Number of columns of the result.
+     * @return The row.
+     */
+    static MultiShardRow read(ResultSet resultSet,
+            String location,
+            Map<String, Integer> columnIndexes,
+            int columnCount) throws SQLException {
+        Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = resultSet.getObject(i + 1);
+        }
+        return new MultiShardRow(location, columnIndexes, values);
+    }
+
+    /**
+     * Gets the label of the shard the row came from, which is set when the query includes the shard name column.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public int getColumnCount() {
+        return values.length;
+    }
+
+    /**
+     * Gets the value of a column.
+     *
+     * @param columnIndex
+     *            One-based index of the column.
+     * @return Value as returned by <code>ResultSet.getObject</code>, or null for NULL.
+     */
+    public Object getObject(int columnIndex) {
+        if (columnIndex < 1 || columnIndex > values.length) {
+            throw new IndexOutOfBoundsException("Column index " + columnIndex + " is out of range.");
+        }
+        return values[columnIndex - 1];
+    }
+
+    /**
+     * Gets the value of a column.
+     *
+     * @param columnLabel
+     *            Label of the column, which is not case sensitive.
+     * @return Value as returned by <code>ResultSet.getObject</code>, or null for NULL.
+     */
+    public Object getObject(String columnLabel) {
+        Integer columnIndex = columnIndexes.get(columnLabel);
+        if (columnIndex == null) {
+            throw new IllegalArgumentException("Column " + columnLabel + " is not in the results.");
+        }
+        return values[columnIndex - 1];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
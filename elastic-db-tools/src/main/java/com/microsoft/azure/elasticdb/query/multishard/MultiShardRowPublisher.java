@@ -0,0 +1,235 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Purpose: Publishes the rows of a multi-shard query as they are requested. The query runs when the first rows are requested, and rows are then
+ * read from the shards only while there is demand, plus one row ahead so that the end of the rows is signalled without waiting for more demand;
+ * no thread is held while the subscriber has requested nothing. Cancelling the subscription
+ * cancels a running query or closes the result set, which releases the shard statements. Notes: A query can be subscribed to once.
+ */
+final class MultiShardRowPublisher implements MultiShardFlow.Publisher<MultiShardRow> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Callable<MultiShardResultSet> query;
+
+    private final Runnable cancelQuery;
+
+    private final Executor executor;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * Creates a publisher of the rows of a query.
+     *
+     * @param query
+     *            Runs the query, called on the executor when rows are first requested.
+     * @param cancelQuery
+     *            Cancels the query while it runs.
+     * @param executor
+     *            Executor the query runs and the rows are read on.
+     */
+    MultiShardRowPublisher(Callable<MultiShardResultSet> query,
+            Runnable cancelQuery,
+            Executor executor) {
+        this.query = query;
+        this.cancelQuery = cancelQuery;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(MultiShardFlow.Subscriber<? super MultiShardRow> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new MultiShardFlow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The query has already been subscribed to."));
+            return;
+        }
+        subscriber.onSubscribe(new RowSubscription(subscriber));
+    }
+
+    /**
+     * Subscription emitting rows from a single drain loop on the executor, which runs while there is demand or a signal to handle.
+     */
+    private final class RowSubscription implements MultiShardFlow.Subscription {
+
+        private final MultiShardFlow.Subscriber<? super MultiShardRow> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Number of signals not yet handled by the drain loop, which runs when it rises from zero.
+         */
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        private volatile boolean executing;
+
+        private volatile IllegalArgumentException invalidRequest;
+
+        // Only accessed by the drain loop.
+        private MultiShardResultSet resultSet;
+
+        private Map<String, Integer> columnIndexes;
+
+        private int columnCount;
+
+        /**
+         * Row read ahead of the demand, or null.
+         */
+        private MultiShardRow nextRow;
+
+        private boolean done;
+
+        RowSubscription(MultiShardFlow.Subscriber<? super MultiShardRow> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("The number of rows requested must be positive, but was " + n + ".");
+            }
+            else {
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                if (executing) {
+                    cancelQuery.run();
+                }
+                signal();
+            }
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int signals = 1;
+            do {
+                this.emit();
+                signals = pendingSignals.addAndGet(-signals);
+            }
+            while (signals != 0);
+        }
+
+        private void emit() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                this.finish();
+                return;
+            }
+            if (invalidRequest != null) {
+                this.finish();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            try {
+                while ((demand.get() > 0 || (resultSet != null && nextRow == null)) && !cancelled) {
+                    if (resultSet == null) {
+                        this.execute();
+                        if (cancelled) {
+                            break;
+                        }
+                    }
+                    // Reads one row ahead, so that the end is signalled once the last row was emitted without waiting for more demand.
+                    if (nextRow == null) {
+                        if (!resultSet.next()) {
+                            this.finish();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        nextRow = MultiShardRow.read(resultSet, resultSet.getLocation(), columnIndexes, columnCount);
+                    }
+                    if (demand.get() == 0) {
+                        break;
+                    }
+                    MultiShardRow row = nextRow;
+                    nextRow = null;
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(row);
+                }
+                if (cancelled) {
+                    this.finish();
+                }
+            }
+            catch (Exception e) {
+                this.finish();
+                if (!cancelled) {
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void execute() throws Exception {
+            executing = true;
+            try {
+                resultSet = query.call();
+            }
+            finally {
+                executing = false;
+            }
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            columnIndexes = MultiShardRow.indexColumns(metaData);
+            columnCount = metaData == null ? 0 : metaData.getColumnCount();
+        }
+
+        private void finish() {
+            done = true;
+            nextRow = null;
+            if (resultSet != null) {
+                try {
+                    resultSet.close();
+                }
+                catch (SQLException e) {
+                    log.warn("MultiShardRowPublisher; Could not close the result set: {}", e.getMessage());
+                }
+                resultSet = null;
+            }
+        }
+    }
+}
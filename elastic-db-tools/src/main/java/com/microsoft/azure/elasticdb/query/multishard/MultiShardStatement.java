@@ -3,26 +3,36 @@ package com.microsoft.azure.elasticdb.query.multishard;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -44,6 +54,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Stopwatch;
 import com.microsoft.azure.elasticdb.core.commons.helpers.Event;
 import com.microsoft.azure.elasticdb.core.commons.helpers.EventHandler;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutionMode;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutorHelper;
 import com.microsoft.azure.elasticdb.core.commons.logging.ActivityIdScope;
 import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryBehavior;
 import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryPolicy;
@@ -52,15 +64,16 @@ import com.microsoft.azure.elasticdb.query.exception.MultiShardException;
 import com.microsoft.azure.elasticdb.query.exception.MultiShardResultSetClosedException;
 import com.microsoft.azure.elasticdb.query.exception.MultiShardResultSetInternalException;
 import com.microsoft.azure.elasticdb.query.exception.MultiShardSchemaMismatchException;
+import com.microsoft.azure.elasticdb.query.exception.MultiShardStragglerException;
 import com.microsoft.azure.elasticdb.query.logging.CommandBehavior;
 import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionOptions;
 import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
 import com.microsoft.azure.elasticdb.shard.base.Shard;
 import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
-import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
+import com.microsoft.azure.elasticdb.shard.health.ShardLatencyTracker;
 import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
 import com.microsoft.sqlserver.jdbc.SQLServerDataTable;
-import com.microsoft.sqlserver.jdbc.SQLServerException;
 import com.microsoft.sqlserver.jdbc.SQLServerPreparedStatement;
 
 /**
@@ -89,6 +102,26 @@ public final class MultiShardStatement implements AutoCloseable {
      */
     private static final int DEFAULT_COMMAND_TIMEOUT = 300;
 
+    /**
+     * Default number of rows a streaming reader copies from a shard at a time.
+     */
+    public static final int DEFAULT_STREAMING_PAGE_SIZE = 256;
+
+    /**
+     * Default number of pages a streaming reader queues ahead of the consumer.
+     */
+    public static final int DEFAULT_STREAMING_PREFETCH_PAGES = 4;
+
+    /**
+     * Default percentile of the recent latencies of a shard on which its straggler deadline is based.
+     */
+    public static final double DEFAULT_STRAGGLER_LATENCY_PERCENTILE = 0.95;
+
+    /**
+     * Longest wait for a shard to complete before checking again whether the shards still running are stragglers.
+     */
+    private static final long STRAGGLER_CHECK_INTERVAL_MILLIS = 50;
+
     /**
      * Lock to enable thread-safe Cancel().
      */
@@ -176,15 +209,95 @@ public final class MultiShardStatement implements AutoCloseable {
     private RetryPolicy retryPolicy;
 
     /**
-     * ResultSetMetaData stored as a template to compare schema.
+     * Schema of the first shard results of an execution, to which the schemas of the other shards are compared.
      */
-    private ResultSetMetaData schemaComparisonTemplate;
+    private ResultSchema schemaComparisonTemplate;
 
     /**
      * List of objects required to set parameters to statements before execution of command text.
      */
     private List<Triple<Integer, Integer, Object[]>> parameters;
 
+    /**
+     * Kind of threads on which the command runs against the shards.
+     */
+    private ExecutionMode executionMode = ExecutorHelper.getDefaultExecutionMode();
+
+    /**
+     * Health of the shard locations the command runs against.
+     */
+    private ShardHealthTracker shardHealthTracker = ShardHealthTracker.getDefault();
+
+    /**
+     * Recent latencies of the shard locations the command runs against.
+     */
+    private ShardLatencyTracker shardLatencyTracker = ShardLatencyTracker.getDefault();
+
+    /**
+     * Percentile of the recent latencies of a shard on which its straggler deadline is based.
+     */
+    private double stragglerLatencyPercentile = DEFAULT_STRAGGLER_LATENCY_PERCENTILE;
+
+    /**
+     * Multiple of the latency percentile of a shard after which it is a straggler, 0 to wait for every shard.
+     */
+    private double stragglerDeadlineMultiplier;
+
+    /**
+     * Fan-out executor running the command against the shards, or null to use the one of the connection.
+     */
+    private FanOutExecutor fanOutExecutor;
+
+    /**
+     * Number of shards the command may run against at once, 0 for no limit beyond the one of the fan-out executor.
+     */
+    private int maxDegreeOfParallelism;
+
+    /**
+     * Number of rows a streaming reader copies from a shard at a time.
+     */
+    private int streamingPageSize = DEFAULT_STREAMING_PAGE_SIZE;
+
+    /**
+     * Number of pages a streaming reader queues ahead of the consumer.
+     */
+    private int streamingPrefetchPages = DEFAULT_STREAMING_PREFETCH_PAGES;
+
+    /**
+     * Keys by which the results of the shards are merged, empty to concatenate them.
+     */
+    private List<SortKey> sortKeys = Collections.emptyList();
+
+    /**
+     * Labels of the columns by which partial aggregates of the shards are grouped.
+     */
+    private List<String> groupByColumns = Collections.emptyList();
+
+    /**
+     * Collators by which the string values of group-by columns are grouped, keyed by column label.
+     */
+    private Map<String, Collator> groupByCollators = Collections.emptyMap();
+
+    /**
+     * Columns whose partial aggregates are combined per group, empty to return the rows of the shards as they are.
+     */
+    private List<AggregateColumn> aggregateColumns = Collections.emptyList();
+
+    /**
+     * Maximum number of rows of the combined results, 0 for no limit.
+     */
+    private int maxRows;
+
+    /**
+     * Keys sent to each shard in a table-valued parameter, null if the same command is sent to all shards.
+     */
+    private KeyList keyList;
+
+    /**
+     * Commands run on each shard by <see cref="executeBatch"/>.
+     */
+    private final List<String> batch = new ArrayList<>();
+
     /**
      * Creates an instance of this class.
      *
@@ -301,14 +414,18 @@ public final class MultiShardStatement implements AutoCloseable {
 
     private void setConnection(MultiShardConnection connection) {
         if (connection.isClosed()) {
+            FanOutExecutor connectionFanOutExecutor = connection.getFanOutExecutor();
+            MultiShardConnectionOptions options = connection.getOptions();
             List<Shard> shards = connection.getShards();
             if (shards == null || shards.size() <= 0) {
                 List<ShardLocation> locations = connection.getShardLocations();
-                connection = new MultiShardConnection(connection.getConnectionString(), locations.toArray(new ShardLocation[locations.size()]));
+                connection = new MultiShardConnection(connection.getConnectionString(), options,
+                        locations.toArray(new ShardLocation[locations.size()]));
             }
             else {
-                connection = new MultiShardConnection(connection.getConnectionString(), shards.toArray(new Shard[shards.size()]));
+                connection = new MultiShardConnection(connection.getConnectionString(), options, shards.toArray(new Shard[shards.size()]));
             }
+            connection.setFanOutExecutor(connectionFanOutExecutor);
         }
         this.connection = connection;
     }
@@ -325,6 +442,298 @@ public final class MultiShardStatement implements AutoCloseable {
         return retryPolicy;
     }
 
+    /**
+     * Gets the kind of threads on which the command runs against the shards.
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets the kind of threads on which the command runs against the shards. With VirtualThreads every shard gets its own virtual thread, so large
+     * fan-outs do not tie up an operating system thread per shard.
+     */
+    public void setExecutionMode(ExecutionMode value) {
+        executionMode = value;
+    }
+
+    /**
+     * Gets the tracker of shard location health. Shards whose circuit is open are skipped and reported as failed without being queried.
+     */
+    public ShardHealthTracker getShardHealthTracker() {
+        return shardHealthTracker;
+    }
+
+    /**
+     * Sets the tracker of shard location health. Defaults to the tracker shared across the process.
+     */
+    public void setShardHealthTracker(ShardHealthTracker value) {
+        shardHealthTracker = Objects.requireNonNull(value);
+    }
+
+    /**
+     * Gets the tracker of the recent latencies of shard locations, on which straggler deadlines are based.
+     */
+    public ShardLatencyTracker getShardLatencyTracker() {
+        return shardLatencyTracker;
+    }
+
+    /**
+     * Sets the tracker of the recent latencies of shard locations. Defaults to the tracker shared across the process.
+     */
+    public void setShardLatencyTracker(ShardLatencyTracker value) {
+        shardLatencyTracker = Objects.requireNonNull(value);
+    }
+
+    /**
+     * Gets the percentile of the recent latencies of a shard on which its straggler deadline is based.
+     */
+    public double getStragglerLatencyPercentile() {
+        return stragglerLatencyPercentile;
+    }
+
+    /**
+     * Sets the percentile of the recent latencies of a shard on which its straggler deadline is based. It is also the share of the shards which
+     * must have finished before the others can be cut off.
+     */
+    public void setStragglerLatencyPercentile(double value) {
+        if (value <= 0 || value > 1) {
+            throw new IllegalArgumentException("stragglerLatencyPercentile must be greater than 0 and at most 1");
+        }
+        stragglerLatencyPercentile = value;
+    }
+
+    /**
+     * Gets the multiple of the latency percentile of a shard after which it is a straggler. 0, the default, waits for every shard.
+     */
+    public double getStragglerDeadlineMultiplier() {
+        return stragglerDeadlineMultiplier;
+    }
+
+    /**
+     * Sets the multiple of the latency percentile of a shard after which it is a straggler, 0 to wait for every shard. Under
+     * <see cref="MultiShardExecutionPolicy.PartialResults"/>, once enough shards have finished and every shard still running has passed its
+     * deadline, those shards are cancelled and left out of the results, each with a <see cref="MultiShardStragglerException"/> listed by
+     * <see cref="MultiShardResultSet.getOmittedShards"/>. A shard without enough history is measured against the shards which finished.
+     */
+    public void setStragglerDeadlineMultiplier(double value) {
+        if (value != 0 && value < 1) {
+            throw new IllegalArgumentException("stragglerDeadlineMultiplier must be 0 or at least 1");
+        }
+        stragglerDeadlineMultiplier = value;
+    }
+
+    /**
+     * Gets the fan-out executor running the command against the shards. Defaults to the one of the connection.
+     */
+    public FanOutExecutor getFanOutExecutor() {
+        return fanOutExecutor != null ? fanOutExecutor : connection.getFanOutExecutor();
+    }
+
+    /**
+     * Sets the fan-out executor running the command against the shards, or null to use the one of the connection.
+     */
+    public void setFanOutExecutor(FanOutExecutor value) {
+        fanOutExecutor = value;
+    }
+
+    /**
+     * Gets the number of shards the command may run against at once. 0, the default, leaves the limit to the fan-out executor.
+     */
+    public int getMaxDegreeOfParallelism() {
+        return maxDegreeOfParallelism;
+    }
+
+    /**
+     * Sets the number of shards the command may run against at once. 0 leaves the limit to the fan-out executor.
+     */
+    public void setMaxDegreeOfParallelism(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("maxDegreeOfParallelism must not be negative");
+        }
+        maxDegreeOfParallelism = value;
+    }
+
+    /**
+     * Gets the number of rows copied from a shard at a time when results are streamed with <see cref="MultiShardExecutionOptions.StreamResults"/>.
+     */
+    public int getStreamingPageSize() {
+        return streamingPageSize;
+    }
+
+    /**
+     * Sets the number of rows copied from a shard at a time when results are streamed with <see cref="MultiShardExecutionOptions.StreamResults"/>.
+     */
+    public void setStreamingPageSize(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("streamingPageSize must be positive");
+        }
+        streamingPageSize = value;
+    }
+
+    /**
+     * Gets the number of pages per shard which are read ahead of the consumer when results are streamed.
+     */
+    public int getStreamingPrefetchPages() {
+        return streamingPrefetchPages;
+    }
+
+    /**
+     * Sets the number of pages per shard which are read ahead of the consumer when results are streamed. Together with the page size this bounds
+     * the rows buffered per shard.
+     */
+    public void setStreamingPrefetchPages(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("streamingPrefetchPages must be positive");
+        }
+        streamingPrefetchPages = value;
+    }
+
+    /**
+     * Gets the keys by which the results of the shards are merged into one sorted result, empty if the results are concatenated.
+     */
+    public List<SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    /**
+     * Sets the keys by which the results of the shards are merged into one sorted result. The command text must sort the rows of each shard by the
+     * same keys. The merge holds one row per shard on the client and returns a forward-only <see cref="OrderedMultiShardResultSet"/>; it takes
+     * precedence over <see cref="MultiShardExecutionOptions.StreamResults"/> since it needs the first row of every shard anyway.
+     * <p>
+     * Keys on character columns must compare strings the way the shards do: pass a collator agreeing with the collation of the column, e.g. a
+     * collator of secondary strength for a case-insensitive collation, or use {@link SortKey#ordinal(String, SortDirection)} for binary
+     * collations. Execution fails for a key on a character column with neither, since comparing by UTF-16 code units would disagree with
+     * linguistic collations and return rows out of order.
+     *
+     * @param value
+     *            Sort keys, most significant first. None to concatenate the results.
+     */
+    public void setSortKeys(SortKey... value) {
+        sortKeys = value == null || value.length == 0 ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(Arrays.asList(value)));
+    }
+
+    /**
+     * Gets the labels of the columns by which the partial aggregates of the shards are grouped.
+     */
+    public List<String> getGroupByColumns() {
+        return groupByColumns;
+    }
+
+    /**
+     * Gets the collators by which the string values of group-by columns are grouped, keyed by column label.
+     */
+    public Map<String, Collator> getGroupByCollators() {
+        return groupByCollators;
+    }
+
+    /**
+     * Gets the columns whose partial aggregates are combined per group, empty if the rows of the shards are returned as they are.
+     */
+    public List<AggregateColumn> getAggregateColumns() {
+        return aggregateColumns;
+    }
+
+    /**
+     * Declares how the rows of the shards are combined when the command text aggregates, e.g. <code>SELECT Region, COUNT_BIG(*) AS Orders ...
+     * GROUP BY Region</code>. The rows of all shards with equal values in the group-by columns are combined into one row of an
+     * <see cref="AggregatingMultiShardResultSet"/>, with the group-by columns followed by the aggregate columns. The combined rows are sorted by
+     * the sort keys, if any, which may name any of these columns. Like sorting, aggregation takes precedence over
+     * <see cref="MultiShardExecutionOptions.StreamResults"/>.
+     *
+     * @param groupByColumns
+     *            Labels of the group-by columns, none for a single group.
+     * @param aggregateColumns
+     *            Columns combined per group, none to return the rows of the shards as they are unless there are group-by columns.
+     */
+    public void setAggregation(List<String> groupByColumns,
+            AggregateColumn... aggregateColumns) {
+        this.setAggregation(groupByColumns, null, aggregateColumns);
+    }
+
+    /**
+     * Declares how the rows of the shards are combined when the command text aggregates, grouping the string values of character group-by columns
+     * the way the shards do. String values are always grouped without trailing spaces; a group-by column with a collator, which should agree with
+     * the collation of the column, e.g. a collator of secondary strength for a case-insensitive collation, is grouped by collation key. Without
+     * a collator, values such as 'abc' and 'ABC' which a shard groups together under a case-insensitive collation would be returned as separate
+     * groups.
+     *
+     * @param groupByColumns
+     *            Labels of the group-by columns, none for a single group.
+     * @param groupByCollators
+     *            Collators by which the string values of group-by columns are grouped, keyed by column label; may be null.
+     * @param aggregateColumns
+     *            Columns combined per group, none to return the rows of the shards as they are unless there are group-by columns.
+     */
+    public void setAggregation(List<String> groupByColumns,
+            Map<String, Collator> groupByCollators,
+            AggregateColumn... aggregateColumns) {
+        this.groupByCollators = groupByCollators == null || groupByCollators.isEmpty() ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(groupByCollators));
+        this.groupByColumns = groupByColumns == null || groupByColumns.isEmpty() ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(groupByColumns));
+        this.aggregateColumns = aggregateColumns == null || aggregateColumns.length == 0 ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(Arrays.asList(aggregateColumns)));
+    }
+
+    /**
+     * Gets the maximum number of rows of the combined results, 0 for no limit.
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Sets the maximum number of rows of the combined results, 0 for no limit. Together with sort keys this is a global TOP-N: each shard is
+     * asked for at most that many rows, the sorted results are merged, and once the last row is returned the statements of the other shards are
+     * cancelled and their result sets closed. With aggregation the limit applies to the combined groups.
+     *
+     * @param value
+     *            Maximum number of rows.
+     */
+    public void setMaxRows(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("maxRows must not be negative");
+        }
+        maxRows = value;
+    }
+
+    /**
+     * Sends each shard only its own keys in a table-valued parameter, so that rows for many keys spread across the shards are fetched with one
+     * command per shard. The command text reads the keys from the parameter, e.g.
+     * <code>SELECT * FROM Customers WHERE CustomerId IN (SELECT Id FROM ?)</code>, and the parameter has a user-defined table type with the key
+     * as its only column. The command only runs on the shards with keys, which must all belong to the connection; use
+     * <see cref="ShardPruning.keysByShard"/> to split the keys by shard and connect to the shards it returns.
+     *
+     * @param index
+     *            Index of the parameter
+     * @param tableTypeName
+     *            Name of the user-defined table type of the parameter, e.g. dbo.IntKeys
+     * @param keyType
+     *            SQL Type of the key column, e.g. <code>Types.INTEGER</code>
+     * @param keysByShard
+     *            Keys of each shard, or null to send the command to all shards of the connection again
+     */
+    public void setKeyList(int index,
+            String tableTypeName,
+            int keyType,
+            Map<Shard, ? extends Collection<?>> keysByShard) {
+        if (keysByShard == null) {
+            this.keyList = null;
+            return;
+        }
+        if (StringUtilsLocal.isNullOrEmpty(tableTypeName)) {
+            throw new IllegalArgumentException("tableTypeName");
+        }
+        Map<ShardLocation, Collection<?>> keys = new HashMap<>();
+        keysByShard.forEach((shard, shardKeys) -> {
+            if (shardKeys != null && !shardKeys.isEmpty()) {
+                keys.put(shard.getLocation(), new ArrayList<>(shardKeys));
+            }
+        });
+        this.keyList = new KeyList(index, tableTypeName, keyType, keys);
+    }
+
     public void setRetryPolicy(RetryPolicy value) {
         retryPolicy = value;
     }
@@ -486,10 +895,19 @@ public final class MultiShardStatement implements AutoCloseable {
 
         // Create a list of sql commands to run against each of the shards
         List<Pair<ShardLocation, Statement>> shardCommands = this.getShardCommands();
+        this.bindParameters(shardCommands);
 
-        // Set the parameters, if any.
-        if (this.parameters != null && this.parameters.size() > 0) {
-            this.parameters.forEach(p -> shardCommands.forEach(c -> new Parameter(c.getRight(), p.getLeft(), p.getMiddle(), p.getRight()).run()));
+        // No shard needs to return more rows than the combined results, unless its rows are partial aggregates.
+        boolean aggregate = !this.groupByColumns.isEmpty() || !this.aggregateColumns.isEmpty();
+        if (this.maxRows > 0 && !aggregate) {
+            shardCommands.forEach(c -> {
+                try {
+                    c.getRight().setMaxRows(this.maxRows);
+                }
+                catch (SQLException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            });
         }
 
         // Don't allow a new invocation if a Cancel() is already in progress
@@ -505,8 +923,14 @@ public final class MultiShardStatement implements AutoCloseable {
                 List<Callable<LabeledResultSet>> tasks = this.getLabeledResultSetCallableList(behavior, shardCommands, executionPolicy,
                         commandRetryPolicy);
 
+                if (!aggregate && this.sortKeys.isEmpty() && this.maxRows == 0
+                        && (this.getExecutionOptions().getValue() & MultiShardExecutionOptions.StreamResults.getValue()) != 0) {
+                    return () -> this.executeStreaming(tasks, shardCommands, executionPolicy, stopwatch);
+                }
+
                 return () -> {
-                    List<LabeledResultSet> resultSets = executeAsync(tasks.size(), tasks.stream(), executionPolicy).collect(Collectors.toList());
+                    List<LabeledResultSet> resultSets = executeAsync(tasks, shardCommands, executionPolicy, r -> {
+                    }).collect(Collectors.toList());
                     stopwatch.stop();
 
                     log.info("Complete; Execution Time: {}", stopwatch.elapsed(TimeUnit.MILLISECONDS));
@@ -516,14 +940,24 @@ public final class MultiShardStatement implements AutoCloseable {
                     }
 
                     // Hand-off the responsibility of cleanup to the MultiShardResultSet.
-                    MultiShardResultSet resultSet = new MultiShardResultSet(resultSets);
+                    MultiShardResultSet resultSet;
+                    if (aggregate) {
+                        resultSet = new AggregatingMultiShardResultSet(resultSets, this.groupByColumns, this.groupByCollators, this.aggregateColumns,
+                                this.sortKeys, this.maxRows);
+                    }
+                    else if (!this.sortKeys.isEmpty() || this.maxRows > 0) {
+                        resultSet = new OrderedMultiShardResultSet(resultSets, this.sortKeys, this.maxRows);
+                    }
+                    else {
+                        resultSet = new MultiShardResultSet(resultSets);
+                    }
 
                     // Clean up schema comparison template
                     this.schemaComparisonTemplate = null;
 
                     // Throw exception if all result sets has exceptions
                     List<MultiShardException> exceptions = resultSet.getMultiShardExceptions();
-                    if (exceptions.size() == connection.getShards().size()) {
+                    if (!exceptions.isEmpty() && exceptions.size() == shardCommands.size()) {
                         throw new MultiShardAggregateException(new ArrayList<>(exceptions));
                     }
 
@@ -533,6 +967,271 @@ public final class MultiShardStatement implements AutoCloseable {
         }
     }
 
+    /**
+     * Publishes the rows of the command as a subscriber requests them, so that reactive callers do not block a thread on the results. The command
+     * runs through <see cref="executeQuery"/> when rows are first requested, with the settings of the statement at that time, and rows are read
+     * from the shards only as far as they are requested, plus one row ahead. Cancelling the subscription cancels the command, or closes its results
+     * and releases the shard statements.
+     *
+     * @return Publisher of the rows, to which one subscriber can subscribe.
+     */
+    public MultiShardFlow.Publisher<MultiShardRow> publishQuery() {
+        return new MultiShardRowPublisher(this::executeQuery, () -> {
+            try {
+                this.cancel();
+            }
+            catch (MultiShardException e) {
+                log.warn("MultiShardStatement.publishQuery; Could not cancel the command: {}", e.getMessage());
+            }
+        }, ExecutorHelper.getSharedExecutor(this.getExecutionMode()));
+    }
+
+    /**
+     * Adds a command to the batch run on each shard by <see cref="executeBatch"/>.
+     *
+     * @param sql
+     *            An INSERT, UPDATE or DELETE statement, or a statement which returns nothing such as DDL.
+     */
+    public void addBatch(String sql) {
+        if (StringUtilsLocal.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("sql");
+        }
+        batch.add(sql);
+    }
+
+    /**
+     * Removes the commands added to the batch.
+     */
+    public void clearBatch() {
+        batch.clear();
+    }
+
+    /**
+     * Runs the command text, an INSERT, UPDATE or DELETE statement, on the shards in parallel and returns the number of rows each shard updated.
+     * The parameters and key list are bound as for a query. Each shard commits on its own: under
+     * <see cref="MultiShardExecutionPolicy.CompleteResults"/> a failure stops shards which have not started yet and fails the call, but shards that
+     * completed keep their changes. On an auto-commit connection the update of a shard runs in a transaction of its own, which is rolled back before
+     * the update is retried; a failed commit is not retried, since whether it took effect is unknown. Within a transaction the caller opened on
+     * the connection, a failed update is not retried either.
+     *
+     * @return Update counts of the shards.
+     * @throws MultiShardAggregateException
+     *             If a shard failed under CompleteResults, or all shards failed.
+     */
+    public MultiShardUpdateResult executeUpdate() throws MultiShardAggregateException {
+        return executeUpdate(MultiShardUtils.getSqlCommandRetryPolicy(this.retryPolicy, this.retryBehavior), this.executionPolicy);
+    }
+
+    /**
+     * Runs the command text, an INSERT, UPDATE or DELETE statement, on the shards in parallel and returns the number of rows each shard updated.
+     *
+     * @param commandRetryPolicy
+     *            The retry policy to use when executing the command against the shards
+     * @param executionPolicy
+     *            The execution policy to use
+     * @return Update counts of the shards.
+     * @throws MultiShardAggregateException
+     *             If a shard failed under CompleteResults, or all shards failed.
+     */
+    public MultiShardUpdateResult executeUpdate(RetryPolicy commandRetryPolicy,
+            MultiShardExecutionPolicy executionPolicy) throws MultiShardAggregateException {
+        this.validateCommand(CommandBehavior.Default);
+
+        List<Pair<ShardLocation, Statement>> shardCommands = this.getShardCommands();
+        this.bindParameters(shardCommands);
+        String updateCommandText = this.commandText;
+
+        MultiShardConnection updateConnection = this.connection;
+
+        return executeUpdates(shardCommands, (shard, statement) -> new int[] {((PreparedStatement) statement).executeUpdate()},
+                (shard, statement) -> updateConnection.releaseStatement(shard, updateCommandText, (PreparedStatement) statement), commandRetryPolicy,
+                executionPolicy);
+    }
+
+    /**
+     * Runs the commands added by <see cref="addBatch"/> as one JDBC batch on each shard, the shards in parallel, and returns the update counts of
+     * each command on each shard. The batch is kept for further executions until it is cleared. As with <see cref="executeUpdate"/>, each shard
+     * commits on its own, and the batch of a shard is rolled back before it is retried.
+     *
+     * @return Update counts of the shards, one per command in the order they were added.
+     * @throws MultiShardAggregateException
+     *             If a shard failed under CompleteResults, or all shards failed.
+     */
+    public MultiShardUpdateResult executeBatch() throws MultiShardAggregateException {
+        return executeBatch(MultiShardUtils.getSqlCommandRetryPolicy(this.retryPolicy, this.retryBehavior), this.executionPolicy);
+    }
+
+    /**
+     * Runs the commands added by <see cref="addBatch"/> as one JDBC batch on each shard, the shards in parallel, and returns the update counts of
+     * each command on each shard.
+     *
+     * @param commandRetryPolicy
+     *            The retry policy to use when executing the batch against the shards
+     * @param executionPolicy
+     *            The execution policy to use
+     * @return Update counts of the shards, one per command in the order they were added.
+     * @throws MultiShardAggregateException
+     *             If a shard failed under CompleteResults, or all shards failed.
+     */
+    public MultiShardUpdateResult executeBatch(RetryPolicy commandRetryPolicy,
+            MultiShardExecutionPolicy executionPolicy) throws MultiShardAggregateException {
+        if (batch.isEmpty()) {
+            throw new IllegalStateException("No commands were added to the batch.");
+        }
+        if (isExecutionInProgress()) {
+            throw new IllegalStateException("The command execution cannot proceed due to a pending asynchronous operation already in progress.");
+        }
+
+        List<String> commands = new ArrayList<>(batch);
+        List<Pair<ShardLocation, Statement>> shardStatements = this.connection.getShardConnections().stream().map(sc -> {
+            try {
+                Connection conn = this.connection.getOpenConnection(sc.getLeft());
+                Statement statement = conn.createStatement();
+                statement.setQueryTimeout(this.getCommandTimeoutPerShard());
+                return new ImmutablePair<>(sc.getLeft(), statement);
+            }
+            catch (SQLException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }).collect(Collectors.toList());
+
+        return executeUpdates(shardStatements, (shard, statement) -> {
+            // A retry resubmits the whole batch.
+            statement.clearBatch();
+            for (String command : commands) {
+                statement.addBatch(command);
+            }
+            return statement.executeBatch();
+        }, (shard, statement) -> {
+            try {
+                statement.close();
+            }
+            catch (SQLException e) {
+                log.warn("MultiShardStatement.ExecuteBatch; Could not close the statement on shard {}: {}", shard, e.getMessage());
+            }
+        }, commandRetryPolicy, executionPolicy);
+    }
+
+    /**
+     * Runs an update on the shards in parallel, at most as many at once as the maximum degree of parallelism allows. The statement of each shard
+     * is released once the update, including its retries, is done, or if the shard is not updated at all.
+     */
+    private MultiShardUpdateResult executeUpdates(List<Pair<ShardLocation, Statement>> shardStatements,
+            ShardUpdate update,
+            BiConsumer<ShardLocation, Statement> release,
+            RetryPolicy commandRetryPolicy,
+            MultiShardExecutionPolicy executionPolicy) throws MultiShardAggregateException {
+        boolean completeResults = executionPolicy.equals(MultiShardExecutionPolicy.CompleteResults);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Callable<int[]>> tasks = shardStatements.stream().map(ss -> (Callable<int[]>) () -> {
+            ShardLocation shard = ss.getLeft();
+            try {
+                this.onShardExecutionBegan(shard);
+
+                // Fail fast on shards which recently kept failing instead of waiting on them again.
+                if (!this.shardHealthTracker.tryAcquire(shard)) {
+                    throw new MultiShardException(shard, String.format("Shard %1$s was skipped since recent attempts to reach it failed repeatedly.",
+                            shard));
+                }
+
+                int[] counts;
+                try {
+                    counts = commandRetryPolicy.executeAction(() -> {
+                        try {
+                            return executeInTransaction(shard, ss.getRight(), update);
+                        }
+                        catch (SQLException e) {
+                            // The retry policy only retries unchecked exceptions, and judges them by their cause.
+                            throw new RuntimeException(e.getMessage(), e);
+                        }
+                    });
+                }
+                catch (MultiShardException e) {
+                    this.shardHealthTracker.recordFailure(shard, e);
+                    throw e;
+                }
+                catch (RuntimeException e) {
+                    if (!(e.getCause() instanceof SQLException)) {
+                        throw e;
+                    }
+                    MultiShardException ex = new MultiShardException(shard, (SQLException) e.getCause());
+                    this.shardHealthTracker.recordFailure(shard, ex);
+                    throw ex;
+                }
+                this.shardHealthTracker.recordSuccess(shard);
+                this.onShardExecutionSucceeded(shard, null);
+                return counts;
+            }
+            catch (Exception e) {
+                // With complete results, shards still waiting for a slot are not updated once another shard failed.
+                if (completeResults) {
+                    failed.set(true);
+                }
+                throw e;
+            }
+            finally {
+                release.accept(shard, ss.getRight());
+            }
+        }).collect(Collectors.toList());
+
+        synchronized (cancellationLock) {
+            activityId = UUID.randomUUID();
+        }
+        try (ActivityIdScope activityIdScope = new ActivityIdScope(activityId)) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            log.info("MultiShardStatement.ExecuteUpdates; Start; Shards: {}; Execution Policy: {}", shardStatements.size(), executionPolicy);
+
+            BlockingQueue<Future<int[]>> completed = new LinkedBlockingQueue<>();
+            List<Future<int[]>> futures;
+            try {
+                futures = this.getFanOutExecutor().submitAll(tasks, this.executionMode, this.maxDegreeOfParallelism, completed, failed::get);
+                // Shards already running are waited for rather than cancelled, so that their changes are not left half done.
+                for (int i = 0; i < futures.size(); i++) {
+                    completed.take();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MultiShardAggregateException("Interrupted while updating the shards.", e);
+            }
+
+            Map<ShardLocation, int[]> updateCounts = new LinkedHashMap<>();
+            List<MultiShardException> exceptions = new ArrayList<>();
+            for (int i = 0; i < shardStatements.size(); i++) {
+                ShardLocation shard = shardStatements.get(i).getLeft();
+                if (i >= futures.size()) {
+                    release.accept(shard, shardStatements.get(i).getRight());
+                    exceptions.add(new MultiShardException(shard, "Not updated since another shard failed."));
+                    continue;
+                }
+                try {
+                    updateCounts.put(shard, futures.get(i).get());
+                }
+                catch (ExecutionException | InterruptedException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    MultiShardException ex = cause instanceof MultiShardException ? (MultiShardException) cause
+                            : new MultiShardException(shard, cause instanceof Exception ? (Exception) cause : e);
+                    exceptions.add(ex);
+                    try {
+                        this.onShardExecutionFaulted(shard, ex);
+                    }
+                    catch (MultiShardException eventException) {
+                        exceptions.add(eventException);
+                    }
+                }
+            }
+
+            stopwatch.stop();
+            log.info("MultiShardStatement.ExecuteUpdates; Complete; Updated Shards: {}; Failed Shards: {}; Execution Time: {}", updateCounts.size(),
+                    exceptions.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+            if (!exceptions.isEmpty() && (completeResults || updateCounts.isEmpty())) {
+                throw new MultiShardAggregateException(new ArrayList<>(exceptions));
+            }
+            return new MultiShardUpdateResult(updateCounts, exceptions);
+        }
+    }
+
     private List<Callable<LabeledResultSet>> getLabeledResultSetCallableList(CommandBehavior behavior,
             List<Pair<ShardLocation, Statement>> commands,
             MultiShardExecutionPolicy executionPolicy,
@@ -564,6 +1263,8 @@ public final class MultiShardStatement implements AutoCloseable {
             RetryPolicy commandRetryPolicy) {
         ShardLocation shard = shardStatements.getLeft();
         AtomicReference<PreparedStatement> statement = new AtomicReference<>((PreparedStatement) shardStatements.getRight());
+        MultiShardConnection shardConnection = this.connection;
+        String shardCommandText = this.commandText;
         return () -> {
             Stopwatch stopwatch = Stopwatch.createStarted();
 
@@ -574,40 +1275,57 @@ public final class MultiShardStatement implements AutoCloseable {
             // Raise the shardExecutionBegan event.
             this.onShardExecutionBegan(shard);
 
-            LabeledResultSet resultSet = commandRetryPolicy.executeAction(() -> {
-                try {
-                    LabeledResultSet labeledReader;
-                    if (statement.get().execute()) {
-                        ResultSet res = statement.get().getResultSet();
-
-                        // Validate the result set
-                        MultiShardException ex = validateResultSet(res, shard);
-                        if (ex != null) {
-                            if (executionPolicy.equals(MultiShardExecutionPolicy.CompleteResults)) {
-                                throw ex;
+            // Fail fast on shards which recently kept failing instead of waiting on them again.
+            if (!this.shardHealthTracker.tryAcquire(shard)) {
+                throw new MultiShardException(shard, String.format("Shard %1$s was skipped since recent attempts to reach it failed repeatedly.",
+                        shard));
+            }
+
+            LabeledResultSet resultSet;
+            try {
+                resultSet = commandRetryPolicy.executeAction(() -> {
+                    try {
+                        LabeledResultSet labeledReader;
+                        if (statement.get().execute()) {
+                            ResultSet res = statement.get().getResultSet();
+
+                            // Validate the result set
+                            MultiShardException ex = validateResultSet(res, shard, statement.get());
+                            if (ex != null) {
+                                if (executionPolicy.equals(MultiShardExecutionPolicy.CompleteResults)) {
+                                    throw ex;
+                                }
+                                labeledReader = new LabeledResultSet(ex, shard, statement.get());
+                            }
+                            else {
+                                labeledReader = new LabeledResultSet(res, shard, statement.get());
                             }
-                            labeledReader = new LabeledResultSet(ex, shard, statement.get());
+                            // Raise the ShardExecutionReaderReturned event.
+                            this.onShardExecutionReaderReturned(shard, labeledReader);
                         }
                         else {
-                            labeledReader = new LabeledResultSet(res, shard, statement.get());
+                            labeledReader = new LabeledResultSet(shard, statement.get());
                         }
-                        // Raise the ShardExecutionReaderReturned event.
-                        this.onShardExecutionReaderReturned(shard, labeledReader);
-                    }
-                    else {
-                        labeledReader = new LabeledResultSet(shard, statement.get());
-                    }
 
-                    return labeledReader;
-                }
-                catch (SQLException ex) {
-                    stopwatch.stop();
-                    log.info("MultiShardStatement.GetLabeledDbDataReaderTask; Command Execution Failed; " + "Execution Time: {} ",
-                            stopwatch.elapsed(TimeUnit.MILLISECONDS));
+                        return labeledReader;
+                    }
+                    catch (SQLException ex) {
+                        stopwatch.stop();
+                        log.info("MultiShardStatement.GetLabeledDbDataReaderTask; Command Execution Failed; " + "Execution Time: {} ",
+                                stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
-                    throw new MultiShardException(shard, ex);
-                }
-            });
+                        throw new MultiShardException(shard, ex);
+                    }
+                });
+            }
+            catch (MultiShardException ex) {
+                this.shardHealthTracker.recordFailure(shard, ex);
+                throw ex;
+            }
+            // Closing the reader returns the statement to the statement cache for the next execution of the command text.
+            resultSet.setReleaseStatement(() -> shardConnection.releaseStatement(shard, shardCommandText, statement.get()));
+            this.shardHealthTracker.recordSuccess(shard);
+            this.shardLatencyTracker.record(shard, stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
             stopwatch.stop();
 
@@ -621,69 +1339,271 @@ public final class MultiShardStatement implements AutoCloseable {
         };
     }
 
-    private Stream<LabeledResultSet> executeAsync(int numberOfThreads,
-            Stream<Callable<LabeledResultSet>> callables,
-            MultiShardExecutionPolicy executionPolicy) throws SQLException, MultiShardException {
-        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+    /**
+     * Starts executing the command against the shards in the background and returns a result set which serves rows as soon as any shard has them.
+     */
+    private MultiShardResultSet executeStreaming(List<Callable<LabeledResultSet>> tasks,
+            List<Pair<ShardLocation, Statement>> shardCommands,
+            MultiShardExecutionPolicy executionPolicy,
+            Stopwatch stopwatch) {
+        // The dispatcher and the readers wait on the consumer, so they run outside the fan-out limits to not hold back shard commands.
+        ExecutorService executor = ExecutorHelper.getSharedExecutor(this.executionMode);
+        StreamingMultiShardResultSet resultSet = new StreamingMultiShardResultSet(this.streamingPageSize, this.streamingPrefetchPages, executor);
+        boolean includeShardName = (this.getExecutionOptions().getValue() & MultiShardExecutionOptions.IncludeShardNameColumn.getValue()) != 0;
+        UUID executionActivityId = this.activityId;
+
+        executor.execute(() -> {
+            try (ActivityIdScope activityIdScope = new ActivityIdScope(executionActivityId)) {
+                Exception error = null;
+                try {
+                    executeAsync(tasks, shardCommands, executionPolicy, r -> {
+                        if (includeShardName) {
+                            r.setShardLabel(r.getShardLocation().getDatabase());
+                        }
+                        resultSet.addShard(r);
+                    });
 
-        try {
-            // CompletionService allows to terminate the parallel execution if one of the treads throws
-            // an exception
-            CompletionService<LabeledResultSet> completionService = new ExecutorCompletionService<>(executorService);
+                    // Fail if all shards failed
+                    List<MultiShardException> exceptions = resultSet.getMultiShardExceptions();
+                    if (!exceptions.isEmpty() && exceptions.size() == shardCommands.size()) {
+                        error = new MultiShardAggregateException(new ArrayList<>(exceptions));
+                    }
+                }
+                catch (Exception e) {
+                    error = e;
+                }
+                finally {
+                    stopwatch.stop();
+                    log.info("Complete; Execution Time: {}", stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+                    // Clean up schema comparison template
+                    this.schemaComparisonTemplate = null;
+                }
+                resultSet.complete(error);
+            }
+        });
 
-            List<Future<LabeledResultSet>> futures = callables.map(completionService::submit).collect(Collectors.toList());
+        return resultSet;
+    }
 
+    private Stream<LabeledResultSet> executeAsync(List<Callable<LabeledResultSet>> callables,
+            List<Pair<ShardLocation, Statement>> shardCommands,
+            MultiShardExecutionPolicy executionPolicy,
+            Consumer<LabeledResultSet> onResult) throws SQLException, MultiShardException {
+        // Completed futures are queued in order of completion, which allows to terminate the parallel execution if one of the threads throws
+        // an exception
+        BlockingQueue<Future<LabeledResultSet>> completed = new LinkedBlockingQueue<>();
+
+        // With complete results, shards still waiting for a slot are not queried once another shard failed.
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Callable<LabeledResultSet>> tasks = executionPolicy.equals(MultiShardExecutionPolicy.CompleteResults)
+                ? callables.stream().map(c -> (Callable<LabeledResultSet>) () -> {
+                    try {
+                        return c.call();
+                    }
+                    catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }).collect(Collectors.toList())
+                : callables;
+
+        // With partial results, shards still running past their deadline once the others have finished may be left out.
+        StragglerDeadlines stragglers = null;
+        if (executionPolicy.equals(MultiShardExecutionPolicy.PartialResults) && this.stragglerDeadlineMultiplier > 0) {
+            stragglers = new StragglerDeadlines(this.shardLatencyTracker, this.stragglerLatencyPercentile, this.stragglerDeadlineMultiplier,
+                    shardCommands.stream().map(Pair::getLeft).collect(Collectors.toList()));
+            tasks = this.withStragglerDeadlines(tasks, shardCommands, stragglers);
+        }
+
+        List<Future<LabeledResultSet>> futures;
+        try {
+            // Results of shards which complete after being cancelled are closed, so that their statements return to the cache.
+            futures = this.getFanOutExecutor().submitAll(tasks, this.executionMode, this.maxDegreeOfParallelism, completed, failed::get,
+                    MultiShardStatement::closeQuietly);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for shards to become available for execution.", e);
+        }
+
+        try {
             // Looping over the futures in order of completion: the first future to
             // complete (or fail) is returned first by .take()
             List<LabeledResultSet> resultSets = new ArrayList<>();
-            for (int i = 0; i < futures.size(); ++i) {
+            List<Future<LabeledResultSet>> omittedTasks = new ArrayList<>();
+            for (int remaining = futures.size(); remaining > 0; --remaining) {
                 try {
-                    this.currentTask = completionService.take();
-                    resultSets.add(this.currentTask.get());
+                    this.currentTask = stragglers == null ? completed.take() : this.takeCompleted(completed, stragglers);
+                    if (this.currentTask == null) {
+                        remaining -= this.cutOffStragglers(stragglers, shardCommands, futures, omittedTasks, resultSets, onResult) - 1;
+                        continue;
+                    }
+                    if (omittedTasks.contains(this.currentTask)) {
+                        // Already accounted for when its shard was cut off.
+                        ++remaining;
+                        continue;
+                    }
+                    LabeledResultSet result = this.currentTask.get();
+                    resultSets.add(result);
+                    onResult.accept(result);
                 }
-                catch (Exception e) {
-                    if (e.getCause() instanceof MultiShardException) {
-                        MultiShardException ex = (MultiShardException) e.getCause();
-                        ShardLocation loc = ex.getShardLocation();
-                        if (this.currentTask.isCancelled()) {
-                            log.info("MultiShardStatement.GetLabeledDbDataReaderTask; Command Cancelled;");
-
-                            // Raise the shardExecutionCanceled event.
-                            this.onShardExecutionCanceled(loc);
-                        }
-                        else {
-                            log.info("MultiShardStatement.GetLabeledDbDataReaderTask; Command Failed");
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for the results of the shards.", e);
+                }
+                catch (ExecutionException | CancellationException e) {
+                    // Other failures, e.g. a runtime exception in a shard command, are attributed to the shard of the task.
+                    Throwable cause = e.getCause();
+                    MultiShardException ex = cause instanceof MultiShardException ? (MultiShardException) cause
+                            : new MultiShardException(shardCommands.get(futures.indexOf(this.currentTask)).getLeft(),
+                                    cause instanceof Exception ? (Exception) cause : e);
+                    ShardLocation loc = ex.getShardLocation();
+                    if (this.currentTask.isCancelled()) {
+                        log.info("MultiShardStatement.GetLabeledDbDataReaderTask; Command Cancelled;");
+
+                        // Raise the shardExecutionCanceled event.
+                        this.onShardExecutionCanceled(loc);
+                    }
+                    else {
+                        log.info("MultiShardStatement.GetLabeledDbDataReaderTask; Command Failed");
 
-                            // Raise the shardExecutionFaulted event.
-                            this.onShardExecutionFaulted(loc, (Exception) e.getCause());
-                        }
+                        // Raise the shardExecutionFaulted event.
+                        this.onShardExecutionFaulted(loc, ex);
+                    }
 
-                        if (executionPolicy.equals(MultiShardExecutionPolicy.CompleteResults)) {
-                            // In case one callable fails, cancel all pending and executing operations.
-                            futures.forEach(f -> f.cancel(true));
-                            throw ex;
-                        }
-                        resultSets.add(new LabeledResultSet(ex, loc, getConnectionForLocation(loc).prepareStatement(this.commandText)));
+                    if (executionPolicy.equals(MultiShardExecutionPolicy.CompleteResults)) {
+                        // In case one callable fails, cancel all pending and executing operations.
+                        futures.forEach(f -> f.cancel(true));
+                        throw ex;
                     }
+                    // Label the failure with the statement already prepared for the shard rather than connecting to a shard which just
+                    // failed again.
+                    Statement shardStatement = shardCommands.stream().filter(c -> c.getLeft().equals(loc)).map(Pair::getRight).findFirst()
+                            .orElse(null);
+                    LabeledResultSet result = shardStatement != null ? new LabeledResultSet(ex, loc, shardStatement)
+                            : new LabeledResultSet(ex, loc);
+                    resultSets.add(result);
+                    onResult.accept(result);
                 }
             }
 
             return resultSets.stream();
         }
-        finally {
-            executorService.shutdown();
+        catch (MultiShardException | SQLException | RuntimeException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+    }
+
+    /**
+     * Makes the shard commands report to the straggler deadlines when they start and finish. A shard which was cut off in the meantime is left out:
+     * its results are closed and it fails with the exception standing in for them.
+     */
+    private List<Callable<LabeledResultSet>> withStragglerDeadlines(List<Callable<LabeledResultSet>> tasks,
+            List<Pair<ShardLocation, Statement>> shardCommands,
+            StragglerDeadlines stragglers) {
+        List<Callable<LabeledResultSet>> timedTasks = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Callable<LabeledResultSet> task = tasks.get(i);
+            ShardLocation shard = shardCommands.get(i).getLeft();
+            timedTasks.add(() -> {
+                stragglers.started(shard);
+                LabeledResultSet result;
+                try {
+                    result = task.call();
+                }
+                catch (Exception e) {
+                    if (!stragglers.finished(shard, false)) {
+                        throw stragglers.getOmission(shard);
+                    }
+                    throw e;
+                }
+                if (!stragglers.finished(shard, true)) {
+                    result.close();
+                    throw stragglers.getOmission(shard);
+                }
+                return result;
+            });
         }
+        return timedTasks;
     }
 
-    private Connection getConnectionForLocation(ShardLocation loc) throws SQLException {
-        SqlConnectionStringBuilder str = new SqlConnectionStringBuilder(this.connection.getConnectionString());
-        str.setDataSource(loc.getDataSource());
-        str.setDatabaseName(loc.getDatabase());
-        return DriverManager.getConnection(str.toString());
+    private static void closeQuietly(LabeledResultSet result) {
+        try {
+            result.close();
+        }
+        catch (SQLException e) {
+            log.warn("MultiShardStatement; Could not close the results of cancelled shard {}: {}", result.getShardLocation(), e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for the next shard command to complete, or until the shards still running can be cut off as stragglers.
+     *
+     * @return The command which completed, or null if the shards still running should be cut off.
+     */
+    private Future<LabeledResultSet> takeCompleted(BlockingQueue<Future<LabeledResultSet>> completed,
+            StragglerDeadlines stragglers) throws InterruptedException {
+        while (true) {
+            long wait = Math.max(1, Math.min(stragglers.millisUntilCutOff(), STRAGGLER_CHECK_INTERVAL_MILLIS));
+            Future<LabeledResultSet> next = completed.poll(wait, TimeUnit.MILLISECONDS);
+            if (next != null) {
+                return next;
+            }
+            if (stragglers.millisUntilCutOff() == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Cancels the shards still running past their deadlines and adds results standing in for them.
+     *
+     * @return Number of shards cut off.
+     */
+    private int cutOffStragglers(StragglerDeadlines stragglers,
+            List<Pair<ShardLocation, Statement>> shardCommands,
+            List<Future<LabeledResultSet>> futures,
+            List<Future<LabeledResultSet>> omittedTasks,
+            List<LabeledResultSet> resultSets,
+            Consumer<LabeledResultSet> onResult) throws MultiShardException {
+        List<MultiShardStragglerException> exceptions = stragglers.cutOff();
+        for (MultiShardStragglerException ex : exceptions) {
+            ShardLocation loc = ex.getShardLocation();
+            int index = 0;
+            while (!shardCommands.get(index).getLeft().equals(loc)) {
+                index++;
+            }
+            Statement shardStatement = shardCommands.get(index).getRight();
+            log.info("MultiShardStatement.ExecuteReaderAsync; Shard {} left out as a straggler; Elapsed: {} ms; Deadline: {} ms", loc,
+                    stragglers.elapsedMillis(loc), ex.getDeadlineMillis());
+
+            // The time it ran for is a lower bound of its latency, which lengthens its next deadline if it keeps straggling.
+            this.shardLatencyTracker.record(loc, stragglers.elapsedMillis(loc));
+            try {
+                shardStatement.cancel();
+            }
+            catch (SQLException e) {
+                log.warn("MultiShardStatement.ExecuteReaderAsync; Could not cancel the command on shard {}: {}", loc, e.getMessage());
+            }
+            Future<LabeledResultSet> future = futures.get(index);
+            omittedTasks.add(future);
+            future.cancel(true);
+
+            // Raise the shardExecutionCanceled event.
+            this.onShardExecutionCanceled(loc);
+
+            LabeledResultSet result = new LabeledResultSet(ex, loc, shardStatement);
+            resultSets.add(result);
+            onResult.accept(result);
+        }
+        return exceptions.size();
     }
 
     private MultiShardException validateResultSet(ResultSet r,
-            ShardLocation loc) throws SQLException {
+            ShardLocation loc,
+            Statement statement) throws SQLException {
         if (r.isClosed()) {
             // ResultSet is already closed. Hence adding an exception in its place.
             return new MultiShardException(loc, new MultiShardResultSetClosedException(
@@ -695,30 +1615,47 @@ public final class MultiShardStatement implements AutoCloseable {
             return new MultiShardException(loc, new MultiShardResultSetInternalException(
                     String.format("The result set for '%1$s' does not have proper metadata to read and could not be added.", loc.getDatabase())));
         }
+
+        // Schemas are cached per prepared statement and interned, so results with the same schema share the same instance.
+        ResultSchema schema = this.connection.getResultSchema(loc, statement, m, false);
         if (this.schemaComparisonTemplate == null) {
-            this.schemaComparisonTemplate = r.getMetaData();
+            this.schemaComparisonTemplate = schema;
+            return null;
+        }
+        ResultSchema template = this.schemaComparisonTemplate;
+        if (schema == template) {
+            return null;
+        }
+
+        // The cached schema may predate a change of precision or nullability; compare the current one before reporting a mismatch.
+        schema = this.connection.getResultSchema(loc, statement, m, true);
+        if (schema == template) {
             return null;
         }
-        for (int i = 1; i <= m.getColumnCount(); i++) {
+        if (schema.getColumnCount() != template.getColumnCount()) {
+            return new MultiShardException(loc, new MultiShardSchemaMismatchException(loc,
+                    String.format("Expected %1$s columns, but encountered %2$s columns.", template.getColumnCount(), schema.getColumnCount())));
+        }
+        for (int i = 1; i <= schema.getColumnCount(); i++) {
             // Get the designated column's name.
-            String expectedName = this.schemaComparisonTemplate.getColumnName(i);
-            String actualName = m.getColumnName(i);
+            String expectedName = template.getColumnName(i);
+            String actualName = schema.getColumnName(i);
             if (!Objects.equals(expectedName, actualName)) {
                 return new MultiShardException(loc, new MultiShardSchemaMismatchException(loc,
                         String.format("Expected schema column name %1$s, but encountered schema column name %2$s.", expectedName, actualName)));
             }
 
             // Retrieves the designated column's SQL type.
-            if (!Objects.equals(this.schemaComparisonTemplate.getColumnType(i), m.getColumnType(i))) {
+            if (!Objects.equals(template.getColumnType(i), schema.getColumnType(i))) {
                 return new MultiShardException(loc,
                         new MultiShardSchemaMismatchException(loc,
                                 String.format("Mismatched SQL type values for column %1$s. Expected: %2$s. Actual: %3$s", actualName,
-                                        this.schemaComparisonTemplate.getColumnTypeName(i), m.getColumnTypeName(i))));
+                                        template.getColumnTypeName(i), schema.getColumnTypeName(i))));
             }
 
             // Get the designated column's specified column size.
-            int expectedPrecision = this.schemaComparisonTemplate.getPrecision(i);
-            int actualPrecision = m.getPrecision(i);
+            int expectedPrecision = template.getPrecision(i);
+            int actualPrecision = schema.getPrecision(i);
             if (!Objects.equals(expectedPrecision, actualPrecision)) {
                 return new MultiShardException(loc,
                         new MultiShardSchemaMismatchException(loc,
@@ -727,8 +1664,8 @@ public final class MultiShardStatement implements AutoCloseable {
             }
 
             // Indicates the nullability of values in the designated column.
-            int expectedNullableValue = this.schemaComparisonTemplate.isNullable(i);
-            int actualNullableValue = m.isNullable(i);
+            int expectedNullableValue = template.isNullable(i);
+            int actualNullableValue = schema.isNullable(i);
             if (!Objects.equals(expectedNullableValue, actualNullableValue)) {
                 return new MultiShardException(loc,
                         new MultiShardSchemaMismatchException(loc,
@@ -758,6 +1695,14 @@ public final class MultiShardStatement implements AutoCloseable {
         // Validate the command behavior
         validateCommandBehavior(behavior);
 
+        // Make sure every shard with keys can be sent them
+        if (this.keyList != null) {
+            List<ShardLocation> locations = this.connection.getShardConnections().stream().map(Pair::getLeft).collect(Collectors.toList());
+            this.keyList.keys.keySet().stream().filter(l -> !locations.contains(l)).findFirst().ifPresent(l -> {
+                throw new IllegalStateException(String.format("Shard %1$s has keys in the key list but is not part of the connection.", l));
+            });
+        }
+
         // Validate the parameters
     }
 
@@ -779,27 +1724,38 @@ public final class MultiShardStatement implements AutoCloseable {
         return currentTask != null && !currentTask.isDone();
     }
 
+    /**
+     * Binds the parameters and the keys of each shard, if any, to the commands of the shards.
+     */
+    private void bindParameters(List<Pair<ShardLocation, Statement>> shardCommands) {
+        if (this.parameters != null && this.parameters.size() > 0) {
+            this.parameters.forEach(p -> shardCommands.forEach(c -> new Parameter(c.getRight(), p.getLeft(), p.getMiddle(), p.getRight()).run()));
+        }
+        if (this.keyList != null) {
+            shardCommands.forEach(c -> this.keyList.setKeys(c.getLeft(), c.getRight()));
+        }
+    }
+
     /**
      * Creates a list of commands to be executed against the shards associated with the connection.
      *
      * @return Pairs of shard locations and associated commands.
      */
     private List<Pair<ShardLocation, Statement>> getShardCommands() {
-        return this.connection.getShardConnections().stream().map(sc -> {
-            try {
-                Connection conn = sc.getRight();
-                if (conn.isClosed()) {
-                    // TODO: This hack needs to be perfected. Reopening of connection is not straight forward.
-                    conn = getConnectionForLocation(sc.getLeft());
-                }
-                Statement statement = conn.prepareStatement(this.commandText, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-                statement.setQueryTimeout(this.getCommandTimeoutPerShard());
-                return new ImmutablePair<>(sc.getLeft(), statement);
-            }
-            catch (SQLException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        }).collect(Collectors.toList());
+        // With a key list, shards without keys have nothing to return.
+        return this.connection.getShardConnections().stream()
+                .filter(sc -> this.keyList == null || this.keyList.keys.containsKey(sc.getLeft()))
+                .map(sc -> {
+                    try {
+                        Connection conn = this.connection.getOpenConnection(sc.getLeft());
+                        Statement statement = this.connection.prepareStatement(sc.getLeft(), conn, this.commandText);
+                        statement.setQueryTimeout(this.getCommandTimeoutPerShard());
+                        return new ImmutablePair<>(sc.getLeft(), statement);
+                    }
+                    catch (SQLException e) {
+                        throw new RuntimeException(e.getMessage(), e);
+                    }
+                }).collect(Collectors.toList());
     }
 
     /**
@@ -1042,8 +1998,8 @@ public final class MultiShardStatement implements AutoCloseable {
 
         @Override
         public void run() {
-            SQLServerPreparedStatement stmt = (SQLServerPreparedStatement) statement;
             try {
+                SQLServerPreparedStatement stmt = statement.unwrap(SQLServerPreparedStatement.class);
                 switch (type) {
                     // TODO: Add all types
                     case Types.STRUCT:
@@ -1057,7 +2013,115 @@ public final class MultiShardStatement implements AutoCloseable {
                                         + " method. Please add the same as an inline parameter at %2$s index.", type, index)));
                 }
             }
-            catch (SQLServerException ex) {
+            catch (SQLException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * Runs the update of a shard in a transaction of its own which is rolled back if the update fails, so that a retry does not apply the changes
+     * of the failed attempt a second time. A failed commit, whose outcome is unknown, and a failure within a transaction the caller opened on the
+     * connection are raised as a MultiShardException, which the retry policy does not retry.
+     */
+    private static int[] executeInTransaction(ShardLocation shard,
+            Statement statement,
+            ShardUpdate update) throws SQLException, MultiShardException {
+        Connection conn = statement.getConnection();
+        if (!conn.getAutoCommit()) {
+            try {
+                return update.execute(shard, statement);
+            }
+            catch (SQLException e) {
+                throw new MultiShardException(shard,
+                        String.format("The update on shard %1$s failed within the transaction of the connection; it is not retried.", shard), e);
+            }
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            int[] counts;
+            try {
+                counts = update.execute(shard, statement);
+            }
+            catch (SQLException | RuntimeException e) {
+                try {
+                    conn.rollback();
+                }
+                catch (SQLException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+                throw e;
+            }
+            try {
+                conn.commit();
+            }
+            catch (SQLException e) {
+                throw new MultiShardException(shard,
+                        String.format("Committing the update on shard %1$s failed and its outcome is unknown; it is not retried.", shard), e);
+            }
+            return counts;
+        }
+        finally {
+            try {
+                conn.setAutoCommit(true);
+            }
+            catch (SQLException e) {
+                log.warn("MultiShardStatement.ExecuteUpdates; Could not restore auto-commit on shard {}: {}", shard, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Update run on the statement of a shard.
+     */
+    @FunctionalInterface
+    private interface ShardUpdate {
+
+        int[] execute(ShardLocation shard,
+                Statement statement) throws SQLException;
+    }
+
+    /**
+     * Keys of each shard, sent to the shard in a table-valued parameter.
+     */
+    private static final class KeyList {
+
+        private final int index;
+
+        private final String tableTypeName;
+
+        private final int keyType;
+
+        private final Map<ShardLocation, Collection<?>> keys;
+
+        KeyList(int index,
+                String tableTypeName,
+                int keyType,
+                Map<ShardLocation, Collection<?>> keys) {
+            this.index = index;
+            this.tableTypeName = tableTypeName;
+            this.keyType = keyType;
+            this.keys = keys;
+        }
+
+        void setKeys(ShardLocation shard,
+                Statement statement) {
+            try {
+                SQLServerDataTable table = new SQLServerDataTable();
+                table.addColumnMetadata("Key", keyType);
+                for (Object key : keys.get(shard)) {
+                    table.addRow(key);
+                }
+                if (statement.isWrapperFor(SQLServerPreparedStatement.class)) {
+                    statement.unwrap(SQLServerPreparedStatement.class).setStructured(index, tableTypeName, table);
+                }
+                else {
+                    // Statements of other drivers are given the table as a plain parameter value.
+                    ((PreparedStatement) statement).setObject(index, table);
+                }
+            }
+            catch (SQLException ex) {
                 throw new RuntimeException(ex);
             }
         }
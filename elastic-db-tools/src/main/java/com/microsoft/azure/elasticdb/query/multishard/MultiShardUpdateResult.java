@@ -0,0 +1,80 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardException;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+
+/**
+ * Outcome of an <see cref="MultiShardStatement.executeUpdate"/> or <see cref="MultiShardStatement.executeBatch"/> across a set of shards: the
+ * update counts of each shard that completed and, under <see cref="MultiShardExecutionPolicy.PartialResults"/>, the failures of the others.
+ */
+public final class MultiShardUpdateResult {
+
+    /**
+     * Update counts of the shards that completed, in the order of the shards. A single command has one count per shard, a batch one per command.
+     */
+    private final Map<ShardLocation, int[]> updateCounts;
+
+    private final List<MultiShardException> exceptions;
+
+    MultiShardUpdateResult(Map<ShardLocation, int[]> updateCounts,
+            List<MultiShardException> exceptions) {
+        this.updateCounts = Collections.unmodifiableMap(new LinkedHashMap<>(updateCounts));
+        this.exceptions = Collections.unmodifiableList(new ArrayList<>(exceptions));
+    }
+
+    /**
+     * Gets the update counts of the shards that completed. A single command has one count per shard, a batch one per command in the order they
+     * were added; a count may be <code>Statement.SUCCESS_NO_INFO</code> if the driver does not know it.
+     */
+    public Map<ShardLocation, int[]> getUpdateCounts() {
+        return updateCounts;
+    }
+
+    /**
+     * Gets the update counts of a shard.
+     *
+     * @param shardLocation
+     *            Location of the shard.
+     * @return Update counts of the shard, or null if it did not complete.
+     */
+    public int[] getUpdateCounts(ShardLocation shardLocation) {
+        int[] counts = updateCounts.get(shardLocation);
+        return counts == null ? null : counts.clone();
+    }
+
+    /**
+     * Gets the number of rows updated on all shards that completed, leaving out counts the driver does not know.
+     */
+    public long getTotalUpdateCount() {
+        long total = 0;
+        for (int[] counts : updateCounts.values()) {
+            for (int count : counts) {
+                if (count > 0) {
+                    total += count;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the failures of the shards that did not complete.
+     */
+    public List<MultiShardException> getMultiShardExceptions() {
+        return exceptions;
+    }
+}
@@ -0,0 +1,250 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Forward-only <see cref="MultiShardResultSet"/> which merges the sorted results of the shards into one globally sorted result. Only the current
+ * row of each shard is held on the client: a heap ordered by the sort keys picks the shard with the next row, and reading it advances only that
+ * shard's result set. Rows which sort together are returned in the order of the shards. With a row limit the result is a global TOP-N: once
+ * the last row is returned, the statements of the other shards are cancelled and their result sets closed, so no more rows are transferred.
+ */
+public final class OrderedMultiShardResultSet extends ForwardOnlyMultiShardResultSet {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final List<SortKey> sortKeys;
+
+    /**
+     * Maximum number of rows returned, 0 for no limit.
+     */
+    private final int maxRows;
+
+    /**
+     * Number of rows returned so far.
+     */
+    private int returnedRows;
+
+    /**
+     * Shards with a row not yet returned, ordered by the sort keys of that row.
+     */
+    private final PriorityQueue<ShardCursor> heap;
+
+    /**
+     * Shard positioned on the current row, or null.
+     */
+    private ShardCursor current;
+
+    private boolean started;
+
+    private boolean closed;
+
+    /**
+     * Creates a result set merging the results of the shards.
+     *
+     * @param results
+     *            Results of the shards, each sorted by the sort keys.
+     * @param sortKeys
+     *            Keys by which the results are sorted.
+     */
+    OrderedMultiShardResultSet(List<LabeledResultSet> results,
+            List<SortKey> sortKeys) {
+        this(results, sortKeys, 0);
+    }
+
+    /**
+     * Creates a result set returning the first rows of the merged results of the shards.
+     *
+     * @param results
+     *            Results of the shards, each sorted by the sort keys.
+     * @param sortKeys
+     *            Keys by which the results are sorted, none to return the rows in the order of the shards.
+     * @param maxRows
+     *            Maximum number of rows returned, 0 for no limit.
+     */
+    OrderedMultiShardResultSet(List<LabeledResultSet> results,
+            List<SortKey> sortKeys,
+            int maxRows) {
+        super(results);
+        this.sortKeys = Collections.unmodifiableList(new ArrayList<>(sortKeys));
+        this.maxRows = maxRows;
+        this.heap = new PriorityQueue<>(Math.max(1, results.size()), this::compare);
+    }
+
+    /**
+     * Gets the keys by which the rows are sorted.
+     */
+    public List<SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    /**
+     * Gets the maximum number of rows returned, 0 for no limit.
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    @Override
+    protected boolean moveNext() throws SQLException {
+        if (maxRows > 0 && returnedRows >= maxRows) {
+            if (current != null) {
+                release(current.source);
+                current = null;
+            }
+            return false;
+        }
+
+        if (!started) {
+            started = true;
+            int order = 0;
+            for (LabeledResultSet result : this.getResults()) {
+                if (result.getResultSet() != null) {
+                    ShardCursor cursor = new ShardCursor(result, order++);
+                    if (cursor.advance()) {
+                        heap.add(cursor);
+                    }
+                }
+            }
+        }
+        else if (current != null && current.advance()) {
+            heap.add(current);
+        }
+
+        current = heap.poll();
+        if (current == null) {
+            return false;
+        }
+
+        returnedRows++;
+        if (maxRows > 0 && returnedRows >= maxRows) {
+            // None of the rows left can make the cut. The shard of the current row is released on the next call, when its row is no longer read.
+            for (ShardCursor cursor : heap) {
+                release(cursor.source);
+            }
+            heap.clear();
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the statement of a shard and closes its result set without reading the rows left.
+     */
+    private static void release(LabeledResultSet source) {
+        try {
+            Statement statement = source.getStatement();
+            if (statement != null) {
+                statement.cancel();
+            }
+        }
+        catch (SQLException e) {
+            log.warn("OrderedMultiShardResultSet; Could not cancel the statement on shard {}: {}", source.getShardLocation(), e.getMessage());
+        }
+        try {
+            source.close();
+        }
+        catch (SQLException e) {
+            log.warn("OrderedMultiShardResultSet; Could not close the result set of shard {}: {}", source.getShardLocation(), e.getMessage());
+        }
+    }
+
+    @Override
+    protected ResultSet getCurrentRow() {
+        return current == null ? null : current.source.getResultSet();
+    }
+
+    @Override
+    protected LabeledResultSet getCurrentRowSource() {
+        return current == null ? null : current.source;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        current = null;
+        heap.clear();
+        super.close();
+    }
+
+    private int compare(ShardCursor x,
+            ShardCursor y) {
+        for (int i = 0; i < sortKeys.size(); i++) {
+            int result = sortKeys.get(i).compare(x.keys[i], y.keys[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(x.order, y.order);
+    }
+
+    /**
+     * Result set of a shard together with the sort key values of its current row.
+     */
+    private final class ShardCursor {
+
+        private final LabeledResultSet source;
+
+        /**
+         * Position of the shard among the shards, which orders rows with equal keys.
+         */
+        private final int order;
+
+        /**
+         * 1-based indexes of the sort columns.
+         */
+        private final int[] columns;
+
+        private final Object[] keys;
+
+        ShardCursor(LabeledResultSet source,
+                int order) throws SQLException {
+            this.source = source;
+            this.order = order;
+            this.columns = new int[sortKeys.size()];
+            this.keys = new Object[sortKeys.size()];
+            for (int i = 0; i < columns.length; i++) {
+                SortKey key = sortKeys.get(i);
+                columns[i] = key.getColumnLabel() == null ? key.getColumnIndex() : source.getResultSet().findColumn(key.getColumnLabel());
+                key.checkColumn(source.getResultSet().getMetaData(), columns[i]);
+            }
+        }
+
+        /**
+         * Moves to the next row of the shard and reads its sort key values.
+         *
+         * @return Whether the shard has another row.
+         */
+        boolean advance() throws SQLException {
+            ResultSet resultSet = source.getResultSet();
+            if (!resultSet.next()) {
+                return false;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                keys[i] = resultSet.getObject(columns[i]);
+            }
+            return true;
+        }
+    }
+}
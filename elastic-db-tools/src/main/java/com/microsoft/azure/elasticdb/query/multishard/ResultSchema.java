@@ -0,0 +1,150 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Purpose: The parts of the metadata of a shard result which must agree across shards, read once from the driver. Schemas are interned, so the
+ * results of two shards have the same schema exactly when they share the same instance. Notes: Instances are immutable.
+ */
+final class ResultSchema {
+
+    /**
+     * Canonical instances of the schemas in use, dropped once no statement or query refers to them.
+     */
+    private static final Interner<ResultSchema> INTERNER = Interners.newWeakInterner();
+
+    private final String[] columnNames;
+
+    private final int[] columnTypes;
+
+    private final String[] columnTypeNames;
+
+    private final int[] precisions;
+
+    private final int[] nullabilities;
+
+    /**
+     * Fingerprint of the schema, compared before the columns when interning.
+     */
+    private final int fingerprint;
+
+    private ResultSchema(String[] columnNames,
+            int[] columnTypes,
+            String[] columnTypeNames,
+            int[] precisions,
+            int[] nullabilities) {
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.columnTypeNames = columnTypeNames;
+        this.precisions = precisions;
+        this.nullabilities = nullabilities;
+        this.fingerprint = 31 * (31 * (31 * (31 * Arrays.hashCode(columnNames) + Arrays.hashCode(columnTypes)) + Arrays.hashCode(columnTypeNames))
+                + Arrays.hashCode(precisions)) + Arrays.hashCode(nullabilities);
+    }
+
+    /**
+     * Reads the schema of a result.
+     *
+     * @param metaData
+     *            Metadata of the result.
+     * @return The canonical instance of the schema.
+     * @throws SQLException
+     *             If the metadata could not be read.
+     */
+    static ResultSchema of(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] columnNames = new String[columnCount];
+        int[] columnTypes = new int[columnCount];
+        String[] columnTypeNames = new String[columnCount];
+        int[] precisions = new int[columnCount];
+        int[] nullabilities = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = metaData.getColumnName(i + 1);
+            columnTypes[i] = metaData.getColumnType(i + 1);
+            columnTypeNames[i] = metaData.getColumnTypeName(i + 1);
+            precisions[i] = metaData.getPrecision(i + 1);
+            nullabilities[i] = metaData.isNullable(i + 1);
+        }
+        return INTERNER.intern(new ResultSchema(columnNames, columnTypes, columnTypeNames, precisions, nullabilities));
+    }
+
+    /**
+     * Checks whether the metadata of a result still has the number, names and types of columns of this schema. This is cheaper than reading the
+     * schema again and catches columns added, dropped, renamed or changed to another type.
+     *
+     * @param metaData
+     *            Metadata of the result.
+     * @return Whether the result has the columns of this schema.
+     * @throws SQLException
+     *             If the metadata could not be read.
+     */
+    boolean matches(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        if (columnCount != columnNames.length) {
+            return false;
+        }
+        for (int i = 0; i < columnCount; i++) {
+            if (columnTypes[i] != metaData.getColumnType(i + 1) || !Objects.equals(columnNames[i], metaData.getColumnName(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getColumnCount() {
+        return columnNames.length;
+    }
+
+    String getColumnName(int column) {
+        return columnNames[column - 1];
+    }
+
+    int getColumnType(int column) {
+        return columnTypes[column - 1];
+    }
+
+    String getColumnTypeName(int column) {
+        return columnTypeNames[column - 1];
+    }
+
+    int getPrecision(int column) {
+        return precisions[column - 1];
+    }
+
+    int isNullable(int column) {
+        return nullabilities[column - 1];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResultSchema)) {
+            return false;
+        }
+        ResultSchema other = (ResultSchema) obj;
+        return fingerprint == other.fingerprint && Arrays.equals(columnNames, other.columnNames) && Arrays.equals(columnTypes, other.columnTypes)
+                && Arrays.equals(columnTypeNames, other.columnTypeNames) && Arrays.equals(precisions, other.precisions)
+                && Arrays.equals(nullabilities, other.nullabilities);
+    }
+
+    @Override
+    public int hashCode() {
+        return fingerprint;
+    }
+}
@@ -0,0 +1,233 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.base.IShardProvider;
+import com.microsoft.azure.elasticdb.shard.base.LookupOptions;
+import com.microsoft.azure.elasticdb.shard.base.Range;
+import com.microsoft.azure.elasticdb.shard.base.Shard;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
+import com.microsoft.azure.elasticdb.shard.utils.ExceptionUtils;
+
+/**
+ * Purpose: Resolves the shards a multi-shard query has to run on when it filters on the sharding key, so that the <see cref="MultiShardConnection"/>
+ * only fans out to the shards whose mappings intersect the filter. For example, a query over a week of a map sharded by day is sent to 7 shards
+ * rather than to every shard of the map:
+ * <code>new MultiShardConnection(connectionString, ShardPruning.shardsForRange(map, range).toArray(new Shard[0]))</code>. The shards are returned
+ * in the order of their first mapping and each shard once. An empty list means no shard holds data for the filter and the query need not run.
+ * For lookups by a large set of keys, <see cref="keysByShard"/> also splits the keys so that each shard is only sent its own keys, see
+ * <see cref="MultiShardStatement.setKeyList"/>.
+ */
+public final class ShardPruning {
+
+    private ShardPruning() {
+    }
+
+    /**
+     * Gets the shards with mappings intersecting a range of keys of a range shard map. Only the global shard map store is searched, since the cache
+     * may hold some of the mappings in the range but not all of them. This is equivalent to
+     * <code>shardsForRange(shardMap, range, LookupOptions.LOOKUP_IN_STORE)</code>.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param range
+     *            Range of keys the query filters on.
+     * @return Shards with mappings intersecting the range.
+     */
+    public static <KeyT> List<Shard> shardsForRange(RangeShardMap<KeyT> shardMap,
+            Range range) {
+        return shardsForRange(shardMap, range, LookupOptions.LOOKUP_IN_STORE);
+    }
+
+    /**
+     * Gets the shards with mappings intersecting a range of keys of a range shard map. With <code>LookupOptions.LOOKUP_IN_CACHE</code> no round trip
+     * is made to the global shard map store, which is only correct if the cache holds all mappings of the range, e.g. because they were looked up
+     * before.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param range
+     *            Range of keys the query filters on.
+     * @param lookupOptions
+     *            Whether to search in the cache and/or store.
+     * @return Shards with mappings intersecting the range.
+     */
+    public static <KeyT> List<Shard> shardsForRange(RangeShardMap<KeyT> shardMap,
+            Range range,
+            LookupOptions lookupOptions) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        return distinctShards(shardMap.getMappings(range, lookupOptions));
+    }
+
+    /**
+     * Gets the shards with mappings intersecting a range of keys of a list shard map. Only the global shard map store is searched, since the cache
+     * may hold some of the mappings in the range but not all of them.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param range
+     *            Range of keys the query filters on.
+     * @return Shards with mappings intersecting the range.
+     */
+    public static <KeyT> List<Shard> shardsForRange(ListShardMap<KeyT> shardMap,
+            Range range) {
+        return shardsForRange(shardMap, range, LookupOptions.LOOKUP_IN_STORE);
+    }
+
+    /**
+     * Gets the shards with mappings intersecting a range of keys of a list shard map.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param range
+     *            Range of keys the query filters on.
+     * @param lookupOptions
+     *            Whether to search in the cache and/or store.
+     * @return Shards with mappings intersecting the range.
+     */
+    public static <KeyT> List<Shard> shardsForRange(ListShardMap<KeyT> shardMap,
+            Range range,
+            LookupOptions lookupOptions) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        return distinctShards(shardMap.getMappings(range, lookupOptions));
+    }
+
+    /**
+     * Gets the shards holding a set of keys of a range shard map. The keys are looked up in the cache first and those not found there are fetched
+     * from the global shard map store in a single round trip. Keys without a mapping are ignored.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param keys
+     *            Keys the query filters on.
+     * @return Shards holding the keys.
+     */
+    public static <KeyT> List<Shard> shardsForKeys(RangeShardMap<KeyT> shardMap,
+            Collection<KeyT> keys) {
+        return shardsForKeys(shardMap, keys, cacheThenStore());
+    }
+
+    /**
+     * Gets the shards holding a set of keys of a range shard map. Keys without a mapping are ignored.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param keys
+     *            Keys the query filters on.
+     * @param lookupOptions
+     *            Whether to search in the cache and/or store.
+     * @return Shards holding the keys.
+     */
+    public static <KeyT> List<Shard> shardsForKeys(RangeShardMap<KeyT> shardMap,
+            Collection<KeyT> keys,
+            LookupOptions lookupOptions) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        return distinctShards(shardMap.getMappingsForKeys(keys, lookupOptions).values());
+    }
+
+    /**
+     * Gets the shards holding a set of keys of a list shard map. The keys are looked up in the cache first and those not found there are fetched
+     * from the global shard map store in a single round trip. Keys without a mapping are ignored.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param keys
+     *            Keys the query filters on.
+     * @return Shards holding the keys.
+     */
+    public static <KeyT> List<Shard> shardsForKeys(ListShardMap<KeyT> shardMap,
+            Collection<KeyT> keys) {
+        return shardsForKeys(shardMap, keys, cacheThenStore());
+    }
+
+    /**
+     * Gets the shards holding a set of keys of a list shard map. Keys without a mapping are ignored.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param keys
+     *            Keys the query filters on.
+     * @param lookupOptions
+     *            Whether to search in the cache and/or store.
+     * @return Shards holding the keys.
+     */
+    public static <KeyT> List<Shard> shardsForKeys(ListShardMap<KeyT> shardMap,
+            Collection<KeyT> keys,
+            LookupOptions lookupOptions) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        return distinctShards(shardMap.getMappingsForKeys(keys, lookupOptions).values());
+    }
+
+    /**
+     * Splits a set of keys of a range shard map by the shard holding them. The keys are looked up in the cache first and those not found there are
+     * fetched from the global shard map store in a single round trip. Keys without a mapping are left out.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param keys
+     *            Keys the query filters on.
+     * @return Keys of each shard, in the order of the shards' first key.
+     */
+    public static <KeyT> Map<Shard, List<KeyT>> keysByShard(RangeShardMap<KeyT> shardMap,
+            Collection<KeyT> keys) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        return groupKeys(shardMap.getMappingsForKeys(keys, cacheThenStore()));
+    }
+
+    /**
+     * Splits a set of keys of a list shard map by the shard holding them. The keys are looked up in the cache first and those not found there are
+     * fetched from the global shard map store in a single round trip. Keys without a mapping are left out.
+     *
+     * @param shardMap
+     *            Shard map the query runs against.
+     * @param keys
+     *            Keys the query filters on.
+     * @return Keys of each shard, in the order of the shards' first key.
+     */
+    public static <KeyT> Map<Shard, List<KeyT>> keysByShard(ListShardMap<KeyT> shardMap,
+            Collection<KeyT> keys) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        return groupKeys(shardMap.getMappingsForKeys(keys, cacheThenStore()));
+    }
+
+    private static LookupOptions cacheThenStore() {
+        return LookupOptions.forValue(LookupOptions.LOOKUP_IN_CACHE.getValue() | LookupOptions.LOOKUP_IN_STORE.getValue());
+    }
+
+    private static List<Shard> distinctShards(Collection<? extends IShardProvider<?>> mappings) {
+        Map<ShardLocation, Shard> shards = new LinkedHashMap<>();
+        if (mappings != null) {
+            for (IShardProvider<?> mapping : mappings) {
+                Shard shard = mapping.getShardInfo();
+                shards.putIfAbsent(shard.getLocation(), shard);
+            }
+        }
+        return new ArrayList<>(shards.values());
+    }
+
+    private static <KeyT> Map<Shard, List<KeyT>> groupKeys(Map<KeyT, ? extends IShardProvider<?>> mappings) {
+        // Mappings of the same shard carry equal but distinct shard objects, so one of them stands for the shard.
+        Map<ShardLocation, Shard> shards = new LinkedHashMap<>();
+        Map<Shard, List<KeyT>> keysByShard = new LinkedHashMap<>();
+        for (Entry<KeyT, ? extends IShardProvider<?>> mapping : mappings.entrySet()) {
+            Shard shard = shards.computeIfAbsent(mapping.getValue().getShardInfo().getLocation(), l -> mapping.getValue().getShardInfo());
+            keysByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(mapping.getKey());
+        }
+        return keysByShard;
+    }
+}
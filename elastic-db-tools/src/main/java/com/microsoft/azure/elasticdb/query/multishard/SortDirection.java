@@ -0,0 +1,53 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Direction in which a <see cref="SortKey"/> orders rows. As in SQL Server, NULLs sort before all other values in ascending order and after them
+ * in descending order.
+ */
+public enum SortDirection {
+    /**
+     * Smallest values first.
+     */
+    Ascending(0),
+
+    /**
+     * Largest values first.
+     */
+    Descending(1);
+
+    public static final int SIZE = java.lang.Integer.SIZE;
+    private static java.util.HashMap<Integer, SortDirection> mappings;
+    private int intValue;
+
+    SortDirection(int value) {
+        intValue = value;
+        getMappings().put(value, this);
+    }
+
+    private static java.util.HashMap<Integer, SortDirection> getMappings() {
+        if (mappings == null) {
+            synchronized (SortDirection.class) {
+                if (mappings == null) {
+                    mappings = new java.util.HashMap<>();
+                }
+            }
+        }
+        return mappings;
+    }
+
+    public static SortDirection forValue(int value) {
+        return getMappings().get(value);
+    }
+
+    public int getValue() {
+        return intValue;
+    }
+}
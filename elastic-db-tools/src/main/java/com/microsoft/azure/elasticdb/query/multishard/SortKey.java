@@ -0,0 +1,268 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.Collator;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Column by which the rows of a multi-shard query are merged into one globally sorted result. The rows returned by each shard must already be
+ * sorted by the same keys, i.e. the command text must have the matching ORDER BY clause. Keys on character columns must state how the shards
+ * compare strings: either with a collator agreeing with the collation of the column, or with {@link #ordinal(String, SortDirection)} for binary
+ * collations. Otherwise the merge would disagree with the order of the shards and return rows out of order.
+ */
+public final class SortKey {
+
+    /**
+     * Label of the column, or null if the column is given by index.
+     */
+    private final String columnLabel;
+
+    /**
+     * 1-based index of the column, or 0 if the column is given by label.
+     */
+    private final int columnIndex;
+
+    private final SortDirection direction;
+
+    /**
+     * Collator comparing string values, or null if the key compares them by UTF-16 code units or does not sort a character column.
+     */
+    private final Collator collator;
+
+    /**
+     * Whether string values are compared by UTF-16 code units, which matches binary collations.
+     */
+    private final boolean ordinal;
+
+    /**
+     * Constructs a key sorting the values of a column in ascending order.
+     *
+     * @param columnLabel
+     *            Label of the column.
+     */
+    public SortKey(String columnLabel) {
+        this(columnLabel, SortDirection.Ascending, null);
+    }
+
+    /**
+     * Constructs a key sorting the values of a column.
+     *
+     * @param columnLabel
+     *            Label of the column.
+     * @param direction
+     *            Direction in which the values are sorted.
+     */
+    public SortKey(String columnLabel,
+            SortDirection direction) {
+        this(columnLabel, direction, null);
+    }
+
+    /**
+     * Constructs a key sorting the values of a column. String values are compared with the given collator, which should agree with the collation
+     * the shards sort the column by, e.g. a collator of secondary strength for a case-insensitive collation.
+     *
+     * @param columnLabel
+     *            Label of the column.
+     * @param direction
+     *            Direction in which the values are sorted.
+     * @param collator
+     *            Collator comparing string values; required if the column is a character column.
+     */
+    public SortKey(String columnLabel,
+            SortDirection direction,
+            Collator collator) {
+        this(columnLabel, direction, collator, false);
+    }
+
+    private SortKey(String columnLabel,
+            SortDirection direction,
+            Collator collator,
+            boolean ordinal) {
+        if (StringUtilsLocal.isNullOrEmpty(columnLabel)) {
+            throw new IllegalArgumentException("columnLabel");
+        }
+        this.columnLabel = columnLabel;
+        this.columnIndex = 0;
+        this.direction = direction == null ? SortDirection.Ascending : direction;
+        this.collator = collator;
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Constructs a key sorting the values of a column.
+     *
+     * @param columnIndex
+     *            1-based index of the column.
+     * @param direction
+     *            Direction in which the values are sorted.
+     */
+    public SortKey(int columnIndex,
+            SortDirection direction) {
+        this(columnIndex, direction, null);
+    }
+
+    /**
+     * Constructs a key sorting the values of a column. String values are compared with the given collator, which should agree with the collation
+     * the shards sort the column by.
+     *
+     * @param columnIndex
+     *            1-based index of the column.
+     * @param direction
+     *            Direction in which the values are sorted.
+     * @param collator
+     *            Collator comparing string values; required if the column is a character column.
+     */
+    public SortKey(int columnIndex,
+            SortDirection direction,
+            Collator collator) {
+        this(columnIndex, direction, collator, false);
+    }
+
+    private SortKey(int columnIndex,
+            SortDirection direction,
+            Collator collator,
+            boolean ordinal) {
+        if (columnIndex <= 0) {
+            throw new IllegalArgumentException("columnIndex");
+        }
+        this.columnLabel = null;
+        this.columnIndex = columnIndex;
+        this.direction = direction == null ? SortDirection.Ascending : direction;
+        this.collator = collator;
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Creates a key which compares string values by UTF-16 code units. This matches the order of binary (_BIN2) collations only; columns with
+     * linguistic collations need a collator instead.
+     *
+     * @param columnLabel
+     *            Label of the column.
+     * @param direction
+     *            Direction in which the values are sorted.
+     * @return The sort key.
+     */
+    public static SortKey ordinal(String columnLabel,
+            SortDirection direction) {
+        return new SortKey(columnLabel, direction, null, true);
+    }
+
+    /**
+     * Creates a key which compares string values by UTF-16 code units. This matches the order of binary (_BIN2) collations only; columns with
+     * linguistic collations need a collator instead.
+     *
+     * @param columnIndex
+     *            1-based index of the column.
+     * @param direction
+     *            Direction in which the values are sorted.
+     * @return The sort key.
+     */
+    public static SortKey ordinal(int columnIndex,
+            SortDirection direction) {
+        return new SortKey(columnIndex, direction, null, true);
+    }
+
+    /**
+     * Gets the label of the column, or null if the column is given by index.
+     */
+    public String getColumnLabel() {
+        return columnLabel;
+    }
+
+    /**
+     * Gets the 1-based index of the column, or 0 if the column is given by label.
+     */
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    public SortDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * Gets the collator comparing string values, or null if the key has none.
+     */
+    public Collator getCollator() {
+        return collator;
+    }
+
+    /**
+     * Gets whether string values are compared by UTF-16 code units.
+     */
+    public boolean isOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Checks that the key states how to compare strings if it sorts a character column.
+     *
+     * @param metaData
+     *            Metadata of a shard's result.
+     * @param column
+     *            1-based index of the column of the key.
+     * @throws SQLException
+     *             If the column is a character column and the key has neither a collator nor ordinal comparison.
+     */
+    void checkColumn(ResultSetMetaData metaData,
+            int column) throws SQLException {
+        if (collator != null || ordinal) {
+            return;
+        }
+        switch (metaData.getColumnType(column)) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                throw new SQLException(StringUtilsLocal.formatInvariant(
+                        "Sort key %1$s orders the character column %2$s but has no collator. Pass a collator agreeing with the collation of the"
+                                + " column, or use SortKey.ordinal for binary collations.",
+                        this, metaData.getColumnLabel(column)));
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Compares two values of the column in the order of this key.
+     *
+     * @param x
+     *            First value, may be null.
+     * @param y
+     *            Second value, may be null.
+     * @return A negative number, zero or a positive number as the first value sorts before, together with or after the second.
+     */
+    int compare(Object x,
+            Object y) {
+        int result;
+        if (x == null || y == null) {
+            // NULL is the smallest value, as in SQL Server.
+            result = x == null ? (y == null ? 0 : -1) : 1;
+        }
+        else {
+            // Strings only get here without a collator for ordinal keys, since checkColumn rejects the others.
+            result = ColumnValues.compare(x, y, collator);
+        }
+        return direction == SortDirection.Descending ? -result : result;
+    }
+
+    @Override
+    public String toString() {
+        return (columnLabel != null ? columnLabel : String.valueOf(columnIndex)) + " " + direction;
+    }
+}
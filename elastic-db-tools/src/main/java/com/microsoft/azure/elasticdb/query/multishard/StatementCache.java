@@ -0,0 +1,200 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Purpose: Keeps the prepared statements of a shard connection for reuse by later executions of the same command text, so that a query re-run
+ * with new parameters is bound to the statement prepared before instead of being prepared again. A statement is taken out of the cache while a
+ * command uses it and returned when its result set is closed; the least recently used statements are closed when the cache is full. The schema
+ * of the results of each statement is kept with it and read again only when the names or types of the columns change. Notes: This class
+ * is thread-safe.
+ */
+final class StatementCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Connection connection;
+
+    private final int capacity;
+
+    /**
+     * Statements not in use, keyed by command text, least recently used first.
+     */
+    private final LinkedHashMap<String, PreparedStatement> idle;
+
+    /**
+     * Result schemas of the statements of the connection, dropped with the statements.
+     */
+    private final Map<Statement, ResultSchema> resultSchemas = new WeakHashMap<>();
+
+    /**
+     * Statements this cache prepared, whether idle or in use. Ownership is tracked here rather than through Statement.getConnection, which pooled
+     * or otherwise wrapped connections need not answer with the connection the cache was created for.
+     */
+    private final Set<Statement> prepared = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private boolean closed;
+
+    /**
+     * Creates a cache for the statements of a shard connection.
+     *
+     * @param connection
+     *            Connection to the shard.
+     * @param capacity
+     *            Maximum number of statements kept, 0 to prepare a new statement for every command.
+     */
+    StatementCache(Connection connection,
+            int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.idle = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Takes the cached statement for a command text out of the cache, or prepares one if there is none. The parameters and row limit of a cached
+     * statement are cleared.
+     *
+     * @param commandText
+     *            Command text of the statement.
+     * @return Statement for the exclusive use of the caller until it is released.
+     */
+    PreparedStatement acquire(String commandText) throws SQLException {
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = idle.remove(commandText);
+        }
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            statement.setMaxRows(0);
+            return statement;
+        }
+        statement = connection.prepareStatement(commandText, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        synchronized (this) {
+            prepared.add(statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Returns a statement to the cache once its results are no longer read. A statement the cache did not prepare, or one for a command text
+     * already cached, is closed instead.
+     *
+     * @param commandText
+     *            Command text of the statement.
+     * @param statement
+     *            Statement taken from the cache or prepared on the connection.
+     */
+    void release(String commandText,
+            PreparedStatement statement) {
+        try {
+            if (statement.isClosed()) {
+                return;
+            }
+            synchronized (this) {
+                if (!closed && capacity > 0 && prepared.contains(statement) && !idle.containsKey(commandText)) {
+                    idle.put(commandText, statement);
+                    return;
+                }
+            }
+        }
+        catch (SQLException e) {
+            // The statement is unusable, close it.
+        }
+        closeStatement(statement);
+    }
+
+    /**
+     * Gets the schema of the results of a statement, read from the metadata the first time and reused while the results keep the same number,
+     * names and types of columns.
+     *
+     * @param statement
+     *            Statement which returned the results.
+     * @param metaData
+     *            Metadata of the results.
+     * @param reread
+     *            Whether to read the schema from the metadata even if the cached one still matches, e.g. since it may predate a change of
+     *            precision or nullability.
+     * @return The schema of the results.
+     */
+    ResultSchema getResultSchema(Statement statement,
+            ResultSetMetaData metaData,
+            boolean reread) throws SQLException {
+        ResultSchema schema;
+        synchronized (this) {
+            schema = resultSchemas.get(statement);
+        }
+        if (reread || schema == null || !schema.matches(metaData)) {
+            schema = ResultSchema.of(metaData);
+            synchronized (this) {
+                resultSchemas.put(statement, schema);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Closes the statements in the cache. Statements released later are closed right away.
+     */
+    void close() {
+        List<PreparedStatement> statements;
+        synchronized (this) {
+            closed = true;
+            statements = new ArrayList<>(idle.values());
+            idle.clear();
+            resultSchemas.clear();
+            prepared.clear();
+        }
+        statements.forEach(this::closeStatement);
+    }
+
+    private void closeStatement(Statement statement) {
+        synchronized (this) {
+            prepared.remove(statement);
+        }
+        try {
+            statement.close();
+        }
+        catch (SQLException e) {
+            log.warn("StatementCache; Could not close a cached statement: {}", e.getMessage());
+        }
+    }
+}
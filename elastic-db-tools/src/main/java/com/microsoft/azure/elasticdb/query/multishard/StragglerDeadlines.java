@@ -0,0 +1,163 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardStragglerException;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.health.ShardLatencyTracker;
+
+/**
+ * Purpose: Decides when the shards still running a command are stragglers which should be left out of partial results. The deadline of a shard is
+ * a multiple of a percentile of its recent latencies, or of the latencies of the shards which finished in this execution if its history is too
+ * short. The shards still running are cut off together, once at least the percentile's share of the shards has finished and every shard still
+ * running has passed its deadline. Notes: This class is thread-safe.
+ */
+final class StragglerDeadlines {
+
+    /**
+     * Shortest deadline, so that shards are not cut off over the jitter of very fast commands.
+     */
+    static final long MIN_DEADLINE_MILLIS = 100;
+
+    private final ShardLatencyTracker latencyTracker;
+
+    private final double percentile;
+
+    private final double multiplier;
+
+    private final int shardCount;
+
+    /**
+     * Shards which neither finished nor were cut off.
+     */
+    private final Set<ShardLocation> pending = ConcurrentHashMap.newKeySet();
+
+    private final Map<ShardLocation, Long> startNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Latencies of the shards which completed in this execution.
+     */
+    private final List<Long> finishedLatencies = new ArrayList<>();
+
+    private final Map<ShardLocation, MultiShardStragglerException> omitted = new ConcurrentHashMap<>();
+
+    StragglerDeadlines(ShardLatencyTracker latencyTracker,
+            double percentile,
+            double multiplier,
+            Collection<ShardLocation> shards) {
+        this.latencyTracker = latencyTracker;
+        this.percentile = percentile;
+        this.multiplier = multiplier;
+        this.shardCount = shards.size();
+        this.pending.addAll(shards);
+    }
+
+    /**
+     * Records that the command started running on a shard.
+     */
+    void started(ShardLocation shard) {
+        startNanos.put(shard, System.nanoTime());
+    }
+
+    /**
+     * Records that the command on a shard finished, unless the shard was cut off first.
+     *
+     * @param shard
+     *            Shard of the command.
+     * @param succeeded
+     *            Whether the command completed, making its latency a sample for the shards without history.
+     * @return Whether the shard was still pending; if not, its results are left out.
+     */
+    boolean finished(ShardLocation shard,
+            boolean succeeded) {
+        if (!pending.remove(shard)) {
+            return false;
+        }
+        if (succeeded) {
+            synchronized (finishedLatencies) {
+                finishedLatencies.add(this.elapsedMillis(shard));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the time until the shards still running can be cut off.
+     *
+     * @return 0 if they can be cut off now, or <code>Long.MAX_VALUE</code> if too few shards finished, or a shard still pending has not started or
+     *         has no deadline.
+     */
+    long millisUntilCutOff() {
+        int finishedCount = shardCount - pending.size();
+        if (pending.isEmpty() || finishedCount == 0 || finishedCount < Math.floor(percentile * shardCount)) {
+            return Long.MAX_VALUE;
+        }
+        long wait = 0;
+        for (ShardLocation shard : pending) {
+            long deadline = this.deadlineMillis(shard);
+            if (!startNanos.containsKey(shard) || deadline < 0) {
+                return Long.MAX_VALUE;
+            }
+            wait = Math.max(wait, deadline - this.elapsedMillis(shard));
+        }
+        return wait;
+    }
+
+    /**
+     * Cuts off the shards still pending.
+     *
+     * @return Exceptions standing in for the results of the shards cut off, which did not finish in the meantime.
+     */
+    List<MultiShardStragglerException> cutOff() {
+        List<MultiShardStragglerException> exceptions = new ArrayList<>();
+        for (ShardLocation shard : new ArrayList<>(pending)) {
+            MultiShardStragglerException ex = new MultiShardStragglerException(shard, this.elapsedMillis(shard), this.deadlineMillis(shard));
+            omitted.put(shard, ex);
+            if (pending.remove(shard)) {
+                exceptions.add(ex);
+            }
+            else {
+                omitted.remove(shard);
+            }
+        }
+        return exceptions;
+    }
+
+    /**
+     * Gets the exception standing in for the results of a shard which was cut off.
+     */
+    MultiShardStragglerException getOmission(ShardLocation shard) {
+        return omitted.get(shard);
+    }
+
+    long elapsedMillis(ShardLocation shard) {
+        Long start = startNanos.get(shard);
+        return start == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long deadlineMillis(ShardLocation shard) {
+        long usual = latencyTracker.getPercentile(shard, percentile);
+        if (usual < 0) {
+            long[] latencies;
+            synchronized (finishedLatencies) {
+                latencies = finishedLatencies.stream().mapToLong(Long::longValue).toArray();
+            }
+            usual = ShardLatencyTracker.percentileOf(latencies, percentile);
+        }
+        return usual < 0 ? -1 : Math.max(MIN_DEADLINE_MILLIS, (long) Math.ceil(usual * multiplier));
+    }
+}
@@ -0,0 +1,414 @@
+package com.microsoft.azure.elasticdb.query.multishard;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Forward-only <see cref="MultiShardResultSet"/> which returns rows from whichever shard has them ready, instead of waiting for all shards to
+ * return their results. For every shard that returned a result set, a background reader copies its rows in pages into a bounded queue, so the time
+ * to the first row is that of the fastest shard and a slow consumer holds back readers rather than buffering whole shards in memory. Rows of
+ * different shards are interleaved page by page.
+ */
+public final class StreamingMultiShardResultSet extends ForwardOnlyMultiShardResultSet {
+
+    /**
+     * Interval at which a reader blocked on a full queue checks whether the result set was closed.
+     */
+    private static final long OFFER_INTERVAL_MILLIS = 100;
+
+    private final int pageSize;
+
+    private final int prefetchPages;
+
+    private final Executor readerExecutor;
+
+    /**
+     * Readers started for the shards, waited for when the result set is closed.
+     */
+    private final List<ShardReader> readers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Readers with at least one page queued, once per queued page.
+     */
+    private final BlockingQueue<ShardReader> ready = new LinkedBlockingQueue<>();
+
+    /**
+     * Released once the metadata of the first shard result set is known or no shard has a result set.
+     */
+    private final CountDownLatch metaDataAvailable = new CountDownLatch(1);
+
+    private volatile ResultSetMetaData metaData;
+
+    private volatile boolean closed;
+
+    /**
+     * Number of shards added, only read once the execution has completed.
+     */
+    private volatile int shardCount;
+
+    /**
+     * Number of shards of which the consumer has seen the end.
+     */
+    private int finishedShards;
+
+    /**
+     * Whether the consumer has seen that the execution has completed.
+     */
+    private boolean executionCompleted;
+
+    private Page currentPage;
+
+    /**
+     * Creates a streaming result set to which shards are added as they return their results.
+     *
+     * @param pageSize
+     *            Number of rows a reader copies from its shard at a time.
+     * @param prefetchPages
+     *            Number of pages a reader may queue ahead of the consumer.
+     * @param readerExecutor
+     *            Executor running the background readers.
+     */
+    StreamingMultiShardResultSet(int pageSize,
+            int prefetchPages,
+            Executor readerExecutor) {
+        super(new CopyOnWriteArrayList<>());
+        this.pageSize = pageSize;
+        this.prefetchPages = prefetchPages;
+        this.readerExecutor = readerExecutor;
+    }
+
+    /**
+     * Adds the results of a shard, starting a background reader if the shard returned a result set.
+     *
+     * @param result
+     *            Results of the shard.
+     */
+    void addShard(LabeledResultSet result) {
+        this.getResults().add(result);
+        shardCount++;
+
+        ShardReader reader = new ShardReader(result);
+        if (result.getResultSet() == null) {
+            reader.publish(Page.END);
+            return;
+        }
+
+        // Taken before the reader starts, since the execution may complete, releasing the callers of getMetaData, before any reader ran.
+        if (metaData == null) {
+            try {
+                metaData = result.getResultSet().getMetaData();
+                metaDataAvailable.countDown();
+            }
+            catch (SQLException e) {
+                // The reader tries again, failing the shard with the error.
+            }
+        }
+
+        // Registered before checking whether the result set was closed, so that close either waits for the reader or the reader is not started.
+        readers.add(reader);
+        if (closed) {
+            reader.stopped.countDown();
+            closeQuietly(result);
+            return;
+        }
+        try {
+            readerExecutor.execute(reader);
+        }
+        catch (RuntimeException e) {
+            reader.stopped.countDown();
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the execution as completed. Must be called after all shards were added.
+     *
+     * @param error
+     *            Error which failed the execution, or null if it succeeded.
+     */
+    void complete(Exception error) {
+        ShardReader marker = new ShardReader(null);
+        marker.publish(error == null ? Page.END : new Page(null, null, error));
+        metaDataAvailable.countDown();
+    }
+
+    @Override
+    protected boolean moveNext() throws SQLException {
+        while (true) {
+            if (currentPage != null) {
+                if (currentPage.rows.next()) {
+                    return true;
+                }
+                currentPage = null;
+            }
+
+            if (executionCompleted && finishedShards == shardCount) {
+                return false;
+            }
+
+            ShardReader reader;
+            try {
+                reader = ready.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for rows from the shards.", e);
+            }
+
+            Page page = reader.pages.poll();
+            if (page.error != null) {
+                throw page.error instanceof SQLException ? (SQLException) page.error
+                        : new SQLException(page.error.getMessage(), page.error);
+            }
+            if (page == Page.END) {
+                if (reader.source == null) {
+                    executionCompleted = true;
+                }
+                else {
+                    finishedShards++;
+                }
+                continue;
+            }
+            currentPage = page;
+        }
+    }
+
+    @Override
+    protected LabeledResultSet getCurrentRowSource() {
+        return currentPage == null ? null : currentPage.source;
+    }
+
+    @Override
+    protected ResultSet getCurrentRow() {
+        return currentPage == null ? null : currentPage.rows;
+    }
+
+    /**
+     * Gets the metadata of the results, waiting for the first shard to return its result set if no row has been read yet.
+     */
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        if (currentPage != null) {
+            return currentPage.rows.getMetaData();
+        }
+        try {
+            metaDataAvailable.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the shards to return results.", e);
+        }
+        return metaData;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    /**
+     * Stops the background readers and closes the results of all shards. Readers still copying rows have the statements of their shards
+     * cancelled, and the results are closed only once every reader has stopped, since a shard result set must not be used by two threads at once.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        currentPage = null;
+        ready.clear();
+        for (ShardReader reader : readers) {
+            if (reader.stopped.getCount() > 0) {
+                reader.cancel();
+            }
+        }
+        for (ShardReader reader : readers) {
+            Uninterruptibles.awaitUninterruptibly(reader.stopped);
+        }
+        ready.clear();
+        super.close();
+    }
+
+    private static void closeQuietly(LabeledResultSet result) {
+        try {
+            result.close();
+        }
+        catch (SQLException e) {
+            // The results of the shard are unusable already.
+        }
+    }
+
+    /**
+     * Rows copied from a shard, or the end or failure of a shard or of the execution.
+     */
+    private static final class Page {
+
+        private static final Page END = new Page(null, null, null);
+
+        private final LabeledResultSet source;
+
+        private final CachedRowSet rows;
+
+        private final Exception error;
+
+        Page(LabeledResultSet source,
+                CachedRowSet rows,
+                Exception error) {
+            this.source = source;
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Copies the rows of a shard into its queue of pages.
+     */
+    private final class ShardReader implements Runnable {
+
+        /**
+         * Results of the shard, null for the marker of the end of the execution.
+         */
+        private final LabeledResultSet source;
+
+        private final BlockingQueue<Page> pages;
+
+        /**
+         * Released once the reader stopped using the result set of the shard, or will not start.
+         */
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        private int rowsLeft;
+
+        private boolean exhausted;
+
+        ShardReader(LabeledResultSet source) {
+            this.source = source;
+            this.pages = new ArrayBlockingQueue<>(source == null ? 1 : prefetchPages);
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.read();
+            }
+            finally {
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Cancels the statement of the shard, so that a reader waiting for rows stops.
+         */
+        void cancel() {
+            try {
+                Statement statement = source.getStatement();
+                if (statement != null) {
+                    statement.cancel();
+                }
+            }
+            catch (SQLException e) {
+                // The reader stops once the page it is copying is complete.
+            }
+        }
+
+        private void read() {
+            try {
+                ResultSet resultSet = source.getResultSet();
+                if (metaData == null) {
+                    metaData = resultSet.getMetaData();
+                    metaDataAvailable.countDown();
+                }
+
+                RowSetFactory factory = RowSetProvider.newFactory();
+                ResultSet page = this.limitRows(resultSet);
+                while (!exhausted && !closed) {
+                    rowsLeft = pageSize;
+                    CachedRowSet rows = factory.createCachedRowSet();
+                    rows.populate(page);
+                    if (rows.size() > 0 && !this.publish(new Page(source, rows, null))) {
+                        return;
+                    }
+                }
+            }
+            catch (SQLException | RuntimeException e) {
+                this.publish(new Page(source, null, e));
+                return;
+            }
+            this.publish(Page.END);
+        }
+
+        /**
+         * Wraps the shard result set so that it ends after the rows left in the current page.
+         */
+        private ResultSet limitRows(ResultSet resultSet) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                if ("next".equals(method.getName()) && method.getParameterCount() == 0) {
+                    if (rowsLeft <= 0) {
+                        return false;
+                    }
+                    boolean hasRow = resultSet.next();
+                    if (hasRow) {
+                        rowsLeft--;
+                    }
+                    else {
+                        exhausted = true;
+                    }
+                    return hasRow;
+                }
+                try {
+                    return method.invoke(resultSet, args);
+                }
+                catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        /**
+         * Queues a page, waiting while the queue is full.
+         *
+         * @return Whether the page was queued, false if the result set was closed first.
+         */
+        private boolean publish(Page page) {
+            try {
+                while (!closed) {
+                    if (pages.offer(page, OFFER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        ready.add(this);
+                        return true;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+}
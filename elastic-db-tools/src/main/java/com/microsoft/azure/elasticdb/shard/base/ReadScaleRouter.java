@@ -0,0 +1,122 @@
+package com.microsoft.azure.elasticdb.shard.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.elasticdb.shard.health.CircuitState;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
+
+/**
+ * Routes read-intent connections of a shard to the replica endpoints configured for it. Replicas of a shard are used in turn. Shards without
+ * configured replicas are connected to at their own location; with ApplicationIntent=ReadOnly a Business Critical or Premium database then serves
+ * the connection from its built-in readable secondary.
+ */
+public final class ReadScaleRouter {
+
+    /**
+     * Replica endpoints keyed by the location of the shard they replicate.
+     */
+    private final Map<ShardLocation, ReplicaSet> replicas = new ConcurrentHashMap<>();
+
+    /**
+     * Configures the replica endpoints of a shard, replacing any endpoints configured before.
+     *
+     * @param shardLocation
+     *            Location of the shard as registered in the shard map.
+     * @param replicaLocations
+     *            Readable replica endpoints of the shard.
+     */
+    public void setReplicas(ShardLocation shardLocation,
+            List<ShardLocation> replicaLocations) {
+        Preconditions.checkNotNull(shardLocation, "shardLocation");
+        Preconditions.checkNotNull(replicaLocations, "replicaLocations");
+
+        if (replicaLocations.isEmpty()) {
+            replicas.remove(shardLocation);
+        }
+        else {
+            replicas.put(shardLocation, new ReplicaSet(replicaLocations));
+        }
+    }
+
+    /**
+     * Removes the replica endpoints of a shard.
+     *
+     * @param shardLocation
+     *            Location of the shard as registered in the shard map.
+     */
+    public void removeReplicas(ShardLocation shardLocation) {
+        replicas.remove(shardLocation);
+    }
+
+    /**
+     * Gets the replica endpoints configured for a shard.
+     *
+     * @param shardLocation
+     *            Location of the shard as registered in the shard map.
+     * @return Replica endpoints, empty if none are configured.
+     */
+    public List<ShardLocation> getReplicas(ShardLocation shardLocation) {
+        ReplicaSet set = replicas.get(shardLocation);
+        return set == null ? Collections.emptyList() : set.locations;
+    }
+
+    /**
+     * Picks the location to connect to for a read-intent connection to a shard. Replicas whose circuit is open in the given health tracker are
+     * passed over; if all of them are, the shard location itself is returned.
+     *
+     * @param shardLocation
+     *            Location of the shard as registered in the shard map.
+     * @param healthTracker
+     *            Tracker of shard location health, may be null.
+     * @return Location to connect to.
+     */
+    public ShardLocation route(ShardLocation shardLocation,
+            ShardHealthTracker healthTracker) {
+        ReplicaSet set = replicas.get(shardLocation);
+        if (set == null) {
+            return shardLocation;
+        }
+
+        int count = set.locations.size();
+        int start = set.next.getAndIncrement();
+        for (int i = 0; i < count; i++) {
+            ShardLocation candidate = set.locations.get(Math.floorMod(start + i, count));
+            if (healthTracker == null || healthTracker.getState(candidate) != CircuitState.Open) {
+                return candidate;
+            }
+        }
+
+        return shardLocation;
+    }
+
+    /**
+     * Replica endpoints of a single shard.
+     */
+    private static final class ReplicaSet {
+
+        private final List<ShardLocation> locations;
+
+        /**
+         * Position of the replica to use next.
+         */
+        private final AtomicInteger next = new AtomicInteger();
+
+        ReplicaSet(List<ShardLocation> locations) {
+            this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+        }
+    }
+}
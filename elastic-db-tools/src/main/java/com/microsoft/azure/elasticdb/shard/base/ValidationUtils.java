@@ -41,6 +41,20 @@ public final class ValidationUtils {
 
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    /**
+     * Context for marshalling validation requests. JAXBContext is thread safe and expensive to create, so it is built once.
+     */
+    private static final JAXBContext context = createContext();
+
+    private static JAXBContext createContext() {
+        try {
+            return JAXBContext.newInstance(StoreOperationInput.class, StoreShard.class, StoreShardMap.class);
+        }
+        catch (JAXBException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Performs validation that the local representation is as up-to-date as the representation on the backing data store.
      *
@@ -67,7 +81,6 @@ public final class ValidationUtils {
                 .prepareCall(String.format("{call %s(?,?)}", StoreOperationRequestBuilder.SP_VALIDATE_SHARD_MAPPING_LOCAL))) {
             SQLXML sqlxml = conn.createSQLXML();
 
-            JAXBContext context = JAXBContext.newInstance(StoreOperationInput.class, StoreShard.class, StoreShardMap.class);
             // Set the result value from SAX events.
             SAXResult sxResult = sqlxml.setResult(SAXResult.class);
             context.createMarshaller().marshal(jaxbElement, sxResult);
@@ -172,7 +185,6 @@ public final class ValidationUtils {
         try (CallableStatement cstmt = conn.prepareCall(String.format("{call %s(?,?)}", StoreOperationRequestBuilder.SP_VALIDATE_SHARD_LOCAL))) {
             SQLXML sqlxml = conn.createSQLXML();
 
-            JAXBContext context = JAXBContext.newInstance(StoreOperationInput.class, StoreShard.class, StoreShardMap.class);
             // Set the result value from SAX events.
             SAXResult sxResult = sqlxml.setResult(SAXResult.class);
             context.createMarshaller().marshal(jaxbElement, sxResult);
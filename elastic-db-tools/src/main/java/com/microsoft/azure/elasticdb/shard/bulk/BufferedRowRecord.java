@@ -0,0 +1,77 @@
+package com.microsoft.azure.elasticdb.shard.bulk;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkRecord;
+
+/**
+ * Bulk copy source reading a batch of buffered rows.
+ */
+final class BufferedRowRecord implements ISQLServerBulkRecord {
+
+    private final List<BulkLoadColumn> columns;
+
+    private final List<Object[]> rows;
+
+    private int index = -1;
+
+    BufferedRowRecord(List<BulkLoadColumn> columns,
+            List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    @Override
+    public Set<Integer> getColumnOrdinals() {
+        Set<Integer> ordinals = new LinkedHashSet<>();
+        for (int i = 1; i <= columns.size(); i++) {
+            ordinals.add(i);
+        }
+        return ordinals;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns.get(column - 1).getName();
+    }
+
+    @Override
+    public int getColumnType(int column) {
+        return columns.get(column - 1).getSqlType();
+    }
+
+    @Override
+    public int getPrecision(int column) {
+        return columns.get(column - 1).getPrecision();
+    }
+
+    @Override
+    public int getScale(int column) {
+        return columns.get(column - 1).getScale();
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) {
+        return false;
+    }
+
+    @Override
+    public Object[] getRowData() {
+        return rows.get(index);
+    }
+
+    @Override
+    public boolean next() {
+        return ++index < rows.size();
+    }
+}
@@ -0,0 +1,84 @@
+package com.microsoft.azure.elasticdb.shard.bulk;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Column of the destination table of a <see cref="ShardedBulkLoader"/>, together with the type of the values given for it.
+ */
+public final class BulkLoadColumn {
+
+    private final String name;
+
+    private final int sqlType;
+
+    private final int precision;
+
+    private final int scale;
+
+    /**
+     * Constructs a column whose type has no length, precision or scale, e.g. <code>Types.INTEGER</code> or <code>Types.TIMESTAMP</code>.
+     *
+     * @param name
+     *            Name of the column in the destination table.
+     * @param sqlType
+     *            SQL Type of the values.
+     */
+    public BulkLoadColumn(String name,
+            int sqlType) {
+        this(name, sqlType, 0, 0);
+    }
+
+    /**
+     * Constructs a column.
+     *
+     * @param name
+     *            Name of the column in the destination table.
+     * @param sqlType
+     *            SQL Type of the values.
+     * @param precision
+     *            Maximum length of character and binary values, or precision of decimal values.
+     * @param scale
+     *            Scale of decimal values.
+     */
+    public BulkLoadColumn(String name,
+            int sqlType,
+            int precision,
+            int scale) {
+        if (StringUtilsLocal.isNullOrEmpty(name)) {
+            throw new IllegalArgumentException("name");
+        }
+        this.name = name;
+        this.sqlType = sqlType;
+        this.precision = precision;
+        this.scale = scale;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
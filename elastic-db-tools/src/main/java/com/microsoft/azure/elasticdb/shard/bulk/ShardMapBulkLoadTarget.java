@@ -0,0 +1,93 @@
+package com.microsoft.azure.elasticdb.shard.bulk;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.base.IShardProvider;
+import com.microsoft.azure.elasticdb.shard.base.LookupOptions;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.map.ShardMap;
+import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+/**
+ * Routes rows by the mappings of a range or list shard map and writes them with SQL Server bulk copy. The mappings of a batch are validated on
+ * its connection, with successful validations cached by the shard map manager, so a batch routed by a mapping which was split, merged, moved or
+ * removed since it was cached fails before any row is written.
+ *
+ * @param <KeyT>
+ *            Type of the sharding key.
+ */
+final class ShardMapBulkLoadTarget<KeyT> implements ShardedBulkLoadTarget<KeyT, IShardProvider> {
+
+    private final ShardMap shardMap;
+
+    /**
+     * Looks up the mapping holding a key with the given lookup options.
+     */
+    private final BiFunction<KeyT, LookupOptions, IShardProvider> lookup;
+
+    private final String connectionString;
+
+    private final String destinationTableName;
+
+    private final List<BulkLoadColumn> columns;
+
+    private final ShardedBulkLoaderOptions options;
+
+    ShardMapBulkLoadTarget(ShardMap shardMap,
+            BiFunction<KeyT, LookupOptions, IShardProvider> lookup,
+            String connectionString,
+            String destinationTableName,
+            List<BulkLoadColumn> columns,
+            ShardedBulkLoaderOptions options) {
+        this.shardMap = shardMap;
+        this.lookup = lookup;
+        this.connectionString = connectionString;
+        this.destinationTableName = destinationTableName;
+        this.columns = columns;
+        this.options = options;
+    }
+
+    @Override
+    public IShardProvider lookupMapping(KeyT key,
+            boolean refresh) {
+        return lookup.apply(key, refresh ? LookupOptions.LOOKUP_IN_STORE
+                : LookupOptions.forValue(LookupOptions.LOOKUP_IN_CACHE.getValue() | LookupOptions.LOOKUP_IN_STORE.getValue()));
+    }
+
+    @Override
+    public ShardLocation getLocation(IShardProvider mapping) {
+        return mapping.getShardInfo().getLocation();
+    }
+
+    @Override
+    public void write(ShardLocation location,
+            List<IShardProvider> mappings,
+            List<Object[]> rows) throws SQLException {
+        try (Connection connection = shardMap.openConnection(mappings, connectionString, ConnectionOptions.ValidateCached);
+                SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection.unwrap(SQLServerConnection.class))) {
+            SQLServerBulkCopyOptions bulkCopyOptions = new SQLServerBulkCopyOptions();
+            bulkCopyOptions.setBulkCopyTimeout(options.getBulkCopyTimeoutSeconds());
+            bulkCopyOptions.setTableLock(options.isTableLock());
+            bulkCopy.setBulkCopyOptions(bulkCopyOptions);
+            bulkCopy.setDestinationTableName(destinationTableName);
+            for (int i = 0; i < columns.size(); i++) {
+                bulkCopy.addColumnMapping(i + 1, columns.get(i).getName());
+            }
+            bulkCopy.writeToServer(new BufferedRowRecord(columns, rows));
+        }
+    }
+}
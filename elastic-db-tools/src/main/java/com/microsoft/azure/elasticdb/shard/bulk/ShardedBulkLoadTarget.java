@@ -0,0 +1,68 @@
+package com.microsoft.azure.elasticdb.shard.bulk;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
+
+/**
+ * Routes the rows of a <see cref="ShardedBulkLoader"/> to shards and writes them. The loaders created for range and list shard maps look
+ * mappings up through the mapping cache of the shard map, and write each batch with SQL Server bulk copy on a connection on which every mapping
+ * of the batch is validated. Other implementations can be passed to the loader to write rows elsewhere.
+ *
+ * @param <KeyT>
+ *            Type of the sharding key.
+ * @param <MappingT>
+ *            Type of the mappings rows are routed by; mappings are told apart by equals.
+ */
+public interface ShardedBulkLoadTarget<KeyT, MappingT> {
+
+    /**
+     * Looks up the mapping holding a key.
+     *
+     * @param key
+     *            Sharding key of a row.
+     * @param refresh
+     *            Whether the mapping has to be looked up in the shard map manager, because a batch routed by a cached mapping found it stale.
+     * @return The mapping.
+     */
+    MappingT lookupMapping(KeyT key,
+            boolean refresh);
+
+    /**
+     * Gets the location of the shard of a mapping.
+     *
+     * @param mapping
+     *            Mapping returned by lookupMapping.
+     * @return Location of the shard.
+     */
+    ShardLocation getLocation(MappingT mapping);
+
+    /**
+     * Writes a batch of rows to a shard, after making sure the rows still belong to it.
+     *
+     * @param location
+     *            Location of the shard.
+     * @param mappings
+     *            Distinct mappings the rows were routed by, all on the shard.
+     * @param rows
+     *            Rows, each with one value per column.
+     * @throws ShardManagementException
+     *             If a mapping no longer routes its keys to the shard; the loader then looks the rows up again and writes them where they
+     *             belong now.
+     * @throws SQLException
+     *             If the rows could not be written.
+     */
+    void write(ShardLocation location,
+            List<MappingT> mappings,
+            List<Object[]> rows) throws SQLException;
+}
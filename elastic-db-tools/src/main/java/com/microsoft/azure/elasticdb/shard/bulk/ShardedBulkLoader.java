@@ -0,0 +1,491 @@
+package com.microsoft.azure.elasticdb.shard.bulk;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.microsoft.azure.elasticdb.shard.base.IShardProvider;
+import com.microsoft.azure.elasticdb.shard.base.LookupOptions;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
+import com.microsoft.azure.elasticdb.shard.map.ShardMap;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
+import com.microsoft.azure.elasticdb.shard.utils.ExceptionUtils;
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Loads rows into a table which is sharded by a shard map. Each row is routed to its shard through the mapping cache of the shard map and
+ * buffered per shard; a shard's buffer is written with SQL Server bulk copy once it holds a batch of rows or its oldest row has waited for the
+ * maximum batch delay. Batches of different shards are written in parallel on connections opened through the shard map manager, and adding rows
+ * blocks while the maximum number of rows is buffered or being written, so a producer faster than the shards is held back instead of filling
+ * memory. Purpose: Replaces single-row inserts over data dependent routing connections for high-volume ingestion. Notes: Rows are routed by the
+ * mappings at the time they are added, and every mapping of a batch is validated on the connection the batch is written on. When a mapping
+ * changed before its rows were written, e.g. during a split or merge, the rows of the batch are looked up again in the shard map manager and
+ * written to the shards holding them now. A batch that fails otherwise is not retried; the failure is thrown by the next call to add, flush or
+ * close. This class is thread-safe.
+ *
+ * @param <KeyT>
+ *            Type of the sharding key.
+ */
+public final class ShardedBulkLoader<KeyT> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Routes the rows to mappings and writes the batches.
+     */
+    private final ShardedBulkLoadTarget<KeyT, Object> target;
+
+    private final List<BulkLoadColumn> columns;
+
+    private final ShardedBulkLoaderOptions options;
+
+    /**
+     * Writes the batches and checks the buffers for rows which waited too long.
+     */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Permits for rows buffered or being written.
+     */
+    private final Semaphore bufferPermits;
+
+    /**
+     * Buffers of the shards with rows not yet written, guarded by this.
+     */
+    private final Map<ShardLocation, ShardBuffer> buffers = new HashMap<>();
+
+    /**
+     * Number of batches being written, guarded by this.
+     */
+    private int pendingWrites;
+
+    /**
+     * First failure of a batch, guarded by this.
+     */
+    private SQLException failure;
+
+    private boolean closed;
+
+    private final AtomicLong loadedRowCount = new AtomicLong();
+
+    /**
+     * Creates a loader for a table sharded by a range shard map.
+     *
+     * @param shardMap
+     *            Shard map of the table.
+     * @param connectionString
+     *            Connection string with the credentials used on all shards, without server and database.
+     * @param destinationTableName
+     *            Name of the table on the shards.
+     * @param columns
+     *            Columns of the table the rows have values for, in the order of the values.
+     * @param options
+     *            Options controlling buffering and writing.
+     */
+    public ShardedBulkLoader(RangeShardMap<KeyT> shardMap,
+            String connectionString,
+            String destinationTableName,
+            List<BulkLoadColumn> columns,
+            ShardedBulkLoaderOptions options) {
+        this(shardMapTarget(shardMap, (key, lookupOptions) -> shardMap.getMappingForKey(key, lookupOptions), connectionString, destinationTableName,
+                columns, options), columns, options);
+    }
+
+    /**
+     * Creates a loader for a table sharded by a list shard map.
+     *
+     * @param shardMap
+     *            Shard map of the table.
+     * @param connectionString
+     *            Connection string with the credentials used on all shards, without server and database.
+     * @param destinationTableName
+     *            Name of the table on the shards.
+     * @param columns
+     *            Columns of the table the rows have values for, in the order of the values.
+     * @param options
+     *            Options controlling buffering and writing.
+     */
+    public ShardedBulkLoader(ListShardMap<KeyT> shardMap,
+            String connectionString,
+            String destinationTableName,
+            List<BulkLoadColumn> columns,
+            ShardedBulkLoaderOptions options) {
+        this(shardMapTarget(shardMap, (key, lookupOptions) -> shardMap.getMappingForKey(key, lookupOptions), connectionString, destinationTableName,
+                columns, options), columns, options);
+    }
+
+    /**
+     * Creates a loader which routes and writes rows through the given target.
+     *
+     * @param target
+     *            Routes the rows to mappings and writes the batches.
+     * @param columns
+     *            Columns of the table the rows have values for, in the order of the values.
+     * @param options
+     *            Options controlling buffering and writing.
+     */
+    @SuppressWarnings("unchecked")
+    public <MappingT> ShardedBulkLoader(ShardedBulkLoadTarget<KeyT, MappingT> target,
+            List<BulkLoadColumn> columns,
+            ShardedBulkLoaderOptions options) {
+        ExceptionUtils.disallowNullArgument(target, "target");
+        if (columns == null || columns.isEmpty()) {
+            throw new IllegalArgumentException("columns");
+        }
+        ExceptionUtils.disallowNullArgument(options, "options");
+        if (options.getMaxBufferedRows() < options.getMaxBatchRows()) {
+            throw new IllegalArgumentException("maxBufferedRows must be at least maxBatchRows");
+        }
+
+        this.target = (ShardedBulkLoadTarget<KeyT, Object>) target;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.options = options;
+        this.bufferPermits = new Semaphore(options.getMaxBufferedRows());
+        this.executor = new ScheduledThreadPoolExecutor(options.getMaxParallelWrites(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("elasticdb-bulkload-%d").build());
+        long checkInterval = Math.max(1, options.getMaxBatchDelayMillis() / 4);
+        this.executor.scheduleWithFixedDelay(this::writeExpiredBuffers, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private static <KeyT> ShardedBulkLoadTarget<KeyT, IShardProvider> shardMapTarget(ShardMap shardMap,
+            BiFunction<KeyT, LookupOptions, IShardProvider> lookup,
+            String connectionString,
+            String destinationTableName,
+            List<BulkLoadColumn> columns,
+            ShardedBulkLoaderOptions options) {
+        ExceptionUtils.disallowNullArgument(shardMap, "shardMap");
+        ExceptionUtils.disallowNullArgument(connectionString, "connectionString");
+        if (StringUtilsLocal.isNullOrEmpty(destinationTableName)) {
+            throw new IllegalArgumentException("destinationTableName");
+        }
+        return new ShardMapBulkLoadTarget<>(shardMap, lookup, connectionString, destinationTableName, columns, options);
+    }
+
+    /**
+     * Gets the columns of the table the rows have values for.
+     */
+    public List<BulkLoadColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the number of rows written to the shards so far.
+     */
+    public long getLoadedRowCount() {
+        return loadedRowCount.get();
+    }
+
+    /**
+     * Adds a row, blocking while the maximum number of rows is buffered.
+     *
+     * @param key
+     *            Sharding key of the row.
+     * @param values
+     *            Values of the row, one per column.
+     * @throws SQLException
+     *             If a batch failed to be written, or the thread was interrupted while waiting for buffer space.
+     */
+    public void add(KeyT key,
+            Object... values) throws SQLException {
+        if (values == null || values.length != columns.size()) {
+            throw new IllegalArgumentException(StringUtilsLocal.formatInvariant("A row must have %1$s values.", columns.size()));
+        }
+        Object mapping = target.lookupMapping(key, false);
+        ShardLocation location = target.getLocation(mapping);
+
+        synchronized (this) {
+            throwIfFailedOrClosed();
+        }
+        try {
+            bufferPermits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for rows to be written.", e);
+        }
+
+        synchronized (this) {
+            if (closed || failure != null) {
+                bufferPermits.release();
+                throwIfFailedOrClosed();
+            }
+            ShardBuffer buffer = buffers.computeIfAbsent(location, ShardBuffer::new);
+            buffer.add(key, mapping, values);
+            if (buffer.batch.size() >= options.getMaxBatchRows()) {
+                write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Adds rows, blocking while the maximum number of rows is buffered.
+     *
+     * @param rows
+     *            Rows, each with one value per column.
+     * @param keySelector
+     *            Gets the sharding key of a row.
+     * @throws SQLException
+     *             If a batch failed to be written, or the thread was interrupted while waiting for buffer space.
+     */
+    public void addAll(Iterator<Object[]> rows,
+            Function<Object[], KeyT> keySelector) throws SQLException {
+        ExceptionUtils.disallowNullArgument(rows, "rows");
+        ExceptionUtils.disallowNullArgument(keySelector, "keySelector");
+        while (rows.hasNext()) {
+            Object[] row = rows.next();
+            this.add(keySelector.apply(row), row);
+        }
+    }
+
+    /**
+     * Writes all buffered rows and waits until they are written.
+     *
+     * @throws SQLException
+     *             If a batch failed to be written.
+     */
+    public void flush() throws SQLException {
+        synchronized (this) {
+            throwIfFailedOrClosed();
+            buffers.values().forEach(this::write);
+            waitForWrites();
+            throwIfFailedOrClosed();
+        }
+    }
+
+    /**
+     * Writes all buffered rows, waits until they are written and releases the threads of the loader.
+     *
+     * @throws SQLException
+     *             If a batch failed to be written.
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException error;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (failure == null) {
+                buffers.values().forEach(this::write);
+            }
+            closed = true;
+            waitForWrites();
+            error = failure;
+        }
+        executor.shutdown();
+        log.info("ShardedBulkLoader; Closed; Loaded Rows: {}", loadedRowCount.get());
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void throwIfFailedOrClosed() throws SQLException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IllegalStateException("The bulk loader is closed.");
+        }
+    }
+
+    private void waitForWrites() throws SQLException {
+        try {
+            while (pendingWrites > 0) {
+                this.wait();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for rows to be written.", e);
+        }
+    }
+
+    /**
+     * Writes the buffers whose oldest row has waited for the maximum batch delay.
+     */
+    private synchronized void writeExpiredBuffers() {
+        if (closed || failure != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long maxDelay = TimeUnit.MILLISECONDS.toNanos(options.getMaxBatchDelayMillis());
+        for (ShardBuffer buffer : buffers.values()) {
+            if (buffer.batch.size() > 0 && now - buffer.firstRowNanos >= maxDelay) {
+                write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Starts writing the rows of a buffer in the background. Must be called while holding the lock of the loader.
+     */
+    private void write(ShardBuffer buffer) {
+        if (buffer.batch.size() == 0) {
+            return;
+        }
+        Batch batch = buffer.batch;
+        buffer.batch = new Batch();
+        pendingWrites++;
+        executor.execute(() -> writeBatch(buffer.location, batch));
+    }
+
+    private void writeBatch(ShardLocation location,
+            Batch batch) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int rerouted = 0;
+        try {
+            target.write(location, batch.distinctMappings(), batch.rows);
+
+            loadedRowCount.addAndGet(batch.size());
+            log.info("ShardedBulkLoader; Wrote batch; Shard: {}; Rows: {}; Duration: {}", location, batch.size(),
+                    stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
+        catch (ShardManagementException e) {
+            rerouted = this.reroute(location, batch, e);
+        }
+        catch (SQLException | RuntimeException e) {
+            this.fail(location, batch.size(), e);
+        }
+        finally {
+            bufferPermits.release(batch.size() - rerouted);
+            synchronized (this) {
+                pendingWrites--;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Looks the rows of a batch with a stale mapping up again in the shard map manager and writes them to the shards holding them now. The batch
+     * fails instead if none of its rows is routed differently, e.g. because a mapping is offline.
+     *
+     * @return Number of rows buffered again, which keep their buffer permits.
+     */
+    private int reroute(ShardLocation location,
+            Batch batch,
+            ShardManagementException error) {
+        List<Object> mappings = new ArrayList<>(batch.size());
+        boolean changed = false;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Object mapping = target.lookupMapping(batch.keys.get(i), true);
+                changed |= !mapping.equals(batch.mappings.get(i)) || !target.getLocation(mapping).equals(location);
+                mappings.add(mapping);
+            }
+        }
+        catch (RuntimeException e) {
+            this.fail(location, batch.size(), e);
+            return 0;
+        }
+        if (!changed) {
+            this.fail(location, batch.size(), error);
+            return 0;
+        }
+
+        log.info("ShardedBulkLoader; Routing batch again; Shard: {}; Rows: {}; Error: {}", location, batch.size(), error.getMessage());
+        synchronized (this) {
+            if (failure != null) {
+                return 0;
+            }
+            Set<ShardBuffer> rebuffered = new LinkedHashSet<>();
+            for (int i = 0; i < batch.size(); i++) {
+                ShardBuffer buffer = buffers.computeIfAbsent(target.getLocation(mappings.get(i)), ShardBuffer::new);
+                buffer.add(batch.keys.get(i), mappings.get(i), batch.rows.get(i));
+                rebuffered.add(buffer);
+            }
+            rebuffered.forEach(this::write);
+        }
+        return batch.size();
+    }
+
+    private void fail(ShardLocation location,
+            int rowCount,
+            Exception e) {
+        log.warn("ShardedBulkLoader; Could not write batch; Shard: {}; Rows: {}; Error: {}", location, rowCount, e.getMessage());
+        synchronized (this) {
+            if (failure == null) {
+                failure = new SQLException(StringUtilsLocal.formatInvariant("Could not bulk load %1$s rows on shard %2$s. %3$s", rowCount, location,
+                        e.getMessage()), e);
+            }
+        }
+    }
+
+    /**
+     * Rows of a shard not yet written.
+     */
+    private final class ShardBuffer {
+
+        private final ShardLocation location;
+
+        private Batch batch = new Batch();
+
+        /**
+         * Time the oldest row of the buffer was added.
+         */
+        private long firstRowNanos;
+
+        ShardBuffer(ShardLocation location) {
+            this.location = location;
+        }
+
+        void add(KeyT key,
+                Object mapping,
+                Object[] values) {
+            if (batch.size() == 0) {
+                firstRowNanos = System.nanoTime();
+            }
+            batch.keys.add(key);
+            batch.mappings.add(mapping);
+            batch.rows.add(values);
+        }
+    }
+
+    /**
+     * Rows written together, with their keys and the mappings they were routed by.
+     */
+    private final class Batch {
+
+        private final List<KeyT> keys = new ArrayList<>();
+
+        private final List<Object> mappings = new ArrayList<>();
+
+        private final List<Object[]> rows = new ArrayList<>();
+
+        int size() {
+            return rows.size();
+        }
+
+        List<Object> distinctMappings() {
+            return new ArrayList<>(new LinkedHashSet<>(mappings));
+        }
+    }
+}
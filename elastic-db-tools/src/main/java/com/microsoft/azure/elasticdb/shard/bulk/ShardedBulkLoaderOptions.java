@@ -0,0 +1,154 @@
+package com.microsoft.azure.elasticdb.shard.bulk;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Options controlling how a <see cref="ShardedBulkLoader"/> buffers rows and writes them to the shards.
+ */
+public final class ShardedBulkLoaderOptions {
+
+    /**
+     * Default number of rows of a shard written at once.
+     */
+    public static final int DEFAULT_MAX_BATCH_ROWS = 10000;
+
+    /**
+     * Default time after which the rows buffered for a shard are written even if there are fewer than a batch.
+     */
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 1000;
+
+    /**
+     * Default number of rows buffered or being written across all shards before adding rows blocks.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_ROWS = 100000;
+
+    /**
+     * Default number of batches written at once.
+     */
+    public static final int DEFAULT_MAX_PARALLEL_WRITES = 8;
+
+    /**
+     * Default time in seconds a batch may take to be written.
+     */
+    public static final int DEFAULT_BULK_COPY_TIMEOUT_SECONDS = 60;
+
+    private int maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+
+    private long maxBatchDelayMillis = DEFAULT_MAX_BATCH_DELAY_MILLIS;
+
+    private int maxBufferedRows = DEFAULT_MAX_BUFFERED_ROWS;
+
+    private int maxParallelWrites = DEFAULT_MAX_PARALLEL_WRITES;
+
+    private int bulkCopyTimeoutSeconds = DEFAULT_BULK_COPY_TIMEOUT_SECONDS;
+
+    private boolean tableLock;
+
+    /**
+     * Gets the number of rows of a shard written at once.
+     */
+    public int getMaxBatchRows() {
+        return maxBatchRows;
+    }
+
+    /**
+     * Sets the number of rows of a shard written at once. A shard's rows are written as soon as this many are buffered.
+     */
+    public void setMaxBatchRows(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("maxBatchRows must be positive");
+        }
+        maxBatchRows = value;
+    }
+
+    /**
+     * Gets the time after which the rows buffered for a shard are written even if there are fewer than a batch.
+     */
+    public long getMaxBatchDelayMillis() {
+        return maxBatchDelayMillis;
+    }
+
+    /**
+     * Sets the time after which the rows buffered for a shard are written even if there are fewer than a batch, which bounds how long a row
+     * waits on a shard that receives few rows.
+     */
+    public void setMaxBatchDelayMillis(long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("maxBatchDelayMillis must be positive");
+        }
+        maxBatchDelayMillis = value;
+    }
+
+    /**
+     * Gets the number of rows buffered or being written across all shards before adding rows blocks.
+     */
+    public int getMaxBufferedRows() {
+        return maxBufferedRows;
+    }
+
+    /**
+     * Sets the number of rows buffered or being written across all shards before adding rows blocks. This bounds the memory held by the loader
+     * when rows are added faster than the shards take them. It must be at least the number of rows of a batch.
+     */
+    public void setMaxBufferedRows(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("maxBufferedRows must be positive");
+        }
+        maxBufferedRows = value;
+    }
+
+    /**
+     * Gets the number of batches written at once.
+     */
+    public int getMaxParallelWrites() {
+        return maxParallelWrites;
+    }
+
+    /**
+     * Sets the number of batches written at once, each on its own connection.
+     */
+    public void setMaxParallelWrites(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("maxParallelWrites must be positive");
+        }
+        maxParallelWrites = value;
+    }
+
+    /**
+     * Gets the time in seconds a batch may take to be written, 0 for no limit.
+     */
+    public int getBulkCopyTimeoutSeconds() {
+        return bulkCopyTimeoutSeconds;
+    }
+
+    /**
+     * Sets the time in seconds a batch may take to be written, 0 for no limit.
+     */
+    public void setBulkCopyTimeoutSeconds(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("bulkCopyTimeoutSeconds must not be negative");
+        }
+        bulkCopyTimeoutSeconds = value;
+    }
+
+    /**
+     * Gets whether a batch takes a table lock on the destination table.
+     */
+    public boolean isTableLock() {
+        return tableLock;
+    }
+
+    /**
+     * Sets whether a batch takes a table lock on the destination table instead of row locks, which speeds up loading into a table nobody else
+     * writes to.
+     */
+    public void setTableLock(boolean value) {
+        tableLock = value;
+    }
+}
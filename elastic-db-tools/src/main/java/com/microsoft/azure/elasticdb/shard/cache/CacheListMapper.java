@@ -77,6 +77,8 @@ public class CacheListMapper extends CacheMapper {
 
         // Add the entry to lookup table by Key.
         mappingsByKey.put(key, cm);
+
+        this.invalidatePrimitiveIndex();
     }
 
     /**
@@ -93,6 +95,7 @@ public class CacheListMapper extends CacheMapper {
         // Remove existing entry.
         if (mappingsByKey.containsKey(key)) {
             mappingsByKey.remove(key);
+            this.invalidatePrimitiveIndex();
         }
     }
 
@@ -150,5 +153,16 @@ public class CacheListMapper extends CacheMapper {
     @Override
     protected void clear() {
         mappingsByKey.clear();
+        this.invalidatePrimitiveIndex();
+    }
+
+    /**
+     * Builds the primitive snapshot of the point mappings currently cached.
+     *
+     * @return Snapshot of the mappings.
+     */
+    @Override
+    protected PrimitiveKeyIndex buildPrimitiveIndex() {
+        return PrimitiveKeyIndex.forPoints(mappingsByKey);
     }
 }
@@ -26,6 +26,11 @@ public abstract class CacheMapper {
      */
     private ShardKeyType keyType;
 
+    /**
+     * Primitive snapshot of the mappings for Int32 and Int64 keys; rebuilt on first lookup after the mappings change.
+     */
+    private volatile PrimitiveKeyIndex primitiveIndex;
+
     /**
      * Constructs the mapper, notes the key type for lookups.
      *
@@ -89,6 +94,48 @@ public abstract class CacheMapper {
      */
     public abstract ICacheStoreMapping lookupByKey(ShardKey key);
 
+    /**
+     * Looks up a mapping by an Int32 or Int64 key value without boxing it. The lookup allocates nothing once the primitive snapshot of the
+     * mappings is built.
+     *
+     * @param key
+     *            Key value.
+     * @return Mapping object which has the key value, or null if there is none or the key type of the mapper is not Int32 or Int64.
+     */
+    public final ICacheStoreMapping lookupByKey(long key) {
+        if (keyType == ShardKeyType.Int64 || (keyType == ShardKeyType.Int32 && key >= Integer.MIN_VALUE && key <= Integer.MAX_VALUE)) {
+            PrimitiveKeyIndex index = primitiveIndex;
+            if (index == null) {
+                synchronized (this) {
+                    index = primitiveIndex;
+                    if (index == null) {
+                        index = this.buildPrimitiveIndex();
+                        primitiveIndex = index;
+                    }
+                }
+            }
+            return index.find(key);
+        }
+        return null;
+    }
+
+    /**
+     * Builds the primitive snapshot of the mappings currently cached.
+     *
+     * @return Snapshot of the mappings.
+     */
+    protected abstract PrimitiveKeyIndex buildPrimitiveIndex();
+
+    /**
+     * Discards the primitive snapshot of the mappings. Must be called after every change to the mappings.
+     */
+    protected final void invalidatePrimitiveIndex() {
+        // Taking the lock orders the discard after any snapshot being built concurrently with the change.
+        synchronized (this) {
+            primitiveIndex = null;
+        }
+    }
+
     /**
      * Looks up a mapping by Range.
      *
@@ -79,6 +79,8 @@ public class CacheRangeMapper extends CacheMapper {
 
         // Add the entry to lookup table by Range.
         mappingsByRange.put(range, cm);
+
+        this.invalidatePrimitiveIndex();
     }
 
     /**
@@ -133,6 +135,8 @@ public class CacheRangeMapper extends CacheMapper {
                     mappingsByRange.remove(rangeToRemove);
                 }
             }
+
+            this.invalidatePrimitiveIndex();
         }
     }
 
@@ -218,6 +222,17 @@ public class CacheRangeMapper extends CacheMapper {
     @Override
     protected void clear() {
         mappingsByRange.clear();
+        this.invalidatePrimitiveIndex();
+    }
+
+    /**
+     * Builds the primitive snapshot of the range mappings currently cached.
+     *
+     * @return Snapshot of the mappings.
+     */
+    @Override
+    protected PrimitiveKeyIndex buildPrimitiveIndex() {
+        return PrimitiveKeyIndex.forRanges(mappingsByRange);
     }
 
     /**
@@ -123,6 +123,32 @@ public class CacheStore implements ICacheStore {
         log.info("Cache Add/Update mapping complete. Mapping Id: {}", mapping.getId());
     }
 
+    /**
+     * Invoked for refreshing a batch of mappings in cache from store. The containing shard map is resolved once for the whole batch.
+     *
+     * @param mappings
+     *            Storage representation of mappings.
+     * @param policy
+     *            Policy to use for preexisting cache entries during update.
+     */
+    public void addOrUpdateMappings(List<StoreMapping> mappings,
+            CacheStoreMappingUpdatePolicy policy) {
+        if (mappings == null || mappings.isEmpty()) {
+            return;
+        }
+        CacheShardMap csm = shardMapsById.get(mappings.get(0).getShardMapId());
+        if (csm == null) {
+            return;
+        }
+        CacheMapper mapper = csm.getMapper();
+        for (StoreMapping mapping : mappings) {
+            assert mapping.getShardMapId().equals(csm.getStoreShardMap().getId());
+            mapper.addOrUpdate(mapping, policy);
+        }
+
+        log.info("Cache Add/Update of {} mappings complete.", mappings.size());
+    }
+
     /**
      * Invoked for deleting mapping in cache because it no longer exists in store.
      *
@@ -158,6 +184,25 @@ public class CacheStore implements ICacheStore {
         return csm.getMapper().lookupByKey(key);
     }
 
+    /**
+     * Looks up a given Int32 or Int64 key value in given shard map without boxing it.
+     *
+     * @param shardMap
+     *            Storage representation of shard map.
+     * @param key
+     *            Key value.
+     * @return Mapping corresponding to <paramref name="key"/> or null.
+     */
+    public ICacheStoreMapping lookupMappingByKey(StoreShardMap shardMap,
+            long key) {
+        CacheShardMap csm = shardMapsById.get(shardMap.getId());
+        if (csm == null) {
+            return null;
+        }
+
+        return csm.getMapper().lookupByKey(key);
+    }
+
     /**
      * Looks up a given range in given shard map.
      *
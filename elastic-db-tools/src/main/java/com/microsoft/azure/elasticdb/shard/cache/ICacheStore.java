@@ -56,6 +56,17 @@ public interface ICacheStore {
     void addOrUpdateMapping(StoreMapping mapping,
             CacheStoreMappingUpdatePolicy policy);
 
+    /**
+     * Invoked for refreshing a batch of mappings in cache from store.
+     *
+     * @param mappings
+     *            Storage representation of mappings.
+     * @param policy
+     *            Policy to use for preexisting cache entries during update.
+     */
+    void addOrUpdateMappings(List<StoreMapping> mappings,
+            CacheStoreMappingUpdatePolicy policy);
+
     /**
      * Invoked for deleting mapping in cache because it no longer exists in store.
      *
@@ -76,6 +87,18 @@ public interface ICacheStore {
     ICacheStoreMapping lookupMappingByKey(StoreShardMap shardMap,
             ShardKey key);
 
+    /**
+     * Looks up a given Int32 or Int64 key value in given shard map without boxing it.
+     *
+     * @param shardMap
+     *            Storage representation of shard map.
+     * @param key
+     *            Key value.
+     * @return Mapping corresponding to <paramref name="key"/> or null.
+     */
+    ICacheStoreMapping lookupMappingByKey(StoreShardMap shardMap,
+            long key);
+
     /**
      * Looks up a given range in given shard map.
      *
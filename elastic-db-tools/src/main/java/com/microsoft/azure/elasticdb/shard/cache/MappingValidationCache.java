@@ -0,0 +1,135 @@
+package com.microsoft.azure.elasticdb.shard.cache;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.microsoft.azure.elasticdb.shard.store.StoreMapping;
+
+/**
+ * Remembers successful mapping validations for a bounded time window, so that connections opened with
+ * {@link com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions#ValidateCached} to the same shard can skip the validation round trip. An
+ * entry is keyed by the connection string used for the shard, the mapping id and the shard version; any change of mapping or shard version
+ * therefore misses the cache and is validated against the shard.
+ */
+public final class MappingValidationCache {
+
+    /**
+     * Default time for which a successful validation is trusted.
+     */
+    public static final long DEFAULT_VALIDITY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Default maximum number of remembered validations.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * Successful validations.
+     */
+    private final Cache<ValidationKey, Boolean> validations;
+
+    /**
+     * Constructs a validation cache with default window and size.
+     */
+    public MappingValidationCache() {
+        this(DEFAULT_VALIDITY_MILLIS, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructs a validation cache.
+     *
+     * @param validityMillis
+     *            Time for which a successful validation is trusted.
+     * @param maximumSize
+     *            Maximum number of remembered validations.
+     */
+    public MappingValidationCache(long validityMillis,
+            long maximumSize) {
+        Preconditions.checkArgument(validityMillis > 0, "validityMillis must be positive");
+        Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+        this.validations = CacheBuilder.newBuilder().expireAfterWrite(validityMillis, TimeUnit.MILLISECONDS).maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Whether a successful validation of the mapping over the given connection string is still trusted.
+     *
+     * @param connectionString
+     *            Connection string used for the shard.
+     * @param mapping
+     *            Mapping being validated.
+     * @return <c>true</c> if validation can be skipped, <c>false</c> otherwise.
+     */
+    public boolean isValidated(String connectionString,
+            StoreMapping mapping) {
+        return validations.getIfPresent(new ValidationKey(connectionString, mapping)) != null;
+    }
+
+    /**
+     * Records a successful validation of the mapping over the given connection string.
+     *
+     * @param connectionString
+     *            Connection string used for the shard.
+     * @param mapping
+     *            Mapping which was validated.
+     */
+    public void addValidated(String connectionString,
+            StoreMapping mapping) {
+        validations.put(new ValidationKey(connectionString, mapping), Boolean.TRUE);
+    }
+
+    /**
+     * Forgets all remembered validations.
+     */
+    public void clear() {
+        validations.invalidateAll();
+    }
+
+    /**
+     * Key of a remembered validation.
+     */
+    private static final class ValidationKey {
+
+        private final String connectionString;
+
+        private final UUID mappingId;
+
+        private final UUID shardVersion;
+
+        ValidationKey(String connectionString,
+                StoreMapping mapping) {
+            this.connectionString = connectionString;
+            this.mappingId = mapping.getId();
+            this.shardVersion = mapping.getStoreShard().getVersion();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ValidationKey)) {
+                return false;
+            }
+            ValidationKey other = (ValidationKey) obj;
+            return connectionString.equals(other.connectionString) && Objects.equals(mappingId, other.mappingId)
+                    && Objects.equals(shardVersion, other.shardVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connectionString, mappingId, shardVersion);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.microsoft.azure.elasticdb.shard.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.IntFunction;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.base.ShardKey;
+import com.microsoft.azure.elasticdb.shard.base.ShardRange;
+
+/**
+ * Immutable snapshot of the cached mappings of an Int32 or Int64 shard map, sorted by low key in primitive arrays. Lookups are binary searches
+ * over the arrays and allocate nothing, which avoids boxing the key and normalizing it into a ShardKey on the routing hot path.
+ */
+final class PrimitiveKeyIndex {
+
+    /**
+     * Inclusive low key of each mapping, ascending.
+     */
+    private final long[] lows;
+
+    /**
+     * Exclusive high key of each mapping.
+     */
+    private final long[] highs;
+
+    /**
+     * Whether the high key of a mapping is positive infinity.
+     */
+    private final boolean[] unbounded;
+
+    private final CacheMapping[] mappings;
+
+    private PrimitiveKeyIndex(long[] lows,
+            long[] highs,
+            boolean[] unbounded,
+            CacheMapping[] mappings) {
+        this.lows = lows;
+        this.highs = highs;
+        this.unbounded = unbounded;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Builds an index of point mappings.
+     *
+     * @param mappingsByKey
+     *            Cached mappings keyed by point.
+     * @return Index of the mappings.
+     */
+    static PrimitiveKeyIndex forPoints(Map<ShardKey, CacheMapping> mappingsByKey) {
+        List<Entry<ShardKey, CacheMapping>> entries = new ArrayList<>(mappingsByKey.entrySet());
+        return build(entries.size(), i -> {
+            long low = toLong(entries.get(i).getKey());
+            return new long[] {low, low == Long.MAX_VALUE ? Long.MAX_VALUE : low + 1, low == Long.MAX_VALUE ? 1 : 0};
+        }, i -> entries.get(i).getValue());
+    }
+
+    /**
+     * Builds an index of range mappings.
+     *
+     * @param mappingsByRange
+     *            Cached mappings keyed by range.
+     * @return Index of the mappings.
+     */
+    static PrimitiveKeyIndex forRanges(Map<ShardRange, CacheMapping> mappingsByRange) {
+        List<Entry<ShardRange, CacheMapping>> entries = new ArrayList<>(mappingsByRange.entrySet());
+        return build(entries.size(), i -> {
+            ShardRange range = entries.get(i).getKey();
+            boolean isMax = range.getHigh().getIsMax();
+            return new long[] {toLong(range.getLow()), isMax ? Long.MAX_VALUE : toLong(range.getHigh()), isMax ? 1 : 0};
+        }, i -> entries.get(i).getValue());
+    }
+
+    /**
+     * Builds an index sorted by low key.
+     *
+     * @param count
+     *            Number of mappings.
+     * @param bounds
+     *            Low key, high key and unbounded flag of the i-th mapping.
+     * @param mapping
+     *            The i-th mapping.
+     * @return Index of the mappings.
+     */
+    private static PrimitiveKeyIndex build(int count,
+            IntFunction<long[]> bounds,
+            IntFunction<CacheMapping> mapping) {
+        long[][] all = new long[count][];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            all[i] = bounds.apply(i);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(all[a][0], all[b][0]));
+
+        long[] lows = new long[count];
+        long[] highs = new long[count];
+        boolean[] unbounded = new boolean[count];
+        CacheMapping[] mappings = new CacheMapping[count];
+        for (int i = 0; i < count; i++) {
+            long[] b = all[order[i]];
+            lows[i] = b[0];
+            highs[i] = b[1];
+            unbounded[i] = b[2] != 0;
+            mappings[i] = mapping.apply(order[i]);
+        }
+        return new PrimitiveKeyIndex(lows, highs, unbounded, mappings);
+    }
+
+    private static long toLong(ShardKey key) {
+        return ((Number) key.getValue()).longValue();
+    }
+
+    /**
+     * Finds the mapping containing the key.
+     *
+     * @param key
+     *            Key value.
+     * @return Mapping containing the key, or null.
+     */
+    CacheMapping find(long key) {
+        // Last mapping whose low key is less than or equal to the key.
+        int lb = 0;
+        int ub = lows.length - 1;
+        int found = -1;
+        while (lb <= ub) {
+            int mid = (lb + ub) >>> 1;
+            if (lows[mid] <= key) {
+                found = mid;
+                lb = mid + 1;
+            }
+            else {
+                ub = mid - 1;
+            }
+        }
+
+        if (found >= 0 && (unbounded[found] || key < highs[found])) {
+            return mappings[found];
+        }
+        return null;
+    }
+}
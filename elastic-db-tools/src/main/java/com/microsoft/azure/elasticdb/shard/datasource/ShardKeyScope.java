@@ -0,0 +1,59 @@
+package com.microsoft.azure.elasticdb.shard.datasource;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Binds a shard key to the current thread for a <see cref="ShardingDataSource"/> via the using pattern. Closing the scope restores the key that
+ * was bound before, so scopes can be nested.
+ */
+public final class ShardKeyScope implements AutoCloseable {
+
+    /**
+     * Key bound on the current thread.
+     */
+    private final ThreadLocal<Object> boundKey;
+
+    /**
+     * The key that was bound before this scope.
+     */
+    private final Object previousKey;
+
+    private boolean closed;
+
+    /**
+     * Creates an instance of the <see cref="ShardKeyScope"/> class, binding the key.
+     *
+     * @param boundKey
+     *            Key bound on the current thread.
+     * @param key
+     *            Shard key to bind.
+     */
+    ShardKeyScope(ThreadLocal<Object> boundKey,
+            Object key) {
+        this.boundKey = boundKey;
+        this.previousKey = boundKey.get();
+        boundKey.set(key);
+    }
+
+    /**
+     * Restores the previously bound key.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (previousKey == null) {
+                boundKey.remove();
+            }
+            else {
+                boundKey.set(previousKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.microsoft.azure.elasticdb.shard.datasource;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.elasticdb.shard.map.ShardMap;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
+import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.utils.StringUtilsLocal;
+
+/**
+ * Data source which routes connections to the shard holding the shard key bound to the current thread, so that JDBC code and frameworks built on
+ * <see cref="DataSource"/> can use data dependent routing without calling openConnectionForKey themselves. A key is bound with
+ * <see cref="bindKey"/> for the duration of a unit of work, or passed explicitly with <see cref="getConnectionForKey"/>. Connections are obtained
+ * through the user connection provider of the shard map manager, which pools them per shard, so repeated connections to the same shard within a
+ * batch reuse physical connections.
+ */
+public final class ShardingDataSource implements DataSource {
+
+    /**
+     * Shard map used for routing.
+     */
+    private final ShardMap shardMap;
+
+    /**
+     * Connection string with credentials; server and database come from the routing.
+     */
+    private final String connectionString;
+
+    /**
+     * Options for operations to perform on routed connections.
+     */
+    private final ConnectionOptions options;
+
+    /**
+     * Shard key bound on the current thread.
+     */
+    private final ThreadLocal<Object> boundKey = new ThreadLocal<>();
+
+    private PrintWriter logWriter;
+
+    private int loginTimeout;
+
+    /**
+     * Creates a data source which validates routed connections with <see cref="ConnectionOptions.ValidateCached"/>.
+     *
+     * @param shardMap
+     *            Shard map used for routing.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings.
+     */
+    public ShardingDataSource(ShardMap shardMap,
+            String connectionString) {
+        this(shardMap, connectionString, ConnectionOptions.ValidateCached);
+    }
+
+    /**
+     * Creates a data source.
+     *
+     * @param shardMap
+     *            Shard map used for routing.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings.
+     * @param options
+     *            Options for operations to perform on routed connections.
+     */
+    public ShardingDataSource(ShardMap shardMap,
+            String connectionString,
+            ConnectionOptions options) {
+        this.shardMap = Preconditions.checkNotNull(shardMap, "shardMap");
+        this.connectionString = Preconditions.checkNotNull(connectionString, "connectionString");
+        this.options = Preconditions.checkNotNull(options, "options");
+    }
+
+    /**
+     * Gets the shard map used for routing.
+     */
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    /**
+     * Binds a shard key to the current thread until the returned scope is closed.
+     *
+     * @param key
+     *            Shard key to route connections by.
+     * @return Scope which restores the previously bound key when closed.
+     */
+    public ShardKeyScope bindKey(Object key) {
+        Preconditions.checkNotNull(key, "key");
+        return new ShardKeyScope(boundKey, key);
+    }
+
+    /**
+     * Gets the shard key bound to the current thread.
+     *
+     * @return Bound key, or null if none is bound.
+     */
+    public Object getBoundKey() {
+        return boundKey.get();
+    }
+
+    /**
+     * Opens a connection to the shard holding the key bound to the current thread.
+     *
+     * @return An open connection.
+     * @throws SQLException
+     *             If no key is bound or the connection could not be routed or opened.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return this.openConnection(this.getBoundKeyOrThrow(), connectionString);
+    }
+
+    /**
+     * Opens a connection with the given credentials to the shard holding the key bound to the current thread.
+     *
+     * @param username
+     *            User to connect as.
+     * @param password
+     *            Password of the user.
+     * @return An open connection.
+     * @throws SQLException
+     *             If no key is bound or the connection could not be routed or opened.
+     */
+    @Override
+    public Connection getConnection(String username,
+            String password) throws SQLException {
+        SqlConnectionStringBuilder builder = new SqlConnectionStringBuilder(connectionString);
+        builder.setUser(username);
+        builder.setPassword(password);
+        return this.openConnection(this.getBoundKeyOrThrow(), builder.getConnectionString());
+    }
+
+    /**
+     * Opens a connection to the shard holding the given key, regardless of the key bound to the current thread.
+     *
+     * @param key
+     *            Shard key to route the connection by.
+     * @return An open connection.
+     * @throws SQLException
+     *             If the connection could not be routed or opened.
+     */
+    public Connection getConnectionForKey(Object key) throws SQLException {
+        Preconditions.checkNotNull(key, "key");
+        return this.openConnection(key, connectionString);
+    }
+
+    private Object getBoundKeyOrThrow() throws SQLException {
+        Object key = boundKey.get();
+        if (key == null) {
+            throw new SQLException(StringUtilsLocal.formatInvariant(
+                    "No shard key is bound to the current thread for shard map '%1$s'. Bind one with bindKey before requesting a connection.",
+                    shardMap.getName()));
+        }
+        return key;
+    }
+
+    private Connection openConnection(Object key,
+            String connectionString) throws SQLException {
+        String routedConnectionString = connectionString;
+        if (loginTimeout > 0) {
+            SqlConnectionStringBuilder builder = new SqlConnectionStringBuilder(connectionString);
+            builder.setConnectTimeout(loginTimeout);
+            routedConnectionString = builder.getConnectionString();
+        }
+        try {
+            return shardMap.openConnectionForKey(key, routedConnectionString, options);
+        }
+        catch (ShardManagementException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        logWriter = out;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    /**
+     * Sets the time to wait for a connection to a shard to be established. A positive value overrides the login timeout of the connection string
+     * for connections opened afterwards; zero keeps the timeout of the connection string.
+     *
+     * @param seconds
+     *            Login timeout in seconds.
+     */
+    @Override
+    public void setLoginTimeout(int seconds) {
+        loginTimeout = seconds;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("ShardingDataSource logs through slf4j.");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(StringUtilsLocal.formatInvariant("ShardingDataSource does not wrap %1$s.", iface.getName()));
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,57 @@
+package com.microsoft.azure.elasticdb.shard.health;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * State of the circuit breaker guarding connections to a shard location.
+ */
+public enum CircuitState {
+    /**
+     * The shard is considered healthy and connections are attempted.
+     */
+    Closed(0),
+
+    /**
+     * Recent connection attempts failed repeatedly; connections fail fast without contacting the shard.
+     */
+    Open(1),
+
+    /**
+     * The open period has elapsed; a single probe connection is let through to decide whether to close or reopen the circuit.
+     */
+    HalfOpen(2);
+
+    public static final int SIZE = java.lang.Integer.SIZE;
+    private static java.util.HashMap<Integer, CircuitState> mappings;
+    private int intValue;
+
+    CircuitState(int value) {
+        intValue = value;
+        getMappings().put(value, this);
+    }
+
+    private static java.util.HashMap<Integer, CircuitState> getMappings() {
+        if (mappings == null) {
+            synchronized (CircuitState.class) {
+                if (mappings == null) {
+                    mappings = new java.util.HashMap<>();
+                }
+            }
+        }
+        return mappings;
+    }
+
+    public static CircuitState forValue(int value) {
+        return getMappings().get(value);
+    }
+
+    public int getValue() {
+        return intValue;
+    }
+}
@@ -0,0 +1,63 @@
+package com.microsoft.azure.elasticdb.shard.health;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.core.commons.helpers.EventArgs;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+
+/**
+ * Arguments of the event raised when the circuit for a shard location changes state.
+ */
+public final class CircuitStateChangedEventArgs extends EventArgs {
+
+    /**
+     * Shard location whose circuit changed state.
+     */
+    private final ShardLocation shardLocation;
+
+    /**
+     * State before the transition.
+     */
+    private final CircuitState previousState;
+
+    /**
+     * State after the transition.
+     */
+    private final CircuitState state;
+
+    /**
+     * Initializes a new instance of the <see cref="CircuitStateChangedEventArgs"/> class.
+     *
+     * @param shardLocation
+     *            Shard location whose circuit changed state.
+     * @param previousState
+     *            State before the transition.
+     * @param state
+     *            State after the transition.
+     */
+    public CircuitStateChangedEventArgs(ShardLocation shardLocation,
+            CircuitState previousState,
+            CircuitState state) {
+        this.shardLocation = shardLocation;
+        this.previousState = previousState;
+        this.state = state;
+    }
+
+    public ShardLocation getShardLocation() {
+        return shardLocation;
+    }
+
+    public CircuitState getPreviousState() {
+        return previousState;
+    }
+
+    public CircuitState getState() {
+        return state;
+    }
+}
@@ -0,0 +1,322 @@
+package com.microsoft.azure.elasticdb.shard.health;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.microsoft.azure.elasticdb.core.commons.helpers.Event;
+import com.microsoft.azure.elasticdb.core.commons.helpers.EventHandler;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+
+/**
+ * Tracks the health of shard locations with a circuit breaker per location. After a number of consecutive connection failures the circuit opens
+ * and connection attempts fail fast. Once the open period has elapsed the circuit becomes half-open and a single probe is let through; its outcome
+ * closes or reopens the circuit.
+ */
+public final class ShardHealthTracker {
+
+    /**
+     * Default number of consecutive failures which opens the circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time for which an open circuit rejects connection attempts.
+     */
+    public static final long DEFAULT_OPEN_DURATION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * SQLSTATE class of connection exceptions.
+     */
+    private static final String CONNECTION_EXCEPTION_SQL_STATE_CLASS = "08";
+
+    /**
+     * SQL Server error numbers which show that the shard could not be reached or is not available, as opposed to refusing the request: transport
+     * errors (64, 233, 10053, 10054, 10060) and databases being moved or failed over (40143, 40197, 40540, 40613).
+     */
+    private static final Set<Integer> UNAVAILABLE_ERROR_NUMBERS = ImmutableSet.of(64, 233, 10053, 10054, 10060, 40143, 40197, 40540, 40613);
+
+    /**
+     * Tracker shared by default between shard map managers and multi-shard statements, since the health of a location does not depend on who
+     * connects to it.
+     */
+    private static final ShardHealthTracker DEFAULT = new ShardHealthTracker();
+
+    /**
+     * The event handler invoked when the circuit of a shard location changes state.
+     */
+    public Event<EventHandler<CircuitStateChangedEventArgs>> circuitStateChanged = new Event<>();
+
+    /**
+     * Health per shard location.
+     */
+    private final Map<ShardLocation, ShardHealth> health = new ConcurrentHashMap<>();
+
+    private final int failureThreshold;
+
+    private final long openDurationMillis;
+
+    /**
+     * Constructs a tracker with default settings.
+     */
+    public ShardHealthTracker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MILLIS);
+    }
+
+    /**
+     * Constructs a tracker.
+     *
+     * @param failureThreshold
+     *            Number of consecutive failures which opens the circuit.
+     * @param openDurationMillis
+     *            Time for which an open circuit rejects connection attempts.
+     */
+    public ShardHealthTracker(int failureThreshold,
+            long openDurationMillis) {
+        Preconditions.checkArgument(failureThreshold > 0, "failureThreshold must be positive");
+        Preconditions.checkArgument(openDurationMillis > 0, "openDurationMillis must be positive");
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * Gets the tracker shared by default.
+     */
+    public static ShardHealthTracker getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the circuit state of a shard location.
+     *
+     * @param location
+     *            Shard location.
+     * @return Current circuit state.
+     */
+    public CircuitState getState(ShardLocation location) {
+        ShardHealth h = health.get(location);
+        if (h == null) {
+            return CircuitState.Closed;
+        }
+        synchronized (h) {
+            return h.state;
+        }
+    }
+
+    /**
+     * Decides whether a connection to the shard location may be attempted. Every attempt which is allowed must be followed by recordSuccess or
+     * recordFailure.
+     *
+     * @param location
+     *            Shard location.
+     * @return <c>true</c> if the connection may be attempted, <c>false</c> if it should fail fast.
+     */
+    public boolean tryAcquire(ShardLocation location) {
+        ShardHealth h = health.get(location);
+        if (h == null) {
+            return true;
+        }
+
+        CircuitState previous;
+        synchronized (h) {
+            long now = System.currentTimeMillis();
+            previous = h.state;
+            switch (h.state) {
+                case Open:
+                    if (now - h.openedAt < openDurationMillis) {
+                        return false;
+                    }
+                    h.state = CircuitState.HalfOpen;
+                    h.probeStartedAt = now;
+                    break;
+                case HalfOpen:
+                    // Only one probe at a time; a probe which never reported back is replaced after the open period.
+                    if (now - h.probeStartedAt < openDurationMillis) {
+                        return false;
+                    }
+                    h.probeStartedAt = now;
+                    return true;
+                default:
+                    return true;
+            }
+        }
+
+        this.onCircuitStateChanged(location, previous, CircuitState.HalfOpen);
+        return true;
+    }
+
+    /**
+     * Gets the time after which an open circuit lets a probe through.
+     *
+     * @param location
+     *            Shard location.
+     * @return Remaining open time in milliseconds, 0 if the circuit is not open.
+     */
+    public long getRemainingOpenMillis(ShardLocation location) {
+        ShardHealth h = health.get(location);
+        if (h == null) {
+            return 0;
+        }
+        synchronized (h) {
+            return h.state == CircuitState.Open ? Math.max(0, openDurationMillis - (System.currentTimeMillis() - h.openedAt)) : 0;
+        }
+    }
+
+    /**
+     * Records a successful connection to the shard location, closing its circuit.
+     *
+     * @param location
+     *            Shard location.
+     */
+    public void recordSuccess(ShardLocation location) {
+        ShardHealth h = health.get(location);
+        if (h == null) {
+            return;
+        }
+
+        CircuitState previous;
+        synchronized (h) {
+            previous = h.state;
+            h.consecutiveFailures = 0;
+            h.state = CircuitState.Closed;
+        }
+
+        if (previous != CircuitState.Closed) {
+            this.onCircuitStateChanged(location, previous, CircuitState.Closed);
+        }
+    }
+
+    /**
+     * Records a failed connection to the shard location, opening its circuit once the failure threshold is reached or if the failure was the
+     * half-open probe.
+     *
+     * @param location
+     *            Shard location.
+     */
+    public void recordFailure(ShardLocation location) {
+        ShardHealth h = health.computeIfAbsent(location, l -> new ShardHealth());
+
+        CircuitState previous;
+        int failures;
+        boolean opened = false;
+        synchronized (h) {
+            previous = h.state;
+            failures = ++h.consecutiveFailures;
+            if (h.state == CircuitState.HalfOpen || (h.state == CircuitState.Closed && h.consecutiveFailures >= failureThreshold)) {
+                h.state = CircuitState.Open;
+                h.openedAt = System.currentTimeMillis();
+                opened = true;
+            }
+        }
+
+        if (opened) {
+            log.warn("Circuit opened for shard {} after {} consecutive connection failures.", location, failures);
+            this.onCircuitStateChanged(location, previous, CircuitState.Open);
+        }
+    }
+
+    /**
+     * Records a failed attempt on the shard location according to what the failure says about the location. Connection failures count against
+     * it; errors raised by SQL Server, such as a failed login or a failing command, show that it could be reached; other failures, such as a
+     * timeout waiting for a pooled connection, leave its health unchanged but let the next probe through a half-open circuit.
+     *
+     * @param location
+     *            Shard location.
+     * @param failure
+     *            Failure of the attempt.
+     */
+    public void recordFailure(ShardLocation location,
+            Throwable failure) {
+        if (isConnectionFailure(failure)) {
+            this.recordFailure(location);
+        }
+        else if (isServerError(failure)) {
+            this.recordSuccess(location);
+        }
+        else {
+            ShardHealth h = health.get(location);
+            if (h != null) {
+                synchronized (h) {
+                    h.probeStartedAt = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a failure shows that a shard location could not be reached: a SQL exception in its causes has SQLSTATE class 08 or a SQL Server
+     * error number of a transport error or an unavailable database.
+     *
+     * @param failure
+     *            The failure.
+     * @return <c>true</c> if the failure is a connection failure.
+     */
+    public static boolean isConnectionFailure(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLException) {
+                SQLException e = (SQLException) t;
+                if ((e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_EXCEPTION_SQL_STATE_CLASS))
+                        || UNAVAILABLE_ERROR_NUMBERS.contains(e.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a failure carries a SQL Server error number, which shows that the server answered.
+     */
+    private static boolean isServerError(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLException && ((SQLException) t).getErrorCode() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Raise the circuitStateChanged event.
+     */
+    private void onCircuitStateChanged(ShardLocation location,
+            CircuitState previous,
+            CircuitState state) {
+        if (circuitStateChanged != null) {
+            CircuitStateChangedEventArgs args = new CircuitStateChangedEventArgs(location, previous, state);
+            circuitStateChanged.listeners().forEach(l -> l.invoke(this, args));
+        }
+    }
+
+    /**
+     * Health of a single shard location.
+     */
+    private static final class ShardHealth {
+
+        private CircuitState state = CircuitState.Closed;
+
+        private int consecutiveFailures;
+
+        private long openedAt;
+
+        private long probeStartedAt;
+    }
+}
@@ -0,0 +1,173 @@
+package com.microsoft.azure.elasticdb.shard.health;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+
+/**
+ * Keeps the recent command latencies of shard locations, from which the usual latency of a location is estimated as a percentile. A location
+ * whose history is too short has no estimate.
+ */
+public final class ShardLatencyTracker {
+
+    /**
+     * Default number of latencies kept per location.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 100;
+
+    /**
+     * Default number of latencies a location needs before its percentiles are estimated.
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 5;
+
+    /**
+     * Tracker shared by default between multi-shard statements, since the latency of a location does not depend on who queries it.
+     */
+    private static final ShardLatencyTracker DEFAULT = new ShardLatencyTracker();
+
+    /**
+     * Latency history per shard location.
+     */
+    private final Map<ShardLocation, LatencyHistory> histories = new ConcurrentHashMap<>();
+
+    private final int historySize;
+
+    private final int minSamples;
+
+    /**
+     * Constructs a tracker with default settings.
+     */
+    public ShardLatencyTracker() {
+        this(DEFAULT_HISTORY_SIZE, DEFAULT_MIN_SAMPLES);
+    }
+
+    /**
+     * Constructs a tracker.
+     *
+     * @param historySize
+     *            Number of latencies kept per location, the oldest being dropped first.
+     * @param minSamples
+     *            Number of latencies a location needs before its percentiles are estimated.
+     */
+    public ShardLatencyTracker(int historySize,
+            int minSamples) {
+        Preconditions.checkArgument(historySize > 0, "historySize must be positive");
+        Preconditions.checkArgument(minSamples > 0 && minSamples <= historySize, "minSamples must be positive and at most historySize");
+        this.historySize = historySize;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Gets the tracker shared by default.
+     */
+    public static ShardLatencyTracker getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records the latency of a command on a shard location.
+     *
+     * @param location
+     *            Shard location.
+     * @param latencyMillis
+     *            Time the command took, or had run for when it was abandoned.
+     */
+    public void record(ShardLocation location,
+            long latencyMillis) {
+        LatencyHistory h = histories.computeIfAbsent(location, l -> new LatencyHistory(historySize));
+        synchronized (h) {
+            h.latencies[h.next] = Math.max(0, latencyMillis);
+            h.next = (h.next + 1) % h.latencies.length;
+            h.count = Math.min(h.count + 1, h.latencies.length);
+        }
+    }
+
+    /**
+     * Gets the number of latencies kept for a shard location.
+     *
+     * @param location
+     *            Shard location.
+     * @return Number of latencies, at most the history size.
+     */
+    public int getSampleCount(ShardLocation location) {
+        LatencyHistory h = histories.get(location);
+        if (h == null) {
+            return 0;
+        }
+        synchronized (h) {
+            return h.count;
+        }
+    }
+
+    /**
+     * Estimates a latency percentile of a shard location from its history.
+     *
+     * @param location
+     *            Shard location.
+     * @param percentile
+     *            Percentile between 0 and 1, e.g. 0.95.
+     * @return Latency in milliseconds below which the given fraction of recent commands completed, or -1 if the history is too short.
+     */
+    public long getPercentile(ShardLocation location,
+            double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 1, "percentile must be between 0 and 1");
+        LatencyHistory h = histories.get(location);
+        if (h == null) {
+            return -1;
+        }
+        long[] latencies;
+        synchronized (h) {
+            if (h.count < minSamples) {
+                return -1;
+            }
+            latencies = Arrays.copyOf(h.latencies, h.count);
+        }
+        return percentileOf(latencies, percentile);
+    }
+
+    /**
+     * Computes a percentile of a set of latencies by the nearest-rank method.
+     *
+     * @param latencies
+     *            Latencies, which are sorted in place.
+     * @param percentile
+     *            Percentile between 0 and 1.
+     * @return The percentile, or -1 if there are no latencies.
+     */
+    public static long percentileOf(long[] latencies,
+            double percentile) {
+        if (latencies.length == 0) {
+            return -1;
+        }
+        Arrays.sort(latencies);
+        int rank = (int) Math.ceil(percentile * latencies.length);
+        return latencies[Math.max(0, Math.min(latencies.length, rank) - 1)];
+    }
+
+    /**
+     * Latency history of a single shard location, kept as a ring.
+     */
+    private static final class LatencyHistory {
+
+        private final long[] latencies;
+
+        private int next;
+
+        private int count;
+
+        private LatencyHistory(int size) {
+            this.latencies = new long[size];
+        }
+    }
+}
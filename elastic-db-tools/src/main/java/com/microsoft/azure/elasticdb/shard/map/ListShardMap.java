@@ -1,7 +1,10 @@
 package com.microsoft.azure.elasticdb.shard.map;
 
 import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -29,6 +32,7 @@ import com.microsoft.azure.elasticdb.shard.base.PointMappingUpdate;
 import com.microsoft.azure.elasticdb.shard.base.Range;
 import com.microsoft.azure.elasticdb.shard.base.Shard;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardMapManager;
+import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
 import com.microsoft.azure.elasticdb.shard.mapper.IShardMapper;
 import com.microsoft.azure.elasticdb.shard.mapper.ListShardMapper;
 import com.microsoft.azure.elasticdb.shard.store.StoreShardMap;
@@ -184,6 +188,147 @@ public final class ListShardMap<KeyT> extends ShardMap implements Cloneable {
         }
     }
 
+    /**
+     * Looks up an Int32 or Int64 key value and returns the corresponding mapping. Only the global shard map store is searched, as with the boxed
+     * key overload.
+     *
+     * @param key
+     *            Input key value.
+     * @return Mapping that contains the key value.
+     */
+    public PointMapping getMappingForKey(long key) {
+        return getMappingForKey(key, LookupOptions.LOOKUP_IN_STORE);
+    }
+
+    /**
+     * Looks up an Int32 or Int64 key value and returns the corresponding mapping. When the cache is searched and holds the mapping, the key is
+     * neither boxed nor normalized into a ShardKey and the lookup is not logged, so only the returned mapping is allocated.
+     *
+     * @param key
+     *            Input key value.
+     * @param lookupOptions
+     *            Whether to search in the cache and/or store.
+     * @return Mapping that contains the key value.
+     */
+    public PointMapping getMappingForKey(long key,
+            LookupOptions lookupOptions) {
+        return lsm.lookup(key, lookupOptions);
+    }
+
+    /**
+     * Opens a regular <see cref="SqlConnection"/> to the shard to which the specified Int32 or Int64 key value is mapped, with
+     * <see cref="ConnectionOptions.Validate"/>.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings. The hostname of the
+     *            server and the database name for the shard are obtained from the lookup operation for key.
+     * @return An opened SqlConnection.
+     */
+    public Connection openConnectionForKey(long key,
+            String connectionString) {
+        return this.openConnectionForKey(key, connectionString, ConnectionOptions.Validate);
+    }
+
+    /**
+     * Opens a regular <see cref="SqlConnection"/> to the shard to which the specified Int32 or Int64 key value is mapped. The key is not boxed
+     * when its mapping is cached.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings. The hostname of the
+     *            server and the database name for the shard are obtained from the lookup operation for key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return An opened SqlConnection.
+     */
+    public Connection openConnectionForKey(long key,
+            String connectionString,
+            ConnectionOptions options) {
+        ExceptionUtils.disallowNullArgument(connectionString, "connectionString");
+
+        return lsm.openConnectionForKey(key, connectionString, options);
+    }
+
+    /**
+     * Opens a regular <see cref="SqlConnection"/> to the shard to which the specified Int32 key value is mapped, with
+     * <see cref="ConnectionOptions.Validate"/>.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings. The hostname of the
+     *            server and the database name for the shard are obtained from the lookup operation for key.
+     * @return An opened SqlConnection.
+     */
+    public Connection openConnectionForKey(int key,
+            String connectionString) {
+        return this.openConnectionForKey((long) key, connectionString, ConnectionOptions.Validate);
+    }
+
+    /**
+     * Opens a regular <see cref="SqlConnection"/> to the shard to which the specified Int32 key value is mapped. The key is not boxed when its
+     * mapping is cached.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings. The hostname of the
+     *            server and the database name for the shard are obtained from the lookup operation for key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return An opened SqlConnection.
+     */
+    public Connection openConnectionForKey(int key,
+            String connectionString,
+            ConnectionOptions options) {
+        return this.openConnectionForKey((long) key, connectionString, options);
+    }
+
+    /**
+     * Looks up a set of key values and returns the corresponding mappings. Only the global shard map store is searched, not local cache. This is
+     * equivalent to <code>getMappingsForKeys(keys, LookupOptions.LookupInStore)</code>.
+     *
+     * @param keys
+     *            Input key values.
+     * @return Mappings that contain the key values, keyed by input key. Keys without a mapping are not present.
+     */
+    public Map<KeyT, PointMapping> getMappingsForKeys(Collection<KeyT> keys) {
+        return getMappingsForKeys(keys, LookupOptions.LOOKUP_IN_STORE);
+    }
+
+    /**
+     * Looks up a set of key values and returns the corresponding mappings. Keys which are not found in the cache are fetched from the store in a
+     * single round trip.
+     *
+     * @param keys
+     *            Input key values.
+     * @param lookupOptions
+     *            Whether to search in the cache and/or store.
+     * @return Mappings that contain the key values, keyed by input key. Keys without a mapping are not present.
+     */
+    public Map<KeyT, PointMapping> getMappingsForKeys(Collection<KeyT> keys,
+            LookupOptions lookupOptions) {
+        ExceptionUtils.disallowNullArgument(keys, "keys");
+
+        try (ActivityIdScope activityIdScope = new ActivityIdScope(UUID.randomUUID())) {
+            log.info("LookupPointMappings", "Start; ShardMap name: {}; Key Count: {}; Lookup Options: {}", this.getName(), keys.size(), lookupOptions);
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+
+            Map<KeyT, PointMapping> mappings = lsm.lookupKeys(keys, lookupOptions);
+
+            stopwatch.stop();
+
+            log.info("LookupPointMappings", "Complete; ShardMap name: {}; Key Count: {}; Mapping Count: {}; Lookup Options: {}; Duration: {}",
+                    this.getName(), keys.size(), mappings.size(), lookupOptions, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+            return mappings;
+        }
+    }
+
     /**
      * Tries to looks up the key value and place the corresponding mapping in <paramref name="pointMapping"/>. Only the global shard map store is
      * searched, not local cache. This is equivalent to <c>TryGetMappingForKey(key, LookupOptions.LookupInStore, out pointMapping)</c>.
@@ -2,10 +2,17 @@ package com.microsoft.azure.elasticdb.shard.map;
 
 import java.lang.invoke.MethodHandles;
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +28,12 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.microsoft.azure.elasticdb.core.commons.helpers.ApplicationNameHelper;
 import com.microsoft.azure.elasticdb.core.commons.helpers.ReferenceObjectHelper;
 import com.microsoft.azure.elasticdb.core.commons.logging.ActivityIdScope;
 import com.microsoft.azure.elasticdb.core.commons.patterns.ConditionalDisposable;
+import com.microsoft.azure.elasticdb.shard.base.IMappingInfoProvider;
 import com.microsoft.azure.elasticdb.shard.base.IShardProvider;
 import com.microsoft.azure.elasticdb.shard.base.Shard;
 import com.microsoft.azure.elasticdb.shard.base.ShardCreationInfo;
@@ -32,6 +41,7 @@ import com.microsoft.azure.elasticdb.shard.base.ShardKey;
 import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
 import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
 import com.microsoft.azure.elasticdb.shard.base.ShardUpdate;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCategory;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCode;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
@@ -39,6 +49,7 @@ import com.microsoft.azure.elasticdb.shard.mapmanager.ShardMapManager;
 import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
 import com.microsoft.azure.elasticdb.shard.mapper.DefaultShardMapper;
 import com.microsoft.azure.elasticdb.shard.mapper.IShardMapper;
+import com.microsoft.azure.elasticdb.shard.sqlstore.ApplicationIntent;
 import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
 import com.microsoft.azure.elasticdb.shard.sqlstore.SqlShardMapManagerCredentials;
 import com.microsoft.azure.elasticdb.shard.store.IUserStoreConnection;
@@ -55,6 +66,12 @@ public abstract class ShardMap implements Cloneable {
 
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    /**
+     * Timer for timeouts of asynchronous connection opens.
+     */
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("shardmap-open-timeout-%d").build());
+
     /**
      * Reference to ShardMapManager.
      */
@@ -257,6 +274,81 @@ public abstract class ShardMap implements Cloneable {
         }
     }
 
+    /**
+     * Asynchronously opens a regular <see cref="SqlConnection"/> to the shard to which the specified key value is mapped. The mapping lookup and
+     * the opening and validation of the connection run as successive stages on the given executor. Cancelling the returned future skips stages
+     * which have not started yet and closes a connection opened in the meantime. <typeparam name="KeyT">Type of the key.</typeparam>
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings. The hostname of the
+     *            server and the database name for the shard are obtained from the lookup operation for key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run. ExecutorHelper.getSharedExecutor() provides one which follows the default
+     *            execution mode, e.g. virtual threads.
+     * @return A future completed with an opened SqlConnection.
+     */
+    public <KeyT> CompletableFuture<Connection> openConnectionForKeyAsync(KeyT key,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor) {
+        ExceptionUtils.disallowNullArgument(connectionString, "connectionString");
+        ExceptionUtils.disallowNullArgument(executor, "executor");
+
+        assert this.getStoreShardMap().getKeyType() != ShardKeyType.None;
+
+        IShardMapper mapper = this.<KeyT>getMapper();
+
+        if (mapper == null) {
+            throw new IllegalArgumentException(
+                    StringUtilsLocal.formatInvariant(Errors._ShardMap_OpenConnectionForKey_KeyTypeNotSupported, key.getClass(),
+                            this.getStoreShardMap().getName(), ShardKey.typeFromShardKeyType(this.getStoreShardMap().getKeyType())),
+                    new Throwable("key"));
+        }
+
+        return mapper.openConnectionForKeyAsync(key, connectionString, options, executor);
+    }
+
+    /**
+     * Asynchronously opens a regular <see cref="SqlConnection"/> to the shard to which the specified key value is mapped, giving up after the
+     * specified timeout. On timeout the returned future completes with a TimeoutException, and a connection opened afterwards is closed.
+     * <typeparam name="KeyT">Type of the key.</typeparam>
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information such as SQL Server credentials or Integrated Security settings. The hostname of the
+     *            server and the database name for the shard are obtained from the lookup operation for key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run.
+     * @param timeout
+     *            Time to wait for the connection.
+     * @param unit
+     *            Unit of the timeout.
+     * @return A future completed with an opened SqlConnection.
+     */
+    public <KeyT> CompletableFuture<Connection> openConnectionForKeyAsync(KeyT key,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor,
+            long timeout,
+            TimeUnit unit) {
+        ExceptionUtils.disallowNullArgument(unit, "unit");
+
+        CompletableFuture<Connection> result = this.openConnectionForKeyAsync(key, connectionString, options, executor);
+
+        ScheduledFuture<?> timer = TIMEOUT_SCHEDULER.schedule(() -> result.completeExceptionally(new TimeoutException(
+                StringUtilsLocal.formatInvariant("Opening a connection for key %s timed out after %s %s.", key, timeout, unit))), timeout, unit);
+        result.whenComplete((conn, ex) -> timer.cancel(false));
+
+        return result;
+    }
+
     /**
      * Gets all shards from the shard map.
      *
@@ -462,13 +554,43 @@ public abstract class ShardMap implements Cloneable {
             String connectionString,
             ConnectionOptions options) {
         assert shardProvider != null;
+        return openConnection(Collections.singletonList(shardProvider), connectionString, options);
+    }
+
+    /**
+     * Opens a connection to the shard of the given shard providers, which must all be on the same shard, e.g. the mappings of a batch of rows
+     * which are written together. When validation is requested, each shard provider is validated on the opened connection.
+     *
+     * @param shardProviders
+     *            Shard providers containing the shard to be connected to.
+     * @param connectionString
+     *            Connection string for connection. Must have credentials.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     */
+    public final Connection openConnection(List<? extends IShardProvider> shardProviders,
+            String connectionString,
+            ConnectionOptions options) {
+        if (shardProviders == null || shardProviders.isEmpty()) {
+            throw new IllegalArgumentException("shardProviders");
+        }
         ExceptionUtils.disallowNullArgument(connectionString, "connectionString");
 
-        String connectionStringFinal = this.validateAndPrepareConnectionString(shardProvider, connectionString);
+        IShardProvider shardProvider = shardProviders.get(0);
+        for (IShardProvider other : shardProviders) {
+            if (!other.getShardInfo().getLocation().equals(shardProvider.getShardInfo().getLocation())) {
+                throw new IllegalArgumentException(StringUtilsLocal.formatInvariant("The shard providers are on different shards, %1$s and %2$s.",
+                        shardProvider.getShardInfo().getLocation(), other.getShardInfo().getLocation()));
+            }
+        }
+
+        ShardLocation targetLocation = this.getTargetLocation(shardProvider, options);
+
+        String connectionStringFinal = this.validateAndPrepareConnectionString(shardProvider, connectionString, targetLocation, options);
 
         ExceptionUtils.ensureShardBelongsToShardMap(this.getShardMapManager(), this, shardProvider.getShardInfo(), "OpenConnection", "Shard");
 
-        IUserStoreConnection conn = this.getShardMapManager().getStoreConnectionFactory().getUserConnection(connectionStringFinal);
+        IUserStoreConnection conn = this.getUserConnection(targetLocation, connectionStringFinal);
 
         log.info("OpenConnection", "Start; Shard: {}; Options: {}; ConnectionString: {}", shardProvider.getShardInfo().getLocation(), options,
                 connectionStringFinal);
@@ -477,7 +599,13 @@ public abstract class ShardMap implements Cloneable {
 
             // If validation is requested.
             if ((options.getValue() & ConnectionOptions.Validate.getValue()) == ConnectionOptions.Validate.getValue()) {
-                shardProvider.validate(this.getStoreShardMap(), conn.getConnection());
+                for (IShardProvider provider : shardProviders) {
+                    if (!this.isValidationCached(provider, connectionStringFinal, options)) {
+                        provider.validate(this.getStoreShardMap(), conn.getConnection());
+
+                        this.addValidationToCache(provider, connectionStringFinal, options);
+                    }
+                }
             }
 
             cd.setDoNotDispose(true);
@@ -520,11 +648,13 @@ public abstract class ShardMap implements Cloneable {
         assert shardProvider != null;
         ExceptionUtils.disallowNullArgument(connectionString, "connectionString");
 
-        String connectionStringFinal = this.validateAndPrepareConnectionString(shardProvider, connectionString);
+        ShardLocation targetLocation = this.getTargetLocation(shardProvider, options);
+
+        String connectionStringFinal = this.validateAndPrepareConnectionString(shardProvider, connectionString, targetLocation, options);
 
         ExceptionUtils.ensureShardBelongsToShardMap(this.getShardMapManager(), this, shardProvider.getShardInfo(), "OpenConnectionAsync", "Shard");
 
-        IUserStoreConnection conn = this.getShardMapManager().getStoreConnectionFactory().getUserConnection(connectionStringFinal);
+        IUserStoreConnection conn = this.getUserConnection(targetLocation, connectionStringFinal);
 
         log.info("OpenConnectionAsync", "Start; Shard: {}; Options: {}; ConnectionString: {}", shardProvider.getShardInfo().getLocation(), options,
                 connectionStringFinal);
@@ -532,8 +662,11 @@ public abstract class ShardMap implements Cloneable {
         try (ConditionalDisposable<IUserStoreConnection> cd = new ConditionalDisposable<>(conn)) {
 
             // If validation is requested.
-            if ((options.getValue() & ConnectionOptions.Validate.getValue()) == ConnectionOptions.Validate.getValue()) {
+            if ((options.getValue() & ConnectionOptions.Validate.getValue()) == ConnectionOptions.Validate.getValue()
+                    && !this.isValidationCached(shardProvider, connectionStringFinal, options)) {
                 shardProvider.validateAsync(this.getStoreShardMap(), conn.getConnection()).call();
+
+                this.addValidationToCache(shardProvider, connectionStringFinal, options);
             }
 
             cd.setDoNotDispose(true);
@@ -547,6 +680,96 @@ public abstract class ShardMap implements Cloneable {
         return conn::getConnection;
     }
 
+    /**
+     * Determines the location to connect to for the shard of the shard provider. Read-intent connections are routed to a replica of the shard if
+     * any are configured.
+     *
+     * @param shardProvider
+     *            Shard provider containing shard to be connected to.
+     * @param options
+     *            Options for operations to perform on opened connection.
+     * @return Location to connect to.
+     */
+    private ShardLocation getTargetLocation(IShardProvider shardProvider,
+            ConnectionOptions options) {
+        ShardLocation location = shardProvider.getShardInfo().getLocation();
+        if ((options.getValue() & ConnectionOptions.ReadOnly.getValue()) == ConnectionOptions.ReadOnly.getValue()) {
+            return this.getShardMapManager().getReadScaleRouter().route(location, this.getShardMapManager().getShardHealthTracker());
+        }
+        return location;
+    }
+
+    /**
+     * Obtains a user connection to the given location, failing fast if the circuit for the location is open. The outcome of the connection attempt
+     * is reported to the shard health tracker.
+     *
+     * @param location
+     *            Location to be connected to.
+     * @param connectionString
+     *            Connection string for the location.
+     * @return An open user connection.
+     */
+    private IUserStoreConnection getUserConnection(ShardLocation location,
+            String connectionString) {
+        ShardHealthTracker healthTracker = this.getShardMapManager().getShardHealthTracker();
+
+        if (!healthTracker.tryAcquire(location)) {
+            throw new ShardManagementException(ShardManagementErrorCategory.ShardMap, ShardManagementErrorCode.ShardUnavailable,
+                    Errors._ShardMap_OpenConnection_ShardUnavailable, location, healthTracker.getRemainingOpenMillis(location));
+        }
+
+        IUserStoreConnection conn;
+        try {
+            conn = this.getShardMapManager().getStoreConnectionFactory().getUserConnection(connectionString);
+        }
+        catch (RuntimeException e) {
+            healthTracker.recordFailure(location, e);
+            throw e;
+        }
+
+        healthTracker.recordSuccess(location);
+        return conn;
+    }
+
+    /**
+     * Whether a successful validation of the mapping behind the shard provider can be reused.
+     *
+     * @param shardProvider
+     *            Shard provider containing shard to be connected to.
+     * @param connectionString
+     *            Connection string used for the shard.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return <c>true</c> if validation can be skipped, <c>false</c> otherwise.
+     */
+    private boolean isValidationCached(IShardProvider shardProvider,
+            String connectionString,
+            ConnectionOptions options) {
+        return (options.getValue() & ConnectionOptions.ValidateCached.getValue()) == ConnectionOptions.ValidateCached.getValue()
+                && shardProvider instanceof IMappingInfoProvider && this.getShardMapManager()
+                .getValidationCache().isValidated(connectionString, ((IMappingInfoProvider) shardProvider).getStoreMapping());
+    }
+
+    /**
+     * Remembers a successful validation of the mapping behind the shard provider.
+     *
+     * @param shardProvider
+     *            Shard provider containing shard which was validated.
+     * @param connectionString
+     *            Connection string used for the shard.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     */
+    private void addValidationToCache(IShardProvider shardProvider,
+            String connectionString,
+            ConnectionOptions options) {
+        if ((options.getValue() & ConnectionOptions.ValidateCached.getValue()) == ConnectionOptions.ValidateCached.getValue()
+                && shardProvider instanceof IMappingInfoProvider) {
+            this.getShardMapManager().getValidationCache().addValidated(connectionString,
+                    ((IMappingInfoProvider) shardProvider).getStoreMapping());
+        }
+    }
+
     /**
      * Gets the mapper. This method is used by OpenConnection and Lookup of V. <typeparam name="V">Shard provider type.</typeparam>
      *
@@ -578,10 +801,16 @@ public abstract class ShardMap implements Cloneable {
      *            Shard provider containing shard to be connected to.
      * @param connectionString
      *            Input connection string.
+     * @param targetLocation
+     *            Location of the shard or of its replica to connect to.
+     * @param options
+     *            Options for operations to perform on opened connection.
      * @return Connection string for DDR connection.
      */
     private String validateAndPrepareConnectionString(IShardProvider shardProvider,
-            String connectionString) {
+            String connectionString,
+            ShardLocation targetLocation,
+            ConnectionOptions options) {
         assert shardProvider != null;
         assert connectionString != null;
 
@@ -612,10 +841,13 @@ public abstract class ShardMap implements Cloneable {
         // Verify that either UserID/Password or provided or integrated authentication is enabled.
         SqlShardMapManagerCredentials.ensureCredentials(connectionStringBuilder, "connectionString");
 
-        Shard s = shardProvider.getShardInfo();
+        connectionStringBuilder.setDataSource(targetLocation.getDataSource());
+        connectionStringBuilder.setDatabaseName(targetLocation.getDatabase());
 
-        connectionStringBuilder.setDataSource(s.getLocation().getDataSource());
-        connectionStringBuilder.setDatabaseName(s.getLocation().getDatabase());
+        // Declare read intent so that the connection can be served by a readable secondary.
+        if ((options.getValue() & ConnectionOptions.ReadOnly.getValue()) == ConnectionOptions.ReadOnly.getValue()) {
+            connectionStringBuilder.setApplicationIntent(ApplicationIntent.ReadOnly);
+        }
 
         // Append the proper post-fix for ApplicationName
         connectionStringBuilder.setApplicationName(
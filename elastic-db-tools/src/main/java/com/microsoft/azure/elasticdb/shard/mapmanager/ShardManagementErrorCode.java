@@ -149,6 +149,11 @@ public enum ShardManagementErrorCode {
      */
     UnexpectedError(66),
 
+    /**
+     * Connections to the shard are rejected without being attempted since recent attempts failed repeatedly.
+     */
+    ShardUnavailable(67),
+
     /// #endregion Common
 
     /// #region Common Mapper
@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
  * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
  */
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.microsoft.azure.elasticdb.core.commons.helpers.Event;
 import com.microsoft.azure.elasticdb.core.commons.helpers.EventHandler;
@@ -26,9 +27,12 @@ import com.microsoft.azure.elasticdb.core.commons.logging.ActivityIdScope;
 import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryBehavior;
 import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryPolicy;
 import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryingEventArgs;
+import com.microsoft.azure.elasticdb.shard.base.ReadScaleRouter;
 import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
 import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
 import com.microsoft.azure.elasticdb.shard.cache.ICacheStore;
+import com.microsoft.azure.elasticdb.shard.cache.MappingValidationCache;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
 import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
 import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
 import com.microsoft.azure.elasticdb.shard.map.ShardMap;
@@ -83,6 +87,21 @@ public final class ShardMapManager {
      */
     private ICacheStore cache;
 
+    /**
+     * Successful mapping validations trusted by ConnectionOptions.ValidateCached.
+     */
+    private final MappingValidationCache validationCache = new MappingValidationCache();
+
+    /**
+     * Health of the shard locations connected to by data dependent routing.
+     */
+    private ShardHealthTracker shardHealthTracker = ShardHealthTracker.getDefault();
+
+    /**
+     * Replica endpoints used for read-intent data dependent routing.
+     */
+    private ReadScaleRouter readScaleRouter = new ReadScaleRouter();
+
     /**
      * Given the connection string, opens up the corresponding data source and obtains the ShardMapManager.
      *
@@ -224,6 +243,41 @@ public final class ShardMapManager {
         return cache;
     }
 
+    /**
+     * Gets the cache of recent mapping validations which lets data dependent routing with ValidateCached skip the round trip to the shard.
+     */
+    public MappingValidationCache getValidationCache() {
+        return validationCache;
+    }
+
+    /**
+     * Gets the tracker of shard location health which lets data dependent routing fail fast for shards whose circuit is open.
+     */
+    public ShardHealthTracker getShardHealthTracker() {
+        return shardHealthTracker;
+    }
+
+    /**
+     * Sets the tracker of shard location health. Defaults to the tracker shared across the process.
+     */
+    public void setShardHealthTracker(ShardHealthTracker value) {
+        shardHealthTracker = Preconditions.checkNotNull(value);
+    }
+
+    /**
+     * Gets the router of read-intent connections, which holds the replica endpoints of shards used with the ReadOnly connection options.
+     */
+    public ReadScaleRouter getReadScaleRouter() {
+        return readScaleRouter;
+    }
+
+    /**
+     * Sets the router of read-intent connections.
+     */
+    public void setReadScaleRouter(ReadScaleRouter value) {
+        readScaleRouter = Preconditions.checkNotNull(value);
+    }
+
     private void setCache(ICacheStore value) {
         cache = value;
     }
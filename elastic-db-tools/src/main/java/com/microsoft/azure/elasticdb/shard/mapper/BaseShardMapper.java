@@ -3,13 +3,25 @@ package com.microsoft.azure.elasticdb.shard.mapper;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -37,10 +49,12 @@ import com.microsoft.azure.elasticdb.shard.base.MappingUpdatedProperties;
 import com.microsoft.azure.elasticdb.shard.base.Range;
 import com.microsoft.azure.elasticdb.shard.base.Shard;
 import com.microsoft.azure.elasticdb.shard.base.ShardKey;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
 import com.microsoft.azure.elasticdb.shard.base.ShardRange;
 import com.microsoft.azure.elasticdb.shard.cache.CacheStoreMappingUpdatePolicy;
 import com.microsoft.azure.elasticdb.shard.cache.ICacheStoreMapping;
 import com.microsoft.azure.elasticdb.shard.map.ShardMap;
+import com.microsoft.azure.elasticdb.shard.map.ShardMapType;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCategory;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCode;
 import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
@@ -77,6 +91,11 @@ public abstract class BaseShardMapper {
      */
     protected ShardMap shardMap;
 
+    /**
+     * Whether the GSM turned out to be older than version 1.3, which added the lookup of many keys in a single request.
+     */
+    private volatile boolean bulkLookupUnsupported;
+
     /**
      * Base shard mapper, which is just a holder of some fields.
      *
@@ -198,17 +217,108 @@ public abstract class BaseShardMapper {
             ConnectionOptions options) {
         ShardKey sk = new ShardKey(ShardKey.shardKeyTypeFromType(key.getClass()), key);
 
+        return this.openConnectionForMapping(() -> sk, this.findMappingForOpenConnection(sk, errorCategory), constructMapping, errorCategory,
+                connectionString, options);
+    }
+
+    /**
+     * Given an Int32 or Int64 key value, obtains a SqlConnection to the shard in the mapping that contains the key value. When the mapping is
+     * cached the key is neither boxed nor normalized into a ShardKey; otherwise this falls back to the boxed key path. <typeparam
+     * name="MappingT">Mapping type.</typeparam>
+     *
+     * @param key
+     *            Input key value.
+     * @param constructMapping
+     *            Delegate to construct a mapping object.
+     * @param errorCategory
+     *            Error category.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return An opened SqlConnection.
+     */
+    protected final <MappingT extends IShardProvider> Connection openConnectionForKey(long key,
+            ActionGeneric3Param<ShardMapManager, ShardMap, StoreMapping, MappingT> constructMapping,
+            ShardManagementErrorCategory errorCategory,
+            String connectionString,
+            ConnectionOptions options) {
+        ICacheStoreMapping csm = shardMapManager.getCache().lookupMappingByKey(shardMap.getStoreShardMap(), key);
+
+        if (csm == null) {
+            return this.openConnectionForKey(this.boxKey(key), constructMapping, errorCategory, connectionString, options);
+        }
+
+        // The ShardKey is only needed if the cached mapping turns out to be stale.
+        return this.openConnectionForMapping(() -> new ShardKey(this.boxKey(key)), new MappingForConnection(csm, csm.getMapping()),
+                constructMapping, errorCategory, connectionString, options);
+    }
+
+    /**
+     * Boxes an Int32 or Int64 key value as the type of the keys of the shard map.
+     *
+     * @param key
+     *            Input key value.
+     * @return Integer for Int32 shard maps if the value fits, Long otherwise.
+     */
+    private Object boxKey(long key) {
+        if (shardMap.getStoreShardMap().getKeyType() == ShardKeyType.Int32 && key >= Integer.MIN_VALUE && key <= Integer.MAX_VALUE) {
+            return (int) key;
+        }
+        return key;
+    }
+
+    /**
+     * Finds the mapping for a key in the cache, or in GSM if it is not cached.
+     *
+     * @param sk
+     *            Input key value.
+     * @param errorCategory
+     *            Error category.
+     * @return Mapping for the key along with the cache entry it was found in, if any.
+     */
+    private MappingForConnection findMappingForOpenConnection(ShardKey sk,
+            ShardManagementErrorCategory errorCategory) {
         // Try to find the mapping within the cache.
         ICacheStoreMapping csm = shardMapManager.getCache().lookupMappingByKey(shardMap.getStoreShardMap(), sk);
 
-        StoreMapping sm;
-
         if (csm != null) {
-            sm = csm.getMapping();
+            return new MappingForConnection(csm, csm.getMapping());
         }
         else {
-            sm = this.lookupMappingForOpenConnectionForKey(sk, CacheStoreMappingUpdatePolicy.OverwriteExisting, errorCategory);
+            return new MappingForConnection(null,
+                    this.lookupMappingForOpenConnectionForKey(sk, CacheStoreMappingUpdatePolicy.OverwriteExisting, errorCategory));
         }
+    }
+
+    /**
+     * Opens a connection to the shard of a mapping found by findMappingForOpenConnection, refreshing the mapping and retrying once if it turns
+     * out to be stale. <typeparam name="MappingT">Mapping type.</typeparam>
+     *
+     * @param key
+     *            Supplier of the input key value.
+     * @param found
+     *            Mapping for the key.
+     * @param constructMapping
+     *            Delegate to construct a mapping object.
+     * @param errorCategory
+     *            Error category.
+     * @param connectionString
+     *            Connection string with credential information.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return An opened SqlConnection.
+     */
+    private <MappingT extends IShardProvider> Connection openConnectionForMapping(Supplier<ShardKey> key,
+            MappingForConnection found,
+            ActionGeneric3Param<ShardMapManager, ShardMap, StoreMapping, MappingT> constructMapping,
+            ShardManagementErrorCategory errorCategory,
+            String connectionString,
+            ConnectionOptions options) {
+        ICacheStoreMapping csm = found.cachedMapping;
+
+        StoreMapping sm = found.mapping;
 
         Connection result;
 
@@ -230,7 +340,7 @@ public abstract class BaseShardMapper {
                     && ex.getErrorCode() == ShardManagementErrorCode.MappingDoesNotExist) {
                 // Assumption here is that this time the attempt should succeed since the cache entry
                 // has already been either evicted, or updated based on latest data from the server.
-                sm = this.lookupMappingForOpenConnectionForKey(sk, CacheStoreMappingUpdatePolicy.OverwriteExisting, errorCategory);
+                sm = this.lookupMappingForOpenConnectionForKey(key.get(), CacheStoreMappingUpdatePolicy.OverwriteExisting, errorCategory);
 
                 result = shardMap.openConnection(constructMapping.invoke(this.getShardMapManager(), this.getShardMap(), sm), connectionString,
                         options);
@@ -247,6 +357,7 @@ public abstract class BaseShardMapper {
             // We failed to connect.
             // If we were trying to connect from an entry in cache and mapping expired in cache.
             if (csm != null && (System.nanoTime() - csm.getCreationTime()) >= csm.getTimeToLiveMilliseconds()) {
+                ShardKey sk = key.get();
                 try (IdLock _idLock = new IdLock(csm.getMapping().getStoreShard().getId())) {
                     // Similar to DCL pattern, we need to refresh the mapping again to see if we still need to
                     // go to the store to lookup the mapping after acquiring the shard lock. It might be the
@@ -317,6 +428,77 @@ public abstract class BaseShardMapper {
         return () -> openConnectionForKey(key, constructMapping, errorCategory, connectionString, options);
     }
 
+    /**
+     * Given a key value, asynchronously obtains a SqlConnection to the shard in the mapping that contains the key value. The mapping lookup and
+     * the opening and validation of the connection run as successive stages on the given executor. <typeparam name="MappingT">Mapping
+     * type.</typeparam> <typeparam name="KeyT">Key type.</typeparam>
+     *
+     * @param key
+     *            Input key value.
+     * @param constructMapping
+     *            Delegate to construct a mapping object.
+     * @param errorCategory
+     *            Error category.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run.
+     * @return A future completed with an opened SqlConnection.
+     */
+    protected final <MappingT extends IShardProvider, KeyT> CompletableFuture<Connection> openConnectionForKeyAsync(KeyT key,
+            ActionGeneric3Param<ShardMapManager, ShardMap, StoreMapping, MappingT> constructMapping,
+            ShardManagementErrorCategory errorCategory,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor) {
+        ShardKey sk = new ShardKey(ShardKey.shardKeyTypeFromType(key.getClass()), key);
+
+        return openConnectionAsync(() -> this.findMappingForOpenConnection(sk, errorCategory),
+                found -> this.openConnectionForMapping(() -> sk, found, constructMapping, errorCategory, connectionString, options), executor);
+    }
+
+    /**
+     * Runs a lookup and an open stage on the executor and exposes the opened connection through a future owned by the caller. If the caller
+     * cancels or otherwise completes the future first, stages which have not started yet are skipped and a connection opened in the meantime is
+     * closed. <typeparam name="T">Lookup result type.</typeparam>
+     *
+     * @param lookup
+     *            Lookup stage.
+     * @param open
+     *            Stage which opens a connection from the lookup result.
+     * @param executor
+     *            Executor on which both stages run.
+     * @return A future completed with the opened connection.
+     */
+    protected static <T> CompletableFuture<Connection> openConnectionAsync(Supplier<T> lookup,
+            Function<T, Connection> open,
+            Executor executor) {
+        Preconditions.checkNotNull(executor);
+
+        CompletableFuture<Connection> result = new CompletableFuture<>();
+
+        CompletableFuture.supplyAsync(() -> result.isDone() ? null : lookup.get(), executor)
+                .thenApplyAsync(found -> found == null || result.isDone() ? null : open.apply(found), executor).whenComplete((conn, ex) -> {
+                    if (ex != null) {
+                        result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                    }
+                    else if (conn != null && !result.complete(conn)) {
+                        // Caller gave up on the connection while it was being opened.
+                        try {
+                            conn.close();
+                        }
+                        catch (SQLException e) {
+                            log.warn("Failed to close abandoned connection: {}", e.getMessage());
+                        }
+                    }
+                });
+
+        return result;
+    }
+
     /**
      * Adds a mapping to shard map. <typeparam name="MappingT">Mapping type.</typeparam>
      *
@@ -439,6 +621,150 @@ public abstract class BaseShardMapper {
         return null;
     }
 
+    /**
+     * Looks up an Int32 or Int64 key value and returns the corresponding mapping. A cache hit neither boxes the key nor normalizes it into a
+     * ShardKey; a cache miss falls back to the store lookup of the boxed key. <typeparam name="MappingT">Mapping type.</typeparam>
+     *
+     * @param key
+     *            Input key value.
+     * @param lookupOptions
+     *            Whether to use cache and/or storage for lookups.
+     * @param constructMapping
+     *            Delegate to construct a mapping object.
+     * @param errorCategory
+     *            Category under which errors must be thrown.
+     * @return Mapping that contains the key value.
+     */
+    protected final <MappingT extends IShardProvider> MappingT lookup(long key,
+            LookupOptions lookupOptions,
+            ActionGeneric3Param<ShardMapManager, ShardMap, StoreMapping, MappingT> constructMapping,
+            ShardManagementErrorCategory errorCategory) {
+        if (lookupOptions.getValue() == 1 || lookupOptions.getValue() == 5) {
+            ICacheStoreMapping cachedMapping = shardMapManager.getCache().lookupMappingByKey(shardMap.getStoreShardMap(), key);
+
+            if (cachedMapping != null) {
+                return constructMapping.invoke(this.getShardMapManager(), this.getShardMap(), cachedMapping.getMapping());
+            }
+        }
+
+        if (lookupOptions.getValue() >= 4) {
+            return this.lookup(this.boxKey(key), LookupOptions.LOOKUP_IN_STORE, constructMapping, errorCategory);
+        }
+
+        return null;
+    }
+
+    /**
+     * Looks up a set of key values and returns the corresponding mappings. Keys which are not found in the cache are looked up in the store with a
+     * single request and the results are added to the cache as one batch. A GSM older than version 1.3 does not support that request; the keys
+     * are then looked up one at a time. <typeparam name="MappingT">Mapping type.</typeparam> <typeparam
+     * name="KeyT">Key type.</typeparam>
+     *
+     * @param keys
+     *            Input key values.
+     * @param lookupOptions
+     *            Whether to use cache and/or storage for lookups.
+     * @param constructMapping
+     *            Delegate to construct a mapping object.
+     * @param errorCategory
+     *            Category under which errors must be thrown.
+     * @return Mappings that contain the key values, keyed by input key. Keys without a mapping are not present.
+     */
+    protected final <MappingT extends IShardProvider, KeyT> Map<KeyT, MappingT> lookupKeys(Collection<KeyT> keys,
+            LookupOptions lookupOptions,
+            ActionGeneric3Param<ShardMapManager, ShardMap, StoreMapping, MappingT> constructMapping,
+            ShardManagementErrorCategory errorCategory) {
+        Map<KeyT, MappingT> mappings = new HashMap<>();
+        Map<ShardKey, KeyT> pendingKeys = new LinkedHashMap<>();
+
+        for (KeyT key : keys) {
+            ShardKey sk = new ShardKey(ShardKey.shardKeyTypeFromType(key.getClass()), key);
+
+            ICacheStoreMapping cachedMapping = null;
+            if (lookupOptions.getValue() == 1 || lookupOptions.getValue() == 5) {
+                cachedMapping = shardMapManager.getCache().lookupMappingByKey(shardMap.getStoreShardMap(), sk);
+            }
+
+            if (cachedMapping != null) {
+                mappings.put(key, constructMapping.invoke(this.getShardMapManager(), this.getShardMap(), cachedMapping.getMapping()));
+            }
+            else {
+                pendingKeys.put(sk, key);
+            }
+        }
+
+        if (lookupOptions.getValue() >= 4 && !pendingKeys.isEmpty()) {
+            StoreResults gsmResult = this.bulkLookupUnsupported ? null : this.lookupMappingsForKeys(new ArrayList<>(pendingKeys.keySet()),
+                    errorCategory);
+
+            if (gsmResult == null) {
+                for (Map.Entry<ShardKey, KeyT> pendingKey : pendingKeys.entrySet()) {
+                    MappingT mapping = this.lookup(pendingKey.getValue(), LookupOptions.LOOKUP_IN_STORE, constructMapping, errorCategory);
+                    if (mapping != null) {
+                        mappings.put(pendingKey.getValue(), mapping);
+                    }
+                }
+                return mappings;
+            }
+
+            // Mappings are disjoint, so the only candidate for a key is the mapping with the closest lower bound.
+            NavigableMap<ShardKey, StoreMapping> mappingsByLowKey = new TreeMap<>();
+            for (StoreMapping sm : gsmResult.getStoreMappings()) {
+                mappingsByLowKey.put(ShardKey.fromRawValue(shardMap.getKeyType(), sm.getMinValue()), sm);
+            }
+
+            for (Map.Entry<ShardKey, KeyT> pendingKey : pendingKeys.entrySet()) {
+                Map.Entry<ShardKey, StoreMapping> candidate = mappingsByLowKey.floorEntry(pendingKey.getKey());
+                if (candidate != null && (candidate.getKey().equals(pendingKey.getKey()) || (shardMap.getMapType() == ShardMapType.Range
+                        && new ShardRange(candidate.getKey(), ShardKey.fromRawValue(shardMap.getKeyType(), candidate.getValue().getMaxValue()))
+                                .contains(pendingKey.getKey())))) {
+                    mappings.put(pendingKey.getValue(), constructMapping.invoke(this.getShardMapManager(), this.getShardMap(), candidate.getValue()));
+                }
+            }
+        }
+
+        return mappings;
+    }
+
+    /**
+     * Looks up the mappings of a set of keys in the GSM with a single request.
+     *
+     * @param keys
+     *            Keys to find.
+     * @param errorCategory
+     *            Error category.
+     * @return Mappings found, or null if the GSM is older than version 1.3, in which case the keys must be looked up one at a time.
+     */
+    private StoreResults lookupMappingsForKeys(List<ShardKey> keys,
+            ShardManagementErrorCategory errorCategory) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        StoreResults gsmResult;
+
+        try (IStoreOperationGlobal op = shardMapManager.getStoreOperationFactory().createFindMappingsByKeysGlobalOperation(this.getShardMapManager(),
+                "LookupKeys", shardMap.getStoreShardMap(), keys, CacheStoreMappingUpdatePolicy.OverwriteExisting, errorCategory, true, false)) {
+            gsmResult = op.doGlobal();
+        }
+        catch (Exception e) {
+            Throwable cause = e instanceof ShardManagementException ? e : e.getCause();
+            if (cause instanceof ShardManagementException
+                    && ((ShardManagementException) cause).getErrorCode() == ShardManagementErrorCode.GlobalStoreVersionMismatch) {
+                log.warn("LookupKeys; The shard map manager store predates version 1.3, so keys are looked up one at a time. "
+                        + "Call ShardMapManager.upgradeGlobalStore() to look them up in a single request.");
+                this.bulkLookupUnsupported = true;
+                return null;
+            }
+            ExceptionUtils.throwStronglyTypedException(e);
+            gsmResult = new StoreResults(); // Ideally this should not be executed.
+        }
+
+        stopwatch.stop();
+
+        log.info("LookupKeys", "Lookup keys from GSM complete; Key count: {} Mapping count: {}; Duration: {}", keys.size(),
+                gsmResult.getStoreMappings().size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+        return gsmResult;
+    }
+
     /**
      * Finds mapping in store for OpenConnectionForKey operation.
      *
@@ -774,4 +1100,20 @@ public abstract class BaseShardMapper {
                     operationName, shardMapManager.getCredentials().getShardMapManagerLocation(), shardMap.getName(), parameterName));
         }
     }
+
+    /**
+     * Mapping found for opening a connection, along with the cache entry it came from.
+     */
+    private static final class MappingForConnection {
+
+        private final ICacheStoreMapping cachedMapping;
+
+        private final StoreMapping mapping;
+
+        MappingForConnection(ICacheStoreMapping cachedMapping,
+                StoreMapping mapping) {
+            this.cachedMapping = cachedMapping;
+            this.mapping = mapping;
+        }
+    }
 }
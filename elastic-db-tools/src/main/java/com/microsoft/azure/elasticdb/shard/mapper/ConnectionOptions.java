@@ -18,7 +18,28 @@ public enum ConnectionOptions {
      * Validation will be performed on the connection to ensure that the state of the corresponding mapping has not changed since the mapping
      * information was last cached at the client.
      */
-    Validate(1);
+    Validate(1),
+
+    /**
+     * Validation as with Validate, except that a successful validation of the same mapping and shard version over the same connection string is
+     * trusted for a bounded window, during which subsequent connections skip the validation round trip.
+     */
+    ValidateCached(3),
+
+    /**
+     * No validation; the connection is opened with read intent (ApplicationIntent=ReadOnly) and routed to a readable replica of the shard.
+     */
+    ReadOnly(4),
+
+    /**
+     * Validation as with Validate, on a connection opened with read intent.
+     */
+    ValidateReadOnly(5),
+
+    /**
+     * Validation as with ValidateCached, on a connection opened with read intent.
+     */
+    ValidateCachedReadOnly(7);
 
     public static final int SIZE = java.lang.Integer.SIZE;
     private static java.util.HashMap<Integer, ConnectionOptions> mappings;
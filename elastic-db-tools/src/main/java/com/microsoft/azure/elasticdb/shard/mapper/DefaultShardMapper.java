@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /*
@@ -119,6 +121,31 @@ public final class DefaultShardMapper extends BaseShardMapper implements IShardM
                 connectionString, options);
     }
 
+    /**
+     * Given a shard, asynchronously obtains a SqlConnection to the shard. The shard must exist in the mapper. Lookup, open and validation run as
+     * successive stages on the given executor.
+     *
+     * @param key
+     *            Input shard.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run.
+     * @return A future completed with an opened SqlConnection.
+     */
+    public CompletableFuture<Connection> openConnectionForKeyAsync(Shard key,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(connectionString);
+        return openConnectionAsync(
+                () -> this.lookup(key, LookupOptions.forValue(LookupOptions.LOOKUP_IN_CACHE.getValue() | LookupOptions.LOOKUP_IN_STORE.getValue())),
+                shard -> shardMap.openConnection(shard, connectionString, options), executor);
+    }
+
     /**
      * Adds a shard.
      *
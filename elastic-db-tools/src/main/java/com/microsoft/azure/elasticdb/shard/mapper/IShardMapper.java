@@ -3,6 +3,8 @@ package com.microsoft.azure.elasticdb.shard.mapper;
 import java.sql.Connection;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /*
  * Elastic database tools for Azure SQL Database.
@@ -59,6 +61,26 @@ public interface IShardMapper<MappingT extends IShardProvider, ValueT> {
             String connectionString,
             ConnectionOptions options);
 
+    /**
+     * Given a key value, asynchronously obtains a SqlConnection to the shard in the mapping that contains the key value. Lookup, open and
+     * validation run as successive stages on the given executor.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run.
+     * @return A future completed with an opened SqlConnection.
+     */
+    CompletableFuture<Connection> openConnectionForKeyAsync(ValueT key,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor);
+
     /**
      * Adds a mapping.
      *
@@ -1,9 +1,13 @@
 package com.microsoft.azure.elasticdb.shard.mapper;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /*
  * Elastic database tools for Azure SQL Database.
@@ -82,6 +86,25 @@ public final class ListShardMapper extends BaseShardMapper implements IShardMapp
         return this.openConnectionForKey(key, PointMapping::new, ShardManagementErrorCategory.ListShardMap, connectionString, options);
     }
 
+    /**
+     * Given an Int32 or Int64 key value, obtains a SqlConnection to the shard in the mapping that contains the key value. The key is not boxed
+     * when its mapping is cached.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return An opened SqlConnection.
+     */
+    public Connection openConnectionForKey(long key,
+            String connectionString,
+            ConnectionOptions options) {
+        return this.openConnectionForKey(key, PointMapping::new, ShardManagementErrorCategory.ListShardMap, connectionString, options);
+    }
+
     /**
      * Given a key value, asynchronously obtains a SqlConnection to the shard in the mapping that contains the key value.
      *
@@ -115,6 +138,28 @@ public final class ListShardMapper extends BaseShardMapper implements IShardMapp
         return this.openConnectionForKeyAsync(key, PointMapping::new, ShardManagementErrorCategory.ListShardMap, connectionString, options);
     }
 
+    /**
+     * Given a key value, asynchronously obtains a SqlConnection to the shard in the mapping that contains the key value. Lookup, open and
+     * validation run as successive stages on the given executor.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run.
+     * @return A future completed with an opened SqlConnection.
+     */
+    public CompletableFuture<Connection> openConnectionForKeyAsync(Object key,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor) {
+        return this.openConnectionForKeyAsync(key, PointMapping::new, ShardManagementErrorCategory.ListShardMap, connectionString, options, executor);
+    }
+
     /**
      * Marks the given mapping offline.
      *
@@ -207,6 +252,28 @@ public final class ListShardMapper extends BaseShardMapper implements IShardMapp
         this.remove(mapping, PointMapping::new, lockOwnerId);
     }
 
+    /**
+     * Looks up an Int32 or Int64 key value and returns the corresponding mapping. The key is not boxed when its mapping is cached.
+     *
+     * @param key
+     *            Input key value.
+     * @param lookupOptions
+     *            Whether to use cache and/or storage for lookups.
+     * @return Mapping that contains the key value.
+     */
+    public PointMapping lookup(long key,
+            LookupOptions lookupOptions) {
+        PointMapping p = this.lookup(key, lookupOptions, PointMapping::new, ShardManagementErrorCategory.ListShardMap);
+
+        if (p == null) {
+            throw new ShardManagementException(ShardManagementErrorCategory.ListShardMap, ShardManagementErrorCode.MappingNotFoundForKey,
+                    Errors._Store_ShardMapper_MappingNotFoundForKeyGlobal, this.getShardMap().getName(),
+                    StoreOperationRequestBuilder.SP_FIND_SHARD_MAPPING_BY_KEY_GLOBAL, "Lookup");
+        }
+
+        return p;
+    }
+
     /**
      * Looks up the key value and returns the corresponding mapping.
      *
@@ -229,6 +296,21 @@ public final class ListShardMapper extends BaseShardMapper implements IShardMapp
         return p;
     }
 
+    /**
+     * Looks up a set of key values and returns the corresponding mappings. Keys missing from the cache are looked up in the store with a single
+     * request.
+     *
+     * @param keys
+     *            Input key values.
+     * @param lookupOptions
+     *            Whether to use cache and/or storage for lookups.
+     * @return Mappings that contain the key values, keyed by input key. Keys without a mapping are not present.
+     */
+    public <KeyT> Map<KeyT, PointMapping> lookupKeys(Collection<KeyT> keys,
+            LookupOptions lookupOptions) {
+        return this.lookupKeys(keys, lookupOptions, PointMapping::new, ShardManagementErrorCategory.ListShardMap);
+    }
+
     /**
      * Tries to looks up the key value and returns the corresponding mapping.
      *
@@ -3,9 +3,13 @@ package com.microsoft.azure.elasticdb.shard.mapper;
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -87,6 +91,25 @@ public class RangeShardMapper extends BaseShardMapper implements IShardMapper<Ra
         return this.openConnectionForKey(key, RangeMapping::new, ShardManagementErrorCategory.RangeShardMap, connectionString, options);
     }
 
+    /**
+     * Given an Int32 or Int64 key value, obtains a SqlConnection to the shard in the mapping that contains the key value. The key is not boxed
+     * when its mapping is cached.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @return An opened SqlConnection.
+     */
+    public final Connection openConnectionForKey(long key,
+            String connectionString,
+            ConnectionOptions options) {
+        return this.openConnectionForKey(key, RangeMapping::new, ShardManagementErrorCategory.RangeShardMap, connectionString, options);
+    }
+
     public final Callable<Connection> openConnectionForKeyAsync(Object key,
             String connectionString) {
         return openConnectionForKeyAsync(key, connectionString, ConnectionOptions.Validate);
@@ -110,6 +133,28 @@ public class RangeShardMapper extends BaseShardMapper implements IShardMapper<Ra
         return this.openConnectionForKeyAsync(key, RangeMapping::new, ShardManagementErrorCategory.RangeShardMap, connectionString, options);
     }
 
+    /**
+     * Given a key value, asynchronously obtains a SqlConnection to the shard in the mapping that contains the key value. Lookup, open and
+     * validation run as successive stages on the given executor.
+     *
+     * @param key
+     *            Input key value.
+     * @param connectionString
+     *            Connection string with credential information, the DataSource and Database are obtained from the results of the lookup operation for
+     *            key.
+     * @param options
+     *            Options for validation operations to perform on opened connection.
+     * @param executor
+     *            Executor on which lookup, open and validation run.
+     * @return A future completed with an opened SqlConnection.
+     */
+    public final CompletableFuture<Connection> openConnectionForKeyAsync(Object key,
+            String connectionString,
+            ConnectionOptions options,
+            Executor executor) {
+        return this.openConnectionForKeyAsync(key, RangeMapping::new, ShardManagementErrorCategory.RangeShardMap, connectionString, options, executor);
+    }
+
     /**
      * Marks the given mapping offline.
      *
@@ -170,6 +215,28 @@ public class RangeShardMapper extends BaseShardMapper implements IShardMapper<Ra
         this.remove(mapping, RangeMapping::new, lockOwnerId);
     }
 
+    /**
+     * Looks up an Int32 or Int64 key value and returns the corresponding mapping. The key is not boxed when its mapping is cached.
+     *
+     * @param key
+     *            Input key value.
+     * @param lookupOptions
+     *            Whether to use cache and/or storage for lookups.
+     * @return Mapping that contains the key value.
+     */
+    public final RangeMapping lookup(long key,
+            LookupOptions lookupOptions) {
+        RangeMapping p = this.lookup(key, lookupOptions, RangeMapping::new, ShardManagementErrorCategory.RangeShardMap);
+
+        if (p == null) {
+            throw new ShardManagementException(ShardManagementErrorCategory.RangeShardMap, ShardManagementErrorCode.MappingNotFoundForKey,
+                    Errors._Store_ShardMapper_MappingNotFoundForKeyGlobal, this.getShardMap().getName(),
+                    StoreOperationRequestBuilder.SP_FIND_SHARD_MAPPING_BY_KEY_GLOBAL, "Lookup");
+        }
+
+        return p;
+    }
+
     /**
      * Looks up the key value and returns the corresponding mapping.
      *
@@ -192,6 +259,21 @@ public class RangeShardMapper extends BaseShardMapper implements IShardMapper<Ra
         return p;
     }
 
+    /**
+     * Looks up a set of key values and returns the corresponding mappings. Keys missing from the cache are looked up in the store with a single
+     * request.
+     *
+     * @param keys
+     *            Input key values.
+     * @param lookupOptions
+     *            Whether to use cache and/or storage for lookups.
+     * @return Mappings that contain the key values, keyed by input key. Keys without a mapping are not present.
+     */
+    public final <KeyT> Map<KeyT, RangeMapping> lookupKeys(Collection<KeyT> keys,
+            LookupOptions lookupOptions) {
+        return this.lookupKeys(keys, lookupOptions, RangeMapping::new, ShardManagementErrorCategory.RangeShardMap);
+    }
+
     /**
      * Tries to looks up the key value and returns the corresponding mapping.
      *
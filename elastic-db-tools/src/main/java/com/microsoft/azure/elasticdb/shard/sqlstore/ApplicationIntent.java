@@ -0,0 +1,52 @@
+package com.microsoft.azure.elasticdb.shard.sqlstore;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+/**
+ * Workload type declared when connecting to a server, corresponding to the ApplicationIntent connection string property.
+ */
+public enum ApplicationIntent {
+    /**
+     * The connection is used for reads and writes and is served by the primary replica.
+     */
+    ReadWrite(0),
+
+    /**
+     * The connection is used for reads only and may be served by a readable secondary replica.
+     */
+    ReadOnly(1);
+
+    public static final int SIZE = java.lang.Integer.SIZE;
+    private static java.util.HashMap<Integer, ApplicationIntent> mappings;
+    private int intValue;
+
+    ApplicationIntent(int value) {
+        intValue = value;
+        getMappings().put(value, this);
+    }
+
+    private static java.util.HashMap<Integer, ApplicationIntent> getMappings() {
+        if (mappings == null) {
+            synchronized (ApplicationIntent.class) {
+                if (mappings == null) {
+                    mappings = new java.util.HashMap<>();
+                }
+            }
+        }
+        return mappings;
+    }
+
+    public static ApplicationIntent forValue(int value) {
+        return getMappings().get(value);
+    }
+
+    public int getValue() {
+        return intValue;
+    }
+}
@@ -0,0 +1,37 @@
+package com.microsoft.azure.elasticdb.shard.sqlstore;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+
+/**
+ * User connection provider which opens a new physical connection for every request. Closing the connection closes the physical connection.
+ */
+public final class DriverManagerConnectionProvider implements IUserConnectionProvider {
+
+    /**
+     * Obtains a new open connection for the given connection string.
+     *
+     * @param connectionString
+     *            Connection string of user.
+     * @return An open connection.
+     */
+    @Override
+    public Connection getConnection(String connectionString) throws SQLException {
+        return DriverManager.getConnection(connectionString);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,622 @@
+package com.microsoft.azure.elasticdb.shard.sqlstore;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+
+/**
+ * User connection provider which keeps a bounded pool of physical connections for every distinct connection string. Since data dependent
+ * routing connection strings are targeted at a single shard, this amounts to one pool per shard location and credential. Connections handed out
+ * by the provider return to their pool when closed. Idle connections are evicted after the idle timeout, connections are retired after their
+ * maximum lifetime and connections that have been idle longer than the validation interval are checked before being handed out. A background
+ * thread, started with the first pool, evicts idle connections of pools which are no longer borrowed from.
+ * <p>
+ * Statements created from a pooled connection report the pooled connection as theirs and are closed when the connection returns to its pool;
+ * any transaction left open is rolled back and the catalog, isolation level and read-only mode are restored. Objects obtained through
+ * {@code unwrap}, and result sets, are the driver's own and must not be used after the pooled connection is closed.
+ * <p>
+ * The provider does not reset the session the way the driver's own pooling does with sp_reset_connection. SET options, temporary tables,
+ * SESSION_CONTEXT and CONTEXT_INFO values and impersonation through EXECUTE AS carry over to the next borrower of the connection. Callers which
+ * change such state, for instance by setting a tenant identifier with sp_set_session_context for row-level security, must restore it before
+ * closing the connection, or use a provider which does not pool. Pooling is therefore not enabled by default.
+ * <p>
+ * A connection which is never closed keeps its slot in the pool. Once the maximum pool size is reached, further borrowers wait up to the borrow
+ * timeout and then fail, so connection leaks show up as stalls and timeouts rather than as a growing number of connections; size the pool and
+ * the borrow timeout for the application.
+ */
+public final class PooledUserConnectionProvider implements IUserConnectionProvider {
+
+    /**
+     * Default maximum number of connections per pool.
+     */
+    public static final int DEFAULT_MAX_POOL_SIZE = 100;
+
+    /**
+     * Default time after which an idle connection is closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Default time after which a connection is retired regardless of use.
+     */
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Default idle time after which a connection is validated before being handed out.
+     */
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Default time to wait for a connection when the pool is exhausted.
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Timeout in seconds for validating a connection.
+     */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Shortest interval at which idle connections are evicted in the background.
+     */
+    private static final long MIN_EVICTION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * Rolls back a transaction the borrower began with Transact-SQL rather than through setAutoCommit.
+     */
+    private static final String ROLLBACK_OPEN_TRANSACTION = "IF @@TRANCOUNT > 0 ROLLBACK TRANSACTION";
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Public interfaces implemented by driver classes, so that proxies of driver objects keep the driver's extensions.
+     */
+    private static final Map<Class<?>, Class<?>[]> proxyInterfaces = new ConcurrentHashMap<>();
+
+    /**
+     * Pools keyed by connection string.
+     */
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private final int maxPoolSize;
+
+    private final long idleTimeoutMillis;
+
+    private final long maxLifetimeMillis;
+
+    private final long validationIntervalMillis;
+
+    private final long borrowTimeoutMillis;
+
+    private volatile boolean closed;
+
+    /**
+     * Evicts idle connections in the background; started with the first pool.
+     */
+    private ScheduledExecutorService evictor;
+
+    /**
+     * Constructs a pooled provider with default settings.
+     */
+    public PooledUserConnectionProvider() {
+        this(DEFAULT_MAX_POOL_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_LIFETIME_MILLIS, DEFAULT_VALIDATION_INTERVAL_MILLIS,
+                DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a pooled provider.
+     *
+     * @param maxPoolSize
+     *            Maximum number of connections, in use or idle, per connection string.
+     * @param idleTimeoutMillis
+     *            Time after which an idle connection is closed.
+     * @param maxLifetimeMillis
+     *            Time after which a connection is retired regardless of use.
+     * @param validationIntervalMillis
+     *            Idle time after which a connection is validated before being handed out.
+     * @param borrowTimeoutMillis
+     *            Time to wait for a connection when the pool is exhausted.
+     */
+    public PooledUserConnectionProvider(int maxPoolSize,
+            long idleTimeoutMillis,
+            long maxLifetimeMillis,
+            long validationIntervalMillis,
+            long borrowTimeoutMillis) {
+        Preconditions.checkArgument(maxPoolSize > 0, "maxPoolSize must be positive");
+        Preconditions.checkArgument(idleTimeoutMillis > 0, "idleTimeoutMillis must be positive");
+        Preconditions.checkArgument(maxLifetimeMillis > 0, "maxLifetimeMillis must be positive");
+        Preconditions.checkArgument(validationIntervalMillis >= 0, "validationIntervalMillis cannot be negative");
+        Preconditions.checkArgument(borrowTimeoutMillis >= 0, "borrowTimeoutMillis cannot be negative");
+        this.maxPoolSize = maxPoolSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Borrows a connection from the pool for the given connection string, opening a new one if no idle connection is usable.
+     *
+     * @param connectionString
+     *            Connection string of user.
+     * @return An open connection which returns to the pool when closed.
+     */
+    @Override
+    public Connection getConnection(String connectionString) throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection provider has been closed.");
+        }
+        Pool pool = pools.get(connectionString);
+        if (pool == null) {
+            startEvictor();
+            pool = pools.computeIfAbsent(connectionString, Pool::new);
+        }
+        return pool.borrow();
+    }
+
+    /**
+     * Closes all idle connections and stops pooling. Connections currently in use are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.shutdownNow();
+            }
+        }
+        pools.values().forEach(Pool::clear);
+        pools.clear();
+    }
+
+    private synchronized void startEvictor() {
+        if (evictor != null || closed) {
+            return;
+        }
+        long interval = Math.max(MIN_EVICTION_INTERVAL_MILLIS, Math.min(idleTimeoutMillis, maxLifetimeMillis) / 2);
+        evictor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("elastic-db-pool-evictor-%d").build());
+        evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIdle() {
+        try {
+            long now = System.currentTimeMillis();
+            pools.values().forEach(pool -> pool.evictIdle(now));
+        }
+        catch (RuntimeException e) {
+            // Keep the schedule alive; the next run retries.
+            log.warn("Failed to evict idle pooled connections: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        }
+        catch (SQLException e) {
+            log.warn("Failed to close pooled connection: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        }
+        catch (SQLException e) {
+            log.warn("Failed to close statement of pooled connection: {}", e.getMessage());
+        }
+    }
+
+    private static Object invokeOn(Object target,
+            Method method,
+            Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Class<?>[] getProxyInterfaces(Class<?> type) {
+        return proxyInterfaces.computeIfAbsent(type, t -> {
+            List<Class<?>> interfaces = new ArrayList<>();
+            for (Class<?> i : ClassUtils.getAllInterfaces(t)) {
+                if (Modifier.isPublic(i.getModifiers())) {
+                    interfaces.add(i);
+                }
+            }
+            return interfaces.toArray(new Class<?>[interfaces.size()]);
+        });
+    }
+
+    /**
+     * Physical connection tracked by a pool.
+     */
+    private static final class PooledEntry {
+
+        private final Connection physical;
+
+        private final long createdAt;
+
+        private final int defaultIsolation;
+
+        private final String defaultCatalog;
+
+        private volatile long lastUsedAt;
+
+        PooledEntry(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = this.createdAt;
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.defaultCatalog = physical.getCatalog();
+        }
+    }
+
+    /**
+     * Bounded pool of connections for one connection string.
+     */
+    private final class Pool {
+
+        private final String connectionString;
+
+        /**
+         * Idle connections, most recently used first.
+         */
+        private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+
+        /**
+         * Permits for connections in use.
+         */
+        private final Semaphore permits = new Semaphore(maxPoolSize, true);
+
+        Pool(String connectionString) {
+            this.connectionString = connectionString;
+        }
+
+        Connection borrow() throws SQLException {
+            try {
+                if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException(String.format("Timed out after %1$s ms waiting for a pooled connection; pool size: %2$s.",
+                            borrowTimeoutMillis, maxPoolSize));
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a pooled connection.", e);
+            }
+
+            try {
+                PooledEntry entry;
+                while ((entry = idle.pollFirst()) != null) {
+                    if (isUsable(entry, System.currentTimeMillis())) {
+                        return wrap(entry);
+                    }
+                    closeQuietly(entry.physical);
+                }
+                return wrap(new PooledEntry(DriverManager.getConnection(connectionString)));
+            }
+            catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private boolean isUsable(PooledEntry entry,
+                long now) {
+            if (now - entry.createdAt >= maxLifetimeMillis || now - entry.lastUsedAt >= idleTimeoutMillis) {
+                return false;
+            }
+            if (now - entry.lastUsedAt >= validationIntervalMillis) {
+                try {
+                    return entry.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+                }
+                catch (SQLException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns a connection to the pool.
+         *
+         * @param entry
+         *            The connection.
+         * @param used
+         *            Whether the borrower created statements, and so may have begun a transaction in Transact-SQL.
+         */
+        private void release(PooledEntry entry,
+                boolean used) {
+            try {
+                long now = System.currentTimeMillis();
+                if (closed || entry.physical.isClosed() || now - entry.createdAt >= maxLifetimeMillis) {
+                    closeQuietly(entry.physical);
+                }
+                else if (reset(entry, used)) {
+                    entry.lastUsedAt = now;
+                    idle.offerFirst(entry);
+                }
+                evictIdle(now);
+            }
+            catch (SQLException e) {
+                closeQuietly(entry.physical);
+            }
+            finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Rolls back open transactions and restores the connection properties the caller may have changed through JDBC. Other session state is
+         * not reset.
+         */
+        private boolean reset(PooledEntry entry,
+                boolean used) {
+            try {
+                Connection conn = entry.physical;
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                else if (used) {
+                    try (Statement statement = conn.createStatement()) {
+                        statement.execute(ROLLBACK_OPEN_TRANSACTION);
+                    }
+                }
+                if (entry.defaultCatalog != null && !entry.defaultCatalog.equals(conn.getCatalog())) {
+                    conn.setCatalog(entry.defaultCatalog);
+                }
+                if (conn.isReadOnly()) {
+                    conn.setReadOnly(false);
+                }
+                if (conn.getTransactionIsolation() != entry.defaultIsolation) {
+                    conn.setTransactionIsolation(entry.defaultIsolation);
+                }
+                conn.clearWarnings();
+                return true;
+            }
+            catch (SQLException e) {
+                log.warn("Discarding pooled connection which could not be reset: {}", e.getMessage());
+                closeQuietly(entry.physical);
+                return false;
+            }
+        }
+
+        /**
+         * Closes idle connections from the least recently used end of the pool.
+         */
+        void evictIdle(long now) {
+            Iterator<PooledEntry> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledEntry entry = it.next();
+                if (now - entry.lastUsedAt < idleTimeoutMillis && now - entry.createdAt < maxLifetimeMillis) {
+                    break;
+                }
+                if (idle.removeFirstOccurrence(entry)) {
+                    closeQuietly(entry.physical);
+                }
+            }
+        }
+
+        void clear() {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                closeQuietly(entry.physical);
+            }
+        }
+
+        private Connection wrap(PooledEntry entry) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    new PooledConnectionHandler(this, entry));
+        }
+    }
+
+    /**
+     * Handle given to callers; returns the physical connection to its pool on close instead of closing it.
+     */
+    private static final class PooledConnectionHandler implements InvocationHandler {
+
+        private final Pool pool;
+
+        private final PooledEntry entry;
+
+        /**
+         * Open statements created by the borrower, closed when the connection is returned.
+         */
+        private final Set<Statement> statements = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private boolean returned;
+
+        private boolean used;
+
+        PooledConnectionHandler(Pool pool,
+                PooledEntry entry) {
+            this.pool = pool;
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    List<Statement> open;
+                    synchronized (this) {
+                        if (returned) {
+                            return null;
+                        }
+                        returned = true;
+                        open = new ArrayList<>(statements);
+                        statements.clear();
+                    }
+                    open.forEach(PooledUserConnectionProvider::closeQuietly);
+                    pool.release(entry, used);
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return returned || entry.physical.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + entry.physical.toString();
+                default:
+                    break;
+            }
+
+            synchronized (this) {
+                if (returned) {
+                    throw new SQLException("The connection is closed.");
+                }
+            }
+            Object result = invokeOn(entry.physical, method, args);
+            switch (method.getName()) {
+                case "createStatement":
+                case "prepareStatement":
+                case "prepareCall":
+                    return this.track((Connection) proxy, (Statement) result);
+                case "getMetaData":
+                    return Proxy.newProxyInstance(PooledConnectionHandler.class.getClassLoader(), new Class<?>[] {DatabaseMetaData.class},
+                            new ChildHandler(proxy, result));
+                case "unwrap":
+                    return ((Class<?>) args[0]).isInstance(proxy) ? proxy : result;
+                default:
+                    return result;
+            }
+        }
+
+        private Statement track(Connection proxy,
+                Statement statement) throws SQLException {
+            ClassLoader loader = statement.getClass().getClassLoader();
+            Statement pooled = (Statement) Proxy.newProxyInstance(loader == null ? Statement.class.getClassLoader() : loader,
+                    getProxyInterfaces(statement.getClass()), new StatementHandler(this, proxy, statement));
+            synchronized (this) {
+                if (returned) {
+                    // Raced with close; the statement would outlive the borrow.
+                    closeQuietly(statement);
+                    throw new SQLException("The connection is closed.");
+                }
+                used = true;
+                statements.add(pooled);
+            }
+            return pooled;
+        }
+
+        synchronized void untrack(Statement statement) {
+            statements.remove(statement);
+        }
+    }
+
+    /**
+     * Handle for an object created by a pooled connection, which reports the pooled connection rather than the physical one as its own.
+     */
+    private static class ChildHandler implements InvocationHandler {
+
+        private final Object connection;
+
+        private final Object target;
+
+        ChildHandler(Object connection,
+                Object target) {
+            this.connection = connection;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + target.toString();
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return invokeOn(target, method, args);
+        }
+    }
+
+    /**
+     * Handle for a statement created by a pooled connection, which stops tracking the statement once the borrower closes it.
+     */
+    private static final class StatementHandler extends ChildHandler {
+
+        private final PooledConnectionHandler owner;
+
+        StatementHandler(PooledConnectionHandler owner,
+                Connection connection,
+                Statement target) {
+            super(connection, target);
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                owner.untrack((Statement) proxy);
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+}
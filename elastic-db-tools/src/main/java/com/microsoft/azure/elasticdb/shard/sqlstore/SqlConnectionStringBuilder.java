@@ -63,6 +63,11 @@ public final class SqlConnectionStringBuilder {
      */
     private String user;
 
+    /**
+     * Workload type of the connection. Left out of the connection string when not set.
+     */
+    private ApplicationIntent applicationIntent;
+
     /**
      * Initializes a new instance of the SqlConnectionStringBuilder class.
      */
@@ -161,6 +166,14 @@ public final class SqlConnectionStringBuilder {
         this.user = value;
     }
 
+    public ApplicationIntent getApplicationIntent() {
+        return applicationIntent;
+    }
+
+    public void setApplicationIntent(ApplicationIntent value) {
+        this.applicationIntent = value;
+    }
+
     public final String getConnectionString() {
         return this.toString();
     }
@@ -194,11 +207,13 @@ public final class SqlConnectionStringBuilder {
         String integratedSecurity = this.getIntegratedSecurity() ? "" : "IntegratedSecurity=" + this.getIntegratedSecurity() + ";";
         String persistSecurityInfo = this.getPersistSecurityInfo() ? "" : "PersistSecurityInfo=" + this.getPersistSecurityInfo() + ";";
         String appName = StringUtilsLocal.isNullOrEmpty(this.getApplicationName()) ? "" : "ApplicationName=" + this.getApplicationName() + ";";
-        String timeout = this.getConnectTimeout() == 0 ? "" : "ConnectTimeout=" + this.getConnectTimeout() + ";";
+        String timeout = this.getConnectTimeout() == 0 ? "" : "loginTimeout=" + this.getConnectTimeout() + ";";
         String pass = StringUtilsLocal.isNullOrEmpty(this.getPassword()) ? "" : "Password=" + this.getPassword() + ";";
         String user = StringUtilsLocal.isNullOrEmpty(this.getUser()) ? "" : "User=" + this.getUser() + ";";
+        String intent = this.getApplicationIntent() == null ? "" : "ApplicationIntent=" + this.getApplicationIntent() + ";";
 
-        return "jdbc:sqlserver://" + dataSource + databaseName + user + pass + appName + timeout + integratedSecurity + persistSecurityInfo;
+        return "jdbc:sqlserver://" + dataSource + databaseName + user + pass + appName + timeout + integratedSecurity + persistSecurityInfo
+                + intent;
     }
 
     /**
@@ -217,6 +232,7 @@ public final class SqlConnectionStringBuilder {
                 this.applicationName = value;
                 break;
             case "connecttimeout":
+            case "logintimeout":
                 this.connectTimeout = Integer.parseInt(value);
                 break;
             case "databasename":
@@ -234,6 +250,10 @@ public final class SqlConnectionStringBuilder {
             case "user":
                 this.user = value;
                 break;
+            case "applicationintent":
+                this.applicationIntent = StringUtilsLocal.isNullOrEmpty(value) ? null
+                        : "readonly".equalsIgnoreCase(value) ? ApplicationIntent.ReadOnly : ApplicationIntent.ReadWrite;
+                break;
             default:
                 return false;
         }
@@ -263,6 +283,8 @@ public final class SqlConnectionStringBuilder {
                 return this.persistSecurityInfo;
             case "User":
                 return StringUtilsLocal.isNullOrEmpty(this.user) ? null : this.user;
+            case "ApplicationIntent":
+                return this.applicationIntent;
             default:
                 return null;
         }
@@ -8,8 +8,10 @@ package com.microsoft.azure.elasticdb.shard.sqlstore;
  * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
  */
 
+import com.google.common.base.Preconditions;
 import com.microsoft.azure.elasticdb.shard.store.IStoreConnection;
 import com.microsoft.azure.elasticdb.shard.store.IStoreConnectionFactory;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
 import com.microsoft.azure.elasticdb.shard.store.IUserStoreConnection;
 import com.microsoft.azure.elasticdb.shard.store.StoreConnectionKind;
 
@@ -19,9 +21,33 @@ import com.microsoft.azure.elasticdb.shard.store.StoreConnectionKind;
 public class SqlStoreConnectionFactory implements IStoreConnectionFactory {
 
     /**
-     * Constructs an instance of the factory.
+     * Provider of the physical connections behind user connections.
+     */
+    private final IUserConnectionProvider userConnectionProvider;
+
+    /**
+     * Constructs an instance of the factory. Every user connection opens a new physical connection.
      */
     public SqlStoreConnectionFactory() {
+        this(new DriverManagerConnectionProvider());
+    }
+
+    /**
+     * Constructs an instance of the factory. Pass a {@link PooledUserConnectionProvider}, sized for the application, to pool user connections;
+     * the factory is handed to the <see cref="com.microsoft.azure.elasticdb.shard.mapmanager.ShardMapManager"/> constructor.
+     *
+     * @param userConnectionProvider
+     *            Provider of the physical connections behind user connections.
+     */
+    public SqlStoreConnectionFactory(IUserConnectionProvider userConnectionProvider) {
+        this.userConnectionProvider = Preconditions.checkNotNull(userConnectionProvider);
+    }
+
+    /**
+     * Provider of the physical connections behind user connections.
+     */
+    public IUserConnectionProvider getUserConnectionProvider() {
+        return userConnectionProvider;
     }
 
     /**
@@ -46,6 +72,6 @@ public class SqlStoreConnectionFactory implements IStoreConnectionFactory {
      * @return An unopened instance of the user connection.
      */
     public IUserStoreConnection getUserConnection(String connectionString) {
-        return new SqlUserStoreConnection(connectionString);
+        return new SqlUserStoreConnection(connectionString, userConnectionProvider);
     }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.microsoft.azure.elasticdb.shard.sqlstore;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /*
@@ -12,6 +11,7 @@ import java.sql.SQLException;
  * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
  */
 
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
 import com.microsoft.azure.elasticdb.shard.store.IUserStoreConnection;
 import com.microsoft.azure.elasticdb.shard.store.StoreException;
 
@@ -32,8 +32,21 @@ public class SqlUserStoreConnection implements IUserStoreConnection {
      *            Connection string.
      */
     public SqlUserStoreConnection(String connectionString) {
+        this(connectionString, new DriverManagerConnectionProvider());
+    }
+
+    /**
+     * Creates a new instance of user store connection backed by the given connection provider.
+     *
+     * @param connectionString
+     *            Connection string.
+     * @param connectionProvider
+     *            Provider of the underlying connection.
+     */
+    public SqlUserStoreConnection(String connectionString,
+            IUserConnectionProvider connectionProvider) {
         try {
-            conn = DriverManager.getConnection(connectionString);
+            conn = connectionProvider.getConnection(connectionString);
         }
         catch (SQLException e) {
             e.printStackTrace();
@@ -0,0 +1,31 @@
+package com.microsoft.azure.elasticdb.shard.store;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Provider of physical connections for user (data dependent routing) connections. Closing a connection obtained from the provider hands it back
+ * to the provider, which may either close it or keep it for reuse.
+ */
+public interface IUserConnectionProvider extends java.io.Closeable {
+
+    /**
+     * Obtains an open connection for the given connection string.
+     *
+     * @param connectionString
+     *            Connection string of user, already targeted at the shard.
+     * @return An open connection.
+     * @throws SQLException
+     *             If a connection could not be obtained.
+     */
+    Connection getConnection(String connectionString) throws SQLException;
+
+}
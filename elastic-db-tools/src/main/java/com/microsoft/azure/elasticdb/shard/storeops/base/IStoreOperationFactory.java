@@ -355,6 +355,36 @@ public interface IStoreOperationFactory {
             boolean cacheResults,
             boolean ignoreFailure);
 
+    /**
+     * Constructs request for obtaining the mappings from GSM for a set of keys in a single request.
+     *
+     * @param shardMapManager
+     *            Shard map manager.
+     * @param operationName
+     *            Operation being executed.
+     * @param shardMap
+     *            Local shard map.
+     * @param keys
+     *            Keys for lookup operation.
+     * @param policy
+     *            Policy for cache update.
+     * @param errorCategory
+     *            Error category.
+     * @param cacheResults
+     *            Whether to cache the results of the operation.
+     * @param ignoreFailure
+     *            Ignore shard map not found error.
+     * @return The store operation.
+     */
+    IStoreOperationGlobal createFindMappingsByKeysGlobalOperation(ShardMapManager shardMapManager,
+            String operationName,
+            StoreShardMap shardMap,
+            List<ShardKey> keys,
+            CacheStoreMappingUpdatePolicy policy,
+            ShardManagementErrorCategory errorCategory,
+            boolean cacheResults,
+            boolean ignoreFailure);
+
     /**
      * Constructs request for obtaining all the mappings from GSM based on given shard and mappings.
      *
@@ -58,6 +58,7 @@ import com.microsoft.azure.elasticdb.shard.storeops.mapmanger.RemoveShardMapGlob
 import com.microsoft.azure.elasticdb.shard.storeops.mapper.AddMappingOperation;
 import com.microsoft.azure.elasticdb.shard.storeops.mapper.FindMappingByIdGlobalOperation;
 import com.microsoft.azure.elasticdb.shard.storeops.mapper.FindMappingByKeyGlobalOperation;
+import com.microsoft.azure.elasticdb.shard.storeops.mapper.FindMappingsByKeysGlobalOperation;
 import com.microsoft.azure.elasticdb.shard.storeops.mapper.GetMappingsByRangeGlobalOperation;
 import com.microsoft.azure.elasticdb.shard.storeops.mapper.LockOrUnLockMappingsGlobalOperation;
 import com.microsoft.azure.elasticdb.shard.storeops.mapper.RemoveMappingOperation;
@@ -448,6 +449,39 @@ public class StoreOperationFactory implements IStoreOperationFactory {
         return new FindMappingByKeyGlobalOperation(shardMapManager, operationName, shardMap, key, policy, errorCategory, cacheResults, ignoreFailure);
     }
 
+    /**
+     * Constructs request for obtaining the mappings from GSM for a set of keys in a single request.
+     *
+     * @param shardMapManager
+     *            Shard map manager.
+     * @param operationName
+     *            Operation being executed.
+     * @param shardMap
+     *            Local shard map.
+     * @param keys
+     *            Keys for lookup operation.
+     * @param policy
+     *            Policy for cache update.
+     * @param errorCategory
+     *            Error category.
+     * @param cacheResults
+     *            Whether to cache the results of the operation.
+     * @param ignoreFailure
+     *            Ignore shard map not found error.
+     * @return The store operation.
+     */
+    public IStoreOperationGlobal createFindMappingsByKeysGlobalOperation(ShardMapManager shardMapManager,
+            String operationName,
+            StoreShardMap shardMap,
+            List<ShardKey> keys,
+            CacheStoreMappingUpdatePolicy policy,
+            ShardManagementErrorCategory errorCategory,
+            boolean cacheResults,
+            boolean ignoreFailure) {
+        return new FindMappingsByKeysGlobalOperation(shardMapManager, operationName, shardMap, keys, policy, errorCategory, cacheResults,
+                ignoreFailure);
+    }
+
     /**
      * Constructs request for obtaining all the mappings from GSM based on given shard and mappings.
      *
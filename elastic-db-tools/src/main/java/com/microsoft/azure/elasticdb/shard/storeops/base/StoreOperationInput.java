@@ -67,6 +67,9 @@ public class StoreOperationInput {
     @XmlElement(name = "Key")
     private ShardKey key;
 
+    @XmlElement(name = "Keys")
+    private StoreOperationRequestBuilder.Keys keys;
+
     @XmlElement(name = "Mapping")
     private StoreMapping mapping;
 
@@ -201,6 +204,11 @@ public class StoreOperationInput {
             return this;
         }
 
+        public Builder withShardKeys(List<ShardKey> keys) {
+            input.keys = new StoreOperationRequestBuilder.Keys(keys);
+            return this;
+        }
+
         public Builder withMapping(StoreMapping mapping) {
             input.mapping = mapping;
             return this;
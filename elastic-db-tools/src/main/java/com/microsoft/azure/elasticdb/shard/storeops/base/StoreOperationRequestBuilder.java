@@ -97,6 +97,11 @@ public final class StoreOperationRequestBuilder {
      */
     public static final String SP_FIND_SHARD_MAPPING_BY_KEY_GLOBAL = "__ShardManagement.spFindShardMappingByKeyGlobal";
 
+    /**
+     * FindShardMappingsByKeysGlobal stored procedure.
+     */
+    public static final String SP_FIND_SHARD_MAPPINGS_BY_KEYS_GLOBAL = "__ShardManagement.spFindShardMappingsByKeysGlobal";
+
     /**
      * FindShardMappingByIdGlobal stored procedure.
      */
@@ -448,6 +453,23 @@ public final class StoreOperationRequestBuilder {
         return new JAXBElement<>(rootElementName, StoreOperationInput.class, input);
     }
 
+    /**
+     * Request to get mappings from GSM for a set of keys belonging to a shard map.
+     *
+     * @param shardMap
+     *            ShardId map whose mappings are being requested.
+     * @param keys
+     *            Keys being searched.
+     * @return Xml formatted request.
+     */
+    public static JAXBElement<StoreOperationInput> findShardMappingsByKeysGlobal(StoreShardMap shardMap,
+            List<ShardKey> keys) {
+        QName rootElementName = new QName("FindShardMappingsByKeysGlobal");
+        StoreOperationInput input = new StoreOperationInput.Builder().withGsmVersion().withShardMap(shardMap == null ? StoreShardMap.NULL : shardMap)
+                .withShardKeys(keys).build();
+        return new JAXBElement<>(rootElementName, StoreOperationInput.class, input);
+    }
+
     /**
      * Request to get mapping from GSM for a particular mapping Id.
      *
@@ -1138,6 +1160,19 @@ public final class StoreOperationRequestBuilder {
         }
     }
 
+    static class Keys {
+
+        @XmlElement(name = "Key")
+        private List<ShardKey> keys;
+
+        Keys() {
+        }
+
+        Keys(List<ShardKey> keys) {
+            this.keys = keys;
+        }
+    }
+
     static class Lock {
 
         @XmlElement(name = "Id")
@@ -0,0 +1,199 @@
+package com.microsoft.azure.elasticdb.shard.storeops.mapper;
+
+import java.util.List;
+
+/*
+ * Elastic database tools for Azure SQL Database.
+ *
+ * Copyright(c) Microsoft Corporation All rights reserved.
+ *
+ * This program is made available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+import com.microsoft.azure.elasticdb.shard.base.ShardKey;
+import com.microsoft.azure.elasticdb.shard.cache.CacheStoreMappingUpdatePolicy;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCategory;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardMapManager;
+import com.microsoft.azure.elasticdb.shard.store.IStoreTransactionScope;
+import com.microsoft.azure.elasticdb.shard.store.StoreResult;
+import com.microsoft.azure.elasticdb.shard.store.StoreResults;
+import com.microsoft.azure.elasticdb.shard.store.StoreShardMap;
+import com.microsoft.azure.elasticdb.shard.store.Version;
+import com.microsoft.azure.elasticdb.shard.storeops.base.StoreOperationErrorHandler;
+import com.microsoft.azure.elasticdb.shard.storeops.base.StoreOperationGlobal;
+import com.microsoft.azure.elasticdb.shard.storeops.base.StoreOperationRequestBuilder;
+import com.microsoft.azure.elasticdb.shard.utils.SqlUtils;
+
+/**
+ * Obtains the mappings from the GSM for a set of keys in a single request.
+ */
+public class FindMappingsByKeysGlobalOperation extends StoreOperationGlobal {
+
+    /**
+     * GSM version which added the stored procedure looking up many keys.
+     */
+    private static final Version BULK_LOOKUP_GSM_VERSION = new Version(1, 3);
+
+    /**
+     * Shard map manager instance.
+     */
+    private ShardMapManager shardMapManager;
+
+    /**
+     * Shard map for which mappings are requested.
+     */
+    private StoreShardMap shardMap;
+
+    /**
+     * Keys being searched.
+     */
+    private List<ShardKey> keys;
+
+    /**
+     * Policy for cache update.
+     */
+    private CacheStoreMappingUpdatePolicy policy;
+
+    /**
+     * Error category to use.
+     */
+    private ShardManagementErrorCategory errorCategory;
+
+    /**
+     * Whether to cache the results.
+     */
+    private boolean cacheResults;
+
+    /**
+     * Ignore ShardMapNotFound error.
+     */
+    private boolean ignoreFailure;
+
+    /**
+     * Constructs request for obtaining mappings from GSM based on given keys.
+     *
+     * @param shardMapManager
+     *            Shard map manager.
+     * @param operationName
+     *            Operation being executed.
+     * @param shardMap
+     *            Local shard map.
+     * @param keys
+     *            Keys for lookup operation.
+     * @param policy
+     *            Policy for cache update.
+     * @param errorCategory
+     *            Error category.
+     * @param cacheResults
+     *            Whether to cache the results of the operation.
+     * @param ignoreFailure
+     *            Ignore shard map not found error.
+     */
+    public FindMappingsByKeysGlobalOperation(ShardMapManager shardMapManager,
+            String operationName,
+            StoreShardMap shardMap,
+            List<ShardKey> keys,
+            CacheStoreMappingUpdatePolicy policy,
+            ShardManagementErrorCategory errorCategory,
+            boolean cacheResults,
+            boolean ignoreFailure) {
+        super(shardMapManager.getCredentials(), shardMapManager.getRetryPolicy(), operationName);
+        this.shardMapManager = shardMapManager;
+        this.shardMap = shardMap;
+        this.keys = keys;
+        this.policy = policy;
+        this.errorCategory = errorCategory;
+        this.cacheResults = cacheResults;
+        this.ignoreFailure = ignoreFailure;
+    }
+
+    /**
+     * Whether this is a read-only operation.
+     */
+    @Override
+    public boolean getReadOnly() {
+        return true;
+    }
+
+    /**
+     * Execute the operation against GSM in the current transaction scope. A GSM older than version 1.3 lacks the stored procedure, which is
+     * reported as a store version mismatch.
+     *
+     * @param ts
+     *            Transaction scope.
+     * @return Results of the operation.
+     */
+    @Override
+    public StoreResults doGlobalExecute(IStoreTransactionScope ts) {
+        StoreResults result = ts.executeOperation(StoreOperationRequestBuilder.SP_FIND_SHARD_MAPPINGS_BY_KEYS_GLOBAL,
+                StoreOperationRequestBuilder.findShardMappingsByKeysGlobal(shardMap, keys));
+
+        if (result == null) {
+            // The version is only checked once the call failed, so that lookups against an upgraded store take a single round trip.
+            StoreResults checkResult = ts.executeCommandSingle(SqlUtils.getCheckIfExistsGlobalScript().get(0));
+            if (checkResult != null && checkResult.getStoreVersion() != null
+                    && Version.isFirstGreaterThan(BULK_LOOKUP_GSM_VERSION, checkResult.getStoreVersion())) {
+                result = new StoreResults();
+                result.setResult(StoreResult.StoreVersionMismatch);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Invalidates the cache on unsuccessful commit of the GSM operation.
+     *
+     * @param result
+     *            Operation result.
+     */
+    @Override
+    public void doGlobalUpdateCachePre(StoreResults result) {
+        if (result.getResult() == StoreResult.ShardMapDoesNotExist) {
+            // Remove shard map from cache.
+            shardMapManager.getCache().deleteShardMap(shardMap);
+        }
+    }
+
+    /**
+     * Handles errors from the GSM operation after the LSM operations.
+     *
+     * @param result
+     *            Operation result.
+     */
+    @Override
+    public void handleDoGlobalExecuteError(StoreResults result) {
+        // Recovery manager handles the ShardMapDoesNotExist error properly, so we don't interfere.
+        if (!ignoreFailure || result.getResult() != StoreResult.ShardMapDoesNotExist) {
+            // Possible errors are:
+            // StoreResult.ShardMapDoesNotExist
+            // StoreResult.StoreVersionMismatch
+            // StoreResult.MissingParametersForStoredProcedure
+            throw StoreOperationErrorHandler.onShardMapperErrorGlobal(result, shardMap, null, errorCategory, this.getOperationName(),
+                    StoreOperationRequestBuilder.SP_FIND_SHARD_MAPPINGS_BY_KEYS_GLOBAL);
+        }
+    }
+
+    /**
+     * Refreshes the cache on successful commit of the GSM operation. All the mappings are handed to the cache in one call.
+     *
+     * @param result
+     *            Operation result.
+     */
+    @Override
+    public void doGlobalUpdateCachePost(StoreResults result) {
+        assert result.getResult() == StoreResult.Success || result.getResult() == StoreResult.ShardMapDoesNotExist;
+
+        if (result.getResult() == StoreResult.Success && cacheResults) {
+            shardMapManager.getCache().addOrUpdateMappings(result.getStoreMappings(), policy);
+        }
+    }
+
+    /**
+     * Error category for store exception.
+     */
+    @Override
+    protected ShardManagementErrorCategory getErrorCategory() {
+        return errorCategory;
+    }
+}
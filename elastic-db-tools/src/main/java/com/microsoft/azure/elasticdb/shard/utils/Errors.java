@@ -47,6 +47,8 @@ public class Errors {
             + " '%1$s' could not be found in shard map '%2$s' .";
     public static String _ShardMap_OpenConnection_ConnectionStringPropertyDisallowed = "Property"
             + " '%1$s' must not be set in the input connection string for 'OpenConnection' operations.";
+    public static String _ShardMap_OpenConnection_ShardUnavailable = "Connection to shard '%1$s' was not attempted since recent"
+            + " connection attempts failed repeatedly. A new attempt will be allowed in %2$s ms.";
     public static String _ShardMap_OpenConnectionForKey_KeyTypeNotSupported = "Key values of type"
             + " '%1$s' are not supported. OpenConnectionForKey requests for the shard map '%2$s'" + " requires keys of type '%3$s'.";
     public static String _ShardMapExtensions_AsTypedShardMap_ConversionFailure = "Shard map '%1$s'"
@@ -58,7 +58,7 @@ public class GlobalConstants {
     /**
      * GSM version of store supported by this library.
      */
-    public static Version GsmVersionClient = new Version(1, 2);
+    public static Version GsmVersionClient = new Version(1, 3);
     /**
      * LSM version of store supported by this library.
      */
@@ -91,6 +91,12 @@ IF object_id(N'__ShardManagement.spFindShardMappingByKeyGlobal', N'P') IS NOT NU
   END
 GO
 
+IF object_id(N'__ShardManagement.spFindShardMappingsByKeysGlobal', N'P') IS NOT NULL
+  BEGIN
+    DROP PROCEDURE __ShardManagement.spFindShardMappingsByKeysGlobal
+  END
+GO
+
 IF object_id(N'__ShardManagement.spGetAllShardMappingsGlobal', N'P') IS NOT NULL
   BEGIN
     DROP PROCEDURE __ShardManagement.spGetAllShardMappingsGlobal
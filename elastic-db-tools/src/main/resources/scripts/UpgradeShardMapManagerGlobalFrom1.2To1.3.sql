@@ -0,0 +1,177 @@
+-- Copyright (c) Microsoft. All rights reserved.
+-- Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+---------------------------------------------------------------------------------------------------
+-- Script to upgrade Global Shard Map from version 1.2 to 1.3
+-- Adds lookup of mappings for a set of keys in a single request
+---------------------------------------------------------------------------------------------------
+
+-- drop extra objects from version 1.2
+
+IF object_id(N'__ShardManagement.spFindShardMappingsByKeysGlobal', N'P') IS NOT NULL
+  BEGIN
+    DROP PROCEDURE __ShardManagement.spFindShardMappingsByKeysGlobal
+  END
+GO
+
+-- create new objects for version 1.3
+
+---------------------------------------------------------------------------------------------------
+-- __ShardManagement.spFindShardMappingsByKeysGlobal
+-- Constraints:
+-- Returns the mappings which contain any of the specified keys, keys without a mapping are skipped
+---------------------------------------------------------------------------------------------------
+CREATE PROCEDURE __ShardManagement.spFindShardMappingsByKeysGlobal
+    @input  XML,
+    @result INT OUTPUT
+AS
+  BEGIN
+    SET NOCOUNT ON
+    DECLARE @gsmVersionMajorClient INT,
+    @gsmVersionMinorClient INT,
+    @shardMapId UNIQUEIDENTIFIER
+
+    SELECT
+      @gsmVersionMajorClient = x.value('(GsmVersion/MajorVersion)[1]', 'int'),
+      @gsmVersionMinorClient = x.value('(GsmVersion/MinorVersion)[1]', 'int'),
+      @shardMapId = x.value('(ShardMap/Id)[1]', 'uniqueidentifier')
+    FROM
+      @input.nodes('/FindShardMappingsByKeysGlobal') AS t(x)
+
+    IF (@gsmVersionMajorClient IS NULL OR @gsmVersionMinorClient IS NULL OR @shardMapId IS NULL)
+      GOTO Error_MissingParameters;
+
+    IF (@gsmVersionMajorClient <> __ShardManagement.fnGetStoreVersionMajorGlobal())
+      GOTO Error_GSMVersionMismatch;
+
+    DECLARE @shardMapType INT
+
+    SELECT @shardMapType = ShardMapType
+    FROM
+      __ShardManagement.ShardMapsGlobal
+    WHERE
+      ShardMapId = @shardMapId
+
+    IF (@shardMapType IS NULL)
+      GOTO Error_ShardMapNotFound;
+
+    DECLARE @tvKeys TABLE(
+      KeyValue VARBINARY(128) NOT NULL,
+    PRIMARY KEY (KeyValue)
+    )
+
+    INSERT INTO
+      @tvKeys
+      SELECT DISTINCT
+        convert(VARBINARY(128), k.value('(Value)[1]', 'varchar(258)'), 1)
+      FROM
+        @input.nodes('/FindShardMappingsByKeysGlobal/Keys/Key') AS t(k)
+      WHERE
+        k.value('(Value)[1]', 'varchar(258)') IS NOT NULL
+
+    IF (@@rowcount = 0)
+      GOTO Error_MissingParameters;
+
+    IF (@shardMapType = 1)
+      BEGIN
+        SELECT
+          3,
+          m.MappingId,
+          m.ShardMapId,
+          m.MinValue,
+          m.MaxValue,
+          m.Status,
+          m.LockOwnerId,
+          -- fields for SqlMapping
+          s.ShardId,
+          s.Version,
+          m.ShardMapId,
+          s.Protocol,
+          s.ServerName,
+          s.Port,
+          s.DatabaseName,
+          s.Status -- fields for SqlShard, ShardMapId is repeated here
+        FROM
+          __ShardManagement.ShardMappingsGlobal m
+          JOIN
+          __ShardManagement.ShardsGlobal s
+            ON
+              m.ShardId = s.ShardId AND s.ShardMapId = @shardMapId
+          JOIN
+          @tvKeys k
+            ON
+              m.MinValue = k.KeyValue
+        WHERE
+          m.ShardMapId = @shardMapId AND
+          m.Readable = 1
+        ORDER BY
+          m.MinValue
+      END
+    ELSE
+      BEGIN
+        SELECT
+          3,
+          m.MappingId,
+          m.ShardMapId,
+          m.MinValue,
+          m.MaxValue,
+          m.Status,
+          m.LockOwnerId,
+          -- fields for SqlMapping
+          s.ShardId,
+          s.Version,
+          m.ShardMapId,
+          s.Protocol,
+          s.ServerName,
+          s.Port,
+          s.DatabaseName,
+          s.Status -- fields for SqlShard, ShardMapId is repeated here
+        FROM
+          __ShardManagement.ShardMappingsGlobal m
+          JOIN
+          __ShardManagement.ShardsGlobal s
+            ON
+              m.ShardId = s.ShardId AND s.ShardMapId = @shardMapId
+        WHERE
+          m.ShardMapId = @shardMapId AND
+          m.Readable = 1 AND
+          exists(
+              SELECT KeyValue
+              FROM
+                @tvKeys k
+              WHERE
+                m.MinValue <= k.KeyValue AND (m.MaxValue IS NULL OR m.MaxValue > k.KeyValue))
+        ORDER BY
+          m.MinValue
+      END
+
+    SET @result = 1
+    GOTO Exit_Procedure;
+
+    Error_ShardMapNotFound:
+    SET @result = 102
+    GOTO Exit_Procedure;
+
+    Error_MissingParameters:
+    SET @result = 50
+    EXEC __ShardManagement.spGetStoreVersionGlobalHelper
+    GOTO Exit_Procedure;
+
+    Error_GSMVersionMismatch:
+    SET @result = 51
+    EXEC __ShardManagement.spGetStoreVersionGlobalHelper
+    GOTO Exit_Procedure;
+
+    Exit_Procedure:
+  END
+GO
+
+-- update version as 1.3
+UPDATE
+  __ShardManagement.ShardMapManagerGlobal
+SET
+  StoreVersionMinor = 3
+WHERE
+  StoreVersionMajor = 1 AND StoreVersionMinor = 2
+
+GO
@@ -0,0 +1,180 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.math.BigDecimal;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.AggregateColumn;
+import com.microsoft.azure.elasticdb.query.multishard.AggregateFunction;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to AggregatingMultiShardResultSet class and the combination of partial aggregates.
+ */
+public class AggregationTests {
+
+    private static final String[] LABELS = {"region", "n", "total", "low", "s", "c"};
+
+    private static final int[] TYPES = {Types.NVARCHAR, Types.BIGINT, Types.INTEGER, Types.INTEGER, Types.DECIMAL, Types.BIGINT};
+
+    /**
+     * The partial aggregates of the shards combine per group: counts and sums add, integer sums widen to bigint, MIN takes the smallest value,
+     * an average divides the summed sums by the summed counts with a decimal scale of at least 6, and NULLs are ignored.
+     */
+    @Test
+    public void testPartialAggregatesCombine() throws Exception {
+        StubDriver.database("AggregateEast").setRows(LABELS, TYPES,
+                new Object[][] {{"east", 2L, Integer.MAX_VALUE, 5, new BigDecimal("1.5"), 2L}, {"west", 1L, null, null, null, 0L}});
+        StubDriver.database("AggregateWest").setRows(LABELS, TYPES, new Object[][] {{"east", 3L, 1, 3, new BigDecimal("2"), 1L}});
+
+        Map<String, Object[]> rows = new HashMap<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("AggregateEast", "AggregateWest"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT region, n, total, low, s, c FROM t")) {
+            statement.setAggregation(Collections.singletonList("region"), new AggregateColumn("n", AggregateFunction.Count),
+                    new AggregateColumn("total", AggregateFunction.Sum), new AggregateColumn("low", AggregateFunction.Min),
+                    new AggregateColumn("avg", "s", "c"));
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                Assert.assertEquals(5, metaData.getColumnCount());
+                Assert.assertEquals(Types.BIGINT, metaData.getColumnType(2));
+                Assert.assertEquals(Types.BIGINT, metaData.getColumnType(3));
+                Assert.assertEquals(Types.INTEGER, metaData.getColumnType(4));
+                Assert.assertEquals(Types.DECIMAL, metaData.getColumnType(5));
+                Assert.assertEquals(6, metaData.getScale(5));
+
+                while (resultSet.next()) {
+                    Object[] row = new Object[4];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = resultSet.getObject(i + 2);
+                    }
+                    rows.put(resultSet.getString(1), row);
+                }
+            }
+        }
+
+        Assert.assertEquals(2, rows.size());
+        Object[] east = rows.get("east");
+        Assert.assertEquals(5L, ((Number) east[0]).longValue());
+        Assert.assertEquals(Integer.MAX_VALUE + 1L, ((Number) east[1]).longValue());
+        Assert.assertEquals(3, ((Number) east[2]).intValue());
+        Assert.assertEquals(new BigDecimal("1.166667"), east[3]);
+
+        Object[] west = rows.get("west");
+        Assert.assertEquals(1L, ((Number) west[0]).longValue());
+        Assert.assertNull(west[1]);
+        Assert.assertNull(west[2]);
+        Assert.assertNull(west[3]);
+    }
+
+    /**
+     * A sum of integer and decimal values widens to decimal.
+     */
+    @Test
+    public void testSumsWidenToDecimal() throws Exception {
+        StubDriver.database("SumInteger").setRows(new String[] {"total"}, new int[] {Types.DECIMAL}, new Object[][] {{3}});
+        StubDriver.database("SumDecimal").setRows(new String[] {"total"}, new int[] {Types.DECIMAL}, new Object[][] {{new BigDecimal("0.25")}});
+
+        List<Object[]> rows = aggregate(false, null, "SumInteger", "SumDecimal");
+
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(0, new BigDecimal("3.25").compareTo((BigDecimal) rows.get(0)[0]));
+    }
+
+    /**
+     * A sum of integers which does not fit in a bigint fails as it does in SQL Server.
+     */
+    @Test
+    public void testBigintSumOverflowFails() throws Exception {
+        StubDriver.database("SumMax").setRows(new String[] {"total"}, new int[] {Types.BIGINT}, new Object[][] {{Long.MAX_VALUE}});
+        StubDriver.database("SumOne").setRows(new String[] {"total"}, new int[] {Types.BIGINT}, new Object[][] {{1L}});
+
+        try {
+            aggregate(false, null, "SumMax", "SumOne");
+            Assert.fail("A bigint overflow should be reported.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("overflow"));
+        }
+    }
+
+    /**
+     * Group-by values of different integer widths and decimal scales fall into one group.
+     */
+    @Test
+    public void testGroupKeysCompareByValue() throws Exception {
+        StubDriver.database("GroupNarrow").setRows(new String[] {"k", "total"}, new int[] {Types.DECIMAL, Types.BIGINT},
+                new Object[][] {{new BigDecimal("1.50"), 1L}});
+        StubDriver.database("GroupWide").setRows(new String[] {"k", "total"}, new int[] {Types.DECIMAL, Types.BIGINT},
+                new Object[][] {{new BigDecimal("1.5"), 2L}});
+        Assert.assertEquals(1, aggregate(true, null, "GroupNarrow", "GroupWide").size());
+
+        StubDriver.database("GroupInt").setRows(new String[] {"k", "total"}, new int[] {Types.BIGINT, Types.BIGINT}, new Object[][] {{7, 1L}});
+        StubDriver.database("GroupLong").setRows(new String[] {"k", "total"}, new int[] {Types.BIGINT, Types.BIGINT}, new Object[][] {{7L, 2L}});
+        List<Object[]> rows = aggregate(true, null, "GroupInt", "GroupLong");
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(3L, ((Number) rows.get(0)[1]).longValue());
+    }
+
+    /**
+     * String group-by values are grouped without trailing spaces, and by the collator of the column if it has one, the way a database with a
+     * case-insensitive collation groups them.
+     */
+    @Test
+    public void testStringGroupKeysFollowCollation() throws Exception {
+        String[] labels = {"k", "total"};
+        int[] types = {Types.NVARCHAR, Types.BIGINT};
+        StubDriver.database("GroupUpper").setRows(labels, types, new Object[][] {{"ABC", 1L}, {"x ", 2L}});
+        StubDriver.database("GroupLower").setRows(labels, types, new Object[][] {{"abc", 4L}, {"x", 8L}});
+
+        List<Object[]> binary = aggregate(true, null, "GroupUpper", "GroupLower");
+        Assert.assertEquals(3, binary.size());
+        Assert.assertEquals(10L, ((Number) binary.get(1)[1]).longValue());
+
+        Collator caseInsensitive = Collator.getInstance(Locale.ENGLISH);
+        caseInsensitive.setStrength(Collator.SECONDARY);
+        List<Object[]> collated = aggregate(true, caseInsensitive, "GroupUpper", "GroupLower");
+        Assert.assertEquals(2, collated.size());
+        Assert.assertTrue("abc".equalsIgnoreCase((String) collated.get(0)[0]));
+        Assert.assertEquals(5L, ((Number) collated.get(0)[1]).longValue());
+        Assert.assertEquals(10L, ((Number) collated.get(1)[1]).longValue());
+    }
+
+    /**
+     * Sums column total of the shards, grouped by column k if requested.
+     */
+    private static List<Object[]> aggregate(boolean grouped,
+            Collator collator,
+            String... databases) throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards(databases));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT * FROM t")) {
+            statement.setAggregation(grouped ? Collections.singletonList("k") : Collections.emptyList(),
+                    collator == null ? null : Collections.singletonMap("K", collator), new AggregateColumn("total", AggregateFunction.Sum));
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                int columns = resultSet.getMetaData().getColumnCount();
+                while (resultSet.next()) {
+                    Object[] row = new Object[columns];
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+}
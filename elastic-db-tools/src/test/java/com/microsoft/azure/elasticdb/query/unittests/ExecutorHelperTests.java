@@ -0,0 +1,123 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutionMode;
+import com.microsoft.azure.elasticdb.core.commons.helpers.ExecutorHelper;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to ExecutorHelper class and the choice between virtual and platform threads. They pass on runtimes with and without virtual
+ * threads, checking the executors of whichever the runtime has.
+ */
+public class ExecutorHelperTests {
+
+    /**
+     * Virtual threads are reported as supported exactly when the runtime has Executors.newVirtualThreadPerTaskExecutor.
+     */
+    @Test
+    public void testVirtualThreadSupportFollowsRuntime() {
+        boolean hasFactory;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            hasFactory = true;
+        }
+        catch (NoSuchMethodException e) {
+            hasFactory = false;
+        }
+        Assert.assertEquals(hasFactory, ExecutorHelper.isVirtualThreadSupported());
+    }
+
+    /**
+     * A new executor for virtual threads runs tasks on virtual threads if the runtime has them, and on a fixed pool of the given size otherwise.
+     */
+    @Test
+    public void testNewExecutorForVirtualThreads() throws Exception {
+        ExecutorService executor = ExecutorHelper.newExecutor(ExecutionMode.VirtualThreads, 3);
+        try {
+            boolean virtual = executor.submit(ExecutorHelperTests::isCurrentThreadVirtual).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(ExecutorHelper.isVirtualThreadSupported(), virtual);
+            if (!ExecutorHelper.isVirtualThreadSupported()) {
+                Assert.assertEquals(3, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A new executor for platform threads is a fixed pool of at least one thread, whatever the runtime.
+     */
+    @Test
+    public void testNewExecutorForPlatformThreads() throws Exception {
+        ExecutorService executor = ExecutorHelper.newExecutor(ExecutionMode.PlatformThreads, 0);
+        try {
+            Assert.assertFalse(executor.submit(ExecutorHelperTests::isCurrentThreadVirtual).get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The shared executor for virtual threads is the shared platform thread executor when the runtime has no virtual threads, whose threads are
+     * daemons so that they do not keep the application running.
+     */
+    @Test
+    public void testSharedExecutors() throws Exception {
+        ExecutorService platform = ExecutorHelper.getSharedExecutor(ExecutionMode.PlatformThreads);
+        ExecutorService virtual = ExecutorHelper.getSharedExecutor(ExecutionMode.VirtualThreads);
+        Assert.assertSame(platform, ExecutorHelper.getSharedExecutor(ExecutionMode.PlatformThreads));
+        Assert.assertSame(virtual, ExecutorHelper.getSharedExecutor(ExecutionMode.VirtualThreads));
+        Assert.assertEquals(!ExecutorHelper.isVirtualThreadSupported(), platform == virtual);
+
+        Assert.assertTrue(platform.submit(() -> Thread.currentThread().isDaemon()).get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(platform.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS).startsWith("elasticdb-shared-"));
+        Assert.assertEquals(ExecutorHelper.isVirtualThreadSupported(),
+                virtual.submit(ExecutorHelperTests::isCurrentThreadVirtual).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The default execution mode selects the shared executor and is taken by new statements.
+     */
+    @Test
+    public void testDefaultExecutionMode() throws Exception {
+        ExecutionMode previous = ExecutorHelper.getDefaultExecutionMode();
+        try {
+            ExecutorHelper.setDefaultExecutionMode(ExecutionMode.VirtualThreads);
+            Assert.assertSame(ExecutorHelper.getSharedExecutor(ExecutionMode.VirtualThreads), ExecutorHelper.getSharedExecutor());
+
+            MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("ExecutorDefaultMode"));
+            try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT 1")) {
+                Assert.assertEquals(ExecutionMode.VirtualThreads, statement.getExecutionMode());
+            }
+
+            ExecutorHelper.setDefaultExecutionMode(ExecutionMode.PlatformThreads);
+            Assert.assertSame(ExecutorHelper.getSharedExecutor(ExecutionMode.PlatformThreads), ExecutorHelper.getSharedExecutor());
+        }
+        finally {
+            ExecutorHelper.setDefaultExecutionMode(previous);
+        }
+    }
+
+    private static boolean isCurrentThreadVirtual() throws ReflectiveOperationException {
+        try {
+            Method isVirtual = Thread.class.getMethod("isVirtual");
+            return (Boolean) isVirtual.invoke(Thread.currentThread());
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
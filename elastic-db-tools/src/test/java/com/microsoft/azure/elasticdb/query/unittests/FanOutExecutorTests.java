@@ -0,0 +1,128 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Types;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.FanOutExecutor;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to FanOutExecutor class, through the queries of MultiShardStatement. The queries are interrupted, which cancels the commands of
+ * their shards.
+ */
+public class FanOutExecutorTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    /**
+     * A command whose query is interrupted while it runs keeps its permit until it actually finishes.
+     */
+    @Test
+    public void testCancelledRunningCommandKeepsPermit() throws Exception {
+        StubDriver.Database database = StubDriver.database("FanOutRunning");
+        database.setRows(LABELS, TYPES, new Object[][] {{1}});
+        CountDownLatch release = new CountDownLatch(1);
+        database.holdExecutions(release);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FanOutExecutor fanOut = new FanOutExecutor(executor, 2);
+            MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("FanOutRunning"));
+            try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+                statement.setFanOutExecutor(fanOut);
+                Thread query = startQuery(statement);
+                awaitCondition(() -> !database.executed.isEmpty());
+                Assert.assertEquals(1, fanOut.getAvailableConcurrency());
+
+                query.interrupt();
+                query.join(5000);
+                Assert.assertFalse(query.isAlive());
+                Assert.assertEquals(1, fanOut.getAvailableConcurrency());
+
+                release.countDown();
+                awaitCondition(() -> fanOut.getAvailableConcurrency() == 2);
+            }
+        }
+        finally {
+            database.holdExecutions(null);
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A command whose query is interrupted before it started returns its permit right away, without running.
+     */
+    @Test
+    public void testCommandCancelledBeforeStartReturnsPermit() throws Exception {
+        StubDriver.Database running = StubDriver.database("FanOutStarted");
+        running.setRows(LABELS, TYPES, new Object[][] {{1}});
+        StubDriver.Database queued = StubDriver.database("FanOutQueued");
+        queued.setRows(LABELS, TYPES, new Object[][] {{2}});
+        CountDownLatch release = new CountDownLatch(1);
+        running.holdExecutions(release);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FanOutExecutor fanOut = new FanOutExecutor(executor, 2);
+            MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("FanOutStarted", "FanOutQueued"));
+            try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+                statement.setFanOutExecutor(fanOut);
+                Thread query = startQuery(statement);
+                awaitCondition(() -> !running.executed.isEmpty());
+                Assert.assertEquals(0, fanOut.getAvailableConcurrency());
+
+                query.interrupt();
+                query.join(5000);
+                Assert.assertFalse(query.isAlive());
+                Assert.assertEquals(1, fanOut.getAvailableConcurrency());
+
+                release.countDown();
+                executor.shutdown();
+                Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+                Assert.assertEquals(2, fanOut.getAvailableConcurrency());
+                Assert.assertTrue(queued.executed.isEmpty());
+            }
+        }
+        finally {
+            running.holdExecutions(null);
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts running the query of the statement on a new thread, which ends once the query fails.
+     */
+    private static Thread startQuery(MultiShardStatement statement) {
+        Thread query = new Thread(() -> {
+            try {
+                statement.executeQuery().close();
+            }
+            catch (Exception e) {
+                // The query is expected to fail once interrupted.
+            }
+        });
+        query.start();
+        return query;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out waiting for the shard commands.", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnectionOptions;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to how MultiShardConnection class connects to its shards.
+ */
+public class MultiShardConnectionTests {
+
+    /**
+     * Connections which finish opening after the caller was interrupted are closed rather than leaked.
+     */
+    @Test
+    public void testConnectionsOpenedAfterInterruptAreClosed() throws Exception {
+        StubDriver.Database database = StubDriver.database("OpenInterrupted");
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch proceed = new CountDownLatch(1);
+        MultiShardConnectionOptions options = new MultiShardConnectionOptions();
+        options.setConnectionProvider(new IUserConnectionProvider() {
+            @Override
+            public Connection getConnection(String connectionString) throws SQLException {
+                // Opening a connection does not react to interrupts.
+                entered.countDown();
+                Uninterruptibles.awaitUninterruptibly(proceed);
+                return DriverManager.getConnection(StubDriver.url(database.getName()));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                new MultiShardConnection("User ID=user;Password=password", options, new ShardLocation("stub", "a"), new ShardLocation("stub", "b"));
+            }
+            catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        caller.start();
+        Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(10_000);
+        Assert.assertNotNull(failure.get());
+        Assert.assertTrue(failure.get().getMessage().contains("Interrupted"));
+
+        proceed.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (database.connectionsClosed.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, database.connectionsOpened.get());
+        Assert.assertEquals(2, database.connectionsClosed.get());
+    }
+
+    /**
+     * A shard connection closed by closeOpenConnections is opened again through the connection provider when the next command runs, and the
+     * new connection is closed with the multi-shard connection.
+     */
+    @Test
+    public void testClosedShardConnectionIsReopenedThroughProvider() throws Exception {
+        StubDriver.Database first = StubDriver.database("ReopenA");
+        StubDriver.Database second = StubDriver.database("ReopenB");
+        for (StubDriver.Database database : new StubDriver.Database[] {first, second}) {
+            database.setRows(new String[] {"id"}, new int[] {Types.INTEGER}, new Object[][] {{1}});
+        }
+        List<String> connected = new CopyOnWriteArrayList<>();
+        MultiShardConnectionOptions options = new MultiShardConnectionOptions();
+        options.setConnectionProvider(new IUserConnectionProvider() {
+            @Override
+            public Connection getConnection(String connectionString) throws SQLException {
+                Matcher database = Pattern.compile("DatabaseName=([^;]+)").matcher(connectionString);
+                Assert.assertTrue(database.find());
+                connected.add(database.group(1));
+                return DriverManager.getConnection(StubDriver.url(database.group(1)));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        MultiShardConnection conn = new MultiShardConnection("User ID=user;Password=password", options, new ShardLocation("stub", "ReopenA"),
+                new ShardLocation("stub", "ReopenB"));
+        conn.closeOpenConnections();
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                int rows = 0;
+                while (resultSet.next()) {
+                    rows++;
+                }
+                Assert.assertEquals(2, rows);
+            }
+        }
+        conn.close();
+
+        Assert.assertEquals(4, connected.size());
+        for (StubDriver.Database database : new StubDriver.Database[] {first, second}) {
+            Assert.assertEquals(2, database.connectionsOpened.get());
+            Assert.assertEquals(2, database.connectionsClosed.get());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Types;
+import java.util.ArrayList;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultExporter;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to MultiShardResultExporter class.
+ */
+public class MultiShardResultExporterTests {
+
+    private static final String[] LABELS = {"id", "name", "amount", "data"};
+
+    private static final int[] TYPES = {Types.INTEGER, Types.NVARCHAR, Types.DECIMAL, Types.VARBINARY};
+
+    /**
+     * Values containing the separator, a double quote or a line break are quoted with doubled quotes, NULLs are empty, decimals are written
+     * without exponent and binary values in hexadecimal.
+     */
+    @Test
+    public void testCsvQuoting() throws Exception {
+        StubDriver.database("ExportQuoting").setRows(LABELS, TYPES,
+                new Object[][] {{1, "plain", new BigDecimal("1E+3"), new byte[] {0x0A, (byte) 0xFF}}, {2, "a,b", null, null},
+                        {3, "say \"hi\"", null, null}, {4, "line\nbreak", null, null}, {5, "semi;colon", null, null}});
+
+        String csv = export("ExportQuoting", ',', 5);
+
+        Assert.assertEquals("id,name,amount,data\n" + "1,plain,1000,0aff\n" + "2,\"a,b\",,\n" + "3,\"say \"\"hi\"\"\",,\n"
+                + "4,\"line\nbreak\",,\n" + "5,semi;colon,,\n", csv);
+    }
+
+    /**
+     * With another separator, values are quoted for that separator rather than for commas.
+     */
+    @Test
+    public void testCsvQuotingFollowsSeparator() throws Exception {
+        StubDriver.database("ExportSeparator").setRows(LABELS, TYPES, new Object[][] {{1, "a,b", null, null}, {2, "semi;colon", null, null}});
+
+        String csv = export("ExportSeparator", ';', 2);
+
+        Assert.assertEquals("id;name;amount;data\n" + "1;a,b;;\n" + "2;\"semi;colon\";;\n", csv);
+    }
+
+    private static String export(String database,
+            char separator,
+            long expectedRows) throws Exception {
+        ArrayList<Pair<ShardLocation, Connection>> shardConnections = new ArrayList<>();
+        shardConnections.add(new ImmutablePair<>(new ShardLocation("stub", database), DriverManager.getConnection(StubDriver.url(database))));
+
+        MultiShardResultExporter exporter = new MultiShardResultExporter();
+        exporter.setSeparator(separator);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MultiShardConnection conn = new MultiShardConnection(shardConnections);
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id, name, amount, data FROM t")) {
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                Assert.assertEquals(expectedRows, exporter.export(resultSet, Channels.newChannel(bytes)));
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
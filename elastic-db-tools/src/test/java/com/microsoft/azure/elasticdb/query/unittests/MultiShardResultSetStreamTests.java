@@ -0,0 +1,167 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardRow;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.query.multishard.SortKey;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to the stream view of MultiShardResultSet class.
+ */
+public class MultiShardResultSetStreamTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    private static final int ROWS_PER_SHARD = 50;
+
+    /**
+     * A parallel stream reads all the rows, each shard on a single worker, and closing the stream closes the result set.
+     */
+    @Test
+    public void testParallelStreamReadsEachShardOnOneWorker() throws Exception {
+        String[] shards = shards("StreamParallel", 8);
+        Map<Integer, Set<Thread>> readers = new ConcurrentHashMap<>();
+
+        long sum;
+        MultiShardResultSet resultSet;
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards(shards));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            resultSet = statement.executeQuery();
+            try (Stream<MultiShardRow> rows = resultSet.stream()) {
+                sum = rows.parallel().mapToLong(row -> {
+                    int id = (Integer) row.getObject("id");
+                    readers.computeIfAbsent(id / 100, shard -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread());
+                    return id;
+                }).sum();
+                Assert.assertFalse(resultSet.isClosed());
+            }
+            Assert.assertTrue(resultSet.isClosed());
+        }
+
+        long expected = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            for (int i = 0; i < ROWS_PER_SHARD; i++) {
+                expected += shard * 100 + i;
+            }
+        }
+        Assert.assertEquals(expected, sum);
+        Assert.assertEquals(shards.length, readers.size());
+        for (Set<Thread> threads : readers.values()) {
+            Assert.assertEquals(1, threads.size());
+        }
+    }
+
+    /**
+     * The stream splits its remaining shards in half down to single shards, which are not split further and keep the order of their rows.
+     */
+    @Test
+    public void testStreamSplitsAtShardBoundaries() throws Exception {
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards(shards("StreamSplit", 4)));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t");
+                Stream<MultiShardRow> rows = statement.executeQuery().stream()) {
+            Spliterator<MultiShardRow> second = rows.spliterator();
+            Spliterator<MultiShardRow> first = second.trySplit();
+            Assert.assertNotNull(first);
+
+            List<Spliterator<MultiShardRow>> singles = new ArrayList<>();
+            for (Spliterator<MultiShardRow> half : Arrays.asList(first, second)) {
+                Spliterator<MultiShardRow> prefix = half.trySplit();
+                Assert.assertNotNull(prefix);
+                Assert.assertNull(prefix.trySplit());
+                Assert.assertNull(half.trySplit());
+                singles.add(prefix);
+                singles.add(half);
+            }
+
+            Set<Integer> seen = new HashSet<>();
+            for (Spliterator<MultiShardRow> single : singles) {
+                List<Integer> ids = new ArrayList<>();
+                single.forEachRemaining(row -> ids.add((Integer) row.getObject("id")));
+                Assert.assertEquals(ROWS_PER_SHARD, ids.size());
+
+                int shard = ids.get(0) / 100;
+                Assert.assertTrue(seen.add(shard));
+                for (int i = 0; i < ROWS_PER_SHARD; i++) {
+                    Assert.assertEquals(shard * 100 + i, (int) ids.get(i));
+                }
+                Assert.assertEquals(0, single.estimateSize());
+            }
+            Assert.assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3)), seen);
+        }
+    }
+
+    /**
+     * A sorted result is streamed in the merged order, parallel or not, and closing the stream closes the result set.
+     */
+    @Test
+    public void testMergedRowsAreStreamedInOrder() throws Exception {
+        StubDriver.database("StreamSortedA").setRows(LABELS, TYPES, new Object[][] {{1}, {4}, {5}});
+        StubDriver.database("StreamSortedB").setRows(LABELS, TYPES, new Object[][] {{2}, {3}, {6}});
+
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("StreamSortedA", "StreamSortedB"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t ORDER BY id")) {
+            statement.setSortKeys(new SortKey("id"));
+            MultiShardResultSet resultSet = statement.executeQuery();
+            List<Object> ids;
+            try (Stream<MultiShardRow> rows = resultSet.stream()) {
+                ids = rows.parallel().map(row -> row.getObject("id")).collect(Collectors.toList());
+            }
+            Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), ids);
+            Assert.assertTrue(resultSet.isClosed());
+        }
+    }
+
+    /**
+     * A shard without rows leaves the stream empty, and the stream is still closed with the result set.
+     */
+    @Test
+    public void testEmptyResultStreamsNoRows() throws Exception {
+        StubDriver.database("StreamEmpty").setRows(LABELS, TYPES, new Object[0][]);
+
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("StreamEmpty"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            MultiShardResultSet resultSet = statement.executeQuery();
+            try (Stream<MultiShardRow> rows = resultSet.stream()) {
+                Assert.assertEquals(Collections.emptyList(), rows.collect(Collectors.toList()));
+            }
+            Assert.assertTrue(resultSet.isClosed());
+        }
+    }
+
+    /**
+     * Sets up shards whose rows are numbered from a hundred times their position, so that a row tells the shard it came from.
+     */
+    private static String[] shards(String prefix,
+            int count) {
+        String[] names = new String[count];
+        for (int shard = 0; shard < count; shard++) {
+            Object[][] rows = new Object[ROWS_PER_SHARD][];
+            for (int i = 0; i < ROWS_PER_SHARD; i++) {
+                rows[i] = new Object[] {shard * 100 + i};
+            }
+            names[shard] = prefix + shard;
+            StubDriver.database(names[shard]).setRows(LABELS, TYPES, rows);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,196 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardFlow;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardRow;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to MultiShardRowPublisher class, through MultiShardStatement.publishQuery.
+ */
+public class MultiShardRowPublisherTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    /**
+     * The query runs once rows are requested and rows are emitted only as far as they are requested, with the end signalled once after the last.
+     */
+    @Test
+    public void testRowsFollowDemand() throws Exception {
+        StubDriver.Database database = StubDriver.database("PublishDemand");
+        database.setRows(LABELS, TYPES, rows(0, 5));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("PublishDemand"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            statement.publishQuery().subscribe(subscriber);
+            Thread.sleep(100);
+            Assert.assertTrue(database.executed.isEmpty());
+
+            subscriber.subscription.request(2);
+            subscriber.awaitSignals(2);
+            Thread.sleep(100);
+            Assert.assertEquals(Arrays.asList("0", "1"), subscriber.signals());
+
+            subscriber.subscription.request(3);
+            Assert.assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(Arrays.asList("0", "1", "2", "3", "4", "complete"), subscriber.signals());
+        Assert.assertEquals(1, database.executed.size());
+    }
+
+    /**
+     * Cancelling the subscription mid-stream stops the rows without a terminal signal, and later requests emit nothing.
+     */
+    @Test
+    public void testCancelMidStreamStopsRows() throws Exception {
+        StubDriver.database("PublishCancelled").setRows(LABELS, TYPES, rows(0, 5));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("PublishCancelled"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            statement.publishQuery().subscribe(subscriber);
+            subscriber.subscription.request(2);
+            subscriber.awaitSignals(2);
+
+            subscriber.subscription.cancel();
+            subscriber.subscription.request(10);
+            Thread.sleep(200);
+        }
+        Assert.assertEquals(Arrays.asList("0", "1"), subscriber.signals());
+    }
+
+    /**
+     * A failed query is signalled once through onError, without onComplete.
+     */
+    @Test
+    public void testFailureIsSignalledOnce() throws Exception {
+        StubDriver.Database database = StubDriver.database("PublishFailed");
+        database.setRows(LABELS, TYPES, rows(0, 2));
+        database.failNext(1, new SQLException("Injected failure.", "42000"));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("PublishFailed"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            statement.setExecutionPolicy(MultiShardExecutionPolicy.CompleteResults);
+            statement.publishQuery().subscribe(subscriber);
+            subscriber.subscription.request(Long.MAX_VALUE);
+            Assert.assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+            subscriber.subscription.request(1);
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(Collections.singletonList("error"), subscriber.signals());
+    }
+
+    /**
+     * A request for no rows fails the subscription with an IllegalArgumentException.
+     */
+    @Test
+    public void testNonPositiveRequestFails() throws Exception {
+        StubDriver.database("PublishInvalid").setRows(LABELS, TYPES, rows(0, 2));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("PublishInvalid"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            statement.publishQuery().subscribe(subscriber);
+            subscriber.subscription.request(0);
+            Assert.assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(Collections.singletonList("error"), subscriber.signals());
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    /**
+     * A publisher accepts one subscriber; a second one is failed right away.
+     */
+    @Test
+    public void testSecondSubscriberIsRejected() throws Exception {
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("PublishTwice"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+            MultiShardFlow.Publisher<MultiShardRow> publisher = statement.publishQuery();
+            publisher.subscribe(new RecordingSubscriber());
+
+            RecordingSubscriber second = new RecordingSubscriber();
+            publisher.subscribe(second);
+            Assert.assertEquals(Collections.singletonList("error"), second.signals());
+            Assert.assertTrue(second.error instanceof IllegalStateException);
+        }
+    }
+
+    private static Object[][] rows(int first,
+            int count) {
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[] {first + i};
+        }
+        return rows;
+    }
+
+    /**
+     * Records the signals received, each row as its id.
+     */
+    private static final class RecordingSubscriber implements MultiShardFlow.Subscriber<MultiShardRow> {
+
+        private final List<String> signals = Collections.synchronizedList(new ArrayList<>());
+
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        private volatile MultiShardFlow.Subscription subscription;
+
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(MultiShardFlow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(MultiShardRow item) {
+            signals.add(String.valueOf(item.getObject("id")));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            signals.add("error");
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+            terminated.countDown();
+        }
+
+        List<String> signals() {
+            synchronized (signals) {
+                return new ArrayList<>(signals);
+            }
+        }
+
+        void awaitSignals(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (signals.size() < count) {
+                Assert.assertTrue("Timed out waiting for rows.", System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+}
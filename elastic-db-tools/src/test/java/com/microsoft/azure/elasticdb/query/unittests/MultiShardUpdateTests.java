@@ -0,0 +1,120 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryPolicy;
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardUpdateResult;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to the updates and batches of MultiShardStatement class.
+ */
+public class MultiShardUpdateTests {
+
+    private static final String UPDATE = "UPDATE t SET v = v + 1";
+
+    /**
+     * A failed update is rolled back before it is retried, so that its changes are committed once.
+     */
+    @Test
+    public void testFailedUpdateIsRolledBackBeforeRetry() throws Exception {
+        StubDriver.Database failing = StubDriver.database("UpdateRetried");
+        StubDriver.Database healthy = StubDriver.database("UpdateHealthy");
+        failing.failNext(1, new SQLException("Injected failure.", "08S01"));
+
+        MultiShardUpdateResult result = execute(failing, healthy, false, statement -> statement.executeUpdate());
+
+        Assert.assertTrue(result.getMultiShardExceptions().isEmpty());
+        Assert.assertEquals(2, result.getTotalUpdateCount());
+        Assert.assertEquals(2, failing.executed.stream().filter(UPDATE::equals).count());
+        Assert.assertEquals(1, failing.rollbacks.get());
+        Assert.assertEquals(1, failing.commits.get());
+        Assert.assertEquals(0, healthy.rollbacks.get());
+        Assert.assertEquals(1, healthy.commits.get());
+    }
+
+    /**
+     * A failed batch is rolled back and resubmitted as a whole.
+     */
+    @Test
+    public void testFailedBatchIsRolledBackBeforeRetry() throws Exception {
+        StubDriver.Database failing = StubDriver.database("BatchRetried");
+        StubDriver.Database healthy = StubDriver.database("BatchHealthy");
+        failing.failNext(1, new SQLException("Injected failure.", "08S01"));
+
+        MultiShardUpdateResult result = execute(failing, healthy, false, statement -> {
+            statement.addBatch(UPDATE);
+            statement.addBatch(UPDATE);
+            return statement.executeBatch();
+        });
+
+        Assert.assertTrue(result.getMultiShardExceptions().isEmpty());
+        Assert.assertEquals(4, result.getTotalUpdateCount());
+        Assert.assertEquals(1, failing.rollbacks.get());
+        Assert.assertEquals(1, failing.commits.get());
+    }
+
+    /**
+     * An update failing within a transaction the caller opened is neither retried nor committed or rolled back on the caller's behalf.
+     */
+    @Test
+    public void testUpdateInCallerTransactionIsNotRetried() throws Exception {
+        StubDriver.Database failing = StubDriver.database("UpdateInTransaction");
+        StubDriver.Database healthy = StubDriver.database("UpdateInTransactionHealthy");
+        failing.failNext(1, new SQLException("Injected failure.", "08S01"));
+
+        MultiShardUpdateResult result = execute(failing, healthy, true, statement -> statement.executeUpdate());
+
+        Assert.assertEquals(1, result.getMultiShardExceptions().size());
+        Assert.assertEquals(1, result.getTotalUpdateCount());
+        Assert.assertEquals(1, failing.executed.stream().filter(UPDATE::equals).count());
+        Assert.assertEquals(0, failing.rollbacks.get());
+        Assert.assertEquals(0, failing.commits.get());
+        Assert.assertEquals(0, healthy.commits.get());
+    }
+
+    /**
+     * Runs an update with partial results on two shards, retrying failures without delay.
+     */
+    private static MultiShardUpdateResult execute(StubDriver.Database first,
+            StubDriver.Database second,
+            boolean callerTransaction,
+            Update update) throws Exception {
+        ArrayList<Pair<ShardLocation, Connection>> shardConnections = new ArrayList<>();
+        for (StubDriver.Database database : new StubDriver.Database[] {first, second}) {
+            Connection conn = DriverManager.getConnection(StubDriver.url(database.getName()));
+            conn.setAutoCommit(!callerTransaction);
+            shardConnections.add(new ImmutablePair<>(new ShardLocation("stub", database.getName()), conn));
+        }
+
+        MultiShardConnection conn = new MultiShardConnection(shardConnections);
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, UPDATE)) {
+            statement.setExecutionPolicy(MultiShardExecutionPolicy.PartialResults);
+            statement.setRetryPolicy(new RetryPolicy(2, Duration.ZERO, Duration.ZERO, Duration.ZERO));
+            MultiShardUpdateResult result = update.execute(statement);
+            for (Pair<ShardLocation, Connection> shardConnection : shardConnections) {
+                Assert.assertEquals(!callerTransaction, shardConnection.getRight().getAutoCommit());
+            }
+            return result;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Update {
+
+        MultiShardUpdateResult execute(MultiShardStatement statement) throws Exception;
+    }
+}
@@ -0,0 +1,89 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.query.multishard.SortKey;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to OrderedMultiShardResultSet class and the global limit on the number of rows.
+ */
+public class OrderedMultiShardResultSetTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    /**
+     * A limit with sort keys returns the first rows across all shards, and the statements of the other shards are cancelled as soon as the last
+     * row is returned, the statement of the shard of the last row once it is no longer read.
+     */
+    @Test
+    public void testTopRowsStopAtLimitAndCancelOtherShards() throws Exception {
+        StubDriver.Database first = StubDriver.database("TopFirst");
+        first.setRows(LABELS, TYPES, new Object[][] {{1}, {4}, {7}});
+        StubDriver.Database second = StubDriver.database("TopSecond");
+        second.setRows(LABELS, TYPES, new Object[][] {{2}, {5}, {8}});
+        StubDriver.Database third = StubDriver.database("TopThird");
+        third.setRows(LABELS, TYPES, new Object[][] {{3}, {6}, {9}});
+
+        List<Integer> ids = new ArrayList<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("TopFirst", "TopSecond", "TopThird"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t ORDER BY id")) {
+            statement.setSortKeys(new SortKey("id"));
+            statement.setMaxRows(4);
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                for (int i = 0; i < 4; i++) {
+                    Assert.assertTrue(resultSet.next());
+                    ids.add(resultSet.getInt(1));
+                }
+                Assert.assertEquals(0, first.cancels.get());
+                Assert.assertEquals(1, second.cancels.get());
+                Assert.assertEquals(1, third.cancels.get());
+
+                Assert.assertFalse(resultSet.next());
+                Assert.assertEquals(1, first.cancels.get());
+            }
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), ids);
+        Assert.assertEquals(1, second.cancels.get());
+        Assert.assertEquals(1, third.cancels.get());
+    }
+
+    /**
+     * A limit above the number of rows returns all of them in order without cancelling any shard.
+     */
+    @Test
+    public void testLimitAboveRowCountReturnsAllRows() throws Exception {
+        StubDriver.Database first = StubDriver.database("TopAllFirst");
+        first.setRows(LABELS, TYPES, new Object[][] {{2}, {3}});
+        StubDriver.Database second = StubDriver.database("TopAllSecond");
+        second.setRows(LABELS, TYPES, new Object[][] {{1}});
+
+        List<Integer> ids = new ArrayList<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("TopAllFirst", "TopAllSecond"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t ORDER BY id")) {
+            statement.setSortKeys(new SortKey("id"));
+            statement.setMaxRows(10);
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3), ids);
+        Assert.assertEquals(0, first.cancels.get());
+        Assert.assertEquals(0, second.cancels.get());
+    }
+}
@@ -0,0 +1,114 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Connection;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardException;
+import com.microsoft.azure.elasticdb.query.exception.MultiShardSchemaMismatchException;
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.sqlstore.PooledUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to ResultSchema class and the validation of shard schemas against each other, through the queries of MultiShardStatement.
+ */
+public class ResultSchemaTests {
+
+    /**
+     * Shards returning the same columns are not reported, neither when their schemas are first read nor when they are taken from the cache.
+     */
+    @Test
+    public void testEqualSchemasAreAccepted() throws Exception {
+        for (String name : new String[] {"SchemaEqualA", "SchemaEqualB"}) {
+            StubDriver.database(name).setRows(new String[] {"id", "name"}, new int[] {Types.INTEGER, Types.NVARCHAR}, new Object[][] {{1, "a"}});
+        }
+
+        Assert.assertTrue(executeTwice("SchemaEqualA", "SchemaEqualB", null).isEmpty());
+    }
+
+    /**
+     * A shard returning a different number of columns than the others is reported as a schema mismatch, whichever shard answers first.
+     */
+    @Test
+    public void testColumnCountMismatchIsReported() throws Exception {
+        StubDriver.database("SchemaNarrow").setRows(new String[] {"id"}, new int[] {Types.INTEGER}, new Object[][] {{1}});
+        StubDriver.database("SchemaWide").setRows(new String[] {"id", "name"}, new int[] {Types.INTEGER, Types.NVARCHAR},
+                new Object[][] {{2, "b"}});
+
+        List<MultiShardException> exceptions = executeTwice("SchemaNarrow", "SchemaWide", null);
+        Assert.assertEquals(2, exceptions.size());
+        for (MultiShardException ex : exceptions) {
+            Assert.assertTrue(ex.getCause() instanceof MultiShardSchemaMismatchException);
+        }
+    }
+
+    /**
+     * A column changing type on one shard between executions of the same statement is reported, although the statement's schema is cached.
+     */
+    @Test
+    public void testChangedColumnTypeIsReportedDespiteCache() throws Exception {
+        StubDriver.database("SchemaStable").setRows(new String[] {"id"}, new int[] {Types.INTEGER}, new Object[][] {{1}});
+        StubDriver.database("SchemaAltered").setRows(new String[] {"id"}, new int[] {Types.INTEGER}, new Object[][] {{2}});
+
+        List<MultiShardException> exceptions = executeTwice("SchemaStable", "SchemaAltered",
+                () -> StubDriver.database("SchemaAltered").setRows(new String[] {"id"}, new int[] {Types.BIGINT}, new Object[][] {{2L}}));
+        Assert.assertEquals(1, exceptions.size());
+        Assert.assertTrue(exceptions.get(0).getCause() instanceof MultiShardSchemaMismatchException);
+    }
+
+    /**
+     * A column renamed on one shard between executions of the same statement is reported, although the statement's schema is cached.
+     */
+    @Test
+    public void testRenamedColumnIsReportedDespiteCache() throws Exception {
+        StubDriver.database("SchemaNamed").setRows(new String[] {"id"}, new int[] {Types.INTEGER}, new Object[][] {{1}});
+        StubDriver.database("SchemaRenamed").setRows(new String[] {"id"}, new int[] {Types.INTEGER}, new Object[][] {{2}});
+
+        List<MultiShardException> exceptions = executeTwice("SchemaNamed", "SchemaRenamed",
+                () -> StubDriver.database("SchemaRenamed").setRows(new String[] {"key"}, new int[] {Types.INTEGER}, new Object[][] {{2}}));
+        Assert.assertEquals(1, exceptions.size());
+        Assert.assertTrue(exceptions.get(0).getCause() instanceof MultiShardSchemaMismatchException);
+        Assert.assertTrue(exceptions.get(0).getCause().getMessage().contains("column name"));
+    }
+
+    /**
+     * Runs a query with partial results twice over pooled connections to two shards.
+     *
+     * @return The shard exceptions of both executions.
+     */
+    private static List<MultiShardException> executeTwice(String first,
+            String second,
+            Runnable betweenExecutions) throws Exception {
+        List<MultiShardException> exceptions = new ArrayList<>();
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider()) {
+            ArrayList<Pair<ShardLocation, Connection>> shardConnections = new ArrayList<>();
+            for (String name : new String[] {first, second}) {
+                shardConnections.add(new ImmutablePair<>(new ShardLocation("stub", name), provider.getConnection(StubDriver.url(name))));
+            }
+            MultiShardConnection conn = new MultiShardConnection(shardConnections);
+            try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT * FROM t")) {
+                statement.setExecutionPolicy(MultiShardExecutionPolicy.PartialResults);
+                for (int i = 0; i < 2; i++) {
+                    try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                        exceptions.addAll(resultSet.getMultiShardExceptions());
+                    }
+                    if (i == 0 && betweenExecutions != null) {
+                        betweenExecutions.run();
+                    }
+                }
+            }
+        }
+        return exceptions;
+    }
+}
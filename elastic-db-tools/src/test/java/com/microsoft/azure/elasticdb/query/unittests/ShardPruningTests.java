@@ -0,0 +1,181 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardAggregateException;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.query.multishard.ShardPruning;
+import com.microsoft.azure.elasticdb.shard.base.Range;
+import com.microsoft.azure.elasticdb.shard.base.Shard;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.store.StoreShard;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+import com.microsoft.azure.elasticdb.shard.stubs.StubGlobalStore;
+import com.microsoft.sqlserver.jdbc.SQLServerDataTable;
+
+/**
+ * Tests related to ShardPruning class and the key lists of MultiShardStatement.
+ */
+public class ShardPruningTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    private final StubGlobalStore store = new StubGlobalStore(new IUserConnectionProvider() {
+        @Override
+        public Connection getConnection(String connectionString) throws SQLException {
+            throw new SQLException("Shard pruning does not connect to shards.");
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    /**
+     * The shards of a set of keys are looked up in a single request and returned once each, leaving out keys without a mapping.
+     */
+    @Test
+    public void testShardsForKeysAreDistinct() {
+        List<Shard> shards = ShardPruning.shardsForKeys(this.listShardMap("PruneKeys"), Arrays.asList(3, 1, 2, 9));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("PruneKeysA", "PruneKeysB")), databases(shards));
+        Assert.assertEquals(2, shards.size());
+        Assert.assertEquals(1, store.bulkLookups.get());
+    }
+
+    /**
+     * The shards of a range of keys are those with a mapping intersecting the range, looked up in the store.
+     */
+    @Test
+    public void testShardsForRangeIntersectMappings() {
+        RangeShardMap<Integer> shardMap = store.createRangeShardMap("PruneRange", ShardKeyType.Int32);
+        store.addRangeMapping(shardMap, store.addShard(shardMap, new ShardLocation("stub", "PruneRangeA")), 0, 10);
+        store.addRangeMapping(shardMap, store.addShard(shardMap, new ShardLocation("stub", "PruneRangeB")), 10, 20);
+        store.addRangeMapping(shardMap, store.addShard(shardMap, new ShardLocation("stub", "PruneRangeC")), 20, 30);
+
+        List<Shard> shards = ShardPruning.shardsForRange(shardMap, new Range(5, 15));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("PruneRangeA", "PruneRangeB")), databases(shards));
+        Assert.assertEquals(1, store.rangeLookups.get());
+
+        Assert.assertTrue(ShardPruning.shardsForRange(shardMap, new Range(30, 40)).isEmpty());
+    }
+
+    /**
+     * Keys are grouped by the shard holding them, one group per shard, and keys without a mapping are left out.
+     */
+    @Test
+    public void testKeysAreGroupedByShard() {
+        Map<Shard, List<Integer>> keysByShard = ShardPruning.keysByShard(this.listShardMap("PruneGroups"), Arrays.asList(1, 2, 3, 4));
+
+        Assert.assertEquals(2, keysByShard.size());
+        Assert.assertEquals(Arrays.asList(1, 3), keysOf(keysByShard, "PruneGroupsA"));
+        Assert.assertEquals(Collections.singletonList(2), keysOf(keysByShard, "PruneGroupsB"));
+    }
+
+    /**
+     * A key list sends each shard its own keys in a table-valued parameter, and skips the shards without keys.
+     */
+    @Test
+    public void testKeyListSendsEachShardItsKeys() throws Exception {
+        Map<Shard, List<Integer>> keysByShard = ShardPruning.keysByShard(this.listShardMap("KeyList"), Arrays.asList(1, 2, 3));
+        StubDriver.Database a = StubDriver.database("KeyListA");
+        StubDriver.Database b = StubDriver.database("KeyListB");
+        StubDriver.Database c = StubDriver.database("KeyListC");
+        a.setRows(LABELS, TYPES, new Object[][] {{1}, {3}});
+        b.setRows(LABELS, TYPES, new Object[][] {{2}});
+
+        List<Integer> ids = new ArrayList<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("KeyListA", "KeyListB", "KeyListC"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t WHERE id IN (SELECT [Key] FROM ?)")) {
+            statement.setKeyList(1, "dbo.IntKeys", Types.INTEGER, keysByShard);
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+
+        Collections.sort(ids);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), ids);
+        Assert.assertEquals(Arrays.asList(1, 3), rowsOf(a.parameters));
+        Assert.assertEquals(Collections.singletonList(2), rowsOf(b.parameters));
+        Assert.assertTrue(c.executed.isEmpty());
+        Assert.assertTrue(c.parameters.isEmpty());
+    }
+
+    /**
+     * A key list with keys of a shard outside the connection is rejected before anything runs.
+     */
+    @Test
+    public void testKeyListOutsideConnectionIsRejected() throws Exception {
+        Map<Shard, List<Integer>> keysByShard = ShardPruning.keysByShard(this.listShardMap("KeyListOutside"), Arrays.asList(1, 2));
+
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("KeyListOutsideA"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t WHERE id IN (SELECT [Key] FROM ?)")) {
+            statement.setKeyList(1, "dbo.IntKeys", Types.INTEGER, keysByShard);
+            statement.executeQuery();
+            Assert.fail("Keys of a shard outside the connection should be rejected.");
+        }
+        catch (MultiShardAggregateException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            Assert.assertTrue(e.getCause().getMessage().contains("KeyListOutsideB"));
+        }
+        Assert.assertTrue(StubDriver.database("KeyListOutsideA").executed.isEmpty());
+    }
+
+    private ListShardMap<Integer> listShardMap(String prefix) {
+        ListShardMap<Integer> shardMap = store.createListShardMap(prefix, ShardKeyType.Int32);
+        StoreShard a = store.addShard(shardMap, new ShardLocation("stub", prefix + "A"));
+        StoreShard b = store.addShard(shardMap, new ShardLocation("stub", prefix + "B"));
+        store.addPointMapping(shardMap, a, 1);
+        store.addPointMapping(shardMap, b, 2);
+        store.addPointMapping(shardMap, a, 3);
+        return shardMap;
+    }
+
+    private static Set<String> databases(List<Shard> shards) {
+        return shards.stream().map(s -> s.getLocation().getDatabase()).collect(Collectors.toSet());
+    }
+
+    private static List<Integer> keysOf(Map<Shard, List<Integer>> keysByShard,
+            String database) {
+        return keysByShard.entrySet().stream().filter(e -> e.getKey().getLocation().getDatabase().equals(database)).findFirst()
+                .map(Entry::getValue).orElse(null);
+    }
+
+    /**
+     * Gets the keys of the table-valued parameter bound to the statement of a shard.
+     */
+    private static List<Object> rowsOf(List<Object> parameters) {
+        Assert.assertEquals(1, parameters.size());
+        List<Object> rows = new ArrayList<>();
+        Iterator<Entry<Integer, Object[]>> iterator = ((SQLServerDataTable) parameters.get(0)).getIterator();
+        while (iterator.hasNext()) {
+            rows.add(iterator.next().getValue()[0]);
+        }
+        return rows;
+    }
+}
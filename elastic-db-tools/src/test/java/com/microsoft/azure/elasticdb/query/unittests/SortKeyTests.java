@@ -0,0 +1,155 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.query.multishard.SortDirection;
+import com.microsoft.azure.elasticdb.query.multishard.SortKey;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to SortKey class and the ordering of column values, through the merged results of MultiShardStatement queries.
+ */
+public class SortKeyTests {
+
+    private static final String[] LABELS = {"value"};
+
+    /**
+     * NULL sorts first ascending and last descending.
+     */
+    @Test
+    public void testNullsSortFirst() throws Exception {
+        Assert.assertEquals(Arrays.asList(null, 1, 2, 3), sort("SortNullsAsc", Types.INTEGER, new SortKey("value", SortDirection.Ascending),
+                new Object[][] {{null}, {3}}, new Object[][] {{1}, {2}}));
+        Assert.assertEquals(Arrays.asList(3, 2, 1, null), sort("SortNullsDesc", Types.INTEGER, new SortKey("value", SortDirection.Descending),
+                new Object[][] {{3}, {null}}, new Object[][] {{2}, {1}}));
+    }
+
+    /**
+     * Numbers of different types, as shards with slightly different schemas return, compare by value.
+     */
+    @Test
+    public void testMixedNumbersCompareByValue() throws Exception {
+        BigDecimal aboveLong = new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE);
+        List<Object> values = sort("SortNumbers", Types.NUMERIC, new SortKey("value"),
+                new Object[][] {{5}, {new BigDecimal("5.5")}, {Long.MAX_VALUE}}, new Object[][] {{2.5d}, {new BigDecimal("5.25")}, {aboveLong}});
+
+        Assert.assertEquals(Arrays.asList(2.5d, 5, new BigDecimal("5.25"), new BigDecimal("5.5"), Long.MAX_VALUE, aboveLong), values);
+    }
+
+    /**
+     * Binary values compare byte by byte as unsigned numbers, a shorter prefix first.
+     */
+    @Test
+    public void testBinaryComparesUnsigned() throws Exception {
+        List<Object> values = sort("SortBinary", Types.VARBINARY, new SortKey("value"),
+                new Object[][] {{new byte[] {0x01}}, {new byte[] {0x7F, 0x00}}},
+                new Object[][] {{new byte[] {0x01, 0x00}}, {new byte[] {(byte) 0xFF}}});
+
+        Assert.assertEquals(4, values.size());
+        Assert.assertArrayEquals(new byte[] {0x01}, (byte[]) values.get(0));
+        Assert.assertArrayEquals(new byte[] {0x01, 0x00}, (byte[]) values.get(1));
+        Assert.assertArrayEquals(new byte[] {0x7F, 0x00}, (byte[]) values.get(2));
+        Assert.assertArrayEquals(new byte[] {(byte) 0xFF}, (byte[]) values.get(3));
+    }
+
+    /**
+     * Strings compare with the collator of the key, and by code unit for ordinal keys.
+     */
+    @Test
+    public void testStringsUseCollatorOrOrdinal() throws Exception {
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        collator.setStrength(Collator.SECONDARY);
+
+        SortKey collated = new SortKey("value", SortDirection.Ascending, collator);
+        Assert.assertEquals(Arrays.asList("a", "b", "C"), sort("SortCollated", Types.NVARCHAR, collated, new Object[][] {{"a"}, {"C"}},
+                new Object[][] {{"b"}}));
+        Assert.assertEquals(Arrays.asList("C", "a", "b"), sort("SortOrdinal", Types.NVARCHAR, SortKey.ordinal("value", SortDirection.Ascending),
+                new Object[][] {{"C"}, {"a"}}, new Object[][] {{"b"}}));
+    }
+
+    /**
+     * Values of unrelated types cannot be compared.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnrelatedTypesAreRejected() throws Exception {
+        sort("SortUnrelated", Types.JAVA_OBJECT, new SortKey("value"), new Object[][] {{"1"}}, new Object[][] {{1}});
+    }
+
+    /**
+     * A key over a character column needs a collator or ordinal comparison; keys over other columns do not.
+     */
+    @Test
+    public void testCharacterColumnsNeedCollatorOrOrdinal() throws Exception {
+        Assert.assertEquals(Arrays.asList(1, 2), sort("SortNumeric", Types.INTEGER, new SortKey(1, SortDirection.Ascending), new Object[][] {{2}},
+                new Object[][] {{1}}));
+        Assert.assertEquals(Arrays.asList("b", "a"), sort("SortOrdinalIndex", Types.NVARCHAR, SortKey.ordinal(1, SortDirection.Descending),
+                new Object[][] {{"a"}}, new Object[][] {{"b"}}));
+        try {
+            sort("SortUncollated", Types.NVARCHAR, new SortKey("value"), new Object[][] {{"a"}}, new Object[][] {{"b"}});
+            Assert.fail("A key over a character column without a collator should be rejected.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("SortKey.ordinal"));
+        }
+    }
+
+    /**
+     * Keys need a column label or a positive column index.
+     */
+    @Test
+    public void testColumnIsValidated() {
+        try {
+            new SortKey("");
+            Assert.fail("An empty column label should be rejected.");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertEquals("columnLabel", e.getMessage());
+        }
+        try {
+            SortKey.ordinal(0, SortDirection.Ascending);
+            Assert.fail("A column index of 0 should be rejected.");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertEquals("columnIndex", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a sorted query over two shards, each returning its rows already sorted by the key.
+     *
+     * @return The values of the merged rows, in order.
+     */
+    private static List<Object> sort(String prefix,
+            int type,
+            SortKey sortKey,
+            Object[][] firstRows,
+            Object[][] secondRows) throws Exception {
+        StubDriver.database(prefix + "A").setRows(LABELS, new int[] {type}, firstRows);
+        StubDriver.database(prefix + "B").setRows(LABELS, new int[] {type}, secondRows);
+
+        List<Object> values = new ArrayList<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards(prefix + "A", prefix + "B"));
+        try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT value FROM t ORDER BY value")) {
+            statement.setSortKeys(sortKey);
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    values.add(resultSet.getObject(1));
+                }
+            }
+        }
+        return values;
+    }
+}
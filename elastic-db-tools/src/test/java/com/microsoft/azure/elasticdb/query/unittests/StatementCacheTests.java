@@ -0,0 +1,201 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnectionOptions;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.sqlstore.PooledUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to the statement caches of MultiShardConnection class, through the queries of MultiShardStatement.
+ */
+public class StatementCacheTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    /**
+     * A statement whose results were read is handed out again to the next query with the same command text, and closed with the connection.
+     */
+    @Test
+    public void testReleasedStatementIsReused() throws Exception {
+        StubDriver.Database database = database("CacheReuse");
+        try (MultiShardStatement statement = MultiShardStatement.create(connect(database, 2), null)) {
+            query(statement, "SELECT 1");
+            query(statement, "SELECT 1");
+            Assert.assertEquals(0, database.statementsClosed.get());
+        }
+
+        Assert.assertEquals(1, database.statementsPrepared.get());
+        Assert.assertEquals(2, database.executed.size());
+        Assert.assertEquals(1, database.statementsClosed.get());
+    }
+
+    /**
+     * The least recently used statement is closed once the cache is full.
+     */
+    @Test
+    public void testLeastRecentlyUsedStatementIsEvicted() throws Exception {
+        StubDriver.Database database = database("CacheEviction");
+        try (MultiShardStatement statement = MultiShardStatement.create(connect(database, 2), null)) {
+            query(statement, "SELECT 'a'");
+            query(statement, "SELECT 'b'");
+            // Use a again, so that b is the least recently used when c is released.
+            query(statement, "SELECT 'a'");
+            query(statement, "SELECT 'c'");
+            Assert.assertEquals(3, database.statementsPrepared.get());
+            Assert.assertEquals(1, database.statementsClosed.get());
+
+            query(statement, "SELECT 'a'");
+            query(statement, "SELECT 'c'");
+            Assert.assertEquals(3, database.statementsPrepared.get());
+            query(statement, "SELECT 'b'");
+            Assert.assertEquals(4, database.statementsPrepared.get());
+        }
+        Assert.assertEquals(4, database.statementsClosed.get());
+    }
+
+    /**
+     * Queries running at the same time with the same command text use statements of their own, and the one released last is closed instead of
+     * cached.
+     */
+    @Test
+    public void testDuplicateStatementIsClosed() throws Exception {
+        StubDriver.Database database = database("CacheDuplicate");
+        MultiShardConnection conn = connect(database, 2);
+
+        MultiShardStatement first = MultiShardStatement.create(conn, "SELECT 1");
+        MultiShardStatement second = MultiShardStatement.create(conn, "SELECT 1");
+        MultiShardResultSet firstResults = first.executeQuery();
+        MultiShardResultSet secondResults = second.executeQuery();
+        Assert.assertEquals(2, database.statementsPrepared.get());
+
+        firstResults.close();
+        secondResults.close();
+        Assert.assertEquals(1, database.statementsClosed.get());
+
+        query(first, "SELECT 1");
+        Assert.assertEquals(2, database.statementsPrepared.get());
+        conn.close();
+        Assert.assertEquals(2, database.statementsClosed.get());
+    }
+
+    /**
+     * A statement whose results are still read when the connection is closed is closed once they are, instead of cached.
+     */
+    @Test
+    public void testStatementReleasedAfterCloseIsClosed() throws Exception {
+        StubDriver.Database database = database("CacheReleasedLate");
+        MultiShardConnection conn = connect(database, 2);
+
+        MultiShardResultSet resultSet = MultiShardStatement.create(conn, "SELECT 1").executeQuery();
+        conn.close();
+        Assert.assertEquals(0, database.statementsClosed.get());
+        resultSet.close();
+
+        Assert.assertEquals(1, database.statementsPrepared.get());
+        Assert.assertEquals(1, database.statementsClosed.get());
+    }
+
+    /**
+     * A cache of capacity 0 prepares a new statement for every query and closes it once its results were read.
+     */
+    @Test
+    public void testZeroCapacityDisablesCaching() throws Exception {
+        StubDriver.Database database = database("CacheDisabled");
+        try (MultiShardStatement statement = MultiShardStatement.create(connect(database, 0), null)) {
+            query(statement, "SELECT 1");
+            query(statement, "SELECT 1");
+
+            Assert.assertEquals(2, database.statementsPrepared.get());
+            Assert.assertEquals(2, database.statementsClosed.get());
+        }
+    }
+
+    /**
+     * Repeated executions of a multi-shard query over pooled connections reuse the statement prepared on each shard.
+     */
+    @Test
+    public void testPooledConnectionsReuseStatements() throws Exception {
+        String[] names = {"CachePooled0", "CachePooled1"};
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider()) {
+            ArrayList<Pair<ShardLocation, Connection>> shardConnections = new ArrayList<>();
+            for (String name : names) {
+                StubDriver.database(name).setRows(LABELS, TYPES, new Object[][] {{1}, {2}});
+                shardConnections.add(new ImmutablePair<>(new ShardLocation("stub", name), provider.getConnection(StubDriver.url(name))));
+            }
+
+            MultiShardConnection conn = new MultiShardConnection(shardConnections);
+            try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+                for (int i = 0; i < 2; i++) {
+                    try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                        int rows = 0;
+                        while (resultSet.next()) {
+                            rows++;
+                        }
+                        Assert.assertEquals(4, rows);
+                    }
+                }
+            }
+        }
+        for (String name : names) {
+            Assert.assertEquals(1, StubDriver.database(name).statementsPrepared.get());
+            Assert.assertEquals(2, StubDriver.database(name).executed.stream().filter("SELECT id FROM t"::equals).count());
+        }
+    }
+
+    private static StubDriver.Database database(String name) {
+        StubDriver.Database database = StubDriver.database(name);
+        database.setRows(LABELS, TYPES, new Object[][] {{1}});
+        return database;
+    }
+
+    /**
+     * Connects to a single shard whose statement cache has the given capacity.
+     */
+    private static MultiShardConnection connect(StubDriver.Database database,
+            int statementCacheSize) {
+        MultiShardConnectionOptions options = new MultiShardConnectionOptions();
+        options.setStatementCacheSize(statementCacheSize);
+        options.setConnectionProvider(new IUserConnectionProvider() {
+            @Override
+            public Connection getConnection(String connectionString) throws SQLException {
+                return DriverManager.getConnection(StubDriver.url(new SqlConnectionStringBuilder(connectionString).getDatabaseName()));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return new MultiShardConnection("User ID=user;Password=password", options, new ShardLocation("stub", database.getName()));
+    }
+
+    /**
+     * Runs a query with the given command text and reads all its results.
+     */
+    private static void query(MultiShardStatement statement,
+            String commandText) throws Exception {
+        statement.setCommandText(commandText);
+        try (MultiShardResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                Assert.assertEquals(1, resultSet.getInt(1));
+            }
+        }
+    }
+}
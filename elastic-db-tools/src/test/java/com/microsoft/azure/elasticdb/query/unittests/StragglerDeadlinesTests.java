@@ -0,0 +1,192 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.exception.MultiShardException;
+import com.microsoft.azure.elasticdb.query.exception.MultiShardStragglerException;
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.health.ShardLatencyTracker;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to StragglerDeadlines class, through queries of MultiShardStatement with partial results. Slow shards are stub databases holding
+ * their executions until released.
+ */
+public class StragglerDeadlinesTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    /**
+     * Shortest deadline, which shards without any slow history get.
+     */
+    private static final long MIN_DEADLINE_MILLIS = 100;
+
+    /**
+     * Once enough shards finished and the shard still running passed its deadline, it is cut off and left out of the results.
+     */
+    @Test
+    public void testCutOffAfterDeadline() throws Exception {
+        Query query = new Query("StragglerCutOff", 3, 1, 0.5, new ShardLatencyTracker(10, 1));
+        try {
+            query.run();
+        }
+        finally {
+            query.release.countDown();
+        }
+
+        Assert.assertEquals(2, query.rows.size());
+        Assert.assertEquals(1, query.exceptions.size());
+        MultiShardStragglerException ex = (MultiShardStragglerException) query.exceptions.get(0);
+        Assert.assertEquals("StragglerCutOff2", ex.getShardLocation().getDatabase());
+        Assert.assertTrue(ex.getDeadlineMillis() >= MIN_DEADLINE_MILLIS);
+        Assert.assertTrue(query.elapsedMillis >= ex.getDeadlineMillis());
+    }
+
+    /**
+     * The deadline of a shard is the multiple of its own latency percentile, and at least the minimum deadline.
+     */
+    @Test
+    public void testDeadlineFollowsHistory() throws Exception {
+        ShardLatencyTracker tracker = new ShardLatencyTracker(10, 1);
+        tracker.record(new ShardLocation("stub", "StragglerHistory1"), 150);
+        Query query = new Query("StragglerHistory", 2, 1, 0.5, tracker);
+        try {
+            query.run();
+        }
+        finally {
+            query.release.countDown();
+        }
+
+        Assert.assertEquals(1, query.exceptions.size());
+        Assert.assertEquals(300, ((MultiShardStragglerException) query.exceptions.get(0)).getDeadlineMillis());
+        Assert.assertTrue(query.elapsedMillis >= 300);
+    }
+
+    /**
+     * Shards are not cut off before the percentile's share of the shards finished, so the query waits for the slow ones.
+     */
+    @Test
+    public void testNoCutOffBeforeEnoughShardsFinished() throws Exception {
+        Query query = new Query("StragglerTooFew", 4, 2, 0.75, new ShardLatencyTracker(10, 1));
+        query.releaseAfter(3 * MIN_DEADLINE_MILLIS);
+        query.run();
+
+        Assert.assertEquals(4, query.rows.size());
+        Assert.assertTrue(query.exceptions.isEmpty());
+        Assert.assertTrue(query.elapsedMillis >= 3 * MIN_DEADLINE_MILLIS);
+    }
+
+    /**
+     * A shard without history has no deadline while no other shard succeeded, so the query waits for it.
+     */
+    @Test
+    public void testNoCutOffWithoutDeadline() throws Exception {
+        Query query = new Query("StragglerNoSamples", 2, 1, 0.5, new ShardLatencyTracker(10, 1));
+        StubDriver.database("StragglerNoSamples0").failNext(1, new SQLException("Injected failure.", "42000"));
+        query.releaseAfter(3 * MIN_DEADLINE_MILLIS);
+        query.run();
+
+        Assert.assertEquals(1, query.rows.size());
+        Assert.assertEquals(1, query.exceptions.size());
+        Assert.assertFalse(query.exceptions.get(0) instanceof MultiShardStragglerException);
+        Assert.assertTrue(query.elapsedMillis >= 3 * MIN_DEADLINE_MILLIS);
+    }
+
+    /**
+     * Percentiles are computed by the nearest-rank method.
+     */
+    @Test
+    public void testPercentileByNearestRank() {
+        Assert.assertEquals(-1, ShardLatencyTracker.percentileOf(new long[0], 0.5));
+        Assert.assertEquals(20, ShardLatencyTracker.percentileOf(new long[] {40, 10, 30, 20}, 0.5));
+        Assert.assertEquals(40, ShardLatencyTracker.percentileOf(new long[] {40, 10, 30, 20}, 0.95));
+        Assert.assertEquals(10, ShardLatencyTracker.percentileOf(new long[] {40, 10, 30, 20}, 0));
+    }
+
+    /**
+     * Query with partial results and a straggler deadline twice the latency percentile, over shards of which the last ones are slow.
+     */
+    private static final class Query {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final String[] shards;
+
+        private final double percentile;
+
+        private final ShardLatencyTracker tracker;
+
+        private final List<Object> rows = new ArrayList<>();
+
+        private List<MultiShardException> exceptions = Collections.emptyList();
+
+        private long elapsedMillis;
+
+        Query(String prefix,
+                int shardCount,
+                int slowCount,
+                double percentile,
+                ShardLatencyTracker tracker) {
+            this.shards = new String[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = prefix + i;
+                StubDriver.Database database = StubDriver.database(shards[i]);
+                database.setRows(LABELS, TYPES, new Object[][] {{i}});
+                database.holdExecutions(i >= shardCount - slowCount ? release : null);
+            }
+            this.percentile = percentile;
+            this.tracker = tracker;
+        }
+
+        /**
+         * Releases the slow shards after the given time, on another thread.
+         */
+        void releaseAfter(long millis) {
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(millis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            });
+            releaser.setDaemon(true);
+            releaser.start();
+        }
+
+        void run() throws Exception {
+            MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards(shards));
+            try (MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t")) {
+                statement.setExecutionPolicy(MultiShardExecutionPolicy.PartialResults);
+                statement.setShardLatencyTracker(tracker);
+                statement.setStragglerLatencyPercentile(percentile);
+                statement.setStragglerDeadlineMultiplier(2);
+
+                long start = System.nanoTime();
+                try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                    elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    while (resultSet.next()) {
+                        rows.add(resultSet.getObject(1));
+                    }
+                    exceptions = resultSet.getMultiShardExceptions();
+                }
+            }
+        }
+    }
+}
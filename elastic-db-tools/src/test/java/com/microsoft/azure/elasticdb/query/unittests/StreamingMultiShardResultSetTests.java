@@ -0,0 +1,150 @@
+package com.microsoft.azure.elasticdb.query.unittests;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionOptions;
+import com.microsoft.azure.elasticdb.query.logging.MultiShardExecutionPolicy;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardConnection;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardResultSet;
+import com.microsoft.azure.elasticdb.query.multishard.MultiShardStatement;
+import com.microsoft.azure.elasticdb.query.multishard.StreamingMultiShardResultSet;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to StreamingMultiShardResultSet class.
+ */
+public class StreamingMultiShardResultSetTests {
+
+    private static final String[] LABELS = {"id"};
+
+    private static final int[] TYPES = {Types.INTEGER};
+
+    /**
+     * The rows of all shards are returned, copied page by page, whatever the page size and the number of pages queued ahead.
+     */
+    @Test
+    public void testRowsArriveInPages() throws Exception {
+        StubDriver.database("StreamPagedA").setRows(LABELS, TYPES, rows(0, 5));
+        StubDriver.database("StreamPagedB").setRows(LABELS, TYPES, rows(5, 3));
+
+        List<Integer> ids = new ArrayList<>();
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("StreamPagedA", "StreamPagedB"));
+        try (MultiShardStatement statement = streamingStatement(conn, MultiShardExecutionPolicy.CompleteResults)) {
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                Assert.assertTrue(resultSet instanceof StreamingMultiShardResultSet);
+                Assert.assertEquals(Types.INTEGER, resultSet.getMetaData().getColumnType(1));
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+
+        Collections.sort(ids);
+        Assert.assertEquals(8, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertEquals(i, (int) ids.get(i));
+        }
+    }
+
+    /**
+     * Closing the results early cancels the statements of shards whose readers are still waiting for rows, and returns once the readers have
+     * stopped, closing the shard results.
+     */
+    @Test(timeout = 20_000)
+    public void testCloseCancelsRunningReaders() throws Exception {
+        StubDriver.Database slow = StubDriver.database("StreamSlow");
+        slow.setRows(LABELS, TYPES, rows(0, 3));
+        slow.setRowsBeforeBlocking(2);
+        StubDriver.database("StreamFast").setRows(LABELS, TYPES, rows(3, 10));
+
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("StreamSlow", "StreamFast"));
+        try (MultiShardStatement statement = streamingStatement(conn, MultiShardExecutionPolicy.CompleteResults)) {
+            MultiShardResultSet resultSet = statement.executeQuery();
+
+            // Once the first page of the slow shard arrived, its reader is waiting for the rows of the next one.
+            do {
+                Assert.assertTrue(resultSet.next());
+            }
+            while (resultSet.getInt(1) >= 3);
+
+            resultSet.close();
+            Assert.assertTrue(resultSet.isClosed());
+            Assert.assertEquals(1, slow.cancels.get());
+        }
+    }
+
+    /**
+     * A shard which fails is left out under partial results, while the rows of the other shards are still returned.
+     */
+    @Test
+    public void testFailedShardIsLeftOutOfPartialResults() throws Exception {
+        StubDriver.Database failing = StubDriver.database("StreamFailingPartial");
+        failing.setRows(LABELS, TYPES, rows(0, 2));
+        StubDriver.database("StreamHealthyPartial").setRows(LABELS, TYPES, rows(2, 2));
+        failing.failNext(1, new SQLException("Injected failure.", "42000"));
+
+        int count = 0;
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("StreamFailingPartial", "StreamHealthyPartial"));
+        try (MultiShardStatement statement = streamingStatement(conn, MultiShardExecutionPolicy.PartialResults)) {
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Assert.assertTrue(resultSet.getInt(1) >= 2);
+                    count++;
+                }
+                Assert.assertEquals(1, resultSet.getMultiShardExceptions().size());
+                Assert.assertEquals("StreamFailingPartial", resultSet.getMultiShardExceptions().get(0).getShardLocation().getDatabase());
+            }
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    /**
+     * A shard which fails fails the results under complete results.
+     */
+    @Test
+    public void testFailedShardFailsCompleteResults() throws Exception {
+        StubDriver.Database failing = StubDriver.database("StreamFailingComplete");
+        failing.setRows(LABELS, TYPES, rows(0, 2));
+        StubDriver.database("StreamHealthyComplete").setRows(LABELS, TYPES, rows(2, 2));
+        failing.failNext(1, new SQLException("Injected failure.", "42000"));
+
+        MultiShardConnection conn = new MultiShardConnection(StubDriver.connectShards("StreamFailingComplete", "StreamHealthyComplete"));
+        try (MultiShardStatement statement = streamingStatement(conn, MultiShardExecutionPolicy.CompleteResults)) {
+            try (MultiShardResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Assert.assertTrue(resultSet.getInt(1) >= 2);
+                }
+                Assert.fail("The failure of a shard should fail complete results.");
+            }
+            catch (SQLException e) {
+                Assert.assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    private static MultiShardStatement streamingStatement(MultiShardConnection conn,
+            MultiShardExecutionPolicy policy) {
+        MultiShardStatement statement = MultiShardStatement.create(conn, "SELECT id FROM t");
+        statement.setExecutionOptions(MultiShardExecutionOptions.StreamResults);
+        statement.setExecutionPolicy(policy);
+        statement.setStreamingPageSize(2);
+        statement.setStreamingPrefetchPages(1);
+        return statement;
+    }
+
+    private static Object[][] rows(int first,
+            int count) {
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[] {first + i};
+        }
+        return rows;
+    }
+}
@@ -39,6 +39,12 @@ class CacheStoreDecorator implements ICacheStore {
         this.inner.addOrUpdateMapping(mapping, policy);
     }
 
+    @Override
+    public void addOrUpdateMappings(List<StoreMapping> mappings,
+            CacheStoreMappingUpdatePolicy policy) {
+        this.inner.addOrUpdateMappings(mappings, policy);
+    }
+
     @Override
     public void deleteMapping(StoreMapping mapping) {
         this.inner.deleteMapping(mapping);
@@ -50,6 +56,12 @@ class CacheStoreDecorator implements ICacheStore {
         return this.inner.lookupMappingByKey(shardMap, key);
     }
 
+    @Override
+    public ICacheStoreMapping lookupMappingByKey(StoreShardMap shardMap,
+            long key) {
+        return this.inner.lookupMappingByKey(shardMap, key);
+    }
+
     @Override
     public List<ICacheStoreMapping> lookupMappingsForRange(StoreShardMap shardMap,
             ShardRange range) {
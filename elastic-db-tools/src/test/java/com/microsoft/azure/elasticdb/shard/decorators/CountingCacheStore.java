@@ -1,5 +1,7 @@
 package com.microsoft.azure.elasticdb.shard.decorators;
 
+import java.util.List;
+
 import com.microsoft.azure.elasticdb.shard.base.ShardKey;
 import com.microsoft.azure.elasticdb.shard.cache.CacheStoreMappingUpdatePolicy;
 import com.microsoft.azure.elasticdb.shard.cache.ICacheStore;
@@ -156,6 +158,13 @@ public class CountingCacheStore extends CacheStoreDecorator {
         super.addOrUpdateMapping(mapping, policy);
     }
 
+    @Override
+    public void addOrUpdateMappings(List<StoreMapping> mappings,
+            CacheStoreMappingUpdatePolicy policy) {
+        this.setAddMappingCount(this.getAddMappingCount() + mappings.size());
+        super.addOrUpdateMappings(mappings, policy);
+    }
+
     @Override
     public void deleteMapping(StoreMapping mapping) {
         this.setDeleteMappingCount(this.getDeleteMappingCount() + 1);
@@ -175,4 +184,18 @@ public class CountingCacheStore extends CacheStoreDecorator {
         }
         return result;
     }
+
+    @Override
+    public ICacheStoreMapping lookupMappingByKey(StoreShardMap shardMap,
+            long key) {
+        this.setLookupMappingCount(this.getLookupMappingCount() + 1);
+        ICacheStoreMapping result = super.lookupMappingByKey(shardMap, key);
+        if (result == null) {
+            this.setLookupMappingMissCount(this.getLookupMappingMissCount() + 1);
+        }
+        else {
+            this.setLookupMappingHitCount(this.getLookupMappingHitCount() + 1);
+        }
+        return result;
+    }
 }
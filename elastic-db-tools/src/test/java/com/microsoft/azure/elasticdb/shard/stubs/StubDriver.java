@@ -0,0 +1,761 @@
+package com.microsoft.azure.elasticdb.shard.stubs;
+
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.JDBCType;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+
+/**
+ * In-memory JDBC driver for "jdbc:stub:" URLs, which lets tests exercise connection handling without a database. Every URL names a database
+ * whose queries all return the same rows; connections, prepared statements, transactions and executed commands are counted per database.
+ */
+public final class StubDriver implements Driver {
+
+    /**
+     * Prefix of the URLs accepted by the driver.
+     */
+    public static final String URL_PREFIX = "jdbc:stub:";
+
+    private static final Map<String, Database> databases = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new StubDriver());
+        }
+        catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private StubDriver() {
+    }
+
+    /**
+     * Gets the URL of a database; the driver is registered once this class is loaded.
+     *
+     * @param name
+     *            Name of the database.
+     * @return The URL.
+     */
+    public static String url(String name) {
+        return URL_PREFIX + name;
+    }
+
+    /**
+     * Gets the state of a database, creating an empty one the first time.
+     *
+     * @param name
+     *            Name of the database.
+     * @return The database.
+     */
+    public static Database database(String name) {
+        return databases.computeIfAbsent(name, Database::new);
+    }
+
+    /**
+     * Creates a forward-only result set over the given rows.
+     *
+     * @param labels
+     *            Labels of the columns.
+     * @param types
+     *            JDBC types of the columns.
+     * @param rows
+     *            Values of the rows.
+     * @return The result set.
+     */
+    public static ResultSet resultSet(String[] labels,
+            int[] types,
+            Object[][] rows) {
+        return resultSet(null, labels, types, rows);
+    }
+
+    /**
+     * Connects to databases as the shards of a multi-shard connection, each labeled with a shard location on server "stub".
+     *
+     * @param names
+     *            Names of the databases.
+     * @return The shard locations and their connections, in order.
+     */
+    public static ArrayList<Pair<ShardLocation, Connection>> connectShards(String... names) throws SQLException {
+        ArrayList<Pair<ShardLocation, Connection>> connections = new ArrayList<>();
+        for (String name : names) {
+            connections.add(new ImmutablePair<>(new ShardLocation("stub", name), DriverManager.getConnection(url(name))));
+        }
+        return connections;
+    }
+
+    private static ResultSet resultSet(Statement statement,
+            String[] labels,
+            int[] types,
+            Object[][] rows) {
+        return (ResultSet) Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                new ResultSetHandler(statement, labels, types, rows, -1, null));
+    }
+
+    @Override
+    public Connection connect(String url,
+            Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        Database database = database(url.substring(URL_PREFIX.length()));
+        database.connectionsOpened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {Connection.class},
+                new ConnectionHandler(database));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url,
+            Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /**
+     * Default value of a method without stubbed behavior.
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        return null;
+    }
+
+    /**
+     * Answers the methods every stubbed JDBC object shares, or returns null for the others.
+     */
+    private static Object invokeCommon(Object proxy,
+            Method method,
+            Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Stub" + method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            case "unwrap":
+                return ((Class<?>) args[0]).cast(proxy);
+            case "isWrapperFor":
+                return ((Class<?>) args[0]).isInstance(proxy);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * State of a stubbed database.
+     */
+    public static final class Database {
+
+        private final String name;
+
+        public final AtomicInteger connectionsOpened = new AtomicInteger();
+
+        public final AtomicInteger connectionsClosed = new AtomicInteger();
+
+        public final AtomicInteger statementsPrepared = new AtomicInteger();
+
+        public final AtomicInteger statementsClosed = new AtomicInteger();
+
+        public final AtomicInteger commits = new AtomicInteger();
+
+        public final AtomicInteger rollbacks = new AtomicInteger();
+
+        public final AtomicInteger cancels = new AtomicInteger();
+
+        /**
+         * Number of upcoming updates, batches or queries which fail with {@link #failure}.
+         */
+        public final AtomicInteger failuresToInject = new AtomicInteger();
+
+        /**
+         * Commands executed, in order.
+         */
+        public final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * Values bound with setObject, in order.
+         */
+        public final List<Object> parameters = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile SQLException failure = new SQLException("Injected failure.", "08S01");
+
+        private volatile String[] labels = {"id"};
+
+        private volatile int[] types = {Types.INTEGER};
+
+        private volatile Object[][] rows = {};
+
+        private volatile int updateCount = 1;
+
+        private volatile int rowsBeforeBlocking = -1;
+
+        private volatile CountDownLatch release;
+
+        private Database(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Sets the rows every query returns.
+         */
+        public void setRows(String[] labels,
+                int[] types,
+                Object[][] rows) {
+            this.labels = labels;
+            this.types = types;
+            this.rows = rows;
+        }
+
+        public void setUpdateCount(int value) {
+            updateCount = value;
+        }
+
+        /**
+         * Makes the result sets of later queries return the given number of rows and then wait for their statement to be cancelled, as a slow
+         * query does, after which they fail as SQL Server does.
+         *
+         * @param value
+         *            Number of rows returned before waiting, or -1 to return all rows at once.
+         */
+        public void setRowsBeforeBlocking(int value) {
+            rowsBeforeBlocking = value;
+        }
+
+        /**
+         * Makes later executions wait, once recorded, until the latch is released, without reacting to interrupts or cancels, as a command stuck in
+         * the driver does.
+         *
+         * @param value
+         *            Latch releasing the executions, or null to run them at once.
+         */
+        public void holdExecutions(CountDownLatch value) {
+            release = value;
+        }
+
+        /**
+         * Makes the next executions fail.
+         *
+         * @param count
+         *            Number of executions which fail.
+         * @param value
+         *            Exception they fail with.
+         */
+        public void failNext(int count,
+                SQLException value) {
+            failure = value;
+            failuresToInject.set(count);
+        }
+
+        private void maybeHold() {
+            CountDownLatch latch = release;
+            if (latch != null) {
+                Uninterruptibles.awaitUninterruptibly(latch);
+            }
+        }
+
+        private void maybeFail() throws SQLException {
+            if (failuresToInject.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Stubbed physical connection.
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Database database;
+
+        private boolean closed;
+
+        private boolean autoCommit = true;
+
+        private boolean readOnly;
+
+        private String catalog;
+
+        private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+
+        ConnectionHandler(Database database) {
+            this.database = database;
+            this.catalog = database.getName();
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        database.connectionsClosed.incrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "isValid":
+                    return !closed;
+                case "equals":
+                case "hashCode":
+                case "toString":
+                case "unwrap":
+                case "isWrapperFor":
+                    return invokeCommon(proxy, method, args);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("The connection is closed.", "08003");
+            }
+            switch (method.getName()) {
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "commit":
+                    database.commits.incrementAndGet();
+                    return null;
+                case "rollback":
+                    database.rollbacks.incrementAndGet();
+                    return null;
+                case "isReadOnly":
+                    return readOnly;
+                case "setReadOnly":
+                    readOnly = (Boolean) args[0];
+                    return null;
+                case "getCatalog":
+                    return catalog;
+                case "setCatalog":
+                    catalog = (String) args[0];
+                    return null;
+                case "getTransactionIsolation":
+                    return isolation;
+                case "setTransactionIsolation":
+                    isolation = (Integer) args[0];
+                    return null;
+                case "createStatement":
+                    return statement((Connection) proxy, null);
+                case "prepareStatement":
+                case "prepareCall":
+                    database.statementsPrepared.incrementAndGet();
+                    return statement((Connection) proxy, (String) args[0]);
+                case "getMetaData":
+                    return Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {DatabaseMetaData.class},
+                            (metaData, m, a) -> {
+                                switch (m.getName()) {
+                                    case "getConnection":
+                                        return proxy;
+                                    case "getURL":
+                                        return url(database.getName());
+                                    default:
+                                        Object common = invokeCommon(metaData, m, a);
+                                        return common != null ? common : defaultValue(m.getReturnType());
+                                }
+                            });
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private Statement statement(Connection connection,
+                String sql) {
+            return (Statement) Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {CallableStatement.class},
+                    new StatementHandler(database, connection, sql));
+        }
+    }
+
+    /**
+     * Stubbed statement; prepared statements remember their command text.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Database database;
+
+        private final Connection connection;
+
+        private final String sql;
+
+        private boolean closed;
+
+        private int batchSize;
+
+        private ResultSet resultSet;
+
+        private int updateCount = -1;
+
+        /**
+         * Released once the statement is cancelled.
+         */
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+
+        StatementHandler(Database database,
+                Connection connection,
+                String sql) {
+            this.database = database;
+            this.connection = connection;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            // Like a driver, cancellation does not wait for the statement to finish what it is doing.
+            if ("cancel".equals(method.getName())) {
+                database.cancels.incrementAndGet();
+                cancelled.countDown();
+                return null;
+            }
+            synchronized (this) {
+                return this.invokeSynchronized(proxy, method, args);
+            }
+        }
+
+        private Object invokeSynchronized(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        database.statementsClosed.incrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                case "hashCode":
+                case "toString":
+                case "unwrap":
+                case "isWrapperFor":
+                    return invokeCommon(proxy, method, args);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("The statement is closed.");
+            }
+            String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            switch (method.getName()) {
+                case "executeQuery":
+                    return this.query(proxy, text);
+                case "execute":
+                    if (text.trim().toUpperCase().startsWith("SELECT")) {
+                        this.query(proxy, text);
+                        return true;
+                    }
+                    this.update(text);
+                    return false;
+                case "executeUpdate":
+                    return this.update(text);
+                case "executeLargeUpdate":
+                    return (long) this.update(text);
+                case "addBatch":
+                    batchSize++;
+                    return null;
+                case "clearBatch":
+                    batchSize = 0;
+                    return null;
+                case "executeBatch":
+                    database.executed.add(sql);
+                    database.maybeFail();
+                    int[] counts = new int[batchSize];
+                    Arrays.fill(counts, database.updateCount);
+                    batchSize = 0;
+                    return counts;
+                case "setObject":
+                    database.parameters.add(args[1]);
+                    return null;
+                case "getResultSet":
+                    return resultSet;
+                case "getUpdateCount":
+                    return updateCount;
+                case "getMoreResults":
+                    resultSet = null;
+                    updateCount = -1;
+                    return false;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private ResultSet query(Object proxy,
+                String text) throws SQLException {
+            database.executed.add(text);
+            database.maybeHold();
+            database.maybeFail();
+            updateCount = -1;
+            resultSet = (ResultSet) Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                    new ResultSetHandler((Statement) proxy, database.labels, database.types, database.rows, database.rowsBeforeBlocking, cancelled));
+            return resultSet;
+        }
+
+        private int update(String text) throws SQLException {
+            database.executed.add(text);
+            database.maybeHold();
+            database.maybeFail();
+            resultSet = null;
+            updateCount = database.updateCount;
+            return updateCount;
+        }
+    }
+
+    /**
+     * Stubbed forward-only result set.
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final String[] labels;
+
+        private final int[] types;
+
+        private final Object[][] rows;
+
+        private final int rowsBeforeBlocking;
+
+        private final CountDownLatch cancelled;
+
+        private int position = -1;
+
+        private boolean closed;
+
+        private boolean wasNull;
+
+        ResultSetHandler(Statement statement,
+                String[] labels,
+                int[] types,
+                Object[][] rows,
+                int rowsBeforeBlocking,
+                CountDownLatch cancelled) {
+            this.statement = statement;
+            this.labels = labels;
+            this.types = types;
+            this.rows = rows;
+            this.rowsBeforeBlocking = rowsBeforeBlocking;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy,
+                Method method,
+                Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                case "hashCode":
+                case "toString":
+                case "unwrap":
+                case "isWrapperFor":
+                    return invokeCommon(proxy, method, args);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("The result set is closed.");
+            }
+            switch (name) {
+                case "next":
+                    if (rowsBeforeBlocking >= 0 && position + 1 >= rowsBeforeBlocking) {
+                        if (!cancelled.await(30, TimeUnit.SECONDS)) {
+                            throw new SQLException("The query was not cancelled.");
+                        }
+                        throw new SQLException("The query was canceled.", "HY008");
+                    }
+                    if (position < rows.length) {
+                        position++;
+                    }
+                    return position < rows.length;
+                case "wasNull":
+                    return wasNull;
+                case "findColumn":
+                    return this.findColumn((String) args[0]);
+                case "getStatement":
+                    return statement;
+                case "getType":
+                    return ResultSet.TYPE_FORWARD_ONLY;
+                case "getConcurrency":
+                    return ResultSet.CONCUR_READ_ONLY;
+                case "getRow":
+                    return position >= 0 && position < rows.length ? position + 1 : 0;
+                case "isBeforeFirst":
+                    return position < 0 && rows.length > 0;
+                case "isAfterLast":
+                    return position >= rows.length && rows.length > 0;
+                case "getMetaData":
+                    return Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {ResultSetMetaData.class},
+                            (metaData, m, a) -> this.describe(metaData, m, a));
+                default:
+                    break;
+            }
+            if (name.startsWith("get") && args != null && args.length >= 1 && (args[0] instanceof Integer || args[0] instanceof String)) {
+                if (position < 0 || position >= rows.length) {
+                    throw new SQLException("The result set has no current row.");
+                }
+                int column = args[0] instanceof Integer ? (Integer) args[0] : this.findColumn((String) args[0]);
+                Object value = rows[position][column - 1];
+                wasNull = value == null;
+                return convert(value, method.getReturnType());
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+        private int findColumn(String label) throws SQLException {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i].equalsIgnoreCase(label)) {
+                    return i + 1;
+                }
+            }
+            throw new SQLException("Invalid column name " + label + ".");
+        }
+
+        private Object describe(Object metaData,
+                Method method,
+                Object[] args) {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return labels.length;
+                case "getColumnLabel":
+                case "getColumnName":
+                    return labels[(Integer) args[0] - 1];
+                case "getColumnType":
+                    return types[(Integer) args[0] - 1];
+                case "getColumnTypeName":
+                    return JDBCType.valueOf(types[(Integer) args[0] - 1]).getName();
+                case "isNullable":
+                    return ResultSetMetaData.columnNullable;
+                default:
+                    Object common = invokeCommon(metaData, method, args);
+                    return common != null ? common : defaultValue(method.getReturnType());
+            }
+        }
+
+        private static Object convert(Object value,
+                Class<?> type) {
+            if (value == null) {
+                return defaultValue(type);
+            }
+            if (type == String.class) {
+                return value.toString();
+            }
+            if (value instanceof Number) {
+                Number number = (Number) value;
+                if (type == int.class) {
+                    return number.intValue();
+                }
+                if (type == long.class) {
+                    return number.longValue();
+                }
+                if (type == short.class) {
+                    return number.shortValue();
+                }
+                if (type == byte.class) {
+                    return number.byteValue();
+                }
+                if (type == double.class) {
+                    return number.doubleValue();
+                }
+                if (type == float.class) {
+                    return number.floatValue();
+                }
+                if (type == BigDecimal.class && !(value instanceof BigDecimal)) {
+                    return new BigDecimal(number.toString());
+                }
+            }
+            return value;
+        }
+    }
+}
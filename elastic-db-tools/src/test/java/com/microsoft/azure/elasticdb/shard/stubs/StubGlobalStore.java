@@ -0,0 +1,313 @@
+package com.microsoft.azure.elasticdb.shard.stubs;
+
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryBehavior;
+import com.microsoft.azure.elasticdb.core.commons.transientfaulthandling.RetryPolicy;
+import com.microsoft.azure.elasticdb.shard.base.ShardKey;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.base.ShardRange;
+import com.microsoft.azure.elasticdb.shard.cache.CacheStore;
+import com.microsoft.azure.elasticdb.shard.cache.CacheStoreMappingUpdatePolicy;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
+import com.microsoft.azure.elasticdb.shard.map.ShardMap;
+import com.microsoft.azure.elasticdb.shard.map.ShardMapType;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCategory;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardMapManager;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardMapManagerLoadPolicy;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlShardMapManagerCredentials;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlStoreConnectionFactory;
+import com.microsoft.azure.elasticdb.shard.store.IStoreTransactionScope;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.store.StoreMapping;
+import com.microsoft.azure.elasticdb.shard.store.StoreResult;
+import com.microsoft.azure.elasticdb.shard.store.StoreResults;
+import com.microsoft.azure.elasticdb.shard.store.StoreShard;
+import com.microsoft.azure.elasticdb.shard.store.StoreShardMap;
+import com.microsoft.azure.elasticdb.shard.store.Version;
+import com.microsoft.azure.elasticdb.shard.storeops.base.IStoreOperationGlobal;
+import com.microsoft.azure.elasticdb.shard.storeops.base.StoreOperationFactory;
+import com.microsoft.azure.elasticdb.shard.storeops.base.StoreOperationRequestBuilder;
+
+/**
+ * In-memory global shard map store, which lets tests use a shard map manager without a database. Mapping lookups by key and by range run the
+ * store operations of the library against a transaction scope answered from the mappings added to the store; connections to shards are opened
+ * by the given user connection provider, e.g. over <see cref="StubDriver"/>.
+ */
+public final class StubGlobalStore {
+
+    private final ShardMapManager shardMapManager;
+
+    private final List<StoreMapping> mappings = new CopyOnWriteArrayList<>();
+
+    private volatile Version version = new Version(1, 3);
+
+    /**
+     * Number of lookups of many keys in a single request, including those the store did not support.
+     */
+    public final AtomicInteger bulkLookups = new AtomicInteger();
+
+    /**
+     * Number of lookups of a single key.
+     */
+    public final AtomicInteger keyLookups = new AtomicInteger();
+
+    /**
+     * Number of lookups of the mappings in a range.
+     */
+    public final AtomicInteger rangeLookups = new AtomicInteger();
+
+    /**
+     * Creates a store.
+     *
+     * @param userConnectionProvider
+     *            Opens connections to the shards.
+     */
+    public StubGlobalStore(IUserConnectionProvider userConnectionProvider) {
+        SqlConnectionStringBuilder connStr = new SqlConnectionStringBuilder();
+        connStr.setDataSource("stub");
+        connStr.setDatabaseName("ShardMapManager");
+        connStr.setIntegratedSecurity(false);
+        connStr.setUser("user");
+        connStr.setPassword("password");
+        shardMapManager = new ShardMapManager(new SqlShardMapManagerCredentials(connStr.toString()),
+                new SqlStoreConnectionFactory(userConnectionProvider), new OperationFactory(), new CacheStore(), ShardMapManagerLoadPolicy.Lazy,
+                new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ZERO), RetryBehavior.getDefaultRetryBehavior());
+    }
+
+    public ShardMapManager getShardMapManager() {
+        return shardMapManager;
+    }
+
+    /**
+     * Sets the version of the store; stores older than 1.3 cannot look many keys up in a single request.
+     */
+    public void setVersion(Version value) {
+        version = value;
+    }
+
+    /**
+     * Creates a list shard map, known to the cache of the shard map manager as one looked up by name would be.
+     */
+    public <KeyT> ListShardMap<KeyT> createListShardMap(String name,
+            ShardKeyType keyType) {
+        return new ListShardMap<>(shardMapManager, this.addShardMap(name, ShardMapType.List, keyType));
+    }
+
+    /**
+     * Creates a range shard map, known to the cache of the shard map manager as one looked up by name would be.
+     */
+    public <KeyT> RangeShardMap<KeyT> createRangeShardMap(String name,
+            ShardKeyType keyType) {
+        return new RangeShardMap<>(shardMapManager, this.addShardMap(name, ShardMapType.Range, keyType));
+    }
+
+    private StoreShardMap addShardMap(String name,
+            ShardMapType mapType,
+            ShardKeyType keyType) {
+        StoreShardMap shardMap = new StoreShardMap(UUID.randomUUID(), name, mapType, keyType);
+        shardMapManager.getCache().addOrUpdateShardMap(shardMap);
+        return shardMap;
+    }
+
+    /**
+     * Adds a shard to a shard map.
+     */
+    public StoreShard addShard(ShardMap shardMap,
+            ShardLocation location) {
+        return new StoreShard(UUID.randomUUID(), UUID.randomUUID(), shardMap.getId(), location, 0);
+    }
+
+    /**
+     * Maps a key of a list shard map to a shard.
+     */
+    public StoreMapping addPointMapping(ShardMap shardMap,
+            StoreShard shard,
+            Object key) {
+        StoreMapping mapping = new StoreMapping(UUID.randomUUID(), shardMap.getId(), rawValue(key), null, 1, null, shard);
+        mappings.add(mapping);
+        return mapping;
+    }
+
+    /**
+     * Maps the keys from low, inclusive, to high, exclusive, of a range shard map to a shard.
+     */
+    public StoreMapping addRangeMapping(ShardMap shardMap,
+            StoreShard shard,
+            Object low,
+            Object high) {
+        StoreMapping mapping = new StoreMapping(UUID.randomUUID(), shardMap.getId(), rawValue(low), rawValue(high), 1, null, shard);
+        mappings.add(mapping);
+        return mapping;
+    }
+
+    private static byte[] rawValue(Object key) {
+        return new ShardKey(ShardKey.shardKeyTypeFromType(key.getClass()), key).getRawValue();
+    }
+
+    private StoreResults find(StoreShardMap shardMap,
+            List<ShardKey> keys) {
+        StoreResults results = new StoreResults();
+        for (StoreMapping mapping : mappings) {
+            if (!mapping.getShardMapId().equals(shardMap.getId())) {
+                continue;
+            }
+            ShardKey low = ShardKey.fromRawValue(shardMap.getKeyType(), mapping.getMinValue());
+            for (ShardKey key : keys) {
+                if (key.equals(low) || (shardMap.getMapType() == ShardMapType.Range
+                        && new ShardRange(low, ShardKey.fromRawValue(shardMap.getKeyType(), mapping.getMaxValue())).contains(key))) {
+                    results.getStoreMappings().add(mapping);
+                    break;
+                }
+            }
+        }
+        if (results.getStoreMappings().isEmpty()) {
+            results.setResult(StoreResult.MappingNotFoundForKey);
+        }
+        return results;
+    }
+
+    private StoreResults findInRange(StoreShardMap shardMap,
+            StoreShard shard,
+            ShardRange range) {
+        StoreResults results = new StoreResults();
+        for (StoreMapping mapping : mappings) {
+            if (!mapping.getShardMapId().equals(shardMap.getId()) || (shard != null && !mapping.getStoreShard().getId().equals(shard.getId()))) {
+                continue;
+            }
+            ShardKey low = ShardKey.fromRawValue(shardMap.getKeyType(), mapping.getMinValue());
+            ShardKey high = mapping.getMaxValue() == null ? low.getNextKey() : ShardKey.fromRawValue(shardMap.getKeyType(), mapping.getMaxValue());
+            if (range == null || range.intersects(new ShardRange(low, high))) {
+                results.getStoreMappings().add(mapping);
+            }
+        }
+        results.setResult(StoreResult.Success);
+        return results;
+    }
+
+    /**
+     * Transaction scope answering the request of a lookup operation.
+     */
+    private IStoreTransactionScope scope(StoreShardMap shardMap,
+            List<ShardKey> keys) {
+        return this.scope(() -> find(shardMap, keys));
+    }
+
+    /**
+     * Transaction scope answering the requests of an operation from the given lookup.
+     */
+    private IStoreTransactionScope scope(Supplier<StoreResults> lookup) {
+        return (IStoreTransactionScope) Proxy.newProxyInstance(StubGlobalStore.class.getClassLoader(), new Class<?>[] {IStoreTransactionScope.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "executeOperation":
+                            if (StoreOperationRequestBuilder.SP_FIND_SHARD_MAPPINGS_BY_KEYS_GLOBAL.equals(args[0])) {
+                                // An older store lacks the stored procedure, which fails the call.
+                                if (Version.isFirstGreaterThan(new Version(1, 3), version)) {
+                                    return null;
+                                }
+                                StoreResults results = lookup.get();
+                                results.setResult(StoreResult.Success);
+                                return results;
+                            }
+                            return lookup.get();
+                        case "executeCommandSingle":
+                            StoreResults results = new StoreResults();
+                            results.setStoreVersion(version);
+                            return results;
+                        case "getSuccess":
+                            return true;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * Runs a store operation against a transaction scope as StoreOperationGlobal.doGlobal does against the store, without connecting to it.
+     */
+    private static IStoreOperationGlobal run(IStoreOperationGlobal operation,
+            IStoreTransactionScope scope) {
+        return (IStoreOperationGlobal) Proxy.newProxyInstance(StubGlobalStore.class.getClassLoader(), new Class<?>[] {IStoreOperationGlobal.class},
+                (proxy, method, args) -> {
+                    if ("doGlobal".equals(method.getName())) {
+                        StoreResults result = operation.doGlobalExecute(scope);
+                        if (result.getResult() != StoreResult.Success) {
+                            operation.doGlobalUpdateCachePre(result);
+                            operation.handleDoGlobalExecuteError(result);
+                        }
+                        operation.doGlobalUpdateCachePost(result);
+                        return result;
+                    }
+                    try {
+                        return method.invoke(operation, args);
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Creates the lookup operations against the in-memory store.
+     */
+    private final class OperationFactory extends StoreOperationFactory {
+
+        @Override
+        public IStoreOperationGlobal createFindMappingByKeyGlobalOperation(ShardMapManager shardMapManager,
+                String operationName,
+                StoreShardMap shardMap,
+                ShardKey key,
+                CacheStoreMappingUpdatePolicy policy,
+                ShardManagementErrorCategory errorCategory,
+                boolean cacheResults,
+                boolean ignoreFailure) {
+            keyLookups.incrementAndGet();
+            return run(super.createFindMappingByKeyGlobalOperation(shardMapManager, operationName, shardMap, key, policy, errorCategory,
+                    cacheResults, ignoreFailure), scope(shardMap, Collections.singletonList(key)));
+        }
+
+        @Override
+        public IStoreOperationGlobal createFindMappingsByKeysGlobalOperation(ShardMapManager shardMapManager,
+                String operationName,
+                StoreShardMap shardMap,
+                List<ShardKey> keys,
+                CacheStoreMappingUpdatePolicy policy,
+                ShardManagementErrorCategory errorCategory,
+                boolean cacheResults,
+                boolean ignoreFailure) {
+            bulkLookups.incrementAndGet();
+            return run(super.createFindMappingsByKeysGlobalOperation(shardMapManager, operationName, shardMap, keys, policy, errorCategory,
+                    cacheResults, ignoreFailure), scope(shardMap, keys));
+        }
+
+        @Override
+        public IStoreOperationGlobal createGetMappingsByRangeGlobalOperation(ShardMapManager shardMapManager,
+                String operationName,
+                StoreShardMap shardMap,
+                StoreShard shard,
+                ShardRange range,
+                ShardManagementErrorCategory errorCategory,
+                boolean cacheResults,
+                boolean ignoreFailure) {
+            rangeLookups.incrementAndGet();
+            return run(super.createGetMappingsByRangeGlobalOperation(shardMapManager, operationName, shardMap, shard, range, errorCategory,
+                    cacheResults, ignoreFailure), scope(() -> findInRange(shardMap, shard, range)));
+        }
+    }
+}
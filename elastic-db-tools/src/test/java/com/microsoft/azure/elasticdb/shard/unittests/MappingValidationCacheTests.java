@@ -0,0 +1,92 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.cache.MappingValidationCache;
+import com.microsoft.azure.elasticdb.shard.store.StoreMapping;
+import com.microsoft.azure.elasticdb.shard.store.StoreShard;
+
+/**
+ * Tests related to MappingValidationCache class.
+ */
+public class MappingValidationCacheTests {
+
+    private static final String CONNECTION_STRING = "jdbc:sqlserver://server;databaseName=shard0";
+
+    private final UUID shardId = UUID.randomUUID();
+
+    private final UUID shardMapId = UUID.randomUUID();
+
+    /**
+     * A recorded validation is trusted for the same connection string, mapping and shard version only.
+     */
+    @Test
+    public void testValidationIsKeyedByMappingAndShardVersion() {
+        MappingValidationCache cache = new MappingValidationCache();
+        UUID mappingId = UUID.randomUUID();
+        UUID version = UUID.randomUUID();
+        cache.addValidated(CONNECTION_STRING, mapping(mappingId, version));
+
+        Assert.assertTrue(cache.isValidated(CONNECTION_STRING, mapping(mappingId, version)));
+        Assert.assertFalse(cache.isValidated(CONNECTION_STRING + ";user=other", mapping(mappingId, version)));
+        Assert.assertFalse(cache.isValidated(CONNECTION_STRING, mapping(UUID.randomUUID(), version)));
+        Assert.assertFalse(cache.isValidated(CONNECTION_STRING, mapping(mappingId, UUID.randomUUID())));
+    }
+
+    /**
+     * A validation is no longer trusted once the validity window passed.
+     */
+    @Test
+    public void testValidationExpires() throws InterruptedException {
+        MappingValidationCache cache = new MappingValidationCache(20, 10);
+        StoreMapping mapping = mapping(UUID.randomUUID(), UUID.randomUUID());
+        cache.addValidated(CONNECTION_STRING, mapping);
+        Assert.assertTrue(cache.isValidated(CONNECTION_STRING, mapping));
+
+        Thread.sleep(50);
+        Assert.assertFalse(cache.isValidated(CONNECTION_STRING, mapping));
+    }
+
+    /**
+     * Clearing the cache forgets all validations.
+     */
+    @Test
+    public void testClearForgetsValidations() {
+        MappingValidationCache cache = new MappingValidationCache();
+        StoreMapping mapping = mapping(UUID.randomUUID(), UUID.randomUUID());
+        cache.addValidated(CONNECTION_STRING, mapping);
+        cache.clear();
+        Assert.assertFalse(cache.isValidated(CONNECTION_STRING, mapping));
+    }
+
+    /**
+     * The validity window and the size must be positive.
+     */
+    @Test
+    public void testArgumentsAreValidated() {
+        try {
+            new MappingValidationCache(0, 10);
+            Assert.fail("A validity window of 0 should be rejected.");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("validityMillis"));
+        }
+        try {
+            new MappingValidationCache(10, 0);
+            Assert.fail("A maximum size of 0 should be rejected.");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("maximumSize"));
+        }
+    }
+
+    private StoreMapping mapping(UUID mappingId,
+            UUID shardVersion) {
+        StoreShard shard = new StoreShard(shardId, shardVersion, shardMapId, new ShardLocation("server", "shard0"), 1);
+        return new StoreMapping(mappingId, shardMapId, new byte[0], null, 1, null, shard);
+    }
+}
@@ -0,0 +1,125 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.LookupOptions;
+import com.microsoft.azure.elasticdb.shard.base.PointMapping;
+import com.microsoft.azure.elasticdb.shard.base.RangeMapping;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.store.StoreShard;
+import com.microsoft.azure.elasticdb.shard.store.Version;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+import com.microsoft.azure.elasticdb.shard.stubs.StubGlobalStore;
+
+/**
+ * Tests related to the getMappingsForKeys methods of ListShardMap and RangeShardMap classes.
+ */
+public class MappingsForKeysTests {
+
+    private static final ShardLocation SHARD_A = new ShardLocation("stub", "a");
+
+    private static final ShardLocation SHARD_B = new ShardLocation("stub", "b");
+
+    private final StubGlobalStore store = new StubGlobalStore(new IUserConnectionProvider() {
+        @Override
+        public java.sql.Connection getConnection(String connectionString) throws java.sql.SQLException {
+            return DriverManager.getConnection(StubDriver.url("MappingsForKeys"));
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    /**
+     * Keys not in the cache are looked up in a single request, and the mappings found are cached.
+     */
+    @Test
+    public void testKeysAreLookedUpInSingleRequest() {
+        ListShardMap<Integer> shardMap = this.listShardMap();
+
+        Map<Integer, PointMapping> mappings = shardMap.getMappingsForKeys(Arrays.asList(1, 2, 3), cacheThenStore());
+        Assert.assertEquals(3, mappings.size());
+        Assert.assertEquals(SHARD_A, mappings.get(1).getShard().getLocation());
+        Assert.assertEquals(SHARD_B, mappings.get(2).getShard().getLocation());
+        Assert.assertEquals(SHARD_A, mappings.get(3).getShard().getLocation());
+        Assert.assertEquals(1, store.bulkLookups.get());
+        Assert.assertEquals(0, store.keyLookups.get());
+
+        // The mappings are served by the cache now.
+        Assert.assertEquals(3, shardMap.getMappingsForKeys(Arrays.asList(1, 2, 3), cacheThenStore()).size());
+        Assert.assertEquals(1, store.bulkLookups.get());
+    }
+
+    /**
+     * Keys without a mapping are left out of the result rather than failing the lookup of the others.
+     */
+    @Test
+    public void testMissingKeysAreLeftOut() {
+        ListShardMap<Integer> shardMap = this.listShardMap();
+
+        Map<Integer, PointMapping> mappings = shardMap.getMappingsForKeys(Arrays.asList(1, 4, 2));
+        Assert.assertEquals(2, mappings.size());
+        Assert.assertFalse(mappings.containsKey(4));
+        Assert.assertEquals(SHARD_B, mappings.get(2).getShard().getLocation());
+    }
+
+    /**
+     * Keys of a range shard map are matched to the range containing them.
+     */
+    @Test
+    public void testKeysAreMatchedToContainingRange() {
+        RangeShardMap<Integer> shardMap = store.createRangeShardMap("MappingsForKeysRange", ShardKeyType.Int32);
+        store.addRangeMapping(shardMap, store.addShard(shardMap, SHARD_A), 0, 10);
+        store.addRangeMapping(shardMap, store.addShard(shardMap, SHARD_B), 10, 20);
+
+        Map<Integer, RangeMapping> mappings = shardMap.getMappingsForKeys(Arrays.asList(0, 9, 10, 19, 20));
+        Assert.assertEquals(4, mappings.size());
+        Assert.assertEquals(SHARD_A, mappings.get(9).getShard().getLocation());
+        Assert.assertEquals(SHARD_B, mappings.get(10).getShard().getLocation());
+        Assert.assertFalse(mappings.containsKey(20));
+        Assert.assertEquals(1, store.bulkLookups.get());
+    }
+
+    /**
+     * A store older than version 1.3 has the keys looked up one at a time, and later lookups do not try the single request again.
+     */
+    @Test
+    public void testOlderStoreFallsBackToKeyLookups() {
+        store.setVersion(new Version(1, 2));
+        ListShardMap<Integer> shardMap = this.listShardMap();
+
+        Map<Integer, PointMapping> mappings = shardMap.getMappingsForKeys(Arrays.asList(1, 4, 2));
+        Assert.assertEquals(2, mappings.size());
+        Assert.assertEquals(SHARD_A, mappings.get(1).getShard().getLocation());
+        Assert.assertEquals(1, store.bulkLookups.get());
+        Assert.assertEquals(3, store.keyLookups.get());
+
+        Assert.assertEquals(1, shardMap.getMappingsForKeys(Arrays.asList(3)).size());
+        Assert.assertEquals(1, store.bulkLookups.get());
+        Assert.assertEquals(4, store.keyLookups.get());
+    }
+
+    private ListShardMap<Integer> listShardMap() {
+        ListShardMap<Integer> shardMap = store.createListShardMap("MappingsForKeysList", ShardKeyType.Int32);
+        StoreShard a = store.addShard(shardMap, SHARD_A);
+        StoreShard b = store.addShard(shardMap, SHARD_B);
+        store.addPointMapping(shardMap, a, 1);
+        store.addPointMapping(shardMap, b, 2);
+        store.addPointMapping(shardMap, a, 3);
+        return shardMap;
+    }
+
+    private static LookupOptions cacheThenStore() {
+        return LookupOptions.forValue(LookupOptions.LOOKUP_IN_CACHE.getValue() | LookupOptions.LOOKUP_IN_STORE.getValue());
+    }
+}
@@ -0,0 +1,204 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCode;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
+import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+import com.microsoft.azure.elasticdb.shard.stubs.StubGlobalStore;
+
+/**
+ * Tests related to the openConnectionForKeyAsync methods of ShardMap class which run on an executor.
+ */
+public class OpenConnectionForKeyAsyncTests {
+
+    private static final String CONNECTION_STRING = credentials();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * Released to let connections to the shards open, if set.
+     */
+    private volatile CountDownLatch release;
+
+    /**
+     * Released once a connection to a shard started opening.
+     */
+    private final CountDownLatch opening = new CountDownLatch(1);
+
+    private final StubGlobalStore store = new StubGlobalStore(new IUserConnectionProvider() {
+        @Override
+        public Connection getConnection(String connectionString) throws SQLException {
+            opening.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+            return DriverManager.getConnection(StubDriver.url(new SqlConnectionStringBuilder(connectionString).getDatabaseName()));
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The future completes with a connection to the shard holding the key.
+     */
+    @Test
+    public void testConnectionIsOpenedToShardOfKey() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap("OpenAsyncOpened");
+
+        try (Connection conn = shardMap.openConnectionForKeyAsync(1, CONNECTION_STRING, ConnectionOptions.None, executor).get(5, TimeUnit.SECONDS)) {
+            Assert.assertFalse(conn.isClosed());
+        }
+        Assert.assertEquals(1, StubDriver.database("OpenAsyncOpened").connectionsOpened.get());
+        Assert.assertEquals(1, store.keyLookups.get());
+    }
+
+    /**
+     * A key without a mapping fails the future with the error of the lookup.
+     */
+    @Test
+    public void testMissingMappingFailsFuture() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap("OpenAsyncMissing");
+
+        try {
+            shardMap.openConnectionForKeyAsync(2, CONNECTION_STRING, ConnectionOptions.None, executor).get(5, TimeUnit.SECONDS);
+            Assert.fail("Opening a connection for a key without a mapping should fail.");
+        }
+        catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ShardManagementException);
+            Assert.assertEquals(ShardManagementErrorCode.MappingNotFoundForKey, ((ShardManagementException) e.getCause()).getErrorCode());
+        }
+        Assert.assertEquals(0, StubDriver.database("OpenAsyncMissing").connectionsOpened.get());
+    }
+
+    /**
+     * A future cancelled before its stages ran skips both the lookup and the open.
+     */
+    @Test
+    public void testCancelledFutureSkipsStagesNotStarted() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap("OpenAsyncCancelled");
+        Queue<Runnable> tasks = new ArrayDeque<>();
+
+        CompletableFuture<Connection> future = shardMap.openConnectionForKeyAsync(1, CONNECTION_STRING, ConnectionOptions.None, tasks::add);
+        Assert.assertTrue(future.cancel(false));
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+
+        Assert.assertEquals(0, store.keyLookups.get());
+        Assert.assertEquals(0, StubDriver.database("OpenAsyncCancelled").connectionsOpened.get());
+    }
+
+    /**
+     * A connection which finishes opening after the future was cancelled is closed rather than leaked.
+     */
+    @Test
+    public void testConnectionOpenedAfterCancelIsClosed() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap("OpenAsyncAbandoned");
+        release = new CountDownLatch(1);
+
+        CompletableFuture<Connection> future = shardMap.openConnectionForKeyAsync(1, CONNECTION_STRING, ConnectionOptions.None, executor);
+        Assert.assertTrue(opening.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(future.cancel(false));
+        release.countDown();
+
+        awaitClosedConnections(StubDriver.database("OpenAsyncAbandoned"), 1);
+        Assert.assertEquals(1, StubDriver.database("OpenAsyncAbandoned").connectionsOpened.get());
+    }
+
+    /**
+     * The timeout completes the future with a TimeoutException, and the connection opened afterwards is closed.
+     */
+    @Test
+    public void testTimeoutFailsFutureAndClosesLateConnection() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap("OpenAsyncTimedOut");
+        release = new CountDownLatch(1);
+
+        CompletableFuture<Connection> future = shardMap.openConnectionForKeyAsync(1, CONNECTION_STRING, ConnectionOptions.None, executor, 50,
+                TimeUnit.MILLISECONDS);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Opening the connection should time out.");
+        }
+        catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        release.countDown();
+
+        awaitClosedConnections(StubDriver.database("OpenAsyncTimedOut"), 1);
+    }
+
+    /**
+     * A connection opened within the timeout completes the future, which the timeout then leaves alone.
+     */
+    @Test
+    public void testConnectionWithinTimeoutIsKept() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap("OpenAsyncInTime");
+
+        Connection conn = shardMap.openConnectionForKeyAsync(1, CONNECTION_STRING, ConnectionOptions.None, executor, 1, TimeUnit.SECONDS).get(5,
+                TimeUnit.SECONDS);
+        Thread.sleep(1_100);
+        try {
+            Assert.assertFalse(conn.isClosed());
+        }
+        finally {
+            conn.close();
+        }
+        Assert.assertEquals(1, StubDriver.database("OpenAsyncInTime").connectionsClosed.get());
+    }
+
+    private static String credentials() {
+        SqlConnectionStringBuilder connStr = new SqlConnectionStringBuilder();
+        connStr.setUser("user");
+        connStr.setPassword("password");
+        return connStr.toString();
+    }
+
+    private ListShardMap<Integer> listShardMap(String database) {
+        ListShardMap<Integer> shardMap = store.createListShardMap("OpenAsync", ShardKeyType.Int32);
+        store.addPointMapping(shardMap, store.addShard(shardMap, new ShardLocation("stub", database)), 1);
+        return shardMap;
+    }
+
+    private static void awaitClosedConnections(StubDriver.Database database,
+            int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (database.connectionsClosed.get() < count) {
+            Assert.assertTrue("Timed out waiting for the connection to be closed.", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
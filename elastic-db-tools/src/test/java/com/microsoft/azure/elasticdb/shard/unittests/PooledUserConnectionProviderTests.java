@@ -0,0 +1,132 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.sqlstore.PooledUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+
+/**
+ * Tests related to PooledUserConnectionProvider class.
+ */
+public class PooledUserConnectionProviderTests {
+
+    /**
+     * A connection returned to the pool is handed out again instead of opening a new one.
+     */
+    @Test
+    public void testConnectionIsReused() throws SQLException {
+        StubDriver.Database database = StubDriver.database("PoolReuse");
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider()) {
+            provider.getConnection(StubDriver.url(database.getName())).close();
+            provider.getConnection(StubDriver.url(database.getName())).close();
+        }
+        Assert.assertEquals(1, database.connectionsOpened.get());
+    }
+
+    /**
+     * Statements report the pooled connection as theirs, and are closed when the connection returns to the pool.
+     */
+    @Test
+    public void testStatementsBelongToPooledConnection() throws SQLException {
+        StubDriver.Database database = StubDriver.database("PoolStatements");
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider()) {
+            Connection conn = provider.getConnection(StubDriver.url(database.getName()));
+            PreparedStatement prepared = conn.prepareStatement("SELECT 1");
+            Statement closedByCaller = conn.createStatement();
+            closedByCaller.close();
+
+            Assert.assertSame(conn, prepared.getConnection());
+            Assert.assertSame(conn, conn.getMetaData().getConnection());
+
+            conn.close();
+            Assert.assertTrue(prepared.isClosed());
+            Assert.assertEquals(2, database.statementsClosed.get() - countResetStatements(database));
+        }
+    }
+
+    /**
+     * The catalog, transaction and session settings changed by a borrower are restored for the next one.
+     */
+    @Test
+    public void testSessionStateIsReset() throws SQLException {
+        StubDriver.Database database = StubDriver.database("PoolReset");
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider()) {
+            Connection conn = provider.getConnection(StubDriver.url(database.getName()));
+            conn.setCatalog("other");
+            conn.setReadOnly(true);
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            conn.setAutoCommit(false);
+            conn.close();
+
+            conn = provider.getConnection(StubDriver.url(database.getName()));
+            Assert.assertEquals(1, database.connectionsOpened.get());
+            Assert.assertEquals(1, database.rollbacks.get());
+            Assert.assertEquals(database.getName(), conn.getCatalog());
+            Assert.assertFalse(conn.isReadOnly());
+            Assert.assertTrue(conn.getAutoCommit());
+            Assert.assertEquals(Connection.TRANSACTION_READ_COMMITTED, conn.getTransactionIsolation());
+            conn.close();
+        }
+    }
+
+    /**
+     * A transaction begun in Transact-SQL on an autocommit connection is rolled back when the connection returns to the pool.
+     */
+    @Test
+    public void testOpenTransactionIsRolledBack() throws SQLException {
+        StubDriver.Database database = StubDriver.database("PoolTransaction");
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider()) {
+            Connection conn = provider.getConnection(StubDriver.url(database.getName()));
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate("BEGIN TRANSACTION");
+            }
+            conn.close();
+        }
+        Assert.assertEquals("IF @@TRANCOUNT > 0 ROLLBACK TRANSACTION", database.executed.get(database.executed.size() - 1));
+    }
+
+    /**
+     * Idle connections are evicted in the background even if the pool is not borrowed from again.
+     */
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        StubDriver.Database database = StubDriver.database("PoolEviction");
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider(1, 50, 60_000, 0, 1_000)) {
+            provider.getConnection(StubDriver.url(database.getName())).close();
+            Assert.assertEquals(0, database.connectionsClosed.get());
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (database.connectionsClosed.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(1, database.connectionsClosed.get());
+        }
+    }
+
+    /**
+     * A borrower waiting longer than the borrow timeout for an exhausted pool fails.
+     */
+    @Test
+    public void testBorrowTimesOut() throws SQLException {
+        StubDriver.Database database = StubDriver.database("PoolExhausted");
+        try (PooledUserConnectionProvider provider = new PooledUserConnectionProvider(1, 60_000, 60_000, 0, 10)) {
+            try (Connection conn = provider.getConnection(StubDriver.url(database.getName()))) {
+                provider.getConnection(StubDriver.url(database.getName()));
+                Assert.fail("Borrowing from an exhausted pool should time out.");
+            }
+            catch (SQLException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Timed out"));
+            }
+        }
+    }
+
+    private static int countResetStatements(StubDriver.Database database) {
+        return (int) database.executed.stream().filter(sql -> sql.startsWith("IF @@TRANCOUNT")).count();
+    }
+}
@@ -0,0 +1,112 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardKey;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.cache.CacheStoreMappingUpdatePolicy;
+import com.microsoft.azure.elasticdb.shard.cache.ICacheStore;
+import com.microsoft.azure.elasticdb.shard.cache.ICacheStoreMapping;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.map.RangeShardMap;
+import com.microsoft.azure.elasticdb.shard.map.ShardMap;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.store.StoreMapping;
+import com.microsoft.azure.elasticdb.shard.store.StoreShard;
+import com.microsoft.azure.elasticdb.shard.stubs.StubGlobalStore;
+
+/**
+ * Tests related to PrimitiveKeyIndex class, through the Int32 and Int64 key lookups of the mapping cache.
+ */
+public class PrimitiveKeyIndexTests {
+
+    private final StubGlobalStore store = new StubGlobalStore(new IUserConnectionProvider() {
+        @Override
+        public Connection getConnection(String connectionString) throws SQLException {
+            throw new SQLException("Cache lookups do not connect to shards.");
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    private final ICacheStore cache = store.getShardMapManager().getCache();
+
+    /**
+     * A point is found only by its own key, including the largest key.
+     */
+    @Test
+    public void testPointLookup() {
+        ListShardMap<Long> shardMap = store.createListShardMap("IndexPoints", ShardKeyType.Int64);
+        StoreShard shard = store.addShard(shardMap, new ShardLocation("stub", "IndexPoints"));
+        StoreMapping ten = store.addPointMapping(shardMap, shard, 10L);
+        StoreMapping minusFive = store.addPointMapping(shardMap, shard, -5L);
+        StoreMapping max = store.addPointMapping(shardMap, shard, Long.MAX_VALUE);
+        cache.addOrUpdateMappings(Arrays.asList(ten, minusFive, max), CacheStoreMappingUpdatePolicy.OverwriteExisting);
+
+        Assert.assertEquals(ten.getId(), idOf(find(shardMap, 10)));
+        Assert.assertEquals(minusFive.getId(), idOf(find(shardMap, -5)));
+        Assert.assertEquals(max.getId(), idOf(find(shardMap, Long.MAX_VALUE)));
+        Assert.assertNull(find(shardMap, 11));
+        Assert.assertNull(find(shardMap, 9));
+        Assert.assertNull(find(shardMap, Long.MIN_VALUE));
+        Assert.assertNull(find(shardMap, Long.MAX_VALUE - 1));
+    }
+
+    /**
+     * A range contains its low key but not its high key, and a range ending at the maximum key contains every key above its low key.
+     */
+    @Test
+    public void testRangeLookup() {
+        RangeShardMap<Integer> shardMap = store.createRangeShardMap("IndexRanges", ShardKeyType.Int32);
+        StoreShard shard = store.addShard(shardMap, new ShardLocation("stub", "IndexRanges"));
+        StoreMapping upper = new StoreMapping(UUID.randomUUID(), shardMap.getId(), new ShardKey(100).getRawValue(),
+                ShardKey.getMaxInt().getRawValue(), 1, null, shard);
+        StoreMapping lower = store.addRangeMapping(shardMap, shard, 0, 50);
+        cache.addOrUpdateMappings(Arrays.asList(upper, lower), CacheStoreMappingUpdatePolicy.OverwriteExisting);
+
+        Assert.assertEquals(lower.getId(), idOf(find(shardMap, 0)));
+        Assert.assertEquals(lower.getId(), idOf(find(shardMap, 49)));
+        Assert.assertNull(find(shardMap, 50));
+        Assert.assertNull(find(shardMap, 99));
+        Assert.assertNull(find(shardMap, -1));
+        Assert.assertEquals(upper.getId(), idOf(find(shardMap, 100)));
+        Assert.assertEquals(upper.getId(), idOf(find(shardMap, Integer.MAX_VALUE)));
+        Assert.assertNull(find(shardMap, Integer.MAX_VALUE + 1L));
+    }
+
+    /**
+     * A mapping added to or removed from the cache after a lookup is seen by the next lookup.
+     */
+    @Test
+    public void testIndexFollowsCacheChanges() {
+        ListShardMap<Integer> shardMap = store.createListShardMap("IndexChanges", ShardKeyType.Int32);
+        StoreShard shard = store.addShard(shardMap, new ShardLocation("stub", "IndexChanges"));
+        Assert.assertNull(find(shardMap, 0));
+
+        StoreMapping mapping = store.addPointMapping(shardMap, shard, 0);
+        cache.addOrUpdateMapping(mapping, CacheStoreMappingUpdatePolicy.OverwriteExisting);
+        Assert.assertEquals(mapping.getId(), idOf(find(shardMap, 0)));
+
+        cache.deleteMapping(mapping);
+        Assert.assertNull(find(shardMap, 0));
+    }
+
+    private ICacheStoreMapping find(ShardMap shardMap,
+            long key) {
+        return cache.lookupMappingByKey(shardMap.getStoreShardMap(), key);
+    }
+
+    private static UUID idOf(ICacheStoreMapping mapping) {
+        Assert.assertNotNull(mapping);
+        return mapping.getMapping().getId();
+    }
+}
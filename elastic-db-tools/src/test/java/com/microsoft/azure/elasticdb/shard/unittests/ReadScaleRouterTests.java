@@ -0,0 +1,174 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ReadScaleRouter;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
+import com.microsoft.azure.elasticdb.shard.sqlstore.ApplicationIntent;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.store.StoreMapping;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+import com.microsoft.azure.elasticdb.shard.stubs.StubGlobalStore;
+
+/**
+ * Tests related to ReadScaleRouter class and the read-intent connection options.
+ */
+public class ReadScaleRouterTests {
+
+    private static final ShardLocation SHARD = new ShardLocation("stub", "ReadScaleShard");
+
+    private static final ShardLocation REPLICA_1 = new ShardLocation("stub", "ReadScaleReplica1");
+
+    private static final ShardLocation REPLICA_2 = new ShardLocation("stub", "ReadScaleReplica2");
+
+    private static final ShardLocation REPLICA_3 = new ShardLocation("stub", "ReadScaleReplica3");
+
+    /**
+     * Connection strings the shard connections were opened with.
+     */
+    private final List<String> opened = Collections.synchronizedList(new ArrayList<>());
+
+    private final StubGlobalStore store = new StubGlobalStore(new IUserConnectionProvider() {
+        @Override
+        public Connection getConnection(String connectionString) throws SQLException {
+            opened.add(connectionString);
+            return DriverManager.getConnection(StubDriver.url(new SqlConnectionStringBuilder(connectionString).getDatabaseName()));
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    /**
+     * The replicas of a shard are handed out in turn.
+     */
+    @Test
+    public void testReplicasAreUsedRoundRobin() {
+        ReadScaleRouter router = new ReadScaleRouter();
+        router.setReplicas(SHARD, Arrays.asList(REPLICA_1, REPLICA_2, REPLICA_3));
+
+        List<ShardLocation> routes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            routes.add(router.route(SHARD, null));
+        }
+        Assert.assertEquals(Arrays.asList(REPLICA_1, REPLICA_2, REPLICA_3, REPLICA_1, REPLICA_2, REPLICA_3), routes);
+    }
+
+    /**
+     * A shard without replicas, including one whose replicas were removed, is routed to its own location.
+     */
+    @Test
+    public void testShardWithoutReplicasIsRoutedToItself() {
+        ReadScaleRouter router = new ReadScaleRouter();
+        Assert.assertEquals(SHARD, router.route(SHARD, null));
+
+        router.setReplicas(SHARD, Collections.singletonList(REPLICA_1));
+        Assert.assertEquals(REPLICA_1, router.route(SHARD, null));
+
+        router.setReplicas(SHARD, Collections.emptyList());
+        Assert.assertEquals(SHARD, router.route(SHARD, null));
+        Assert.assertTrue(router.getReplicas(SHARD).isEmpty());
+
+        router.setReplicas(SHARD, Collections.singletonList(REPLICA_1));
+        router.removeReplicas(SHARD);
+        Assert.assertEquals(SHARD, router.route(SHARD, null));
+    }
+
+    /**
+     * Replicas whose circuit is open are passed over, and the shard location is used once all of them are.
+     */
+    @Test
+    public void testReplicasWithOpenCircuitAreSkipped() {
+        ReadScaleRouter router = new ReadScaleRouter();
+        router.setReplicas(SHARD, Arrays.asList(REPLICA_1, REPLICA_2));
+        ShardHealthTracker tracker = new ShardHealthTracker(1, 60_000);
+
+        tracker.recordFailure(REPLICA_1);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(REPLICA_2, router.route(SHARD, tracker));
+        }
+
+        tracker.recordFailure(REPLICA_2);
+        Assert.assertEquals(SHARD, router.route(SHARD, tracker));
+    }
+
+    /**
+     * Read-only connections go to the replicas of the shard with read intent, while other connections go to the shard itself.
+     */
+    @Test
+    public void testReadOnlyConnectionsAreRoutedToReplicas() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap();
+        store.getShardMapManager().getReadScaleRouter().setReplicas(SHARD, Arrays.asList(REPLICA_1, REPLICA_2));
+
+        List<String> databases = new ArrayList<>();
+        for (ConnectionOptions options : Arrays.asList(ConnectionOptions.ReadOnly, ConnectionOptions.ReadOnly, ConnectionOptions.None)) {
+            try (Connection conn = shardMap.openConnectionForKey(1, credentials(), options)) {
+                Assert.assertFalse(conn.isClosed());
+            }
+        }
+        for (String connectionString : opened) {
+            databases.add(new SqlConnectionStringBuilder(connectionString).getDatabaseName());
+        }
+
+        Assert.assertEquals(Arrays.asList(REPLICA_1.getDatabase(), REPLICA_2.getDatabase(), SHARD.getDatabase()), databases);
+        Assert.assertEquals(ApplicationIntent.ReadOnly, new SqlConnectionStringBuilder(opened.get(0)).getApplicationIntent());
+        Assert.assertEquals(ApplicationIntent.ReadOnly, new SqlConnectionStringBuilder(opened.get(1)).getApplicationIntent());
+        Assert.assertNotEquals(ApplicationIntent.ReadOnly, new SqlConnectionStringBuilder(opened.get(2)).getApplicationIntent());
+    }
+
+    /**
+     * A read-only connection which validates the mapping validates it on the replica rather than the shard, and skips validations cached for that
+     * replica.
+     */
+    @Test
+    public void testReadOnlyValidationRunsOnReplica() throws Exception {
+        ListShardMap<Integer> shardMap = this.listShardMap();
+        StoreMapping mapping = store.addPointMapping(shardMap, store.addShard(shardMap, SHARD), 2);
+        store.getShardMapManager().getReadScaleRouter().setReplicas(SHARD, Collections.singletonList(REPLICA_1));
+        StubDriver.Database replica = StubDriver.database("ReadScaleReplica1");
+
+        try (Connection conn = shardMap.openConnectionForKey(2, credentials(), ConnectionOptions.ReadOnly)) {
+            Assert.assertFalse(conn.isClosed());
+        }
+        store.getShardMapManager().getValidationCache().addValidated(opened.get(0), mapping);
+
+        try (Connection conn = shardMap.openConnectionForKey(2, credentials(), ConnectionOptions.ValidateCachedReadOnly)) {
+            Assert.assertFalse(conn.isClosed());
+        }
+        Assert.assertEquals(0, replica.statementsPrepared.get());
+
+        // The stub driver does not implement the validation procedure, so only where it is called is checked.
+        shardMap.openConnectionForKey(2, credentials(), ConnectionOptions.ValidateReadOnly).close();
+        Assert.assertEquals(1, replica.statementsPrepared.get());
+        Assert.assertEquals(0, StubDriver.database("ReadScaleShard").statementsPrepared.get());
+        Assert.assertEquals(replica.connectionsOpened.get(), replica.connectionsClosed.get());
+    }
+
+    private ListShardMap<Integer> listShardMap() {
+        ListShardMap<Integer> shardMap = store.createListShardMap("ReadScale", ShardKeyType.Int32);
+        store.addPointMapping(shardMap, store.addShard(shardMap, SHARD), 1);
+        return shardMap;
+    }
+
+    private static String credentials() {
+        SqlConnectionStringBuilder connStr = new SqlConnectionStringBuilder();
+        connStr.setUser("user");
+        connStr.setPassword("password");
+        return connStr.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.health.CircuitState;
+import com.microsoft.azure.elasticdb.shard.health.ShardHealthTracker;
+import com.microsoft.azure.elasticdb.shard.store.StoreException;
+
+/**
+ * Tests related to ShardHealthTracker class.
+ */
+public class ShardHealthTrackerTests {
+
+    private final ShardLocation location = new ShardLocation("server", "database");
+
+    /**
+     * The circuit opens after the failure threshold and rejects attempts while open.
+     */
+    @Test
+    public void testCircuitOpensAtThreshold() {
+        ShardHealthTracker tracker = new ShardHealthTracker(3, 60_000);
+        List<CircuitState> transitions = new ArrayList<>();
+        tracker.circuitStateChanged.addListener((sender, args) -> transitions.add(args.getState()));
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(tracker.tryAcquire(location));
+            tracker.recordFailure(location);
+        }
+        Assert.assertEquals(CircuitState.Closed, tracker.getState(location));
+
+        Assert.assertTrue(tracker.tryAcquire(location));
+        tracker.recordFailure(location);
+        Assert.assertEquals(CircuitState.Open, tracker.getState(location));
+        Assert.assertFalse(tracker.tryAcquire(location));
+        Assert.assertTrue(tracker.getRemainingOpenMillis(location) > 0);
+        Assert.assertEquals(1, transitions.size());
+        Assert.assertEquals(CircuitState.Open, transitions.get(0));
+    }
+
+    /**
+     * A success resets the count of consecutive failures.
+     */
+    @Test
+    public void testSuccessResetsFailures() {
+        ShardHealthTracker tracker = new ShardHealthTracker(2, 60_000);
+        tracker.recordFailure(location);
+        tracker.recordSuccess(location);
+        tracker.recordFailure(location);
+        Assert.assertEquals(CircuitState.Closed, tracker.getState(location));
+    }
+
+    /**
+     * After the open period one probe is let through; its failure reopens the circuit and its success closes it.
+     */
+    @Test
+    public void testHalfOpenProbe() throws InterruptedException {
+        ShardHealthTracker tracker = new ShardHealthTracker(1, 20);
+        tracker.recordFailure(location);
+        Thread.sleep(40);
+
+        Assert.assertTrue(tracker.tryAcquire(location));
+        Assert.assertEquals(CircuitState.HalfOpen, tracker.getState(location));
+        Assert.assertFalse(tracker.tryAcquire(location));
+        tracker.recordFailure(location);
+        Assert.assertEquals(CircuitState.Open, tracker.getState(location));
+
+        Thread.sleep(40);
+        Assert.assertTrue(tracker.tryAcquire(location));
+        tracker.recordSuccess(location);
+        Assert.assertEquals(CircuitState.Closed, tracker.getState(location));
+        Assert.assertTrue(tracker.tryAcquire(location));
+    }
+
+    /**
+     * Only connection failures count against a location; errors raised by SQL Server count as reaching it, and failures which say nothing about
+     * it, such as a pool borrow timeout, free the half-open probe without changing the state.
+     */
+    @Test
+    public void testFailuresAreClassified() throws InterruptedException {
+        ShardHealthTracker tracker = new ShardHealthTracker(1, 20);
+        SQLException connectionFailure = new SQLException("The TCP/IP connection to the host has failed.", "08S01");
+        SQLException unavailable = new SQLException("Database is not currently available.", "S0001", 40613);
+        SQLException loginFailed = new SQLException("Login failed for user 'u'.", "S0001", 18456);
+        SQLException poolTimeout = new SQLException("Timed out after 30000 ms waiting for a pooled connection; pool size: 100.");
+
+        Assert.assertTrue(ShardHealthTracker.isConnectionFailure(new StoreException(connectionFailure.getMessage(), connectionFailure)));
+        Assert.assertTrue(ShardHealthTracker.isConnectionFailure(unavailable));
+        Assert.assertFalse(ShardHealthTracker.isConnectionFailure(loginFailed));
+        Assert.assertFalse(ShardHealthTracker.isConnectionFailure(poolTimeout));
+        Assert.assertFalse(ShardHealthTracker.isConnectionFailure(new IllegalStateException()));
+
+        tracker.recordFailure(location, new StoreException(poolTimeout.getMessage(), poolTimeout));
+        tracker.recordFailure(location, loginFailed);
+        Assert.assertEquals(CircuitState.Closed, tracker.getState(location));
+
+        tracker.recordFailure(location, connectionFailure);
+        Assert.assertEquals(CircuitState.Open, tracker.getState(location));
+
+        Thread.sleep(40);
+        Assert.assertTrue(tracker.tryAcquire(location));
+        tracker.recordFailure(location, poolTimeout);
+        Assert.assertEquals(CircuitState.HalfOpen, tracker.getState(location));
+        Assert.assertTrue(tracker.tryAcquire(location));
+        tracker.recordFailure(location, loginFailed);
+        Assert.assertEquals(CircuitState.Closed, tracker.getState(location));
+    }
+}
@@ -0,0 +1,299 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.bulk.BulkLoadColumn;
+import com.microsoft.azure.elasticdb.shard.bulk.ShardedBulkLoadTarget;
+import com.microsoft.azure.elasticdb.shard.bulk.ShardedBulkLoader;
+import com.microsoft.azure.elasticdb.shard.bulk.ShardedBulkLoaderOptions;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCategory;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementErrorCode;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
+
+/**
+ * Tests related to ShardedBulkLoader class.
+ */
+public class ShardedBulkLoaderTests {
+
+    private static final List<BulkLoadColumn> COLUMNS = Collections.singletonList(new BulkLoadColumn("id", Types.INTEGER));
+
+    /**
+     * Rows are buffered per shard, and a shard's buffer is written once it holds a batch.
+     */
+    @Test
+    public void testRowsAreBufferedPerShardUntilBatchIsFull() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1").route(2, "a/1").route(3, "a/1").route(10, "b/1");
+
+        try (ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(3, 60_000, 10))) {
+            loader.add(1, 1);
+            loader.add(10, 10);
+            loader.add(2, 2);
+            Thread.sleep(100);
+            Assert.assertTrue(target.writes.isEmpty());
+
+            loader.add(3, 3);
+            target.awaitWrites(1);
+            Assert.assertEquals("a: [a/1] [1, 2, 3]", target.writes.get(0));
+
+            loader.flush();
+            Assert.assertEquals(Arrays.asList("a: [a/1] [1, 2, 3]", "b: [b/1] [10]"), target.writes);
+            Assert.assertEquals(4, loader.getLoadedRowCount());
+        }
+    }
+
+    /**
+     * A batch is written with each distinct mapping its rows were routed by, so that all of them are validated.
+     */
+    @Test
+    public void testBatchCarriesDistinctMappings() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1").route(2, "a/2").route(3, "a/1");
+
+        try (ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(10, 60_000, 10))) {
+            loader.add(1, 1);
+            loader.add(2, 2);
+            loader.add(3, 3);
+            loader.flush();
+        }
+        Assert.assertEquals(Collections.singletonList("a: [a/1, a/2] [1, 2, 3]"), target.writes);
+    }
+
+    /**
+     * A buffer which does not fill up is written once its oldest row waited for the maximum batch delay.
+     */
+    @Test
+    public void testBufferIsWrittenAfterMaxDelay() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1");
+
+        try (ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(10, 50, 10))) {
+            loader.add(1, 1);
+            target.awaitWrites(1);
+            Assert.assertEquals(1, loader.getLoadedRowCount());
+        }
+    }
+
+    /**
+     * Adding a row blocks while the maximum number of rows is buffered or being written, and resumes once a batch is written.
+     */
+    @Test
+    public void testAddBlocksWhileBuffersAreFull() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1").route(2, "a/1").route(3, "a/1");
+        target.release = new CountDownLatch(1);
+
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try (ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(2, 60_000, 2))) {
+            loader.add(1, 1);
+            loader.add(2, 2);
+            Future<?> third = producer.submit(() -> {
+                loader.add(3, 3);
+                return null;
+            });
+            try {
+                third.get(200, TimeUnit.MILLISECONDS);
+                Assert.fail("Adding a row should block while the buffers are full.");
+            }
+            catch (TimeoutException e) {
+                // Expected.
+            }
+
+            target.release.countDown();
+            third.get(5, TimeUnit.SECONDS);
+        }
+        finally {
+            producer.shutdownNow();
+        }
+        Assert.assertEquals(Arrays.asList("a: [a/1] [1, 2]", "a: [a/1] [3]"), target.writes);
+    }
+
+    /**
+     * Rows of a batch whose mapping is found stale are looked up again and written to the shards holding them now.
+     */
+    @Test
+    public void testRowsOfStaleMappingAreRoutedAgain() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1").route(2, "a/1");
+
+        try (ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(10, 60_000, 10))) {
+            loader.add(1, 1);
+            loader.add(2, 2);
+
+            // The mapping is split, and its upper half moved to another shard.
+            target.route(1, "a/2").route(2, "b/1");
+            target.stale.add("a/1");
+
+            loader.flush();
+            Assert.assertEquals(2, loader.getLoadedRowCount());
+        }
+        Assert.assertEquals(Arrays.asList("a: [a/2] [1]", "b: [b/1] [2]"), target.writes);
+    }
+
+    /**
+     * A batch whose mapping fails validation without having changed, e.g. because it is offline, fails the loader instead of being retried.
+     */
+    @Test
+    public void testFailedValidationWithoutNewRouteFails() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1");
+        target.stale.add("a/1");
+
+        ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(10, 60_000, 10));
+        loader.add(1, 1);
+        try {
+            loader.flush();
+            Assert.fail("The batch should fail.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getCause() instanceof ShardManagementException);
+        }
+        assertCloseFails(loader);
+        Assert.assertTrue(target.writes.isEmpty());
+    }
+
+    /**
+     * A failed batch is thrown by the following calls, and the rows added afterwards are rejected.
+     */
+    @Test
+    public void testFailedBatchFailsLaterCalls() throws Exception {
+        Target target = new Target();
+        target.route(1, "a/1").route(2, "a/1");
+        target.failure = new SQLException("Injected failure.");
+
+        ShardedBulkLoader<Integer> loader = new ShardedBulkLoader<>(target, COLUMNS, options(1, 60_000, 10));
+        loader.add(1, 1);
+        try {
+            loader.flush();
+            Assert.fail("The batch should fail.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("Injected failure."));
+        }
+        try {
+            loader.add(2, 2);
+            Assert.fail("Adding a row after a failure should fail.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("Injected failure."));
+        }
+        assertCloseFails(loader);
+        Assert.assertEquals(0, loader.getLoadedRowCount());
+    }
+
+    private static void assertCloseFails(ShardedBulkLoader<Integer> loader) {
+        try {
+            loader.close();
+            Assert.fail("Closing a failed loader should throw its failure.");
+        }
+        catch (SQLException e) {
+            // Expected.
+        }
+    }
+
+    private static ShardedBulkLoaderOptions options(int maxBatchRows,
+            long maxBatchDelayMillis,
+            int maxBufferedRows) {
+        ShardedBulkLoaderOptions options = new ShardedBulkLoaderOptions();
+        options.setMaxBatchRows(maxBatchRows);
+        options.setMaxBatchDelayMillis(maxBatchDelayMillis);
+        options.setMaxBufferedRows(maxBufferedRows);
+        options.setMaxParallelWrites(1);
+        return options;
+    }
+
+    /**
+     * Routes keys by mappings named "shard/version", which are cached on first lookup, and records the batches written as
+     * "shard: [mappings] [ids]".
+     */
+    private static final class Target implements ShardedBulkLoadTarget<Integer, String> {
+
+        private final Map<Integer, String> store = new ConcurrentHashMap<>();
+
+        private final Map<Integer, String> cache = new ConcurrentHashMap<>();
+
+        /**
+         * Mappings which fail validation.
+         */
+        private final Set<String> stale = ConcurrentHashMap.newKeySet();
+
+        private final List<String> writes = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile CountDownLatch release;
+
+        private volatile SQLException failure;
+
+        Target route(int key,
+                String mapping) {
+            store.put(key, mapping);
+            return this;
+        }
+
+        void awaitWrites(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (writes.size() < count) {
+                Assert.assertTrue("Timed out waiting for batches to be written.", System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public String lookupMapping(Integer key,
+                boolean refresh) {
+            if (refresh) {
+                cache.put(key, store.get(key));
+                return store.get(key);
+            }
+            return cache.computeIfAbsent(key, store::get);
+        }
+
+        @Override
+        public ShardLocation getLocation(String mapping) {
+            return new ShardLocation("stub", mapping.substring(0, mapping.indexOf('/')));
+        }
+
+        @Override
+        public void write(ShardLocation location,
+                List<String> mappings,
+                List<Object[]> rows) throws SQLException {
+            if (release != null) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            for (String mapping : mappings) {
+                if (stale.contains(mapping)) {
+                    throw new ShardManagementException(ShardManagementErrorCategory.Validation, ShardManagementErrorCode.MappingDoesNotExist,
+                            "Mapping %s does not exist.", mapping);
+                }
+            }
+            List<Object> ids = new ArrayList<>();
+            rows.forEach(row -> ids.add(row[0]));
+            writes.add(location.getDatabase() + ": " + mappings + " " + ids);
+        }
+    }
+}
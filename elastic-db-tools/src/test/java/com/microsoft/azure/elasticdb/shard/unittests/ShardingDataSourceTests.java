@@ -0,0 +1,170 @@
+package com.microsoft.azure.elasticdb.shard.unittests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.datasource.ShardKeyScope;
+import com.microsoft.azure.elasticdb.shard.datasource.ShardingDataSource;
+import com.microsoft.azure.elasticdb.shard.map.ListShardMap;
+import com.microsoft.azure.elasticdb.shard.mapmanager.ShardManagementException;
+import com.microsoft.azure.elasticdb.shard.mapper.ConnectionOptions;
+import com.microsoft.azure.elasticdb.shard.sqlstore.SqlConnectionStringBuilder;
+import com.microsoft.azure.elasticdb.shard.store.IUserConnectionProvider;
+import com.microsoft.azure.elasticdb.shard.stubs.StubDriver;
+import com.microsoft.azure.elasticdb.shard.stubs.StubGlobalStore;
+
+/**
+ * Tests related to ShardingDataSource class.
+ */
+public class ShardingDataSourceTests {
+
+    /**
+     * Connection strings the shard connections were opened with.
+     */
+    private final List<String> opened = Collections.synchronizedList(new ArrayList<>());
+
+    private final StubGlobalStore store = new StubGlobalStore(new IUserConnectionProvider() {
+        @Override
+        public Connection getConnection(String connectionString) throws SQLException {
+            opened.add(connectionString);
+            return DriverManager.getConnection(StubDriver.url(new SqlConnectionStringBuilder(connectionString).getDatabaseName()));
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    /**
+     * Connections are routed by the key bound to the current thread, and closing a nested scope restores the key bound before it.
+     */
+    @Test
+    public void testConnectionsFollowBoundKey() throws Exception {
+        ShardingDataSource dataSource = new ShardingDataSource(this.listShardMap(), credentials(), ConnectionOptions.None);
+
+        try (ShardKeyScope outer = dataSource.bindKey(1)) {
+            Assert.assertEquals(StubDriver.url("DataSourceA"), urlOf(dataSource.getConnection()));
+            try (ShardKeyScope inner = dataSource.bindKey(2)) {
+                Assert.assertEquals(StubDriver.url("DataSourceB"), urlOf(dataSource.getConnection()));
+            }
+            Assert.assertEquals(1, dataSource.getBoundKey());
+            Assert.assertEquals(StubDriver.url("DataSourceA"), urlOf(dataSource.getConnection()));
+        }
+        Assert.assertNull(dataSource.getBoundKey());
+    }
+
+    /**
+     * An explicit key routes the connection whatever key is bound.
+     */
+    @Test
+    public void testExplicitKeyOverridesBoundKey() throws Exception {
+        ShardingDataSource dataSource = new ShardingDataSource(this.listShardMap(), credentials(), ConnectionOptions.None);
+
+        try (ShardKeyScope scope = dataSource.bindKey(1)) {
+            Assert.assertEquals(StubDriver.url("DataSourceB"), urlOf(dataSource.getConnectionForKey(2)));
+        }
+    }
+
+    /**
+     * A key bound on one thread is not seen by others.
+     */
+    @Test
+    public void testBoundKeyIsScopedToThread() throws Exception {
+        ShardingDataSource dataSource = new ShardingDataSource(this.listShardMap(), credentials(), ConnectionOptions.None);
+
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try (ShardKeyScope scope = dataSource.bindKey(1)) {
+            Assert.assertNull(other.submit(dataSource::getBoundKey).get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            other.shutdownNow();
+        }
+    }
+
+    /**
+     * Requesting a connection without a bound key fails with an SQLException.
+     */
+    @Test
+    public void testMissingBoundKeyFails() throws Exception {
+        ShardingDataSource dataSource = new ShardingDataSource(this.listShardMap(), credentials(), ConnectionOptions.None);
+
+        try {
+            dataSource.getConnection();
+            Assert.fail("Requesting a connection without a bound key should fail.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("DataSource"));
+        }
+        Assert.assertTrue(opened.isEmpty());
+    }
+
+    /**
+     * A routing failure is translated into an SQLException caused by the shard management error.
+     */
+    @Test
+    public void testRoutingFailureIsTranslated() throws Exception {
+        ShardingDataSource dataSource = new ShardingDataSource(this.listShardMap(), credentials(), ConnectionOptions.None);
+
+        try {
+            dataSource.getConnectionForKey(3);
+            Assert.fail("Routing a key without a mapping should fail.");
+        }
+        catch (SQLException e) {
+            Assert.assertTrue(e.getCause() instanceof ShardManagementException);
+            Assert.assertEquals(e.getCause().getMessage(), e.getMessage());
+        }
+    }
+
+    /**
+     * Credentials passed to getConnection and the login timeout of the data source replace those of the connection string.
+     */
+    @Test
+    public void testCredentialsAndLoginTimeoutAreApplied() throws Exception {
+        ShardingDataSource dataSource = new ShardingDataSource(this.listShardMap(), credentials(), ConnectionOptions.None);
+        dataSource.setLoginTimeout(7);
+
+        try (ShardKeyScope scope = dataSource.bindKey(1)) {
+            dataSource.getConnection("other", "secret").close();
+        }
+
+        SqlConnectionStringBuilder routed = new SqlConnectionStringBuilder(opened.get(0));
+        Assert.assertEquals("other", routed.getUser());
+        Assert.assertEquals("secret", routed.getPassword());
+        Assert.assertEquals(7, routed.getConnectTimeout());
+    }
+
+    private ListShardMap<Integer> listShardMap() {
+        ListShardMap<Integer> shardMap = store.createListShardMap("DataSource", ShardKeyType.Int32);
+        store.addPointMapping(shardMap, store.addShard(shardMap, new ShardLocation("stub", "DataSourceA")), 1);
+        store.addPointMapping(shardMap, store.addShard(shardMap, new ShardLocation("stub", "DataSourceB")), 2);
+        return shardMap;
+    }
+
+    private static String urlOf(Connection conn) throws SQLException {
+        try {
+            return conn.getMetaData().getURL();
+        }
+        finally {
+            conn.close();
+        }
+    }
+
+    private static String credentials() {
+        SqlConnectionStringBuilder connStr = new SqlConnectionStringBuilder();
+        connStr.setUser("user");
+        connStr.setPassword("password");
+        return connStr.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.microsoft.azure.elasticdb.shardmapscalability;
+
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import com.microsoft.azure.elasticdb.shard.base.ShardKey;
+import com.microsoft.azure.elasticdb.shard.base.ShardKeyType;
+import com.microsoft.azure.elasticdb.shard.base.ShardLocation;
+import com.microsoft.azure.elasticdb.shard.cache.CacheStore;
+import com.microsoft.azure.elasticdb.shard.cache.CacheStoreMappingUpdatePolicy;
+import com.microsoft.azure.elasticdb.shard.cache.ICacheStoreMapping;
+import com.microsoft.azure.elasticdb.shard.store.StoreMapping;
+import com.microsoft.azure.elasticdb.shard.store.StoreShard;
+import com.microsoft.azure.elasticdb.shard.store.StoreShardMap;
+
+/**
+ * Measures the heap allocated per cached routing lookup of a primitive key. The cache is populated in memory, so no shard map manager database is
+ * needed. A lookup which boxes the key or builds a ShardKey shows up as a non-zero number of bytes per call.
+ */
+public final class RoutingAllocationBenchmark {
+
+    private static final int MAPPING_COUNT = 1000;
+
+    private static final int WARMUP_ITERATIONS = 200000;
+
+    private static final int MEASURED_ITERATIONS = 1000000;
+
+    private RoutingAllocationBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark for Int32 and Int64 list and range shard maps.
+     *
+     * @param args
+     *            Unused.
+     */
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation accounting is not supported by this JVM.");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (com.microsoft.azure.elasticdb.shard.map.ShardMapType mapType : new com.microsoft.azure.elasticdb.shard.map.ShardMapType[] {
+                com.microsoft.azure.elasticdb.shard.map.ShardMapType.List, com.microsoft.azure.elasticdb.shard.map.ShardMapType.Range}) {
+            for (ShardKeyType keyType : new ShardKeyType[] {ShardKeyType.Int32, ShardKeyType.Int64}) {
+                CacheStore cache = new CacheStore();
+                StoreShardMap ssm = populate(cache, mapType, keyType);
+
+                long span = mapType == com.microsoft.azure.elasticdb.shard.map.ShardMapType.List ? MAPPING_COUNT : MAPPING_COUNT * 10L;
+                lookup(cache, ssm, span, WARMUP_ITERATIONS);
+
+                long threadId = Thread.currentThread().getId();
+                long before = threads.getThreadAllocatedBytes(threadId);
+                int hits = lookup(cache, ssm, span, MEASURED_ITERATIONS);
+                long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+                System.out.printf("%1$s %2$s: %3$d hits, %4$.3f bytes per lookup" + "\r\n", mapType, keyType, hits,
+                        (double) allocated / MEASURED_ITERATIONS);
+            }
+        }
+    }
+
+    private static int lookup(CacheStore cache,
+            StoreShardMap ssm,
+            long span,
+            int iterations) {
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            ICacheStoreMapping csm = cache.lookupMappingByKey(ssm, i % span);
+            if (csm != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static StoreShardMap populate(CacheStore cache,
+            com.microsoft.azure.elasticdb.shard.map.ShardMapType mapType,
+            ShardKeyType keyType) {
+        StoreShardMap ssm = new StoreShardMap(UUID.randomUUID(), "Benchmark" + mapType + keyType, mapType, keyType);
+        cache.addOrUpdateShardMap(ssm);
+
+        StoreShard ss = new StoreShard(UUID.randomUUID(), UUID.randomUUID(), ssm.getId(), new ShardLocation("localhost", "Shard0"), 0);
+        for (int i = 0; i < MAPPING_COUNT; i++) {
+            byte[] min;
+            byte[] max;
+            if (mapType == com.microsoft.azure.elasticdb.shard.map.ShardMapType.List) {
+                min = rawValue(keyType, i);
+                max = null;
+            }
+            else {
+                min = rawValue(keyType, i * 10L);
+                max = rawValue(keyType, (i + 1) * 10L);
+            }
+            cache.addOrUpdateMapping(new StoreMapping(UUID.randomUUID(), ssm.getId(), min, max, 0, null, ss),
+                    CacheStoreMappingUpdatePolicy.OverwriteExisting);
+        }
+        return ssm;
+    }
+
+    private static byte[] rawValue(ShardKeyType keyType,
+            long value) {
+        return new ShardKey(keyType, keyType == ShardKeyType.Int32 ? (Object) (int) value : (Object) value).getRawValue();
+    }
+}